@@ -0,0 +1,69 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.primitive;
+
+import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
+import claw.tatsu.xcodeml.abstraction.InsertionPosition;
+import claw.tatsu.xcodeml.abstraction.PromotionInfo;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import helper.BenchmarkConstant;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the promotion of fields. Each invocation works on a fresh copy of
+ * the translation unit.
+ *
+ * @author clementval
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark {
+
+  // Scalar and array fields of the promotion test data
+  @Param({"s1", "a"})
+  public String field;
+
+  private Document _original;
+  private List<DimensionDefinition> _dimensions;
+  private XcodeProgram _xcodeml;
+  private FfunctionDefinition _fctDef;
+
+  @Setup(Level.Trial)
+  public void setupTrial() {
+    _original = XnodeUtil.readXmlFile(BenchmarkConstant.TEST_PROMOTION);
+    DimensionDefinition dim1 = new DimensionDefinition("dim1", "1", "30");
+    DimensionDefinition dim2 = new DimensionDefinition("dim2", "1", "40");
+    dim1.setInsertionPosition(InsertionPosition.BEFORE);
+    dim2.setInsertionPosition(InsertionPosition.AFTER);
+    _dimensions = Arrays.asList(dim1, dim2);
+  }
+
+  @Setup(Level.Invocation)
+  public void setupInvocation() {
+    _xcodeml = XcodeProgram.createFromDocument(
+        (Document) _original.cloneNode(true));
+    _fctDef = _xcodeml.getAllFctDef().get(0);
+  }
+
+  @Benchmark
+  public PromotionInfo promote() throws IllegalTransformationException {
+    PromotionInfo promotionInfo = new PromotionInfo(field);
+    promotionInfo.setDimensions(_dimensions);
+    Field.promote(promotionInfo, _fctDef, _xcodeml);
+    return promotionInfo;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode;
+
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import helper.BenchmarkConstant;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the XPath query used by the kcache transformation. The query is
+ * either compiled at each call with the array name inlined or evaluated
+ * through the XpathCache with the array name bound to a variable.
+ *
+ * @author clementval
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XpathCacheBenchmark {
+
+  private static final String INLINED_QUERY =
+      "following::%s[%s[%s[%s[text()='%s']] and position()=1]]";
+
+  private Xnode _from;
+  private String _arrayName;
+
+  @Setup
+  public void setup() {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(BenchmarkConstant.TEST_PROGRAM);
+    _from = xcodeml.matchDescendant(Xcode.F_PRAGMA_STATEMENT);
+    // First array assigned in the loops following the pragma
+    _arrayName = _from.nextSibling().matchDescendant(Xcode.F_ARRAY_REF)
+        .matchSeq(Xcode.VAR_REF, Xcode.VAR).value();
+  }
+
+  @Benchmark
+  public Node compiledEachTime() throws XPathExpressionException {
+    XPath xpath = XPathFactory.newInstance().newXPath();
+    String query = String.format(INLINED_QUERY, Xname.F_ASSIGN_STATEMENT,
+        Xname.F_ARRAY_REF, Xname.VAR_REF, Xname.VAR, _arrayName);
+    NodeList output = (NodeList) xpath.evaluate(query, _from.element(),
+        XPathConstants.NODESET);
+    return output.getLength() == 0 ? null : output.item(0);
+  }
+
+  @Benchmark
+  public Xnode cached() {
+    return XnodeUtil.getFirstArrayAssign(_from, _arrayName);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import claw.tatsu.xcodeml.xnode.Xname;
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import helper.BenchmarkConstant;
+import helper.BenchmarkInput;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the queries of the Xnode class on a replicated program.
+ *
+ * @author clementval
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XnodeBenchmark {
+
+  @Param({"1", "100"})
+  public int copies;
+
+  private XcodeProgram _xcodeml;
+  private Xnode _function;
+  private String _arrayName;
+
+  @Setup
+  public void setup() throws IOException {
+    _xcodeml = XcodeProgram.createFromDocument(
+        BenchmarkInput.load(BenchmarkConstant.TEST_PROGRAM, copies));
+    _function =
+        _xcodeml.matchDescendant(Xcode.F_DO_STATEMENT).findParentFunction();
+    _arrayName = _function.matchDescendant(Xcode.F_ARRAY_REF)
+        .matchSeq(Xcode.VAR_REF, Xcode.VAR).value();
+  }
+
+  @Benchmark
+  public List<Xnode> matchAllProgram() {
+    return _xcodeml.matchAll(Xcode.F_DO_STATEMENT);
+  }
+
+  @Benchmark
+  public List<Xnode> matchAllFunction() {
+    return _function.matchAll(Xcode.F_DO_STATEMENT);
+  }
+
+  /**
+   * Baseline for matchAllProgram walking the DOM without the opcode index.
+   *
+   * @return List of do statements found.
+   */
+  @Benchmark
+  public List<Xnode> domMatchAllProgram() {
+    NodeList elements = _xcodeml.getDocument()
+        .getElementsByTagName(Xname.F_DO_STATEMENT);
+    List<Xnode> nodes = new ArrayList<>();
+    for(int i = 0; i < elements.getLength(); ++i) {
+      nodes.add(new Xnode((Element) elements.item(i)));
+    }
+    return nodes;
+  }
+
+  @Benchmark
+  public Xnode matchDescendant() {
+    return _function.matchDescendant(Xcode.F_ASSIGN_STATEMENT);
+  }
+
+  @Benchmark
+  public List<Xnode> allArrayReferences() {
+    return XnodeUtil.getAllArrayReferences(_function, _arrayName);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import helper.BenchmarkConstant;
+import helper.BenchmarkInput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmark the cursor walks against the matchAll based queries
+ * they replace.
+ *
+ * @author clementval
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XnodeCursorBenchmark {
+
+  @Param({"1", "100"})
+  public int copies;
+
+  private XcodeProgram _xcodeml;
+  private String _arrayName;
+
+  @Setup
+  public void setup() throws IOException {
+    _xcodeml = XcodeProgram.createFromDocument(
+        BenchmarkInput.load(BenchmarkConstant.TEST_PROGRAM, copies));
+    _arrayName = _xcodeml.matchDescendant(Xcode.F_ARRAY_REF)
+        .matchSeq(Xcode.VAR_REF, Xcode.VAR).value();
+  }
+
+  @Benchmark
+  public Set<String> findAllReferences() {
+    return XnodeUtil.findAllReferences(_xcodeml);
+  }
+
+  /**
+   * Baseline for findAllReferences with the former matchAll implementation.
+   *
+   * @return Set of the referenced variable names.
+   */
+  @Benchmark
+  public Set<String> matchAllReferences() {
+    return _xcodeml.matchAll(Xcode.VAR).stream()
+        .filter(Xnode::isNotArrayIndex)
+        .map(Xnode::value)
+        .collect(Collectors.toSet());
+  }
+
+  @Benchmark
+  public List<Xnode> arrayReferencesOutsideAllocate() {
+    return XnodeUtil.getAllArrayReferences(_xcodeml, _arrayName,
+        Xcode.F_ALLOCATE_STATEMENT);
+  }
+
+  /**
+   * Baseline for arrayReferencesOutsideAllocate with the former ancestor
+   * check of each reference.
+   *
+   * @return List of array references found.
+   */
+  @Benchmark
+  public List<Xnode> matchAllArrayReferencesOutsideAllocate() {
+    List<Xnode> references = new ArrayList<>();
+    for(Xnode ref : _xcodeml.matchAll(Xcode.F_ARRAY_REF)) {
+      Xnode var = ref.matchSeq(Xcode.VAR_REF, Xcode.VAR);
+      if(var != null && var.value().equalsIgnoreCase(_arrayName)
+          && ref.matchAncestor(Xcode.F_ALLOCATE_STATEMENT) == null)
+      {
+        references.add(ref);
+      }
+    }
+    return references;
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.language;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.xcodeml.exception.IllegalDirectiveException;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.wani.x2t.configuration.Configuration;
+import helper.BenchmarkConstant;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the analysis of CLAW directives. The corpus benchmark analyzes
+ * directives from the ClawPragmaTest with the repetitions found in SCA code.
+ * Without cache, every directive of the corpus is parsed.
+ *
+ * @author clementval
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClawPragmaBenchmark {
+
+  private static final String[] CORPUS = {
+      "claw loop-fusion",
+      "claw loop-fusion group(g1) collapse(2)",
+      "claw loop-fusion target(cpu,gpu) collapse(3) group(g1)",
+      "claw loop-interchange (j,k,i) parallel",
+      "claw loop-extract range(i=1,10) map(i:j)",
+      "claw loop-hoist(i,j) interchange target(cpu, gpu)",
+      "claw loop-hoist(i,j) reshape(zmd(0), zsediflux(1,2)) interchange",
+      "claw end loop-hoist",
+      "claw kcache data(var1,var2) offset(+1,-1,0) init",
+      "claw kcache data(var1,var2) init private target(gpu)",
+      "claw expand fusion parallel acc(loop)",
+      "claw end expand",
+      "claw call var1=f_var1(i,j)",
+      "claw define dimension k(1:nz) sca data(t,q) over(:,k)",
+      "claw define dimension i(1:nx) sca scalar(s1,s2)",
+      "claw define dimension c(1:nc) sca copy",
+      "claw sca forward copy(in)",
+      "claw sca forward",
+      "claw sca forward",
+      "claw sca forward create update",
+      "claw sca forward",
+      "claw sca routine",
+      "claw sca routine",
+      "claw model-data",
+      "claw end model-data",
+      "claw model-data layout(radiation)",
+      "claw sca",
+      "claw acc parallel",
+      "claw acc end parallel",
+      "claw verbatim print*,'test'",
+      "claw if-extract",
+      "claw remove",
+      "claw end remove",
+  };
+
+  @Param({
+      "claw loop-fusion group(g1) collapse(2)",
+      "claw loop-hoist(i,j) reshape(zmd(0), zsediflux(1,2)) interchange",
+      "claw define dimension k(1:nz) sca data(t,q) over(:,k)",
+      "claw sca forward copy(in)"
+  })
+  public String directive;
+
+  @Param({"true", "false"})
+  public boolean cached;
+
+  private Xnode _pragma;
+  private Xnode[] _corpus;
+
+  @Setup
+  public void setup() {
+    Configuration.get().init(CompilerDirective.OPENACC, Target.GPU);
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(BenchmarkConstant.TEST_PROGRAM);
+    _pragma = xcodeml.createNode(Xcode.F_PRAGMA_STATEMENT);
+    _pragma.setValue(directive);
+    _corpus = new Xnode[CORPUS.length];
+    for(int i = 0; i < CORPUS.length; ++i) {
+      _corpus[i] = xcodeml.createNode(Xcode.F_PRAGMA_STATEMENT);
+      _corpus[i].setValue(CORPUS[i]);
+    }
+  }
+
+  @Benchmark
+  public ClawPragma analyze() throws IllegalDirectiveException {
+    if(!cached) {
+      ClawPragma.clearCache();
+    }
+    return ClawPragma.analyze(_pragma);
+  }
+
+  @Benchmark
+  public int analyzeCorpus() throws IllegalDirectiveException {
+    if(!cached) {
+      ClawPragma.clearCache();
+    }
+    int directives = 0;
+    for(Xnode pragma : _corpus) {
+      directives += ClawPragma.analyze(pragma).getDirective().ordinal();
+    }
+    return directives;
+  }
+}
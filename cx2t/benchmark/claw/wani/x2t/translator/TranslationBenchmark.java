@@ -0,0 +1,84 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.translator;
+
+import claw.tatsu.common.Context;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.wani.x2t.configuration.Configuration;
+import helper.BenchmarkConstant;
+import helper.BenchmarkInput;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the analysis and transformation of whole translation units
+ * generated from the reference tests. Units are replicated to measure the
+ * translator at synthetic scale. Decompilation is not part of the measure.
+ *
+ * @author clementval
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TranslationBenchmark {
+
+  private static final int MAX_COLUMNS = 80;
+
+  @Param({
+      "sca1/mo_column.xml", "sca1/main.xml",
+      "sca4/mo_column.xml", "sca4/main.xml",
+      "fusion1/original_code.xml", "hoist1/original_code.xml",
+      "extract1/original_code.xml", "interchange1/original_code.xml"
+  })
+  public String unit;
+
+  @Param({"1", "100"})
+  public int copies;
+
+  @Param({"gpu", "cpu"})
+  public String target;
+
+  private String _input;
+  private Context _context;
+
+  @Setup(Level.Trial)
+  public void setupTrial() throws Exception {
+    Path original = BenchmarkInput.getInput(unit);
+    _input = BenchmarkInput.write(original.toString(), copies).toString();
+    Configuration.get().load(BenchmarkConstant.CONFIG_PATH, null, null,
+        target, null, MAX_COLUMNS);
+    // Modules used by the unit are found next to it
+    Context.get().getModuleCache()
+        .addSearchPath(original.getParent().toString());
+    _context = Context.get();
+  }
+
+  /**
+   * Each invocation starts with an empty module cache as modules are modified
+   * by the transformations.
+   */
+  @Setup(Level.Invocation)
+  public void setupInvocation() {
+    Context.bind(_context.fork());
+  }
+
+  @TearDown(Level.Invocation)
+  public void tearDownInvocation() {
+    Context.bind(null);
+  }
+
+  @Benchmark
+  public XcodeProgram analyzeAndTransform() throws Exception {
+    ClawTranslatorDriver driver = new ClawTranslatorDriver(_input, null);
+    driver.analyze();
+    driver.transform();
+    return driver.getTranslationUnit();
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package helper;
+
+import claw.tatsu.xcodeml.xnode.Xname;
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.common.XcodeMLWriter;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Build benchmark inputs at synthetic scale by replicating the function
+ * definitions of an XcodeML translation unit.
+ *
+ * @author clementval
+ */
+public final class BenchmarkInput {
+
+  private static final String COPY_SUFFIX = "_r";
+
+  // Avoid potential instantiation of this class
+  private BenchmarkInput() {
+  }
+
+  /**
+   * Get the path of a generated input.
+   *
+   * @param unit Unit path relative to the input directory.
+   * @return Absolute path of the XcodeML file.
+   */
+  public static Path getInput(String unit) {
+    return Paths.get(BenchmarkConstant.INPUT_DIR, unit);
+  }
+
+  /**
+   * Read an XcodeML file and replicate its function definitions.
+   *
+   * @param file   XcodeML file.
+   * @param copies Number of copies of each function definition. 1 keeps the
+   *               unit as is.
+   * @return Document with the replicated function definitions.
+   * @throws IOException If the file cannot be read.
+   */
+  public static Document load(String file, int copies) throws IOException {
+    Document doc = XnodeUtil.readXmlFile(file);
+    if(doc == null) {
+      throw new IOException("Cannot read benchmark input " + file);
+    }
+    replicate(doc, copies);
+    return doc;
+  }
+
+  /**
+   * Read an XcodeML file, replicate its function definitions and write the
+   * result in a temporary file.
+   *
+   * @param file   XcodeML file.
+   * @param copies Number of copies of each function definition.
+   * @return Path of the temporary file. Deleted on exit.
+   * @throws IOException If the file cannot be read or written.
+   */
+  public static Path write(String file, int copies) throws IOException {
+    Document doc = load(file, copies);
+    Path output = Files.createTempFile("claw_benchmark", ".xml");
+    output.toFile().deleteOnExit();
+    try(Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+      new XcodeMLWriter(out, 0).write(doc);
+    }
+    return output;
+  }
+
+  /**
+   * Replicate all the outermost function definitions of a document. Each copy
+   * gets its own name, symbol and function type so transformations applied
+   * to a copy do not affect the others.
+   *
+   * @param doc    XcodeML document.
+   * @param copies Number of copies of each function definition.
+   */
+  public static void replicate(Document doc, int copies) {
+    Element typeTable = firstChild(doc.getDocumentElement(), Xname.TYPE_TABLE);
+    List<Element> functions = new ArrayList<>();
+    collectFunctions(doc.getDocumentElement(), functions);
+    for(Element function : functions) {
+      Element name = firstChild(function, Xname.NAME);
+      if(name == null) {
+        continue;
+      }
+      String baseName = name.getTextContent();
+      String baseType = name.getAttribute(Xname.ATTR_TYPE);
+      Element fctType = findByType(typeTable, baseType);
+      Element symbol = findSymbol(function, baseName);
+      Node insertionPoint = function;
+      for(int i = 1; i < copies; ++i) {
+        String copyName = baseName + COPY_SUFFIX + i;
+        String copyType = baseType + COPY_SUFFIX + i;
+        Element copy = (Element) function.cloneNode(true);
+        Element copyNameElement = firstChild(copy, Xname.NAME);
+        copyNameElement.setTextContent(copyName);
+        copyNameElement.setAttribute(Xname.ATTR_TYPE, copyType);
+        if(fctType != null) {
+          Element typeCopy = (Element) fctType.cloneNode(true);
+          typeCopy.setAttribute(Xname.ATTR_TYPE, copyType);
+          typeTable.appendChild(typeCopy);
+        }
+        if(symbol != null) {
+          Element symbolCopy = (Element) symbol.cloneNode(true);
+          symbolCopy.setAttribute(Xname.ATTR_TYPE, copyType);
+          firstChild(symbolCopy, Xname.NAME).setTextContent(copyName);
+          symbol.getParentNode().appendChild(symbolCopy);
+        }
+        function.getParentNode()
+            .insertBefore(copy, insertionPoint.getNextSibling());
+        insertionPoint = copy;
+      }
+    }
+  }
+
+  /**
+   * Collect the function definitions not nested in another function.
+   *
+   * @param parent    Element to look into.
+   * @param functions List receiving the function definitions.
+   */
+  private static void collectFunctions(Element parent,
+                                       List<Element> functions)
+  {
+    for(Node child = parent.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      if(child.getNodeType() != Node.ELEMENT_NODE) {
+        continue;
+      }
+      if(Xname.F_FUNCTION_DEFINITION.equals(child.getNodeName())) {
+        functions.add((Element) child);
+      } else {
+        collectFunctions((Element) child, functions);
+      }
+    }
+  }
+
+  /**
+   * Find the symbol declaring a function in the enclosing scope. The
+   * enclosing scope is a module definition or the global symbol table.
+   *
+   * @param function Function definition.
+   * @param name     Name of the function.
+   * @return Symbol element. Null if not found.
+   */
+  private static Element findSymbol(Element function, String name) {
+    Node scope = function.getParentNode();
+    while(scope != null && scope.getNodeType() == Node.ELEMENT_NODE
+        && !Xname.F_MODULE_DEFINITION.equals(scope.getNodeName()))
+    {
+      scope = scope.getParentNode();
+    }
+    Element symbols = scope instanceof Element
+        ? firstChild((Element) scope, Xname.SYMBOLS)
+        : firstChild(function.getOwnerDocument().getDocumentElement(),
+        Xname.GLOBAL_SYMBOLS);
+    if(symbols == null) {
+      return null;
+    }
+    for(Node id = symbols.getFirstChild(); id != null;
+        id = id.getNextSibling())
+    {
+      if(id.getNodeType() == Node.ELEMENT_NODE) {
+        Element nameElement = firstChild((Element) id, Xname.NAME);
+        if(nameElement != null && name.equals(nameElement.getTextContent())) {
+          return (Element) id;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Find a type in the type table.
+   *
+   * @param typeTable Type table element.
+   * @param type      Type hash.
+   * @return Type element. Null if not found.
+   */
+  private static Element findByType(Element typeTable, String type) {
+    if(typeTable == null || type.isEmpty()) {
+      return null;
+    }
+    for(Node child = typeTable.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      if(child.getNodeType() == Node.ELEMENT_NODE
+          && type.equals(((Element) child).getAttribute(Xname.ATTR_TYPE)))
+      {
+        return (Element) child;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the first child element with the given tag.
+   *
+   * @param parent Parent element.
+   * @param tag    Tag of the child.
+   * @return Child element. Null if not found.
+   */
+  private static Element firstChild(Element parent, String tag) {
+    for(Node child = parent.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      if(child.getNodeType() == Node.ELEMENT_NODE
+          && tag.equals(child.getNodeName()))
+      {
+        return (Element) child;
+      }
+    }
+    return null;
+  }
+}
@@ -6,16 +6,31 @@ package claw;
 
 import claw.tatsu.common.CompilerDirective;
 import claw.tatsu.common.Context;
+import claw.tatsu.common.Metrics;
 import claw.tatsu.common.Target;
 import claw.tatsu.xcodeml.backend.OmniBackendDriver;
+import claw.tatsu.xcodeml.module.ModuleBuildPlanner;
+import claw.tatsu.xcodeml.module.ModuleIndex;
+import claw.tatsu.xcodeml.module.ModuleStore;
 import claw.wani.ClawConstant;
 import claw.wani.report.ClawTransformationReport;
 import claw.wani.x2t.configuration.Configuration;
+import claw.wani.x2t.server.TranslationServer;
+import claw.wani.x2t.translator.BatchTranslator;
 import claw.wani.x2t.translator.ClawTranslatorDriver;
+import claw.wani.x2t.translator.TranslationAbortedException;
+import claw.wani.x2t.translator.TranslationCache;
 import org.apache.commons.cli.*;
 import xcodeml.util.XmOption;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * ClawX2T is the entry point of any CLAW XcodeML/F translation.
@@ -26,8 +41,13 @@ public class ClawX2T {
 
   private static final String ERR_INTERNAL = "internal";
 
+  // OMNI Compiler options used by the running server jobs
+  private static final Object _omniOptionsLock = new Object();
+  private static String _omniOptions = null;
+  private static int _omniOptionsUsers = 0;
+
   /**
-   * Print an error message an abort.
+   * Print an error message an abort the current translation.
    *
    * @param filename   Filename in which error occurred.
    * @param lineNumber Line number of the error, if known.
@@ -46,27 +66,31 @@ public class ClawX2T {
       errorStr.append(lineNumber).append(":");
     }
     errorStr.append(msg);
-    System.err.println(errorStr);
-    System.exit(1);
+    Context.get().getErr().println(errorStr);
+    throw new TranslationAbortedException(msg);
   }
 
   /**
-   * Print program usage.
+   * Print program usage and abort the current translation.
    */
   private static void usage() {
     Options options = prepareOptions();
     HelpFormatter formatter = new HelpFormatter();
-    formatter.printHelp("clawfc", options);
-    System.exit(1);
+    PrintWriter out = new PrintWriter(Context.get().getOut());
+    formatter.printHelp(out, formatter.getWidth(), "clawfc", null, options,
+        formatter.getLeftPadding(), formatter.getDescPadding(), null);
+    out.flush();
+    throw new TranslationAbortedException();
   }
 
   /**
    * List all directive target available for code generation.
    */
   private static void listTarget() {
-    System.out.println("- CLAW available targets -");
+    PrintStream out = Context.get().getOut();
+    out.println("- CLAW available targets -");
     for(String t : Target.availableTargets()) {
-      System.out.println("  - " + t);
+      out.println("  - " + t);
     }
   }
 
@@ -74,9 +98,10 @@ public class ClawX2T {
    * List all directive directive language available for code generation.
    */
   private static void listDirectiveLanguage() {
-    System.out.println("- CLAW directive directive language -");
+    PrintStream out = Context.get().getOut();
+    out.println("- CLAW directive directive language -");
     for(String d : CompilerDirective.availableDirectiveLanguage()) {
-      System.out.println("  - " + d);
+      out.println("  - " + d);
     }
   }
 
@@ -108,7 +133,7 @@ public class ClawX2T {
     options.addOption("w", true,
         "number of character per line in decompiled code.");
     options.addOption("o", true,
-        "specify XcodeML/F output file.");
+        "specify XcodeML/F output file (debugging dump only).");
     options.addOption("M", true,
         "specify where to search for .xmod files");
     options.addOption("tl", "target-list", false,
@@ -130,6 +155,41 @@ public class ClawX2T {
     options.addOption("ap", "add-paren", false,
         "Force backend to add parenthesis in binary mathematical binary " +
             "operation.");
+    options.addOption("b", "batch", false,
+        "translate several units. Positional arguments are read as pairs " +
+            "of XcodeML/F input and FORTRAN output files.");
+    options.addOption("mf", "manifest", true,
+        "read batch units from a manifest with one input/output pair per " +
+            "line. Implies --batch.");
+    options.addOption("j", "jobs", true,
+        "number of parallel workers in batch and server mode. Default to " +
+            "the number of available processors.");
+    options.addOption("mc", "module-cache", true,
+        "keep parsed .xmod files in the given directory to speed up later " +
+            "translations.");
+    options.addOption("ma", "metrics-aggregate", true,
+        "write the wall time, CPU time and allocations of all translated " +
+            "units aggregated in the given JSON file.");
+    options.addOption("sv", "server", true,
+        "start a persistent translator server and write its connection " +
+            "information to the given file.");
+    options.addOption("bo", "build-order", false,
+        "print the module source files to be processed by the front-end " +
+            "before the given files in build order. Positional arguments " +
+            "are read as pairs of scanned and original FORTRAN files.");
+    options.addOption("dc", "dependency-cache", true,
+        "keep the module index used by --build-order in the given file.");
+    options.addOption("tc", "translation-cache", true,
+        "reuse the outputs of units translated with the same input, " +
+            "configuration and module files kept in the given directory.");
+    options.addOption("tcs", "translation-cache-size", true,
+        "size limit of the translation cache in MiB. Default to 1024.");
+    options.addOption("cc", "compile-config", true,
+        "validate the configuration and write its snapshot to the given " +
+            "file.");
+    options.addOption("cs", "config-snapshot", true,
+        "load the configuration from the given snapshot when it is up to " +
+            "date. The snapshot is updated otherwise.");
     return options;
   }
 
@@ -158,6 +218,151 @@ public class ClawX2T {
    * @throws Exception if translation failed.
    */
   public static void main(String[] args) throws Exception {
+    int status = run(null, args);
+    if(status != 0) {
+      System.exit(status);
+    }
+  }
+
+  /**
+   * Start the translator in server mode. Each job received by the server is
+   * processed as a single invocation of the translator.
+   *
+   * @param serverFile File in which the server connection information is
+   *                   written.
+   * @param nbWorkers  Maximum number of jobs processed concurrently. If 0 or
+   *                   less, the number of available processors is used.
+   * @throws Exception If the server cannot be started.
+   */
+  private static void startServer(String serverFile, int nbWorkers)
+      throws Exception
+  {
+    TranslationServer server = new TranslationServer(serverFile, nbWorkers,
+        ClawX2T::runJob);
+    server.serve();
+  }
+
+  /**
+   * Run a translation job of the server. The job has its own context and
+   * configuration and writes to the given streams so several jobs can run
+   * concurrently. The OMNI Compiler options are process-wide, so jobs run
+   * concurrently only with jobs using the same ones.
+   *
+   * @param workingDir Directory against which relative paths are resolved.
+   * @param args       Arguments of the translation.
+   * @param out        Stream for the regular output of the job.
+   * @param err        Stream for the diagnostics of the job.
+   * @return Exit status of the translation. 0 on success.
+   * @throws Exception if translation failed.
+   */
+  private static int runJob(String workingDir, String[] args, PrintStream out,
+                            PrintStream err)
+      throws Exception
+  {
+    acquireOmniOptions(getOmniOptions(args));
+    Context context = Context.create();
+    context.setOutputStreams(out, err);
+    Context.bind(context);
+    Configuration.bind(Configuration.create());
+    try {
+      return run(workingDir, args);
+    } finally {
+      releaseOmniOptions();
+      Configuration.bind(null);
+      Context.bind(null);
+    }
+  }
+
+  /**
+   * Get the OMNI Compiler options set by the given arguments.
+   *
+   * @param args Arguments of the translation.
+   * @return Key of the OMNI Compiler options. Empty if the arguments cannot
+   * be parsed, the error is reported by the translation.
+   */
+  private static String getOmniOptions(String[] args) {
+    try {
+      CommandLine cmd = new DefaultParser().parse(prepareOptions(), args);
+      return cmd.hasOption("l") + " " + cmd.hasOption("d") + " "
+          + cmd.hasOption("ap");
+    } catch(ParseException ignored) {
+      return "";
+    }
+  }
+
+  /**
+   * Wait until the OMNI Compiler options are unused or used with the same
+   * values by the running jobs.
+   *
+   * @param options Key of the OMNI Compiler options of the job.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  private static void acquireOmniOptions(String options)
+      throws InterruptedException
+  {
+    synchronized(_omniOptionsLock) {
+      while(_omniOptionsUsers > 0 && !options.equals(_omniOptions)) {
+        _omniOptionsLock.wait();
+      }
+      _omniOptions = options;
+      ++_omniOptionsUsers;
+    }
+  }
+
+  /**
+   * Release the OMNI Compiler options acquired by a job.
+   */
+  private static void releaseOmniOptions() {
+    synchronized(_omniOptionsLock) {
+      if(--_omniOptionsUsers == 0) {
+        _omniOptionsLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Run a complete translation.
+   *
+   * @param workingDir Directory against which relative paths are resolved. If
+   *                   null, paths are used as given.
+   * @param args       Arguments of the translation.
+   * @return Exit status of the translation. 0 on success.
+   * @throws Exception if translation failed.
+   */
+  public static int run(String workingDir, String[] args) throws Exception {
+    try {
+      translate(workingDir, args);
+      return 0;
+    } catch(TranslationAbortedException abort) {
+      return 1;
+    }
+  }
+
+  /**
+   * Resolve a path given on the command line against the working directory.
+   *
+   * @param workingDir Working directory. If null, path is returned as is.
+   * @param path       Path to resolve.
+   * @return Resolved path. Null if path is null.
+   */
+  private static String resolvePath(String workingDir, String path) {
+    if(workingDir == null || path == null) {
+      return path;
+    }
+    return Paths.get(workingDir).resolve(path).toString();
+  }
+
+  /**
+   * Process the arguments and drive the translation.
+   *
+   * @param workingDir Directory against which relative paths are resolved. If
+   *                   null, paths are used as given.
+   * @param args       Arguments of the translation.
+   * @throws Exception if translation failed.
+   */
+  private static void translate(String workingDir, String[] args)
+      throws Exception
+  {
     String input;
     String xcmlOutput;
     String targetLangOutput;
@@ -188,6 +393,22 @@ public class ClawX2T {
       return;
     }
 
+    // Server mode option
+    if(cmd.hasOption("sv")) {
+      if(workingDir != null) {
+        error(ERR_INTERNAL, 0, 0, "Server cannot be started from a job.");
+      }
+      startServer(cmd.getOptionValue("sv"), cmd.hasOption("j")
+          ? Integer.parseInt(cmd.getOptionValue("j")) : 0);
+      return;
+    }
+
+    // Module dependencies resolution option
+    if(cmd.hasOption("bo")) {
+      printBuildOrder(workingDir, cmd);
+      return;
+    }
+
     // Target option
     targetOption = cmd.getOptionValue("t");
 
@@ -195,27 +416,23 @@ public class ClawX2T {
     directiveOption = cmd.getOptionValue("dir");
 
     // Suppressing line directive option
-    if(cmd.hasOption("l")) {
-      XmOption.setIsSuppressLineDirective(true);
-    }
+    XmOption.setIsSuppressLineDirective(cmd.hasOption("l"));
 
     // Debug option
-    if(cmd.hasOption("d")) {
-      XmOption.setDebugOutput(true);
-    }
+    XmOption.setDebugOutput(cmd.hasOption("d"));
 
     // XcodeML/F output file option
-    xcmlOutput = cmd.getOptionValue("o");
+    xcmlOutput = resolvePath(workingDir, cmd.getOptionValue("o"));
 
     // FORTRAN output file option
-    targetLangOutput = cmd.getOptionValue("f");
+    targetLangOutput = resolvePath(workingDir, cmd.getOptionValue("f"));
 
     if(cmd.hasOption("w")) {
       maxColumns = Integer.parseInt(cmd.getOptionValue("w"));
     }
 
-    configurationFile = cmd.getOptionValue("c");
-    configurationPath = cmd.getOptionValue("cp");
+    configurationFile = resolvePath(workingDir, cmd.getOptionValue("c"));
+    configurationPath = resolvePath(workingDir, cmd.getOptionValue("cp"));
 
     // Check that configuration path exists
     if(configurationPath == null) {
@@ -234,7 +451,7 @@ public class ClawX2T {
 
     // Check if there is a model configuration and if file exists
     if(cmd.hasOption("m")) {
-      modelConfiguration = cmd.getOptionValue("m");
+      modelConfiguration = resolvePath(workingDir, cmd.getOptionValue("m"));
       File modelConfig = new File(modelConfiguration);
       if(!modelConfig.exists()) {
         error(ClawConstant.ERROR_PREFIX_INTERNAL, 0, 0,
@@ -242,10 +459,25 @@ public class ClawX2T {
       }
     }
 
+    // --compile-config option
+    if(cmd.hasOption("cc")) {
+      try {
+        Configuration.get().compileSnapshot(configurationPath,
+            configurationFile,
+            resolvePath(workingDir, cmd.getOptionValue("cc")));
+      } catch(Exception ex) {
+        error(ERR_INTERNAL, 0, 0, ex.getMessage());
+      }
+      return;
+    }
+
+    String configSnapshot = resolvePath(workingDir, cmd.getOptionValue("cs"));
+
     // --show-configuration option
     if(cmd.hasOption("sc")) {
       Configuration.get().load(configurationPath, configurationFile,
-          modelConfiguration, targetOption, directiveOption, maxColumns);
+          modelConfiguration, targetOption, directiveOption, maxColumns,
+          configSnapshot);
       Configuration.get().displayConfig();
       return;
     }
@@ -254,13 +486,14 @@ public class ClawX2T {
     if(cmd.getArgs().length == 0) {
       input = null;
     } else {
-      input = cmd.getArgs()[0];
+      input = resolvePath(workingDir, cmd.getArgs()[0]);
     }
 
     // Read the configuration file
     try {
       Configuration.get().load(configurationPath, configurationFile,
-          modelConfiguration, targetOption, directiveOption, maxColumns);
+          modelConfiguration, targetOption, directiveOption, maxColumns,
+          configSnapshot);
     } catch(Exception ex) {
       error(ERR_INTERNAL, 0, 0, ex.getMessage());
       return;
@@ -269,10 +502,16 @@ public class ClawX2T {
     // Module search path options
     if(cmd.hasOption("M")) {
       for(String value : cmd.getOptionValues("M")) {
-        Context.get().getModuleCache().addSearchPath(value);
+        Context.get().getModuleCache().addSearchPath(
+            resolvePath(workingDir, value));
       }
     }
 
+    if(cmd.hasOption("mc")) {
+      Context.get().getModuleCache().setStore(new ModuleStore(
+          resolvePath(workingDir, cmd.getOptionValue("mc"))));
+    }
+
     // Override some configuration value.
     if(cmd.hasOption("x")) {
       for(String keyValue : cmd.getOptionValues("x")) {
@@ -288,8 +527,277 @@ public class ClawX2T {
     }
 
     // Add parenthesis option
-    if(cmd.hasOption("ap")) {
-      XmOption.setAddPar(true);
+    XmOption.setAddPar(cmd.hasOption("ap"));
+
+    TranslationCache cache = null;
+    if(cmd.hasOption("tc")) {
+      long size = 1024;
+      if(cmd.hasOption("tcs")) {
+        size = Long.parseLong(cmd.getOptionValue("tcs"));
+      }
+      // Options having an influence on the output not in the configuration
+      String options = maxColumns + " " + cmd.hasOption("l") + " "
+          + cmd.hasOption("ap");
+      cache = new TranslationCache(
+          resolvePath(workingDir, cmd.getOptionValue("tc")), size << 20,
+          options);
+    }
+
+    // Batch mode
+    if(cmd.hasOption("b") || cmd.hasOption("mf")) {
+      translateBatch(workingDir, cmd, args, maxColumns, cache);
+    } else {
+      Metrics aggregate = cmd.hasOption("ma") ? new Metrics() : null;
+      translateUnit(input, xcmlOutput, targetLangOutput,
+          resolvePath(workingDir, cmd.getOptionValue("r")), maxColumns, args,
+          aggregate, cache);
+      writeMetrics(aggregate,
+          resolvePath(workingDir, cmd.getOptionValue("ma")));
+    }
+
+    if(cache != null) {
+      try {
+        cache.trim();
+      } catch(IOException ignored) {
+        // The translation cache is an optimization only
+      }
+    }
+  }
+
+  /**
+   * Print the module source files to be processed by the front-end before
+   * the given files in build order. Warnings and errors are reported in the
+   * driver format on the standard error.
+   *
+   * @param workingDir Directory against which relative paths are resolved.
+   * @param cmd        Parsed command line.
+   * @throws IOException If a source file cannot be read.
+   */
+  private static void printBuildOrder(String workingDir, CommandLine cmd)
+      throws IOException
+  {
+    String[] files = cmd.getArgs();
+    if(files.length % 2 != 0) {
+      error(ERR_INTERNAL, 0, 0,
+          "Build order arguments must be scanned/original pairs.");
+    }
+    List<Path> searchPaths = new ArrayList<>();
+    if(cmd.hasOption("M")) {
+      for(String value : cmd.getOptionValues("M")) {
+        searchPaths.add(Paths.get(resolvePath(workingDir, value)));
+      }
+    }
+    List<Path> directories = new ArrayList<>(searchPaths);
+    for(int i = 1; i < files.length; i += 2) {
+      Path original = Paths.get(resolvePath(workingDir, files[i]));
+      directories.add(original.toAbsolutePath().getParent());
+    }
+
+    ModuleIndex index = new ModuleIndex(cmd.hasOption("dc")
+        ? Paths.get(resolvePath(workingDir, cmd.getOptionValue("dc")))
+        : null);
+    index.scan(directories, 0);
+    ModuleBuildPlanner planner = new ModuleBuildPlanner(index, searchPaths);
+    for(int i = 0; i < files.length; i += 2) {
+      planner.addInput(Paths.get(resolvePath(workingDir, files[i])),
+          Paths.get(resolvePath(workingDir, files[i + 1])));
+    }
+    PrintStream err = Context.get().getErr();
+    planner.getWarnings().forEach(msg ->
+        err.println(msg.replaceFirst(": ", ":-:- warning: ")));
+    planner.getErrors().forEach(msg ->
+        err.println(msg.replaceFirst(": ", ":-:- error: ")));
+    if(!planner.getErrors().isEmpty()) {
+      error(ERR_INTERNAL, 0, 0, "Module dependencies cannot be resolved.");
+    }
+    List<Path> order;
+    try {
+      order = planner.getBuildOrder();
+    } catch(IOException e) {
+      error(ERR_INTERNAL, 0, 0, e.getMessage());
+      return;
+    }
+    try {
+      index.save();
+    } catch(IOException ignored) {
+      // The dependency cache is an optimization only
+    }
+    order.forEach(Context.get().getOut()::println);
+  }
+
+  /**
+   * Write metrics to a JSON file.
+   *
+   * @param metrics Metrics to be written. Nothing is written if null.
+   * @param path    Path of the JSON file.
+   */
+  private static void writeMetrics(Metrics metrics, String path) {
+    if(metrics == null) {
+      return;
+    }
+    try {
+      metrics.write(path);
+    } catch(IOException e) {
+      error(ERR_INTERNAL, 0, 0, "Cannot write metrics file: " + path);
+    }
+  }
+
+  /**
+   * Get the path of the metrics file written next to a report file.
+   *
+   * @param reportFile Path of the report file.
+   * @return Path of the metrics file.
+   */
+  private static String getMetricsPath(String reportFile) {
+    int ext = reportFile.lastIndexOf('.');
+    return (ext > reportFile.lastIndexOf(File.separatorChar)
+        ? reportFile.substring(0, ext) : reportFile) + ".metrics.json";
+  }
+
+  /**
+   * Translate several units in parallel.
+   *
+   * @param workingDir Directory against which relative paths are resolved. If
+   *                   null, paths are used as given.
+   * @param cmd        Parsed command line.
+   * @param args       Arguments of the translation.
+   * @param maxColumns Max columns for the decompiled code.
+   * @param cache      Translation cache. Can be null.
+   * @throws Exception if the batch cannot be processed.
+   */
+  private static void translateBatch(String workingDir, CommandLine cmd,
+                                     String[] args, int maxColumns,
+                                     TranslationCache cache)
+      throws Exception
+  {
+    List<BatchTranslator.BatchUnit> units = new ArrayList<>();
+    if(cmd.hasOption("mf")) {
+      for(BatchTranslator.BatchUnit unit : BatchTranslator.readManifest(
+          resolvePath(workingDir, cmd.getOptionValue("mf"))))
+      {
+        units.add(new BatchTranslator.BatchUnit(
+            resolvePath(workingDir, unit.getInput()),
+            resolvePath(workingDir, unit.getOutput())));
+      }
+    }
+    String[] files = cmd.getArgs();
+    if(files.length % 2 != 0) {
+      error(ERR_INTERNAL, 0, 0, "Batch arguments must be input/output pairs.");
+    }
+    for(int i = 0; i < files.length; i += 2) {
+      units.add(new BatchTranslator.BatchUnit(
+          resolvePath(workingDir, files[i]),
+          resolvePath(workingDir, files[i + 1])));
+    }
+
+    int nbWorkers = 0;
+    if(cmd.hasOption("j")) {
+      nbWorkers = Integer.parseInt(cmd.getOptionValue("j"));
+    }
+
+    final boolean report = cmd.hasOption("r");
+    final Metrics aggregate = cmd.hasOption("ma") ? new Metrics() : null;
+    BatchTranslator batch = new BatchTranslator(units, nbWorkers);
+    int failures = batch.run(unit -> {
+      // Report is written next to the output file of each unit.
+      String reportFile = null;
+      if(report) {
+        String output = unit.getOutput();
+        int ext = output.lastIndexOf('.');
+        reportFile = (ext > output.lastIndexOf(File.separatorChar)
+            ? output.substring(0, ext) : output) + ".lst";
+      }
+      translateUnit(unit.getInput(), null, unit.getOutput(), reportFile,
+          maxColumns, args, aggregate, cache);
+    });
+    writeMetrics(aggregate, resolvePath(workingDir, cmd.getOptionValue("ma")));
+    if(failures > 0) {
+      error(ERR_INTERNAL, 0, 0, failures + " of " + units.size()
+          + " batch units failed.");
+    }
+  }
+
+  /**
+   * Translate and decompile a single unit. Metrics are recorded when a report
+   * or an aggregate is requested. They are written as JSON next to the report.
+   *
+   * @param input            XcodeML/F input file. If null, read from the
+   *                         standard input.
+   * @param xcmlOutput       XcodeML/F output file. Can be null.
+   * @param targetLangOutput Decompiled output file. If null, written on the
+   *                         standard output.
+   * @param reportFile       Transformation report file. Can be null.
+   * @param maxColumns       Max columns for the decompiled code.
+   * @param args             Arguments of the translation for the report.
+   * @param aggregate        Metrics aggregating all units. Can be null.
+   * @param cache            Translation cache. Can be null.
+   * @throws Exception if translation failed.
+   */
+  private static void translateUnit(String input, String xcmlOutput,
+                                    String targetLangOutput, String reportFile,
+                                    int maxColumns, String[] args,
+                                    Metrics aggregate, TranslationCache cache)
+      throws Exception
+  {
+    Metrics metrics = reportFile != null || aggregate != null
+        ? new Metrics() : Metrics.DISABLED;
+    metrics.setUnit(input == null ? "-" : input);
+    Context.get().setMetrics(metrics);
+    try {
+      runUnit(input, xcmlOutput, targetLangOutput, reportFile, maxColumns,
+          args, metrics, cache);
+    } finally {
+      Context.get().setMetrics(null);
+    }
+    if(reportFile != null) {
+      writeMetrics(metrics, getMetricsPath(reportFile));
+    }
+    if(aggregate != null) {
+      aggregate.addUnit(metrics);
+    }
+  }
+
+  /**
+   * Translate and decompile a single unit with the given metrics bound to
+   * the current context.
+   *
+   * @param input            XcodeML/F input file. If null, read from the
+   *                         standard input.
+   * @param xcmlOutput       XcodeML/F output file. Can be null.
+   * @param targetLangOutput Decompiled output file. If null, written on the
+   *                         standard output.
+   * @param reportFile       Transformation report file. Can be null.
+   * @param maxColumns       Max columns for the decompiled code.
+   * @param args             Arguments of the translation for the report.
+   * @param metrics          Metrics of the unit.
+   * @param cache            Translation cache. Can be null. Not used for
+   *                         units read from the standard input, written on
+   *                         the standard output or with a report.
+   * @throws Exception if translation failed.
+   */
+  private static void runUnit(String input, String xcmlOutput,
+                              String targetLangOutput, String reportFile,
+                              int maxColumns, String[] args, Metrics metrics,
+                              TranslationCache cache)
+      throws Exception
+  {
+    String key = null;
+    if(cache != null && input != null && targetLangOutput != null
+        && reportFile == null)
+    {
+      Metrics.Probe probe = metrics.start();
+      try {
+        key = cache.computeKey(input);
+        Context.get().getModuleCache().recordLookups();
+      } catch(IOException ignored) {
+        // Input read again and reported by the translation
+      }
+      boolean hit = key != null
+          && cache.restore(key, targetLangOutput, xcmlOutput);
+      metrics.stop(Metrics.Kind.PHASE, "cache", probe);
+      if(hit) {
+        return;
+      }
     }
 
     ClawTranslatorDriver translatorDriver =
@@ -300,10 +808,12 @@ public class ClawX2T {
     translatorDriver.flush();
 
     // Produce report (unless we've used the Python driver)
-    if(cmd.hasOption("r")) {
+    if(reportFile != null) {
+      Metrics.Probe probe = metrics.start();
       ClawTransformationReport report =
-          new ClawTransformationReport(cmd.getOptionValue("r"));
+          new ClawTransformationReport(reportFile);
       report.generate(args, translatorDriver);
+      metrics.stop(Metrics.Kind.PHASE, "report", probe);
     }
 
     // Decompile XcodeML/F to target language
@@ -316,19 +826,27 @@ public class ClawX2T {
       backend = new OmniBackendDriver(OmniBackendDriver.Lang.FORTRAN);
     }
 
-    if(xcmlOutput == null) { // XcodeML output not written to file. Use pipe.
-      if(!backend.decompile(targetLangOutput,
-          translatorDriver.getTranslationUnit(), maxColumns,
-          XmOption.isSuppressLineDirective()))
-      {
-        error(targetLangOutput, 0, 0, "Unable to decompile XcodeML to Fortran");
-      }
-    } else {
-      if(!backend.decompileFromFile(targetLangOutput, xcmlOutput, maxColumns,
-          XmOption.isSuppressLineDirective()))
-      {
-        error(xcmlOutput, 0, 0, "Unable to decompile XcodeML to Fortran");
+    // The decompiler always works on the in-memory document. The XcodeML
+    // output file, if any, is only a debugging dump and is never read back.
+    Metrics.Probe probe = metrics.start();
+    if(!backend.decompile(targetLangOutput,
+        translatorDriver.getTranslationUnit(), maxColumns,
+        XmOption.isSuppressLineDirective()))
+    {
+      error(targetLangOutput, 0, 0, "Unable to decompile XcodeML to Fortran");
+    }
+    metrics.stop(Metrics.Kind.PHASE, "decompile", probe);
+
+    if(key != null) {
+      probe = metrics.start();
+      try {
+        cache.store(key, Context.get().getModuleCache().getLookups(),
+            targetLangOutput, xcmlOutput,
+            Context.get().getModuleCache().getWrittenFiles());
+      } catch(IOException ignored) {
+        // The translation cache is an optimization only
       }
+      metrics.stop(Metrics.Kind.PHASE, "cache", probe);
     }
   }
 }
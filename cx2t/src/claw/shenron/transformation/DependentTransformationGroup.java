@@ -5,15 +5,23 @@
 package claw.shenron.transformation;
 
 import claw.shenron.translator.Translator;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Metrics;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An dependent transformation group check whether it can be transformed with
  * another pending transformation in the pipeline. Each transformation are
- * applied only once.
+ * applied only once. Only the transformations sharing the same compatibility
+ * key are checked with each other. A transformation reports the candidates it
+ * refused once all of them are checked.
  *
  * @author clementval
  */
@@ -35,17 +43,25 @@ public class DependentTransformationGroup extends TransformationGroup {
   public void applyTransformations(XcodeProgram xcodeml, Translator translator)
       throws Exception
   {
+    Metrics metrics = Context.get().getMetrics();
     List<Transformation> transformations = getTransformations();
+    CandidateIndex index = new CandidateIndex(transformations);
     for(int i = 0; i < transformations.size(); ++i) {
       Transformation base = transformations.get(i);
-      for(int j = i + 1; j < transformations.size(); ++j) {
+      List<Transformation> refused = new ArrayList<>();
+      for(int j = index.next(i, i); j >= 0; j = index.next(i, j)) {
         Transformation candidate = transformations.get(j);
         if(candidate.isTransformed()) {
           continue;
         }
-        if(base.canBeTransformedWith(xcodeml, candidate)) {
+        if(!base.canBeTransformedWith(xcodeml, candidate)) {
+          refused.add(candidate);
+        } else {
           try {
+            Metrics.Probe probe = metrics.start();
             base.transform(xcodeml, translator, candidate);
+            metrics.stop(Metrics.Kind.DIRECTIVE, transformationName(),
+                base.getStartLine(), probe);
             if(candidate.isTransformed()) {
               incrementAppliedTransformation();
             }
@@ -58,6 +74,9 @@ public class DependentTransformationGroup extends TransformationGroup {
           }
         }
       }
+      if(!refused.isEmpty()) {
+        base.reportRefusal(xcodeml, refused);
+      }
       if(base.isTransformed()) {
         incrementAppliedTransformation();
       }
@@ -67,7 +86,8 @@ public class DependentTransformationGroup extends TransformationGroup {
   /**
    * Add a new transformation in the group. As transformation are dependent
    * between each other, the position in the list is determined by the
-   * transformation's start line.
+   * transformation's start line. Transformations with the same start line
+   * keep their adding order.
    *
    * @see TransformationGroup#add(Transformation)
    */
@@ -76,14 +96,101 @@ public class DependentTransformationGroup extends TransformationGroup {
     if(transformation == null) {
       return;
     }
+    List<Transformation> transformations = getTransformations();
     int linePosition = transformation.getStartLine();
-    int insertIndex = 0;
-    for(Transformation t : getTransformations()) {
-      if(t.getStartLine() > linePosition) {
-        break;
+    int low = 0;
+    int high = transformations.size();
+    while(low < high) {
+      int mid = (low + high) >>> 1;
+      if(transformations.get(mid).getStartLine() > linePosition) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    transformations.add(low, transformation);
+  }
+
+  /**
+   * Index of the transformations of a group by compatibility key. A
+   * transformation is only checked with the following transformations that
+   * have the same key or no key at all.
+   */
+  private static final class CandidateIndex {
+
+    private final Object[] _keys;
+    private final Map<Object, int[]> _buckets = new HashMap<>();
+    private final int[] _unkeyed;
+
+    /**
+     * Compute the key of every transformation and group them.
+     *
+     * @param transformations Transformations of the group in order.
+     */
+    CandidateIndex(List<Transformation> transformations) {
+      _keys = new Object[transformations.size()];
+      Map<Object, List<Integer>> buckets = new HashMap<>();
+      List<Integer> unkeyed = new ArrayList<>();
+      for(int i = 0; i < _keys.length; ++i) {
+        _keys[i] = transformations.get(i).getCompatibilityKey();
+        if(_keys[i] == null) {
+          unkeyed.add(i);
+        } else {
+          buckets.computeIfAbsent(_keys[i], k -> new ArrayList<>()).add(i);
+        }
+      }
+      for(Map.Entry<Object, List<Integer>> bucket : buckets.entrySet()) {
+        _buckets.put(bucket.getKey(), toArray(bucket.getValue()));
+      }
+      _unkeyed = toArray(unkeyed);
+    }
+
+    /**
+     * Get the next candidate of a transformation.
+     *
+     * @param base  Index of the transformation.
+     * @param after Index of the previous candidate.
+     * @return Index of the next candidate. -1 if there is none.
+     */
+    int next(int base, int after) {
+      if(_keys[base] == null) {
+        return after + 1 < _keys.length ? after + 1 : -1;
+      }
+      int keyed = next(_buckets.get(_keys[base]), after);
+      int unkeyed = next(_unkeyed, after);
+      if(keyed < 0 || unkeyed < 0) {
+        return Math.max(keyed, unkeyed);
+      }
+      return Math.min(keyed, unkeyed);
+    }
+
+    /**
+     * Find the first index greater than a given one in a sorted array.
+     *
+     * @param indexes Sorted indexes.
+     * @param after   Lower limit.
+     * @return First index greater than the limit. -1 if there is none.
+     */
+    private static int next(int[] indexes, int after) {
+      int position = Arrays.binarySearch(indexes, after + 1);
+      if(position < 0) {
+        position = -position - 1;
+      }
+      return position < indexes.length ? indexes[position] : -1;
+    }
+
+    /**
+     * Convert a list of indexes to an array.
+     *
+     * @param indexes List of indexes.
+     * @return Array with the same indexes.
+     */
+    private static int[] toArray(List<Integer> indexes) {
+      int[] array = new int[indexes.size()];
+      for(int i = 0; i < array.length; ++i) {
+        array[i] = indexes.get(i);
       }
-      ++insertIndex;
+      return array;
     }
-    getTransformations().add(insertIndex, transformation);
   }
 }
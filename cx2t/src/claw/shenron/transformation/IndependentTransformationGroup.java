@@ -5,25 +5,66 @@
 package claw.shenron.transformation;
 
 import claw.shenron.translator.Translator;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.DeferredUpdates;
+import claw.tatsu.common.Metrics;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.common.XtypeTable;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * An independent transformation group applies each transformation without
  * checking with any other transformation in the pipeline.
  *
+ * If the group has several workers and all its transformations are local to
+ * their function definition, the transformations are partitioned by
+ * outermost function definition and the partitions are applied in parallel.
+ * Updates of the structures shared by the translation unit are applied
+ * afterwards in the order of the transformations so the result is the same
+ * as a serial application. Each transformation generates its type hashes in
+ * its own scope so they do not depend on the order of the workers.
+ *
  * @author clementval
  */
 
 public class IndependentTransformationGroup extends TransformationGroup {
 
+  private final int _nbWorkers;
+
   /**
-   * IndependentTransformationGroup ctor
+   * IndependentTransformationGroup ctor. Transformations are applied
+   * serially.
    *
    * @param name A friendly name to describe the transformation group.
    */
   public IndependentTransformationGroup(String name) {
+    this(name, 1);
+  }
+
+  /**
+   * IndependentTransformationGroup ctor
+   *
+   * @param name      A friendly name to describe the transformation group.
+   * @param nbWorkers Number of workers applying the transformations of
+   *                  different function definitions in parallel.
+   */
+  public IndependentTransformationGroup(String name, int nbWorkers) {
     super(name);
+    _nbWorkers = nbWorkers;
   }
 
   /**
@@ -32,19 +73,193 @@ public class IndependentTransformationGroup extends TransformationGroup {
   public void applyTransformations(XcodeProgram xcodeml, Translator translator)
       throws Exception
   {
+    Map<Transformation, String> scopes = new HashMap<>();
+    for(Transformation trans : getTransformations()) {
+      scopes.put(trans, transformationName() + "#" + scopes.size());
+    }
+
+    Map<Element, List<Transformation>> partitions = partition();
+    if(partitions == null || partitions.size() < 2) {
+      for(Transformation trans : getTransformations()) {
+        apply(xcodeml, translator, trans, scopes.get(trans));
+      }
+      return;
+    }
+
+    xcodeml.prepareConcurrentTransformation();
+    Map<Transformation, DeferredUpdates> updates = new LinkedHashMap<>();
     for(Transformation trans : getTransformations()) {
+      updates.put(trans, new DeferredUpdates());
+    }
+    Map<Transformation, Exception> failures = new ConcurrentHashMap<>();
+    List<Future<Void>> jobs = new ArrayList<>();
+    ForkJoinPool pool =
+        new ForkJoinPool(Math.min(_nbWorkers, partitions.size()));
+    try {
+      for(List<Transformation> partition : partitions.values()) {
+        Callable<Void> job = () -> {
+          applyPartition(xcodeml, translator, partition, scopes, updates,
+              failures);
+          return null;
+        };
+        jobs.add(pool.submit(translator == null
+            ? job : translator.onWorker(job)));
+      }
+      for(Future<Void> job : jobs) {
+        job.get();
+      }
+    } catch(ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      pool.shutdown();
+    }
+    commit(updates, scopes, failures);
+  }
+
+  /**
+   * Partition the transformations by outermost function definition enclosing
+   * their directive. Partitions follow the order of the transformations.
+   *
+   * @return Transformations by function definition. Null if the group has a
+   * single worker or if a transformation cannot be applied in parallel.
+   */
+  private Map<Element, List<Transformation>> partition() {
+    if(_nbWorkers < 2) {
+      return null;
+    }
+    Map<Element, List<Transformation>> partitions = new LinkedHashMap<>();
+    for(Transformation trans : getTransformations()) {
+      Xnode fctDef = trans.isFunctionLocal() && trans.getDirective() != null
+          ? findOutermostFunction(trans.getDirective().getPragma()) : null;
+      if(fctDef == null) {
+        return null;
+      }
+      partitions.computeIfAbsent(fctDef.element(), k -> new ArrayList<>())
+          .add(trans);
+    }
+    return partitions;
+  }
+
+  /**
+   * Find the outermost function definition enclosing a node. Internal
+   * functions are part of their host function partition.
+   *
+   * @param node Node to start from.
+   * @return Outermost function definition. Null if the node is not part of a
+   * function definition.
+   */
+  private static Xnode findOutermostFunction(Xnode node) {
+    Xnode outermost = null;
+    for(Xnode crt = node; crt != null; crt = crt.ancestor()) {
+      if(crt.opcode() == Xcode.F_FUNCTION_DEFINITION) {
+        outermost = crt;
+      }
+    }
+    return outermost;
+  }
+
+  /**
+   * Apply the transformations of a partition on a worker thread. Updates of
+   * shared structures are recorded for each transformation. The partition
+   * stops at the first failed transformation.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @param partition  Transformations of a single function definition.
+   * @param scopes     Type hash scope of each transformation.
+   * @param updates    Deferred updates of each transformation.
+   * @param failures   Receives the failed transformation and its exception.
+   */
+  private void applyPartition(XcodeProgram xcodeml, Translator translator,
+                              List<Transformation> partition,
+                              Map<Transformation, String> scopes,
+                              Map<Transformation, DeferredUpdates> updates,
+                              Map<Transformation, Exception> failures)
+  {
+    for(Transformation trans : partition) {
+      DeferredUpdates deferred = updates.get(trans);
+      deferred.begin();
       try {
-        trans.transform(xcodeml, translator, null);
-        if(trans.isTransformed()) {
-          incrementAppliedTransformation();
-        }
+        apply(xcodeml, translator, trans, scopes.get(trans));
+      } catch(Exception e) {
+        failures.put(trans, e);
+        return;
+      } finally {
+        deferred.end();
+      }
+    }
+  }
+
+  /**
+   * Apply the deferred updates in the order of the transformations. Stop at
+   * the first failed transformation as a serial application would have.
+   * Updates generate their type hashes in the scope of their transformation.
+   *
+   * @param updates  Deferred updates of each transformation.
+   * @param scopes   Type hash scope of each transformation.
+   * @param failures Failed transformations and their exception.
+   * @throws Exception If a transformation or an update failed.
+   */
+  private void commit(Map<Transformation, DeferredUpdates> updates,
+                      Map<Transformation, String> scopes,
+                      Map<Transformation, Exception> failures)
+      throws Exception
+  {
+    for(Map.Entry<Transformation, DeferredUpdates> entry : updates.entrySet())
+    {
+      Transformation trans = entry.getKey();
+      XtypeTable.setHashScope(scopes.get(trans));
+      try {
+        entry.getValue().apply();
       } catch(IllegalTransformationException itex) {
-        // Catch the exception to add line information and rethrow it
         if(itex.getStartLine() == 0) {
           itex.setStartLine(trans.getStartLine());
         }
         throw itex;
+      } finally {
+        XtypeTable.clearHashScope();
+      }
+      if(failures.containsKey(trans)) {
+        throw failures.get(trans);
+      }
+      if(trans.isTransformed()) {
+        incrementAppliedTransformation();
+      }
+    }
+  }
+
+  /**
+   * Apply a single transformation.
+   *
+   * @param xcodeml    The XcodeML on which the transformations are applied.
+   * @param translator The translator used to applied the transformations.
+   * @param trans      Transformation to apply.
+   * @param scope      Scope of the type hashes generated by the
+   *                   transformation.
+   * @throws Exception If the transformation fails.
+   */
+  private void apply(XcodeProgram xcodeml, Translator translator,
+                     Transformation trans, String scope)
+      throws Exception
+  {
+    Metrics metrics = Context.get().getMetrics();
+    XtypeTable.setHashScope(scope);
+    try {
+      Metrics.Probe probe = metrics.start();
+      trans.transform(xcodeml, translator, null);
+      metrics.stop(Metrics.Kind.DIRECTIVE, transformationName(),
+          trans.getStartLine(), probe);
+      if(trans.isTransformed() && !DeferredUpdates.isDeferring()) {
+        incrementAppliedTransformation();
+      }
+    } catch(IllegalTransformationException itex) {
+      // Catch the exception to add line information and rethrow it
+      if(itex.getStartLine() == 0) {
+        itex.setStartLine(trans.getStartLine());
       }
+      throw itex;
+    } finally {
+      XtypeTable.clearHashScope();
     }
   }
 }
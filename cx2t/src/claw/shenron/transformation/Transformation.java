@@ -9,6 +9,8 @@ import claw.shenron.translator.Translator;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 
+import java.util.List;
+
 /**
  * A Transformation is an object capable of analyzing a possible code
  * transformation to be applied and the steps to apply it to the intermediate
@@ -69,6 +71,22 @@ public abstract class Transformation {
   public abstract boolean canBeTransformedWith(XcodeProgram xcodeml,
                                                Transformation other);
 
+  /**
+   * Report why the current transformation is not transformed together with
+   * other transformations. Called once by a dependent transformation group
+   * with all the candidates refused by
+   * {@link #canBeTransformedWith(XcodeProgram, Transformation)}. Default
+   * behavior is to report nothing.
+   *
+   * @param xcodeml The XcodeML on which the transformations are applied.
+   * @param refused Candidates refused by the current transformation in the
+   *                order they were checked.
+   * @see DependentTransformationGroup
+   */
+  public void reportRefusal(XcodeProgram xcodeml, List<Transformation> refused)
+  {
+  }
+
   /**
    * Tells whether the transformation should abort the translation if the
    * analysis fails. Default behavior is to abort.
@@ -79,6 +97,36 @@ public abstract class Transformation {
     return true;
   }
 
+  /**
+   * Tells whether the transformation only modifies the function definition
+   * enclosing its directive. Transformations of an independent group that are
+   * local to different function definitions can be applied in parallel.
+   * Updates of the type table, of the module files and of the messages are
+   * deferred and applied in the serial order. A local transformation must not
+   * read what transformations of other function definitions modify and must
+   * not add transformations to the translator. Default behavior is to be
+   * applied serially.
+   *
+   * @return True if the transformation is local to its function definition.
+   */
+  public boolean isFunctionLocal() {
+    return false;
+  }
+
+  /**
+   * Get the key used by a dependent transformation group to select the
+   * candidates of this transformation. Transformations with different
+   * non-null keys are never transformed together so they are not checked
+   * with each other. The key is computed once when the group is applied and
+   * must not depend on code the transformations of the group can move.
+   * Default behavior is to be checked with every other transformation.
+   *
+   * @return Compatibility key. Null if the transformation has no key.
+   */
+  public Object getCompatibilityKey() {
+    return null;
+  }
+
   /**
    * Apply the actual transformation.
    *
@@ -6,12 +6,14 @@ package claw.shenron.translator;
 
 import claw.shenron.transformation.Transformation;
 import claw.shenron.transformation.TransformationGroup;
+import claw.tatsu.common.Context;
 import claw.tatsu.xcodeml.exception.IllegalDirectiveException;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Translator interface
@@ -77,4 +79,24 @@ public interface Translator {
    */
   int getNextTransformationCounter();
 
+  /**
+   * Wrap a task so it runs with the translation settings of the calling
+   * thread when executed on a worker thread.
+   *
+   * @param task Task to be run on a worker thread.
+   * @param <T>  Result of the task.
+   * @return Task running with the settings of the calling thread.
+   */
+  default <T> Callable<T> onWorker(Callable<T> task) {
+    Context context = Context.get();
+    return () -> {
+      Context.bind(context);
+      try {
+        return task.call();
+      } finally {
+        Context.bind(null);
+      }
+    };
+  }
+
 }
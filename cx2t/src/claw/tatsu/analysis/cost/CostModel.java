@@ -0,0 +1,22 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.cost;
+
+/**
+ * Interface of the cost models choosing how a loop nest is mapped on the
+ * parallelism levels of an accelerator.
+ *
+ * @author clementval
+ */
+public interface CostModel {
+
+  /**
+   * Choose the mapping of a loop nest.
+   *
+   * @param profile Profile of the loop nest.
+   * @return Chosen mapping with its estimated cost.
+   */
+  LoopMapping map(LoopNestProfile profile);
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.cost;
+
+/**
+ * Mapping of a loop nest on the parallelism levels of an accelerator.
+ *
+ * A flat mapping collapses the outer levels of the nest and distributes their
+ * iterations over all the parallelism levels at once. A split mapping
+ * distributes the outer levels over the gangs (or teams) and the innermost
+ * level over the vector lanes (or threads) of each of them.
+ *
+ * @author clementval
+ */
+public class LoopMapping {
+
+  public static final double UNKNOWN_COST = -1;
+
+  private final int _collapse;
+  private final boolean _split;
+  private final double _cost;
+
+  /**
+   * Constructs a new mapping.
+   *
+   * @param collapse Number of outer levels mapped by the first directive.
+   * @param split    If true, the innermost level is mapped separately.
+   * @param cost     Estimated cost.
+   */
+  private LoopMapping(int collapse, boolean split, double cost) {
+    _collapse = collapse;
+    _split = split;
+    _cost = cost;
+  }
+
+  /**
+   * Create a flat mapping.
+   *
+   * @param collapse Number of collapsed outer levels.
+   * @param cost     Estimated cost or UNKNOWN_COST.
+   * @return New mapping.
+   */
+  public static LoopMapping flat(int collapse, double cost) {
+    return new LoopMapping(collapse, false, cost);
+  }
+
+  /**
+   * Create a split mapping.
+   *
+   * @param outerLevels Number of outer levels mapped on the gangs.
+   * @param cost        Estimated cost or UNKNOWN_COST.
+   * @return New mapping.
+   */
+  public static LoopMapping split(int outerLevels, double cost) {
+    return new LoopMapping(outerLevels, true, cost);
+  }
+
+  /**
+   * Get the number of outer levels mapped by the first directive.
+   *
+   * @return Number of levels.
+   */
+  public int getCollapse() {
+    return _collapse;
+  }
+
+  /**
+   * Check whether the innermost level is mapped separately on the vector
+   * lanes.
+   *
+   * @return True for a split mapping. False for a flat mapping.
+   */
+  public boolean isSplit() {
+    return _split;
+  }
+
+  /**
+   * Get the estimated cost of the mapping.
+   *
+   * @return Estimated cost in arbitrary units. UNKNOWN_COST if the cost could
+   * not be estimated.
+   */
+  public double getCost() {
+    return _cost;
+  }
+
+  /**
+   * Check whether the cost could be estimated.
+   *
+   * @return True if the cost is known.
+   */
+  public boolean hasCost() {
+    return _cost >= 0;
+  }
+
+  @Override
+  public String toString() {
+    String mapping = _split
+        ? String.format("gang collapse(%d), vector", _collapse)
+        : String.format("gang vector collapse(%d)", _collapse);
+    return hasCost() ? String.format("%s, cost %.0f", mapping, _cost)
+        : mapping + ", cost unknown";
+  }
+}
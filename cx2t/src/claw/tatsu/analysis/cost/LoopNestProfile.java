@@ -0,0 +1,129 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.cost;
+
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Profile of a loop nest used by the cost models: extent of each level and
+ * estimation of the work done by one iteration of the innermost level.
+ *
+ * The operations are the arithmetic expressions of the loop body, intrinsic
+ * calls weighting more than a single operation. The footprint counts one
+ * element of each distinct array referenced in the body.
+ *
+ * @author clementval
+ */
+public class LoopNestProfile {
+
+  public static final int ELEMENT_BYTES = 8;
+  public static final int INTRINSIC_OPERATIONS = 4;
+
+  private static final List<Xcode> OPERATIONS = Arrays.asList(Xcode.PLUS_EXPR,
+      Xcode.MINUS_EXPR, Xcode.MUL_EXPR, Xcode.DIV_EXPR, Xcode.F_POWER_EXPR,
+      Xcode.UNARY_MINUS_EXPR);
+
+  private final int[] _extents;
+  private final int _operations;
+  private final int _footprint;
+
+  /**
+   * Constructs a new profile.
+   *
+   * @param extents    Extent of each level from the outermost to the
+   *                   innermost. 0 if unknown.
+   * @param operations Number of operations per iteration.
+   * @param footprint  Number of bytes accessed per iteration.
+   */
+  public LoopNestProfile(int[] extents, int operations, int footprint) {
+    _extents = extents.clone();
+    _operations = operations;
+    _footprint = footprint;
+  }
+
+  /**
+   * Create the profile of a loop nest from its body.
+   *
+   * @param nest    Nested do statements.
+   * @param extents Extent of each level from the outermost to the innermost.
+   *                0 if unknown.
+   * @return New profile.
+   */
+  public static LoopNestProfile of(NestedDoStatement nest, int[] extents) {
+    Xnode body = nest.getInnerStatement().body();
+    int operations = 0;
+    for(Xcode opcode : OPERATIONS) {
+      operations += body.matchAll(opcode).size();
+    }
+    for(Xnode call : body.matchAll(Xcode.FUNCTION_CALL)) {
+      if(call.getBooleanAttribute(Xattr.IS_INTRINSIC)) {
+        operations += INTRINSIC_OPERATIONS;
+      }
+    }
+    Set<String> arrays = new HashSet<>();
+    for(Xnode arrayRef : body.matchAll(Xcode.F_ARRAY_REF)) {
+      Xnode var = arrayRef.matchSeq(Xcode.VAR_REF, Xcode.VAR);
+      if(var != null) {
+        arrays.add(var.value().toLowerCase());
+      }
+    }
+    return new LoopNestProfile(extents, operations,
+        arrays.size() * ELEMENT_BYTES);
+  }
+
+  /**
+   * Get the number of levels of the loop nest.
+   *
+   * @return Number of levels.
+   */
+  public int getDepth() {
+    return _extents.length;
+  }
+
+  /**
+   * Get the extent of a level.
+   *
+   * @param level Level index. 0 is the outermost level.
+   * @return Number of iterations. 0 if unknown.
+   */
+  public int getExtent(int level) {
+    return _extents[level];
+  }
+
+  /**
+   * Check whether the extents of all the levels are known.
+   *
+   * @return True if all the extents are known.
+   */
+  public boolean hasKnownExtents() {
+    return Arrays.stream(_extents).allMatch(e -> e > 0);
+  }
+
+  /**
+   * Get the number of operations of one iteration.
+   *
+   * @return Number of operations.
+   */
+  public int getOperations() {
+    return _operations;
+  }
+
+  /**
+   * Get the number of bytes accessed by one iteration.
+   *
+   * @return Number of bytes.
+   */
+  public int getFootprint() {
+    return _footprint;
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.cost;
+
+/**
+ * Cost model estimating each mapping with a roofline bound per iteration.
+ *
+ * One iteration costs the maximum of its operations and of its memory
+ * traffic divided by the machine balance. Accesses are penalized when
+ * consecutive lanes do not iterate over the innermost, contiguous, level and
+ * each extra collapsed level adds the operations needed to recover its index.
+ * The cost of a mapping is the cost of one iteration multiplied by the number
+ * of waves needed to execute all iterations on the available lanes.
+ *
+ * When an extent is unknown, the nest is fully collapsed as without cost
+ * model.
+ *
+ * @author clementval
+ */
+public class RooflineCostModel implements CostModel {
+
+  public static final int DEFAULT_LANES = 163840;
+  public static final int DEFAULT_VECTOR_LENGTH = 128;
+
+  private static final double BYTES_PER_OPERATION = 8.0;
+  private static final int STRIDE_PENALTY = 8;
+  private static final int COLLAPSE_OPERATIONS = 2;
+
+  private final int _lanes;
+  private final int _vectorLength;
+
+  /**
+   * Constructs a cost model for the default device.
+   */
+  public RooflineCostModel() {
+    this(DEFAULT_LANES, DEFAULT_VECTOR_LENGTH);
+  }
+
+  /**
+   * Constructs a cost model for a given device.
+   *
+   * @param lanes        Number of lanes executing concurrently.
+   * @param vectorLength Number of vector lanes of a gang.
+   */
+  public RooflineCostModel(int lanes, int vectorLength) {
+    _lanes = lanes;
+    _vectorLength = vectorLength;
+  }
+
+  @Override
+  public LoopMapping map(LoopNestProfile profile) {
+    int depth = profile.getDepth();
+    if(depth == 0 || !profile.hasKnownExtents()) {
+      return LoopMapping.flat(depth, LoopMapping.UNKNOWN_COST);
+    }
+    // Deeper collapse first so it is kept on equal cost
+    LoopMapping best = null;
+    for(int collapse = depth; collapse > 0; --collapse) {
+      LoopMapping mapping =
+          LoopMapping.flat(collapse, getFlatCost(profile, collapse));
+      if(best == null || mapping.getCost() < best.getCost()) {
+        best = mapping;
+      }
+    }
+    if(depth > 1) {
+      LoopMapping mapping =
+          LoopMapping.split(depth - 1, getSplitCost(profile));
+      if(mapping.getCost() < best.getCost()) {
+        best = mapping;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Estimate the cost of collapsing the outer levels of the nest.
+   *
+   * @param profile  Profile of the loop nest.
+   * @param collapse Number of collapsed outer levels.
+   * @return Estimated cost.
+   */
+  double getFlatCost(LoopNestProfile profile, int collapse) {
+    double parallel = getIterations(profile, 0, collapse);
+    double sequential =
+        getIterations(profile, collapse, profile.getDepth());
+    return Math.ceil(parallel / _lanes) * sequential
+        * getIterationCost(profile, collapse == profile.getDepth(),
+        collapse - 1);
+  }
+
+  /**
+   * Estimate the cost of mapping the outer levels on the gangs and the
+   * innermost level on the vector lanes.
+   *
+   * @param profile Profile of the loop nest.
+   * @return Estimated cost.
+   */
+  double getSplitCost(LoopNestProfile profile) {
+    int depth = profile.getDepth();
+    double gangs = getIterations(profile, 0, depth - 1);
+    double gangsInFlight = Math.max(1, _lanes / _vectorLength);
+    double vectorSteps =
+        Math.ceil((double) profile.getExtent(depth - 1) / _vectorLength);
+    return Math.ceil(gangs / gangsInFlight) * vectorSteps
+        * getIterationCost(profile, true, depth - 2);
+  }
+
+  /**
+   * Estimate the cost of one iteration.
+   *
+   * @param profile     Profile of the loop nest.
+   * @param coalesced   True if consecutive lanes access contiguous elements.
+   * @param extraLevels Number of collapsed levels whose index is recovered.
+   * @return Estimated cost.
+   */
+  private double getIterationCost(LoopNestProfile profile, boolean coalesced,
+                                  int extraLevels)
+  {
+    double operations = profile.getOperations()
+        + COLLAPSE_OPERATIONS * Math.max(extraLevels, 0);
+    double traffic = profile.getFootprint()
+        * (coalesced ? 1 : STRIDE_PENALTY) / BYTES_PER_OPERATION;
+    return Math.max(Math.max(operations, traffic), 1);
+  }
+
+  /**
+   * Get the number of iterations of a range of levels.
+   *
+   * @param profile Profile of the loop nest.
+   * @param from    First level, inclusive.
+   * @param to      Last level, exclusive.
+   * @return Number of iterations.
+   */
+  private static double getIterations(LoopNestProfile profile, int from,
+                                      int to)
+  {
+    double iterations = 1;
+    for(int i = from; i < to; ++i) {
+      iterations *= profile.getExtent(i);
+    }
+    return iterations;
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Integer expression of the form c0 + c1 * v1 + ... + cn * vn where the ci
+ * are integer constants and the vi are variables. Array subscripts of this
+ * form can be compared by the dependence tests.
+ *
+ * @author clementval
+ */
+public class AffineExpression {
+
+  private final Map<String, Long> _coefficients;
+  private final long _constant;
+
+  /**
+   * Constructs a new affine expression.
+   *
+   * @param coefficients Non-zero coefficient of each variable.
+   * @param constant     Constant term.
+   */
+  private AffineExpression(Map<String, Long> coefficients, long constant) {
+    _coefficients = coefficients;
+    _constant = constant;
+  }
+
+  /**
+   * Build the affine expression of an XcodeML/F expression.
+   *
+   * @param expr Expression node.
+   * @return Affine expression. Null if the expression is not affine or if its
+   * constants overflow.
+   */
+  public static AffineExpression parse(Xnode expr) {
+    try {
+      return convert(expr);
+    } catch(ArithmeticException | NumberFormatException ignored) {
+      return null;
+    }
+  }
+
+  /**
+   * Recursively convert an expression node.
+   *
+   * @param expr Expression node.
+   * @return Affine expression. Null if the expression is not affine.
+   */
+  private static AffineExpression convert(Xnode expr) {
+    if(expr == null) {
+      return null;
+    }
+    switch(expr.opcode()) {
+      case VAR:
+        Map<String, Long> variable = new TreeMap<>();
+        variable.put(expr.value(), 1L);
+        return new AffineExpression(variable, 0);
+      case F_INT_CONSTANT:
+        return new AffineExpression(new TreeMap<>(),
+            Long.parseLong(expr.value()));
+      case PLUS_EXPR:
+      case MINUS_EXPR:
+        AffineExpression lhs = convert(expr.child(0));
+        AffineExpression rhs = convert(expr.child(1));
+        if(lhs == null || rhs == null) {
+          return null;
+        }
+        return lhs.add(rhs, expr.opcode() == Xcode.PLUS_EXPR ? 1 : -1);
+      case UNARY_MINUS_EXPR:
+        AffineExpression operand = convert(expr.child(0));
+        return operand == null ? null : operand.scale(-1);
+      case MUL_EXPR:
+        AffineExpression left = convert(expr.child(0));
+        AffineExpression right = convert(expr.child(1));
+        if(left == null || right == null) {
+          return null;
+        }
+        if(left.isConstant()) {
+          return right.scale(left._constant);
+        }
+        return right.isConstant() ? left.scale(right._constant) : null;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Compute this + factor * other.
+   *
+   * @param other  Expression to add.
+   * @param factor Factor of the added expression.
+   * @return New affine expression.
+   */
+  private AffineExpression add(AffineExpression other, long factor) {
+    Map<String, Long> coefficients = new TreeMap<>(_coefficients);
+    for(Map.Entry<String, Long> term : other._coefficients.entrySet()) {
+      long value = Math.addExact(coefficients.getOrDefault(term.getKey(), 0L),
+          Math.multiplyExact(factor, term.getValue()));
+      if(value == 0) {
+        coefficients.remove(term.getKey());
+      } else {
+        coefficients.put(term.getKey(), value);
+      }
+    }
+    return new AffineExpression(coefficients,
+        Math.addExact(_constant, Math.multiplyExact(factor, other._constant)));
+  }
+
+  /**
+   * Compute factor * this.
+   *
+   * @param factor Factor applied to each term.
+   * @return New affine expression.
+   */
+  private AffineExpression scale(long factor) {
+    Map<String, Long> coefficients = new TreeMap<>();
+    if(factor != 0) {
+      for(Map.Entry<String, Long> term : _coefficients.entrySet()) {
+        coefficients.put(term.getKey(),
+            Math.multiplyExact(factor, term.getValue()));
+      }
+    }
+    return new AffineExpression(coefficients,
+        Math.multiplyExact(factor, _constant));
+  }
+
+  /**
+   * Get the coefficient of a variable.
+   *
+   * @param variable Lower case name of the variable.
+   * @return Coefficient of the variable. 0 if the variable is not part of the
+   * expression.
+   */
+  public long getCoefficient(String variable) {
+    return _coefficients.getOrDefault(variable, 0L);
+  }
+
+  /**
+   * Get the variables with a non-zero coefficient.
+   *
+   * @return Lower case names of the variables.
+   */
+  public Set<String> getVariables() {
+    return Collections.unmodifiableSet(_coefficients.keySet());
+  }
+
+  /**
+   * Get the constant term of the expression.
+   *
+   * @return Constant term.
+   */
+  public long getConstant() {
+    return _constant;
+  }
+
+  /**
+   * Check whether the expression has no variable.
+   *
+   * @return True if the expression is a constant.
+   */
+  public boolean isConstant() {
+    return _coefficients.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder str = new StringBuilder();
+    for(Map.Entry<String, Long> term : _coefficients.entrySet()) {
+      str.append(term.getValue() < 0 ? "-" : str.length() > 0 ? "+" : "");
+      if(Math.abs(term.getValue()) != 1) {
+        str.append(Math.abs(term.getValue())).append('*');
+      }
+      str.append(term.getKey());
+    }
+    if(_constant != 0 || str.length() == 0) {
+      str.append(_constant < 0 ? "-" : str.length() > 0 ? "+" : "")
+          .append(Math.abs(_constant));
+    }
+    return str.toString();
+  }
+}
@@ -0,0 +1,333 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+import claw.tatsu.xcodeml.xnode.common.Xattr;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read or write of an array element, section or whole array in a loop body.
+ * Reads and writes of scalar variables and derived type members are collected
+ * the same way without subscripts. Accesses are collected in their order of
+ * execution within one iteration.
+ *
+ * @author clementval
+ */
+class ArrayAccess {
+
+  private final String _array;
+  private final Xnode _node;
+  private final boolean _write;
+  // Null for a whole array. Null element for a section or a non-affine index.
+  private final AffineExpression[] _subscripts;
+
+  /**
+   * Constructs a new array access.
+   *
+   * @param array      Lower case name of the array.
+   * @param node       FarrayRef, FmemberRef or Var node of the access.
+   * @param write      True if the array is written.
+   * @param subscripts Subscript of each dimension. Null for a whole array.
+   */
+  private ArrayAccess(String array, Xnode node, boolean write,
+                      AffineExpression[] subscripts)
+  {
+    _array = array;
+    _node = node;
+    _write = write;
+    _subscripts = subscripts;
+  }
+
+  /**
+   * Get the name of the accessed array.
+   *
+   * @return Lower case name of the array.
+   */
+  String getArray() {
+    return _array;
+  }
+
+  /**
+   * Get the node of the access.
+   *
+   * @return FarrayRef, FmemberRef or Var node.
+   */
+  Xnode getNode() {
+    return _node;
+  }
+
+  /**
+   * Check whether the access is a write.
+   *
+   * @return True if the array is written.
+   */
+  boolean isWrite() {
+    return _write;
+  }
+
+  /**
+   * Get the subscripts of the access.
+   *
+   * @return Subscript of each dimension. Null for a whole array.
+   */
+  AffineExpression[] getSubscripts() {
+    return _subscripts;
+  }
+
+  /**
+   * Collect the array accesses of loop bodies.
+   *
+   * @param nest     Do statements of the loop nest. Their induction variable
+   *                 is not reported as assigned.
+   * @param assigned Receives the lower case names of the scalar variables
+   *                 assigned in the body.
+   * @return Array accesses in their order of execution.
+   */
+  static List<ArrayAccess> collect(List<Xnode> nest, Set<String> assigned) {
+    return collect(nest, assigned, new ArrayList<>());
+  }
+
+  /**
+   * Collect the array and scalar accesses of loop bodies.
+   *
+   * @param nest     Do statements of the loop nest. Their induction variable
+   *                 is not reported as assigned.
+   * @param assigned Receives the lower case names of the scalar variables
+   *                 assigned in the body.
+   * @param scalars  Receives the accesses to scalar variables and derived
+   *                 type members in their order of execution.
+   * @return Array accesses in their order of execution.
+   */
+  static List<ArrayAccess> collect(List<Xnode> nest, Set<String> assigned,
+                                   List<ArrayAccess> scalars)
+  {
+    Collector collector = new Collector(nest);
+    collector.walk(nest.get(0).body());
+
+    // Var nodes of an array name are accesses to the whole array
+    Set<String> arrays = new HashSet<>();
+    for(ArrayAccess access : collector._accesses) {
+      if(access._subscripts != null) {
+        arrays.add(access._array);
+      }
+    }
+    List<ArrayAccess> accesses = new ArrayList<>();
+    for(ArrayAccess access : collector._accesses) {
+      if(arrays.contains(access._array)) {
+        accesses.add(access);
+      } else {
+        scalars.add(access);
+        if(access._write) {
+          assigned.add(access._array);
+        }
+      }
+    }
+    return accesses;
+  }
+
+  /**
+   * Walks a loop body in the order of execution of its statements.
+   */
+  private static class Collector {
+
+    private final List<Xnode> _nest;
+    private final List<ArrayAccess> _accesses = new ArrayList<>();
+
+    Collector(List<Xnode> nest) {
+      _nest = nest;
+    }
+
+    /**
+     * Collect the accesses of a node and its descendants.
+     *
+     * @param node Node to walk.
+     */
+    void walk(Xnode node) {
+      switch(node.opcode()) {
+        case F_ASSIGN_STATEMENT:
+          // Right-hand side is evaluated before the assignment
+          walk(node.child(1));
+          target(node.child(0), false);
+          break;
+        case F_ARRAY_REF:
+          reference(node, false, true);
+          break;
+        case VAR:
+          _accesses.add(new ArrayAccess(node.value(), node, false, null));
+          break;
+        case F_MEMBER_REF:
+          walkChildren(node, Xcode.NONE);
+          _accesses.add(new ArrayAccess(getMemberName(node), node, false,
+              null));
+          break;
+        case F_DO_STATEMENT:
+          if(!_nest.contains(node)) {
+            Xnode induction = node.matchDirectDescendant(Xcode.VAR);
+            if(induction != null) {
+              _accesses.add(
+                  new ArrayAccess(induction.value(), induction, true, null));
+            }
+          }
+          walkChildren(node, Xcode.VAR);
+          break;
+        case FUNCTION_CALL:
+          // Functions referenced in expressions do not modify their arguments
+          if(node.getBooleanAttribute(Xattr.IS_INTRINSIC)
+              || !Xnode.isOfCode(node.ancestor(), Xcode.EXPR_STATEMENT))
+          {
+            walkChildren(node, Xcode.NONE);
+          } else {
+            call(node);
+          }
+          break;
+        default:
+          walkChildren(node, Xcode.NONE);
+          break;
+      }
+    }
+
+    /**
+     * Walk the children of a node.
+     *
+     * @param node    Parent node.
+     * @param skipped Opcode of the children not to walk.
+     */
+    private void walkChildren(Xnode node, Xcode skipped) {
+      for(Xnode child : node.children()) {
+        if(child.opcode() != skipped) {
+          walk(child);
+        }
+      }
+    }
+
+    /**
+     * Collect a written variable, array element or section.
+     *
+     * @param node Target node.
+     * @param read True if the target is also read.
+     */
+    private void target(Xnode node, boolean read) {
+      if(Xnode.isOfCode(node, Xcode.F_ARRAY_REF)) {
+        if(read) {
+          reference(node, false, true);
+        }
+        reference(node, true, !read);
+      } else if(Xnode.isOfCode(node, Xcode.VAR)) {
+        if(read) {
+          walk(node);
+        }
+        _accesses.add(new ArrayAccess(node.value(), node, true, null));
+      } else if(Xnode.isOfCode(node, Xcode.F_MEMBER_REF)) {
+        if(read) {
+          walk(node);
+        } else {
+          walkChildren(node, Xcode.NONE);
+        }
+        _accesses.add(new ArrayAccess(getMemberName(node), node, true, null));
+      } else if(node != null) {
+        walk(node);
+      }
+    }
+
+    /**
+     * Collect an array element or section and the accesses of its indexes.
+     *
+     * @param arrayRef FarrayRef node.
+     * @param write    True if the array is written.
+     * @param indexes  True if the accesses of the indexes are collected.
+     */
+    private void reference(Xnode arrayRef, boolean write, boolean indexes) {
+      Xnode varRef = arrayRef.matchDirectDescendant(Xcode.VAR_REF);
+      String name = getArrayName(varRef);
+      List<AffineExpression> subscripts = new ArrayList<>();
+      for(Xnode child : arrayRef.children()) {
+        if(child.opcode() == Xcode.VAR_REF) {
+          continue;
+        }
+        if(indexes) {
+          walk(child);
+        }
+        subscripts.add(child.opcode() == Xcode.ARRAY_INDEX
+            ? AffineExpression.parse(child.firstChild()) : null);
+      }
+      if(name != null) {
+        _accesses.add(new ArrayAccess(name, arrayRef, write,
+            subscripts.toArray(new AffineExpression[0])));
+      }
+    }
+
+    /**
+     * Collect the accesses of a call to a subroutine. Variables and arrays
+     * passed as arguments may be written by the subroutine.
+     *
+     * @param call FunctionCall node.
+     */
+    private void call(Xnode call) {
+      Xnode arguments = call.matchDirectDescendant(Xcode.ARGUMENTS);
+      if(arguments == null) {
+        return;
+      }
+      for(Xnode argument : arguments.children()) {
+        Xnode value = argument.opcode() == Xcode.NAMED_VALUE
+            ? argument.firstChild() : argument;
+        if(Xnode.isOfCode(value, Xcode.F_ARRAY_REF)) {
+          // The subroutine may access any element after the actual argument
+          reference(value, false, true);
+          Xnode varRef = value.matchDirectDescendant(Xcode.VAR_REF);
+          String name = getArrayName(varRef);
+          if(name != null) {
+            _accesses.add(new ArrayAccess(name, value, true,
+                new AffineExpression[value.children().size() - 1]));
+          }
+        } else {
+          target(value, true);
+        }
+      }
+    }
+
+    /**
+     * Get the name of the array referenced by a varRef node. Members of
+     * derived types are named after the member so that the same member of
+     * different variables is conservatively considered as the same array.
+     *
+     * @param varRef VarRef node.
+     * @return Lower case name of the array. Null if not found.
+     */
+    private static String getArrayName(Xnode varRef) {
+      if(varRef == null || varRef.firstChild() == null) {
+        return null;
+      }
+      Xnode ref = varRef.firstChild();
+      if(ref.opcode() == Xcode.VAR) {
+        return ref.value();
+      }
+      if(ref.opcode() == Xcode.F_MEMBER_REF
+          && ref.hasAttribute(Xattr.MEMBER))
+      {
+        return getMemberName(ref);
+      }
+      return null;
+    }
+
+    /**
+     * Get the name of a derived type member. The same member of different
+     * variables is conservatively considered as the same variable.
+     *
+     * @param memberRef FmemberRef node.
+     * @return Lower case name of the member prefixed by %. Only % if the
+     * member is unknown.
+     */
+    private static String getMemberName(Xnode memberRef) {
+      String member = memberRef.getAttribute(Xattr.MEMBER);
+      return "%" + (member == null ? "" : member.toLowerCase());
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Dependence between two accesses to the same array in a loop nest. The
+ * dependence is described by the direction vectors for which the sink access
+ * may touch an element accessed by the source access, and by the distance
+ * (sink iteration minus source iteration) of each level when it is constant.
+ *
+ * @author clementval
+ */
+public class Dependence {
+
+  private final String _array;
+  private final DependenceType _type;
+  private final Xnode _source;
+  private final Xnode _sink;
+  // Sign of the distance of each level
+  private final List<int[]> _directions;
+  private final Long[] _distances;
+
+  /**
+   * Constructs a new dependence.
+   *
+   * @param array      Name of the array.
+   * @param type       Kind of dependence.
+   * @param source     Node of the access executed first.
+   * @param sink       Node of the access executed last.
+   * @param directions Possible direction vectors.
+   * @param distances  Distance of each level. Null element if not constant.
+   */
+  Dependence(String array, DependenceType type, Xnode source, Xnode sink,
+             List<int[]> directions, Long[] distances)
+  {
+    _array = array;
+    _type = type;
+    _source = source;
+    _sink = sink;
+    _directions = directions;
+    _distances = distances;
+  }
+
+  /**
+   * Get the name of the array carrying the dependence.
+   *
+   * @return Lower case name of the array.
+   */
+  public String getArray() {
+    return _array;
+  }
+
+  /**
+   * Get the kind of dependence.
+   *
+   * @return Flow, anti or output dependence.
+   */
+  public DependenceType getType() {
+    return _type;
+  }
+
+  /**
+   * Get the access executed first.
+   *
+   * @return FarrayRef or Var node.
+   */
+  public Xnode getSource() {
+    return _source;
+  }
+
+  /**
+   * Get the access executed last.
+   *
+   * @return FarrayRef or Var node.
+   */
+  public Xnode getSink() {
+    return _sink;
+  }
+
+  /**
+   * Get the possible direction vectors. Each element is the sign of the
+   * distance of a level: 1 ("&lt;") if the sink is executed in a later
+   * iteration, 0 ("=") in the same iteration and -1 ("&gt;") in an earlier
+   * iteration.
+   *
+   * @return Direction vectors.
+   */
+  public List<int[]> getDirectionVectors() {
+    return Collections.unmodifiableList(_directions);
+  }
+
+  /**
+   * Get the distance of a level.
+   *
+   * @param level Level in the loop nest. 0 is the outer loop.
+   * @return Distance of the level. Null if the distance is not constant.
+   */
+  public Long getDistance(int level) {
+    return _distances[level];
+  }
+
+  /**
+   * Get the direction of a level in the usual notation: "&lt;", "=", "&gt;",
+   * "&lt;=", "&gt;=", "&lt;&gt;" or "*".
+   *
+   * @param level Level in the loop nest. 0 is the outer loop.
+   * @return Possible directions of the level.
+   */
+  public String getDirection(int level) {
+    boolean lower = false;
+    boolean equal = false;
+    boolean greater = false;
+    for(int[] vector : _directions) {
+      lower |= vector[level] > 0;
+      equal |= vector[level] == 0;
+      greater |= vector[level] < 0;
+    }
+    if(lower && equal && greater) {
+      return "*";
+    }
+    return (lower ? "<" : "") + (greater ? ">" : "") + (equal ? "=" : "");
+  }
+
+  /**
+   * Check whether the distance of every level is constant.
+   *
+   * @return True if the dependence has a single distance vector.
+   */
+  public boolean isExact() {
+    for(Long distance : _distances) {
+      if(distance == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Check whether the dependence may be carried by a level, i.e. the source
+   * and the sink may be in the same iteration of the outer levels and in
+   * different iterations of the level.
+   *
+   * @param level Level in the loop nest. 0 is the outer loop.
+   * @return True if the dependence may be carried by the level.
+   */
+  public boolean isCarriedBy(int level) {
+    for(int[] vector : _directions) {
+      if(getCarryingLevel(vector) == level) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the outermost level that may carry the dependence.
+   *
+   * @return Outermost carrying level. Number of levels if the dependence is
+   * only between accesses of the same iteration.
+   */
+  public int getOutermostCarryingLevel() {
+    int level = _distances.length;
+    for(int[] vector : _directions) {
+      level = Math.min(level, getCarryingLevel(vector));
+    }
+    return level;
+  }
+
+  /**
+   * Check whether the dependence is certainly reversed when the levels of
+   * the loop nest are permuted.
+   *
+   * @param order Original level of each level after the permutation.
+   * @return True if the dependence is exact and its permuted distance vector
+   * is lexicographically negative.
+   */
+  public boolean isReversedBy(int[] order) {
+    if(!isExact()) {
+      return false;
+    }
+    for(int level : order) {
+      if(_distances[level] != 0) {
+        return _distances[level] < 0;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the level carrying a direction vector.
+   *
+   * @param vector Direction vector.
+   * @return Level of the first non-zero direction. Length of the vector if all
+   * directions are zero.
+   */
+  private static int getCarryingLevel(int[] vector) {
+    for(int i = 0; i < vector.length; ++i) {
+      if(vector[i] != 0) {
+        return i;
+      }
+    }
+    return vector.length;
+  }
+
+  @Override
+  public String toString() {
+    List<String> directions = new ArrayList<>();
+    for(int i = 0; i < _distances.length; ++i) {
+      directions.add(_distances[i] == null
+          ? getDirection(i) : String.valueOf(_distances[i]));
+    }
+    return String.format("%s %s dependence (%s)", _array,
+        _type.toString().toLowerCase(), String.join(",", directions));
+  }
+}
@@ -4,23 +4,40 @@
  */
 package claw.tatsu.analysis.dependency;
 
+import claw.tatsu.primitive.Loop;
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * This class hold methods to help analysis of loop dependencies on XcodeML/F
  * intermediate representation.
  *
+ * The array accesses of the loop nest are tested pairwise. Affine subscripts
+ * are compared with the GCD and Banerjee tests to compute the direction
+ * vectors and, when they are constant, the distance vectors of the
+ * dependencies. Other subscripts, whole arrays and arrays passed to
+ * procedures are assumed to depend in any direction. Scalar variables and
+ * derived type members assigned in the loop nest are shared by the
+ * iterations unless each iteration assigns them before reading them.
+ *
  * @author clementval
  */
 public class DependenceAnalysis {
 
-  private final Xnode _mainLoop;
-  private DependenceDirection _directionVector;
-  private Integer _distanceVector;
-  private String _inductionVariable;
+  private final List<Xnode> _levels = new ArrayList<>();
+  private final List<String> _inductionVariables = new ArrayList<>();
+  private final Set<String> _readArrays = new TreeSet<>();
+  private final Set<String> _writtenArrays = new TreeSet<>();
+  private final Set<String> _sharedScalars = new TreeSet<>();
+  private final List<Dependence> _dependences = new ArrayList<>();
 
   /**
    * Constructs and run the analysis of dependencies.
@@ -29,55 +46,181 @@ public class DependenceAnalysis {
    * @throws Exception If the given node is null or is not a do statement node.
    */
   public DependenceAnalysis(Xnode loop) throws Exception {
-    _mainLoop = loop;
-    analyze();
+    this(new NestedDoStatement(loop, 1));
+    if(_levels.isEmpty()) {
+      throw new Exception("Analysis only on FdoStatement node");
+    }
+  }
+
+  /**
+   * Constructs and run the analysis of dependencies of a loop nest.
+   *
+   * @param nest The nested do statements to be analyzed.
+   */
+  public DependenceAnalysis(NestedDoStatement nest) {
+    for(int i = 0; i < nest.size(); ++i) {
+      _levels.add(nest.get(i));
+      _inductionVariables.add(Loop.extractInductionVariable(nest.get(i)));
+    }
+    if(!_levels.isEmpty()) {
+      analyze();
+    }
   }
 
   /**
    * Perform the analysis of the dependence on the given do statements.
+   */
+  private void analyze() {
+    Set<String> assigned = new HashSet<>();
+    List<ArrayAccess> scalars = new ArrayList<>();
+    List<ArrayAccess> accesses =
+        ArrayAccess.collect(_levels, assigned, scalars);
+    for(ArrayAccess access : accesses) {
+      (access.isWrite() ? _writtenArrays : _readArrays).add(access.getArray());
+    }
+    // A scalar is private to an iteration if it is first accessed by a write
+    // executed by every iteration
+    Set<String> accessed = new HashSet<>();
+    for(ArrayAccess access : scalars) {
+      if(accessed.add(access.getArray()) && assigned.contains(access.getArray())
+          && !(access.isWrite() && isExecutedByEachIteration(access.getNode())))
+      {
+        _sharedScalars.add(access.getArray());
+      }
+    }
+    DependenceTester tester = new DependenceTester(_levels, assigned);
+    for(int i = 0; i < accesses.size(); ++i) {
+      ArrayAccess a = accesses.get(i);
+      for(int j = i; j < accesses.size(); ++j) {
+        ArrayAccess b = accesses.get(j);
+        if(!a.getArray().equals(b.getArray())
+            || !(a.isWrite() || b.isWrite()) || (i == j && !a.isWrite()))
+        {
+          continue;
+        }
+        DependenceTester.Result result =
+            tester.test(a, _inductionVariables, b, _inductionVariables);
+        if(result != null) {
+          addDependences(a, b, result, i != j);
+        }
+      }
+    }
+  }
+
+  /**
+   * Check whether an access is executed by every iteration of the innermost
+   * level of the loop nest. Accesses in conditional statements, in other
+   * loops or in procedure arguments may not be.
    *
-   * @throws Exception If the given node is null or is not a do statement node.
+   * @param node Node of the access.
+   * @return True if the access is always executed.
    */
-  private void analyze() throws Exception {
-    if(!Xnode.isOfCode(_mainLoop, Xcode.F_DO_STATEMENT)) {
-      throw new Exception("Analysis only on FdoStatement node");
+  private boolean isExecutedByEachIteration(Xnode node) {
+    Xnode parent = node.ancestor();
+    // Induction variable of an inner loop is assigned even without iteration
+    if(Xnode.isOfCode(parent, Xcode.F_DO_STATEMENT)
+        && !_levels.contains(parent))
+    {
+      parent = parent.ancestor();
     }
+    for(; parent != null && !_levels.contains(parent);
+        parent = parent.ancestor())
+    {
+      switch(parent.opcode()) {
+        case F_IF_STATEMENT:
+        case F_SELECT_CASE_STATEMENT:
+        case F_WHERE_STATEMENT:
+        case F_DO_STATEMENT:
+        case F_DO_WHILE_STATEMENT:
+        case F_DO_CONCURRENT_STATEMENT:
+        case FUNCTION_CALL:
+          return false;
+        default:
+          break;
+      }
+    }
+    return parent != null;
+  }
 
-    Xnode inductionVarNode = _mainLoop.matchDirectDescendant(Xcode.VAR);
-    _inductionVariable = inductionVarNode.value();
+  /**
+   * Add the dependencies found between two accesses. The first access is
+   * before the second one in the loop body.
+   *
+   * @param a        First access.
+   * @param b        Second access.
+   * @param result   Result of the test of the two accesses.
+   * @param distinct False if the two accesses are the same.
+   */
+  private void addDependences(ArrayAccess a, ArrayAccess b,
+                              DependenceTester.Result result,
+                              boolean distinct)
+  {
+    List<int[]> forward = new ArrayList<>();
+    List<int[]> backward = new ArrayList<>();
+    for(int[] vector : result.getVectors()) {
+      int sign = getLeadingSign(vector);
+      if(sign > 0 || (sign == 0 && distinct)) {
+        forward.add(vector);
+      } else if(sign < 0 && distinct) {
+        backward.add(negate(vector));
+      }
+    }
+    Long[] distances = result.getDistances();
+    if(!forward.isEmpty()) {
+      _dependences.add(new Dependence(a.getArray(), getType(a, b),
+          a.getNode(), b.getNode(), forward, distances));
+    }
+    if(!backward.isEmpty()) {
+      Long[] negated = new Long[distances.length];
+      for(int i = 0; i < distances.length; ++i) {
+        negated[i] = distances[i] == null ? null : -distances[i];
+      }
+      _dependences.add(new Dependence(a.getArray(), getType(b, a),
+          b.getNode(), a.getNode(), backward, negated));
+    }
+  }
 
-    Xnode body = _mainLoop.matchDescendant(Xcode.BODY);
-    List<Xnode> arrayRefs = body.matchAll(Xcode.F_ARRAY_REF);
+  /**
+   * Get the kind of dependence between two accesses.
+   *
+   * @param source Access executed first.
+   * @param sink   Access executed last.
+   * @return Kind of dependence.
+   */
+  private static DependenceType getType(ArrayAccess source, ArrayAccess sink) {
+    if(source.isWrite()) {
+      return sink.isWrite() ? DependenceType.OUTPUT : DependenceType.FLOW;
+    }
+    return DependenceType.ANTI;
+  }
 
-    _distanceVector = 0;
-    _directionVector = DependenceDirection.NONE;
-    for(Xnode arrayRef : arrayRefs) {
-      List<Xnode> arrayIndexes = arrayRef.matchAll(Xcode.ARRAY_INDEX);
-      for(Xnode arrayIndex : arrayIndexes) {
-        if(Xnode.isOfCode(arrayIndex.firstChild(), Xcode.MINUS_EXPR)
-            || Xnode.isOfCode(arrayIndex.firstChild(), Xcode.PLUS_EXPR))
-        {
-          Xnode expr = arrayIndex.firstChild();
-          Xnode var = expr.firstChild();
-          Xnode intConst = expr.lastChild();
-          if(var.value().endsWith(_inductionVariable)) {
-            _distanceVector = Integer.parseInt(intConst.value());
-            switch(arrayIndex.firstChild().opcode()) {
-              case MINUS_EXPR:
-                _directionVector = DependenceDirection.BACKWARD;
-                break;
-              case PLUS_EXPR:
-                _directionVector = DependenceDirection.FORWARD;
-                break;
-              default:
-                _directionVector = DependenceDirection.NONE;
-                break;
-            }
-          }
-        }
+  /**
+   * Get the sign of the first non-zero direction of a vector.
+   *
+   * @param vector Direction vector.
+   * @return 1, -1 or 0 if all directions are zero.
+   */
+  private static int getLeadingSign(int[] vector) {
+    for(int sign : vector) {
+      if(sign != 0) {
+        return sign;
       }
     }
+    return 0;
+  }
 
+  /**
+   * Negate a direction vector.
+   *
+   * @param vector Direction vector.
+   * @return New direction vector with opposite directions.
+   */
+  private static int[] negate(int[] vector) {
+    int[] negated = new int[vector.length];
+    for(int i = 0; i < vector.length; ++i) {
+      negated[i] = -vector[i];
+    }
+    return negated;
   }
 
   /**
@@ -86,7 +229,81 @@ public class DependenceAnalysis {
    * @return String value representing the induction variable.
    */
   public String getInductionVariable() {
-    return _inductionVariable;
+    return _inductionVariables.get(0);
+  }
+
+  /**
+   * Get the induction variables of the analyzed loop nest.
+   *
+   * @return Lower case induction variable of each level.
+   */
+  public List<String> getInductionVariables() {
+    return Collections.unmodifiableList(_inductionVariables);
+  }
+
+  /**
+   * Get the number of levels of the analyzed loop nest.
+   *
+   * @return Number of do statements.
+   */
+  public int getNbLevel() {
+    return _levels.size();
+  }
+
+  /**
+   * Get the arrays read in the loop nest.
+   *
+   * @return Lower case names of the arrays.
+   */
+  public Set<String> getReadArrays() {
+    return Collections.unmodifiableSet(_readArrays);
+  }
+
+  /**
+   * Get the arrays written in the loop nest.
+   *
+   * @return Lower case names of the arrays.
+   */
+  public Set<String> getWrittenArrays() {
+    return Collections.unmodifiableSet(_writtenArrays);
+  }
+
+  /**
+   * Get the scalar variables and derived type members shared by the
+   * iterations of the loop nest. They are assigned in the nest and may be
+   * read before being assigned by an iteration.
+   *
+   * @return Lower case names of the variables. Members are prefixed by %.
+   */
+  public Set<String> getSharedScalars() {
+    return Collections.unmodifiableSet(_sharedScalars);
+  }
+
+  /**
+   * Get all the dependencies of the loop nest.
+   *
+   * @return Dependencies in the order of their source accesses.
+   */
+  public List<Dependence> getDependences() {
+    return Collections.unmodifiableList(_dependences);
+  }
+
+  /**
+   * Get the dependence used to describe the outer loop. Flow dependencies are
+   * reported first, then anti and output dependencies.
+   *
+   * @return Dependence carried by the outer loop. Null if there is none.
+   */
+  private Dependence getOuterDependence() {
+    Dependence outer = null;
+    for(Dependence dependence : _dependences) {
+      if(dependence.isCarriedBy(0) && (outer == null
+          || dependence.getType().ordinal() < outer.getType().ordinal()))
+      {
+        outer = dependence;
+      }
+    }
+    return outer;
   }
 
   /**
@@ -95,7 +312,9 @@ public class DependenceAnalysis {
    * @return Integer value representing the distance vector.
    */
   public int getDistanceVector() {
-    return _distanceVector;
+    Dependence outer = getOuterDependence();
+    return outer == null || outer.getDistance(0) == null
+        ? 0 : (int) Math.abs(outer.getDistance(0));
   }
 
   /**
@@ -106,7 +325,20 @@ public class DependenceAnalysis {
    * forward)
    */
   public DependenceDirection getDirectionVector() {
-    return _directionVector;
+    Dependence outer = getOuterDependence();
+    if(outer == null || outer.getType() == DependenceType.OUTPUT) {
+      return DependenceDirection.NONE;
+    }
+    // Offset of the read element from the current index. Flow dependencies
+    // read elements written by previous iterations, anti dependencies
+    // elements written by next iterations.
+    Long step = DependenceTester.getStep(getDoStmt());
+    long offset = outer.getType() == DependenceType.FLOW ? -1 : 1;
+    if(outer.getDistance(0) != null && step != null) {
+      offset *= outer.getDistance(0) * step;
+    }
+    return offset > 0
+        ? DependenceDirection.FORWARD : DependenceDirection.BACKWARD;
   }
 
   /**
@@ -115,7 +347,126 @@ public class DependenceAnalysis {
    * @return True if the iteration space is independent. False otherwise.
    */
   public boolean isIndependent() {
-    return _directionVector == DependenceDirection.NONE && _distanceVector == 0;
+    return isIndependent(0);
+  }
+
+  /**
+   * Check whether the iterations of a level are independent when the outer
+   * levels are executed sequentially.
+   *
+   * @param level Level in the loop nest. 0 is the outer loop.
+   * @return True if no dependence is carried by the level.
+   */
+  public boolean isIndependent(int level) {
+    for(Dependence dependence : _dependences) {
+      if(dependence.isCarriedBy(level)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the number of outer levels that can be collapsed and executed in
+   * parallel.
+   *
+   * @return Number of outer levels carrying no dependence.
+   */
+  public int getSafeCollapseDepth() {
+    int depth = _levels.size();
+    for(Dependence dependence : _dependences) {
+      depth = Math.min(depth, dependence.getOutermostCarryingLevel());
+    }
+    return depth;
+  }
+
+  /**
+   * Find a dependence reversed by a new order of the levels.
+   *
+   * @param newOrder Induction variables from the outer level to the inner
+   *                 level after the interchange.
+   * @return A dependence whose direction is certainly reversed by the new
+   * order. Null if none is found or if the order does not match the levels.
+   */
+  public Dependence findReversedDependence(List<String> newOrder) {
+    if(newOrder == null || newOrder.size() != _levels.size()) {
+      return null;
+    }
+    int[] order = new int[newOrder.size()];
+    for(int i = 0; i < order.length; ++i) {
+      order[i] = _inductionVariables.indexOf(newOrder.get(i).toLowerCase());
+      if(order[i] < 0) {
+        return null;
+      }
+    }
+    for(Dependence dependence : _dependences) {
+      if(dependence.isReversedBy(order)) {
+        return dependence;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Find a dependence preventing the fusion of two loop nests. Once fused,
+   * an iteration executes the body of the first nest and then the body of the
+   * second nest. A dependence from the first nest to an earlier iteration of
+   * the second nest would be reversed.
+   *
+   * @param first  Loop nest executed first.
+   * @param second Loop nest executed last.
+   * @param depth  Number of fused levels.
+   * @return A dependence whose direction is certainly reversed by the fusion.
+   * Null if none is found.
+   */
+  public static Dependence findFusionPreventingDependence(
+      NestedDoStatement first, NestedDoStatement second, int depth)
+  {
+    depth = Math.min(depth, Math.min(first.size(), second.size()));
+    if(depth <= 0) {
+      return null;
+    }
+    List<Xnode> firstLevels = new ArrayList<>();
+    List<Xnode> secondLevels = new ArrayList<>();
+    List<String> firstVars = new ArrayList<>();
+    List<String> secondVars = new ArrayList<>();
+    for(int i = 0; i < depth; ++i) {
+      firstLevels.add(first.get(i));
+      secondLevels.add(second.get(i));
+      firstVars.add(Loop.extractInductionVariable(first.get(i)));
+      secondVars.add(Loop.extractInductionVariable(second.get(i)));
+    }
+    Set<String> assigned = new HashSet<>();
+    List<ArrayAccess> firstAccesses =
+        ArrayAccess.collect(firstLevels, assigned);
+    List<ArrayAccess> secondAccesses =
+        ArrayAccess.collect(secondLevels, assigned);
+    DependenceTester tester = new DependenceTester(firstLevels, assigned);
+    for(ArrayAccess a : firstAccesses) {
+      for(ArrayAccess b : secondAccesses) {
+        if(!a.getArray().equals(b.getArray())
+            || !(a.isWrite() || b.isWrite()))
+        {
+          continue;
+        }
+        DependenceTester.Result result =
+            tester.test(a, firstVars, b, secondVars);
+        if(result == null) {
+          continue;
+        }
+        Dependence dependence = new Dependence(a.getArray(), getType(a, b),
+            a.getNode(), b.getNode(), result.getVectors(),
+            result.getDistances());
+        int[] order = new int[depth];
+        for(int i = 0; i < depth; ++i) {
+          order[i] = i;
+        }
+        if(dependence.isReversedBy(order)) {
+          return dependence;
+        }
+      }
+    }
+    return null;
   }
 
   /**
@@ -124,7 +475,7 @@ public class DependenceAnalysis {
    * @return The node.
    */
   public Xnode getDoStmt() {
-    return _mainLoop;
+    return _levels.get(0);
   }
 
   /**
@@ -135,9 +486,11 @@ public class DependenceAnalysis {
    */
   public String getInfoMsg() {
     String msg = isIndependent() ? ", Loop is parallelizable over "
-        : (_directionVector == DependenceDirection.BACKWARD)
+        : (getDirectionVector() == DependenceDirection.BACKWARD)
         ? ", Loop carried backward dependence over "
-        : ", Loop carried forward dependence over ";
-    return _mainLoop.lineNo() + msg + getInductionVariable();
+        : (getDirectionVector() == DependenceDirection.FORWARD)
+        ? ", Loop carried forward dependence over "
+        : ", Loop carried output dependence over ";
+    return getDoStmt().lineNo() + msg + getInductionVariable();
   }
 }
@@ -0,0 +1,485 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Test whether two accesses to the same array may touch the same element in
+ * the iterations of a loop nest. Each pair of subscripts gives a linear
+ * equation between the iterations of the two accesses. The equations are
+ * checked for every direction vector with the GCD test and with the Banerjee
+ * inequalities over the iteration ranges known at compile time. Subscripts of
+ * a single level with the same coefficient give the distance of the level.
+ *
+ * @author clementval
+ */
+class DependenceTester {
+
+  private static final long NEG_INF = Long.MIN_VALUE;
+  private static final long POS_INF = Long.MAX_VALUE;
+  // Direction of a level not yet refined
+  private static final int ANY = 2;
+
+  // Range of the values of each induction variable. Infinite if unknown.
+  private final long[] _lower;
+  private final long[] _upper;
+  // Constant step of each level. 0 if unknown.
+  private final long[] _step;
+  private final Set<String> _free;
+  private boolean _empty = false;
+
+  /**
+   * Constructs a tester for a loop nest.
+   *
+   * @param levels Do statements of the loop nest from the outer one.
+   * @param free   Variables assigned in the loop nest. Their value differs
+   *               between the two accesses.
+   */
+  DependenceTester(List<Xnode> levels, Set<String> free) {
+    int nb = levels.size();
+    _lower = new long[nb];
+    _upper = new long[nb];
+    _step = new long[nb];
+    _free = free;
+    for(int i = 0; i < nb; ++i) {
+      Xnode range = levels.get(i).matchDirectDescendant(Xcode.INDEX_RANGE);
+      Long start = getConstant(range, Xcode.LOWER_BOUND);
+      Long end = getConstant(range, Xcode.UPPER_BOUND);
+      Long step = getStep(levels.get(i));
+      _step[i] = step == null ? 0 : step;
+      _lower[i] = NEG_INF;
+      _upper[i] = POS_INF;
+      if(_step[i] > 0) {
+        _lower[i] = start == null ? NEG_INF : start;
+        _upper[i] = end == null ? POS_INF : end;
+      } else if(_step[i] < 0) {
+        _lower[i] = end == null ? NEG_INF : end;
+        _upper[i] = start == null ? POS_INF : start;
+      } else if(start != null && end != null) {
+        _lower[i] = Math.min(start, end);
+        _upper[i] = Math.max(start, end);
+      }
+      if(_step[i] != 0 && start != null && end != null
+          && _lower[i] > _upper[i])
+      {
+        _empty = true;
+      }
+    }
+  }
+
+  /**
+   * Get the step of a do statement.
+   *
+   * @param doStmt Do statement.
+   * @return Constant step. 1 if the step is omitted. Null if the step is not a
+   * constant.
+   */
+  static Long getStep(Xnode doStmt) {
+    Xnode range = doStmt.matchDirectDescendant(Xcode.INDEX_RANGE);
+    if(range != null && range.matchDirectDescendant(Xcode.STEP) == null) {
+      return 1L;
+    }
+    return getConstant(range, Xcode.STEP);
+  }
+
+  /**
+   * Get the constant value of a bound of an index range.
+   *
+   * @param range  IndexRange node.
+   * @param opcode Bound to read.
+   * @return Constant value. Null if the bound is not a constant.
+   */
+  private static Long getConstant(Xnode range, Xcode opcode) {
+    Xnode bound = range == null ? null : range.matchDirectDescendant(opcode);
+    AffineExpression value = bound == null
+        ? null : AffineExpression.parse(bound.firstChild());
+    return value != null && value.isConstant() ? value.getConstant() : null;
+  }
+
+  /**
+   * Test two accesses. The first access is executed in iteration x and the
+   * second one in iteration y.
+   *
+   * @param a     First access.
+   * @param varsA Induction variable of each level for the first access.
+   * @param b     Second access.
+   * @param varsB Induction variable of each level for the second access.
+   * @return Possible direction vectors (sign of y - x for each level) and
+   * constant distances. Null if the accesses never touch the same element.
+   */
+  Result test(ArrayAccess a, List<String> varsA, ArrayAccess b,
+              List<String> varsB)
+  {
+    if(_empty) {
+      return null;
+    }
+    Result result = new Result(_step.length);
+    List<Equation> equations = new ArrayList<>();
+    AffineExpression[] subsA = a.getSubscripts();
+    AffineExpression[] subsB = b.getSubscripts();
+    if(subsA != null && subsB != null) {
+      for(int i = 0; i < Math.min(subsA.length, subsB.length); ++i) {
+        if(subsA[i] == null || subsB[i] == null) {
+          continue;
+        }
+        Equation equation = new Equation(subsA[i], varsA, subsB[i], varsB);
+        if(!equation.constrain(result._distances)) {
+          return null;
+        }
+        equations.add(equation);
+      }
+    }
+    refine(equations, result, new int[_step.length], 0);
+    return result._vectors.isEmpty() ? null : result;
+  }
+
+  /**
+   * Refine the direction of a level and recurse on the next levels.
+   *
+   * @param equations Equations of the subscripts.
+   * @param result    Receives the feasible direction vectors.
+   * @param signs     Direction of the levels already refined.
+   * @param depth     Number of levels already refined.
+   */
+  private void refine(List<Equation> equations, Result result, int[] signs,
+                      int depth)
+  {
+    for(Equation equation : equations) {
+      if(!equation.isFeasible(signs, depth)) {
+        return;
+      }
+    }
+    if(depth == signs.length) {
+      result._vectors.add(signs.clone());
+      return;
+    }
+    for(int sign = 1; sign >= -1; --sign) {
+      Long distance = result._distances[depth];
+      if(distance == null || Long.signum(distance) == sign) {
+        signs[depth] = sign;
+        refine(equations, result, signs, depth + 1);
+      }
+    }
+    signs[depth] = 0;
+  }
+
+  /**
+   * Greatest common divisor.
+   *
+   * @param a First value.
+   * @param b Second value.
+   * @return Non-negative greatest common divisor.
+   */
+  private static long gcd(long a, long b) {
+    a = Math.abs(a);
+    b = Math.abs(b);
+    while(b != 0) {
+      long tmp = a % b;
+      a = b;
+      b = tmp;
+    }
+    return a;
+  }
+
+  /**
+   * Add two bounds where infinite bounds absorb finite values.
+   *
+   * @param a        First bound.
+   * @param b        Second bound.
+   * @param infinity Infinity returned on overflow.
+   * @return Sum of the bounds.
+   */
+  private static long add(long a, long b, long infinity) {
+    if(a == NEG_INF || a == POS_INF) {
+      return a;
+    }
+    if(b == NEG_INF || b == POS_INF) {
+      return b;
+    }
+    try {
+      return Math.addExact(a, b);
+    } catch(ArithmeticException ignored) {
+      return infinity;
+    }
+  }
+
+  /**
+   * Range of alpha * x - beta * y for the values of the induction variable of
+   * a level.
+   *
+   * @param alpha Coefficient of x.
+   * @param beta  Coefficient of y.
+   * @param level Level of the induction variable.
+   * @param sign  Direction of y - x in the iterations, or ANY.
+   * @return Minimum and maximum values. Null if no iteration matches the
+   * direction.
+   */
+  private long[] range(long alpha, long beta, int level, int sign) {
+    if(sign == ANY || sign == 0 || _step[level] != 0) {
+      int relation = sign == ANY || _step[level] >= 0 ? sign : -sign;
+      return range(alpha, beta, _lower[level], _upper[level], relation);
+    }
+    // Unknown step: the values of a later iteration can be lower or greater
+    long[] lower = range(alpha, beta, _lower[level], _upper[level], -1);
+    long[] greater = range(alpha, beta, _lower[level], _upper[level], 1);
+    if(lower == null || greater == null) {
+      return lower == null ? greater : lower;
+    }
+    return new long[]{
+        Math.min(lower[0], greater[0]), Math.max(lower[1], greater[1])
+    };
+  }
+
+  /**
+   * Range of alpha * x - beta * y for x and y in [lower, upper].
+   *
+   * @param alpha    Coefficient of x.
+   * @param beta     Coefficient of y.
+   * @param lower    Lower bound. NEG_INF if unknown.
+   * @param upper    Upper bound. POS_INF if unknown.
+   * @param relation Sign of y - x, or ANY.
+   * @return Minimum and maximum values. Null if no value matches the
+   * relation.
+   */
+  private static long[] range(long alpha, long beta, long lower, long upper,
+                              int relation)
+  {
+    boolean bounded = lower != NEG_INF && upper != POS_INF;
+    if(bounded && (relation == 1 || relation == -1) && upper - lower < 1) {
+      return null;
+    }
+    if(!bounded) {
+      if(alpha != beta) {
+        return new long[]{NEG_INF, POS_INF};
+      }
+      // alpha * (x - y) with x - y of the opposite sign of the relation
+      long step = Math.abs(alpha);
+      if(relation == 0 || alpha == 0) {
+        return new long[]{0, 0};
+      } else if(relation == ANY) {
+        return new long[]{NEG_INF, POS_INF};
+      } else if(relation * alpha > 0) {
+        return new long[]{NEG_INF, -step};
+      } else {
+        return new long[]{step, POS_INF};
+      }
+    }
+    // Extremes of a linear function are on the vertices of the region
+    long[][] vertices;
+    switch(relation) {
+      case 0:
+        vertices = new long[][]{{lower, lower}, {upper, upper}};
+        break;
+      case 1:
+        vertices = new long[][]{
+            {lower, lower + 1}, {lower, upper}, {upper - 1, upper}
+        };
+        break;
+      case -1:
+        vertices = new long[][]{
+            {lower + 1, lower}, {upper, lower}, {upper, upper - 1}
+        };
+        break;
+      default:
+        vertices = new long[][]{
+            {lower, lower}, {lower, upper}, {upper, lower}, {upper, upper}
+        };
+        break;
+    }
+    long min = POS_INF;
+    long max = NEG_INF;
+    try {
+      for(long[] vertex : vertices) {
+        long value = Math.subtractExact(Math.multiplyExact(alpha, vertex[0]),
+            Math.multiplyExact(beta, vertex[1]));
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+      }
+    } catch(ArithmeticException ignored) {
+      return new long[]{NEG_INF, POS_INF};
+    }
+    return new long[]{min, max};
+  }
+
+  /**
+   * Outcome of the test of two accesses.
+   */
+  static class Result {
+
+    private final List<int[]> _vectors = new ArrayList<>();
+    private final Long[] _distances;
+
+    private Result(int levels) {
+      _distances = new Long[levels];
+    }
+
+    /**
+     * Get the possible direction vectors.
+     *
+     * @return Sign of y - x for each level.
+     */
+    List<int[]> getVectors() {
+      return _vectors;
+    }
+
+    /**
+     * Get the constant distances.
+     *
+     * @return y - x for each level. Null element if not constant.
+     */
+    Long[] getDistances() {
+      return _distances;
+    }
+  }
+
+  /**
+   * Equation sum(alpha * x) - sum(beta * y) + sum(others) = rhs between the
+   * subscripts of the same dimension of two accesses. Other terms are
+   * variables without known range.
+   */
+  private class Equation {
+
+    private final long[] _alpha;
+    private final long[] _beta;
+    private final List<Long> _others = new ArrayList<>();
+    private final long _rhs;
+
+    /**
+     * Constructs the equation of two subscripts.
+     *
+     * @param subA  Subscript of the first access.
+     * @param varsA Induction variable of each level for the first access.
+     * @param subB  Subscript of the second access.
+     * @param varsB Induction variable of each level for the second access.
+     */
+    Equation(AffineExpression subA, List<String> varsA,
+             AffineExpression subB, List<String> varsB)
+    {
+      _alpha = new long[_step.length];
+      _beta = new long[_step.length];
+      // Variables invariant in the nest have the same value for both accesses
+      Map<String, Long> invariants = new HashMap<>();
+      for(String var : subA.getVariables()) {
+        int level = varsA.indexOf(var);
+        if(level >= 0 && level < _alpha.length) {
+          _alpha[level] = subA.getCoefficient(var);
+        } else if(_free.contains(var)) {
+          _others.add(subA.getCoefficient(var));
+        } else {
+          invariants.merge(var, subA.getCoefficient(var), Long::sum);
+        }
+      }
+      for(String var : subB.getVariables()) {
+        int level = varsB.indexOf(var);
+        if(level >= 0 && level < _beta.length) {
+          _beta[level] = subB.getCoefficient(var);
+        } else if(_free.contains(var)) {
+          _others.add(-subB.getCoefficient(var));
+        } else {
+          invariants.merge(var, -subB.getCoefficient(var), Long::sum);
+        }
+      }
+      for(long coefficient : invariants.values()) {
+        if(coefficient != 0) {
+          _others.add(coefficient);
+        }
+      }
+      _rhs = subB.getConstant() - subA.getConstant();
+    }
+
+    /**
+     * Apply the equations that involve a single level with the same
+     * coefficient on both sides.
+     *
+     * @param distances Constant distances found so far. Updated with the
+     *                  distance given by the equation.
+     * @return False if the equation has no solution.
+     */
+    boolean constrain(Long[] distances) {
+      if(!_others.isEmpty()) {
+        return true;
+      }
+      int level = -1;
+      for(int i = 0; i < _alpha.length; ++i) {
+        if(_alpha[i] != 0 || _beta[i] != 0) {
+          if(level >= 0 || _alpha[i] != _beta[i]) {
+            return true;
+          }
+          level = i;
+        }
+      }
+      if(level < 0) {
+        return _rhs == 0;
+      }
+      // alpha * (x - y) = rhs
+      if(_rhs % _alpha[level] != 0) {
+        return false;
+      }
+      long delta = -_rhs / _alpha[level];
+      if(delta != 0 && _step[level] == 0) {
+        return true;
+      }
+      if(delta != 0 && delta % _step[level] != 0) {
+        return false;
+      }
+      long distance = delta == 0 ? 0 : delta / _step[level];
+      if(distances[level] != null && distances[level] != distance) {
+        return false;
+      }
+      distances[level] = distance;
+      return true;
+    }
+
+    /**
+     * Check whether the equation may have a solution for a direction vector.
+     *
+     * @param signs Direction of each level.
+     * @param depth Number of levels with a direction. Other levels have any
+     *              direction.
+     * @return False if the equation has no solution.
+     */
+    boolean isFeasible(int[] signs, int depth) {
+      // GCD test
+      long gcd = 0;
+      for(int i = 0; i < _alpha.length; ++i) {
+        if(i < depth && signs[i] == 0) {
+          gcd = gcd(gcd, _alpha[i] - _beta[i]);
+        } else {
+          gcd = gcd(gcd(gcd, _alpha[i]), _beta[i]);
+        }
+      }
+      for(long coefficient : _others) {
+        gcd = gcd(gcd, coefficient);
+      }
+      if(gcd == 0 ? _rhs != 0 : _rhs % gcd != 0) {
+        return false;
+      }
+      if(!_others.isEmpty()) {
+        return true;
+      }
+
+      // Banerjee inequalities
+      long min = 0;
+      long max = 0;
+      for(int i = 0; i < _alpha.length; ++i) {
+        long[] term = range(_alpha[i], _beta[i], i, i < depth ? signs[i] : ANY);
+        if(term == null) {
+          return false;
+        }
+        min = add(min, term[0], NEG_INF);
+        max = add(max, term[1], POS_INF);
+      }
+      return min <= _rhs && _rhs <= max;
+    }
+  }
+}
@@ -0,0 +1,17 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.dependency;
+
+/**
+ * Small enumeration that indicates the kind of a dependence between two
+ * accesses to the same array.
+ *
+ * @author clementval
+ */
+public enum DependenceType {
+  FLOW,   // Read after write
+  ANTI,   // Write after read
+  OUTPUT  // Write after write
+}
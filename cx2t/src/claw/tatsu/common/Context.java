@@ -13,6 +13,8 @@ import claw.tatsu.directive.configuration.AcceleratorConfiguration;
 import claw.tatsu.directive.configuration.OpenAccConfiguration;
 import claw.tatsu.directive.configuration.OpenMpConfiguration;
 
+import java.io.PrintStream;
+
 /**
  * Class holding all information needed during a translation.
  *
@@ -26,6 +28,14 @@ public class Context {
   private CompilerDirective _compilerDirective;
   private Target _target;
   private ModuleCache _moduleCache;
+  private Metrics _metrics = Metrics.DISABLED;
+  // Output streams of the translation. Null for the standard streams.
+  private PrintStream _out = null;
+  private PrintStream _err = null;
+
+  // Context bound to the current thread. Has priority over the global one.
+  private static final ThreadLocal<Context> _threadContext =
+      new ThreadLocal<>();
 
   /**
    * Lazy holder pattern.
@@ -42,12 +52,59 @@ public class Context {
   }
 
   /**
-   * Get the unique context instance.
+   * Get the current context instance. This is the context bound to the current
+   * thread if any. The global context otherwise.
    *
    * @return Current context instance.
    */
   public static Context get() {
-    return LazyHolder.INSTANCE;
+    Context context = _threadContext.get();
+    return context != null ? context : LazyHolder.INSTANCE;
+  }
+
+  /**
+   * Create a new context independent from the global one. The context has to
+   * be initialized and bound to a thread to be used.
+   *
+   * @return New context instance.
+   */
+  public static Context create() {
+    return new Context();
+  }
+
+  /**
+   * Bind a context to the current thread. Every call to {@link #get()} from
+   * this thread returns the bound context until it is unbound.
+   *
+   * @param context Context to bind. If null, the current thread is unbound
+   *                and uses the global context again.
+   */
+  public static void bind(Context context) {
+    if(context == null) {
+      _threadContext.remove();
+    } else {
+      _threadContext.set(context);
+    }
+  }
+
+  /**
+   * Create a new context with the same settings and module search paths as
+   * this one. The module cache of the new context is empty.
+   *
+   * @return New context instance.
+   */
+  public Context fork() {
+    Context context = new Context();
+    context.init(_compilerDirective, _target, _acceleratorConfiguration,
+        _maxColumns);
+    if(_moduleCache != null) {
+      for(String path : _moduleCache.getSearchPaths()) {
+        context.getModuleCache().addSearchPath(path);
+      }
+      context.getModuleCache().setStore(_moduleCache.getStore());
+    }
+    context.setOutputStreams(_out, _err);
+    return context;
   }
 
   /**
@@ -122,6 +179,51 @@ public class Context {
     return _acceleratorConfiguration;
   }
 
+  public Metrics getMetrics() {
+    return _metrics;
+  }
+
+  /**
+   * Set the metrics recording the current translation.
+   *
+   * @param metrics Metrics object. If null, nothing is recorded.
+   */
+  public void setMetrics(Metrics metrics) {
+    _metrics = metrics == null ? Metrics.DISABLED : metrics;
+  }
+
+  /**
+   * Get the stream on which the translation writes its regular output.
+   *
+   * @return Output stream of the translation. Standard output if none was
+   * set.
+   */
+  public PrintStream getOut() {
+    return _out != null ? _out : System.out;
+  }
+
+  /**
+   * Get the stream on which the translation writes its diagnostics.
+   *
+   * @return Error stream of the translation. Standard error if none was set.
+   */
+  public PrintStream getErr() {
+    return _err != null ? _err : System.err;
+  }
+
+  /**
+   * Set the streams the translation writes to. Translations running
+   * concurrently in the same process write to their own streams instead of
+   * the process-wide standard ones.
+   *
+   * @param out Output stream. If null, the standard output is used.
+   * @param err Error stream. If null, the standard error is used.
+   */
+  public void setOutputStreams(PrintStream out, PrintStream err) {
+    _out = out;
+    _err = err;
+  }
+
   /**
    * Check is current target is corresponding to the given one.
    *
@@ -0,0 +1,98 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Updates of structures shared by a whole translation unit (type table,
+ * module files, messages) made by a transformation applied on a worker
+ * thread. While updates are bound to a thread, they are recorded instead of
+ * being applied. The caller applies them afterwards in the same order as a
+ * serial application of the transformations would have.
+ *
+ * @author clementval
+ */
+public final class DeferredUpdates {
+
+  /**
+   * Update of a shared structure.
+   *
+   * @param <E> Exception thrown by the update.
+   */
+  @FunctionalInterface
+  public interface Update<E extends Exception> {
+
+    /**
+     * Apply the update.
+     *
+     * @throws E If the update fails.
+     */
+    void apply() throws E;
+  }
+
+  private static final ThreadLocal<DeferredUpdates> _current =
+      new ThreadLocal<>();
+
+  private final List<Update<?>> _updates = new ArrayList<>();
+
+  /**
+   * Apply an update right away or record it if updates are deferred on the
+   * current thread.
+   *
+   * @param update Update of a shared structure.
+   * @param <E>    Exception thrown by the update.
+   * @throws E If the update is applied and fails.
+   */
+  public static <E extends Exception> void applyOrDefer(Update<E> update)
+      throws E
+  {
+    DeferredUpdates deferred = _current.get();
+    if(deferred == null) {
+      update.apply();
+    } else {
+      deferred._updates.add(update);
+    }
+  }
+
+  /**
+   * Check whether updates are deferred on the current thread.
+   *
+   * @return True if updates are recorded instead of being applied.
+   */
+  public static boolean isDeferring() {
+    return _current.get() != null;
+  }
+
+  /**
+   * Record the updates made on the current thread in this object until
+   * {@link #end()} is called.
+   */
+  public void begin() {
+    _current.set(this);
+  }
+
+  /**
+   * Stop recording the updates made on the current thread.
+   */
+  public void end() {
+    _current.remove();
+  }
+
+  /**
+   * Apply the recorded updates in order. Must be called from a thread that
+   * does not defer its updates.
+   *
+   * @throws Exception If one of the updates fails. Following updates are not
+   *                   applied.
+   */
+  public void apply() throws Exception {
+    for(Update<?> update : _updates) {
+      update.apply();
+    }
+    _updates.clear();
+  }
+}
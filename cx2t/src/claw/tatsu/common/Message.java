@@ -8,6 +8,7 @@ import claw.tatsu.xcodeml.error.XanalysisError;
 import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 import xcodeml.util.XmOption;
 
+import java.io.PrintStream;
 import java.util.List;
 
 /**
@@ -31,7 +32,7 @@ public final class Message {
    */
   public static void debug(String message) {
     if(XmOption.isDebugOutput()) {
-      System.err.println(message);
+      Context.get().getErr().println(message);
     }
   }
 
@@ -45,12 +46,13 @@ public final class Message {
   private static void printMessages(String originalFile, String prefix,
                                     List<XanalysisError> messages)
   {
+    PrintStream err = Context.get().getErr();
     for(XanalysisError message : messages) {
       if(message.getLine() == 0) {
-        System.err.println(String.format("%s:-:- %s %s", originalFile, prefix,
+        err.println(String.format("%s:-:- %s %s", originalFile, prefix,
             message.getMessage()));
       } else {
-        System.err.println(String.format("%s:%s:- %s %s", originalFile,
+        err.println(String.format("%s:%s:- %s %s", originalFile,
             message.getConcatLines(), prefix, message.getMessage()));
       }
     }
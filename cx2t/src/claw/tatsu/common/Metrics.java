@@ -0,0 +1,381 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.common;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wall time, CPU time and allocated bytes spent in the different parts of a
+ * translation. Measures are taken with the ThreadMXBean of the current thread
+ * and accumulated per phase, per transformation group and per directive.
+ *
+ * A disabled instance is used when no metrics are requested. Its probes are
+ * null and recording them does nothing.
+ *
+ * @author clementval
+ */
+public class Metrics {
+
+  /**
+   * Granularity of a measure.
+   */
+  public enum Kind {
+    PHASE("phases"),
+    GROUP("groups"),
+    DIRECTIVE("directives");
+
+    private final String _key;
+
+    Kind(String key) {
+      _key = key;
+    }
+
+    /**
+     * Get the key used for this kind in the JSON output.
+     *
+     * @return JSON key.
+     */
+    public String key() {
+      return _key;
+    }
+  }
+
+  /**
+   * Counters of the current thread at the start of a measure.
+   */
+  public static final class Probe {
+
+    private final long _wall;
+    private final long _cpu;
+    private final long _allocated;
+
+    /**
+     * Take a snapshot of the counters of the current thread.
+     */
+    private Probe() {
+      _wall = System.nanoTime();
+      _cpu = cpuTime();
+      _allocated = allocatedBytes();
+    }
+  }
+
+  /**
+   * Accumulated measures of one phase, group or directive.
+   */
+  public static final class Entry {
+
+    private final String _name;
+    private final int _line;
+    private long _count = 0;
+    private long _wallNanos = 0;
+    private long _cpuNanos = 0;
+    private long _allocatedBytes = 0;
+
+    /**
+     * Constructs an empty entry.
+     *
+     * @param name Name of the phase, group or directive.
+     * @param line Line of the directive. 0 if not applicable.
+     */
+    private Entry(String name, int line) {
+      _name = name;
+      _line = line;
+    }
+
+    /**
+     * Add measures to this entry. Unsupported measures are kept at -1.
+     *
+     * @param count     Number of measures.
+     * @param wall      Wall time in nanoseconds.
+     * @param cpu       CPU time in nanoseconds. Negative if unsupported.
+     * @param allocated Allocated bytes. Negative if unsupported.
+     */
+    private void add(long count, long wall, long cpu, long allocated) {
+      _count += count;
+      _wallNanos += wall;
+      _cpuNanos = _cpuNanos < 0 || cpu < 0 ? -1 : _cpuNanos + cpu;
+      _allocatedBytes = _allocatedBytes < 0 || allocated < 0
+          ? -1 : _allocatedBytes + allocated;
+    }
+
+    public String getName() {
+      return _name;
+    }
+
+    public int getLine() {
+      return _line;
+    }
+
+    public long getCount() {
+      return _count;
+    }
+
+    public long getWallNanos() {
+      return _wallNanos;
+    }
+
+    public long getCpuNanos() {
+      return _cpuNanos;
+    }
+
+    public long getAllocatedBytes() {
+      return _allocatedBytes;
+    }
+  }
+
+  public static final Metrics DISABLED = new Metrics(false);
+
+  private static final ThreadMXBean THREADS =
+      ManagementFactory.getThreadMXBean();
+
+  private final boolean _enabled;
+  private final Map<Kind, Map<String, Entry>> _entries =
+      new EnumMap<>(Kind.class);
+  private String _unit = null;
+  private int _units = 0;
+
+  /**
+   * Constructs a new enabled metrics object.
+   */
+  public Metrics() {
+    this(true);
+  }
+
+  /**
+   * Constructs a new metrics object.
+   *
+   * @param enabled If false, nothing is ever measured.
+   */
+  private Metrics(boolean enabled) {
+    _enabled = enabled;
+    for(Kind kind : Kind.values()) {
+      _entries.put(kind, new LinkedHashMap<>());
+    }
+  }
+
+  /**
+   * Check whether measures are taken.
+   *
+   * @return True if measures are taken.
+   */
+  public boolean isEnabled() {
+    return _enabled;
+  }
+
+  /**
+   * Set the name of the translation unit measured.
+   *
+   * @param unit Name of the translation unit.
+   */
+  public void setUnit(String unit) {
+    _unit = unit;
+  }
+
+  /**
+   * Start a measure on the current thread.
+   *
+   * @return Probe to be passed to {@link #stop}. Null if disabled.
+   */
+  public Probe start() {
+    return _enabled ? new Probe() : null;
+  }
+
+  /**
+   * Stop a measure on the current thread and accumulate it.
+   *
+   * @param kind  Granularity of the measure.
+   * @param name  Name of the phase, group or directive.
+   * @param line  Line of the directive. 0 if not applicable.
+   * @param probe Probe returned by {@link #start()} on the same thread.
+   */
+  public void stop(Kind kind, String name, int line, Probe probe) {
+    if(probe == null) {
+      return;
+    }
+    long wall = System.nanoTime() - probe._wall;
+    long cpu = cpuTime();
+    long allocated = allocatedBytes();
+    record(kind, name, line, 1, wall,
+        cpu < 0 || probe._cpu < 0 ? -1 : cpu - probe._cpu,
+        allocated < 0 || probe._allocated < 0
+            ? -1 : allocated - probe._allocated);
+  }
+
+  /**
+   * Stop a phase or group measure on the current thread and accumulate it.
+   *
+   * @param kind  Granularity of the measure.
+   * @param name  Name of the phase or group.
+   * @param probe Probe returned by {@link #start()} on the same thread.
+   */
+  public void stop(Kind kind, String name, Probe probe) {
+    stop(kind, name, 0, probe);
+  }
+
+  /**
+   * Accumulate measures in the entry of the given name and line.
+   *
+   * @param kind      Granularity of the measure.
+   * @param name      Name of the phase, group or directive.
+   * @param line      Line of the directive. 0 if not applicable.
+   * @param count     Number of measures.
+   * @param wall      Wall time in nanoseconds.
+   * @param cpu       CPU time in nanoseconds. Negative if unsupported.
+   * @param allocated Allocated bytes. Negative if unsupported.
+   */
+  private synchronized void record(Kind kind, String name, int line,
+                                   long count, long wall, long cpu,
+                                   long allocated)
+  {
+    _entries.get(kind).computeIfAbsent(name + ":" + line,
+        k -> new Entry(name, line)).add(count, wall, cpu, allocated);
+  }
+
+  /**
+   * Add the measures of a translation unit to this aggregate. Directives of
+   * all units are accumulated per directive name regardless of their line.
+   *
+   * @param unit Measures of a translation unit.
+   */
+  public void addUnit(Metrics unit) {
+    if(!_enabled || unit == null) {
+      return;
+    }
+    synchronized(unit) {
+      for(Kind kind : Kind.values()) {
+        for(Entry entry : unit._entries.get(kind).values()) {
+          record(kind, entry._name,
+              kind == Kind.DIRECTIVE ? 0 : entry._line, entry._count,
+              entry._wallNanos, entry._cpuNanos, entry._allocatedBytes);
+        }
+      }
+    }
+    synchronized(this) {
+      ++_units;
+    }
+  }
+
+  /**
+   * Get the entries of a given kind in the order they were first measured.
+   *
+   * @param kind Granularity of the measures.
+   * @return Copy of the list of entries.
+   */
+  public synchronized List<Entry> getEntries(Kind kind) {
+    return new ArrayList<>(_entries.get(kind).values());
+  }
+
+  /**
+   * Write the measures as a JSON object to a file.
+   *
+   * @param path Path of the output file.
+   * @throws IOException If the file cannot be written.
+   */
+  public void write(String path) throws IOException {
+    try(Writer out = Files.newBufferedWriter(Paths.get(path),
+        StandardCharsets.UTF_8))
+    {
+      write(out);
+    }
+  }
+
+  /**
+   * Write the measures as a JSON object.
+   *
+   * @param out Output. The caller is in charge of closing it.
+   * @throws IOException If the output cannot be written.
+   */
+  public synchronized void write(Writer out) throws IOException {
+    out.write("{\n");
+    if(_unit != null) {
+      out.write("  \"unit\": " + quote(_unit) + ",\n");
+    }
+    if(_units > 0) {
+      out.write("  \"units\": " + _units + ",\n");
+    }
+    Kind[] kinds = Kind.values();
+    for(int k = 0; k < kinds.length; ++k) {
+      out.write("  " + quote(kinds[k].key()) + ": [");
+      String separator = "\n";
+      for(Entry entry : _entries.get(kinds[k]).values()) {
+        out.write(separator);
+        out.write("    {\"name\": " + quote(entry._name));
+        if(kinds[k] == Kind.DIRECTIVE && entry._line > 0) {
+          out.write(", \"line\": " + entry._line);
+        }
+        out.write(", \"count\": " + entry._count);
+        out.write(", \"wall_ns\": " + entry._wallNanos);
+        out.write(", \"cpu_ns\": " + entry._cpuNanos);
+        out.write(", \"allocated_bytes\": " + entry._allocatedBytes + "}");
+        separator = ",\n";
+      }
+      out.write(separator.equals("\n") ? "]" : "\n  ]");
+      out.write(k == kinds.length - 1 ? "\n" : ",\n");
+    }
+    out.write("}\n");
+    out.flush();
+  }
+
+  /**
+   * Quote and escape a string for JSON output.
+   *
+   * @param value String to quote.
+   * @return JSON string literal.
+   */
+  private static String quote(String value) {
+    StringBuilder str = new StringBuilder("\"");
+    for(int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if(c == '"' || c == '\\') {
+        str.append('\\').append(c);
+      } else if(c < ' ') {
+        str.append(String.format("\\u%04x", (int) c));
+      } else {
+        str.append(c);
+      }
+    }
+    return str.append('"').toString();
+  }
+
+  /**
+   * Get the CPU time of the current thread.
+   *
+   * @return CPU time in nanoseconds. -1 if not supported by the JVM.
+   */
+  private static long cpuTime() {
+    return THREADS.isCurrentThreadCpuTimeSupported()
+        ? THREADS.getCurrentThreadCpuTime() : -1;
+  }
+
+  /**
+   * Get the number of bytes allocated by the current thread.
+   *
+   * @return Allocated bytes. -1 if not supported by the JVM.
+   */
+  private static long allocatedBytes() {
+    if(THREADS instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean threads =
+          (com.sun.management.ThreadMXBean) THREADS;
+      if(threads.isThreadAllocatedMemorySupported()
+          && threads.isThreadAllocatedMemoryEnabled())
+      {
+        return threads.getThreadAllocatedBytes(
+            Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+}
@@ -68,7 +68,7 @@ public final class Utility {
       str.append(" ");
     }
     str.append(value);
-    System.out.println(str.toString());
+    Context.get().getOut().println(str.toString());
   }
 
   /**
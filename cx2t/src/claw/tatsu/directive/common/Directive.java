@@ -5,6 +5,7 @@
 package claw.tatsu.directive.common;
 
 import claw.tatsu.TatsuConstant;
+import claw.tatsu.analysis.dependency.DependenceAnalysis;
 import claw.tatsu.common.CompilerDirective;
 import claw.tatsu.common.Context;
 import claw.tatsu.common.Message;
@@ -12,6 +13,7 @@ import claw.tatsu.directive.generator.DirectiveGenerator;
 
 import claw.tatsu.primitive.Function;
 import claw.tatsu.primitive.Pragma;
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.xnode.XnodeUtil;
 import claw.tatsu.xcodeml.xnode.common.Xattr;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
@@ -122,6 +124,28 @@ public final class Directive {
     return p;
   }
 
+  /**
+   * Generate a wait directive for asynchronous parallel regions.
+   *
+   * @param xcodeml Object representation of the current XcodeML
+   *                representation in which the pragmas will be generated.
+   * @param hook    Node used as a hook for insertion.
+   * @param queues  Queues to wait for. All queues if empty.
+   * @param after   If true, the directive is generated after the hook.
+   *                Otherwise, it is generated before.
+   * @return Last inserted pragma. Null if nothing is inserted.
+   */
+  public static Xnode generateWait(XcodeProgram xcodeml, Xnode hook,
+                                   List<Integer> queues, boolean after)
+  {
+    String[] directives =
+        Context.get().getGenerator().getWaitDirective(queues);
+    if(directives.length == 0) {
+      return null;
+    }
+    return insertPragmas(xcodeml, directives, hook, after);
+  }
+
   /**
    * Check if there is a !$claw nodep directive before the do statement.
    *
@@ -197,6 +221,45 @@ public final class Directive {
     return grip;
   }
 
+  /**
+   * Generate directive directive for a parallel loop nest whose outer levels
+   * are distributed over the gangs and innermost level over the vector lanes.
+   *
+   * @param xcodeml        Object representation of the current XcodeML
+   *                       representation in which the pragmas will be
+   *                       generated.
+   * @param privates       List of variables to be set privates.
+   * @param outerStmt      Outermost do statement of the loop nest.
+   * @param innerStmt      Do statement distributed over the vector lanes.
+   * @param gangCollapse   Number of loops distributed over the gangs.
+   * @param vectorCollapse Number of loops distributed over the vector lanes.
+   * @return Directive just over the outermost do statement.
+   */
+  public static Xnode generateGangVectorLoopClause(XcodeProgram xcodeml,
+                                                   List<String> privates,
+                                                   Xnode outerStmt,
+                                                   Xnode innerStmt,
+                                                   int gangCollapse,
+                                                   int vectorCollapse)
+  {
+    if(Context.get().getGenerator().getDirectiveLanguage()
+        == CompilerDirective.NONE)
+    {
+      return null;
+    }
+
+    DirectiveGenerator dg = Context.get().getGenerator();
+    addPragmasBefore(xcodeml, dg.getStartParallelDirective(null), outerStmt);
+    Xnode grip = addPragmasBefore(xcodeml,
+        dg.getStartGangLoopDirective(gangCollapse, ""), outerStmt);
+    addPragmasBefore(xcodeml, dg.getStartVectorLoopDirective(vectorCollapse,
+        format(dg.getPrivateClause(privates), null)), innerStmt);
+    addPragmaAfter(xcodeml, dg.getEndVectorLoopDirective(), innerStmt);
+    addPragmaAfter(xcodeml, dg.getEndParallelDirective(), outerStmt);
+    addPragmaAfter(xcodeml, dg.getEndLoopDirective(), outerStmt);
+    return grip;
+  }
+
   /**
    * Format two string together.
    *
@@ -218,15 +281,31 @@ public final class Directive {
    *                  region.
    * @param endStmt   End statement representing the end of the loop region.
    * @param collapse  If value bigger than 0, a corresponding collapse
-   *                  constructs can be generated.
+   *                  constructs can be generated. The value is reduced to the
+   *                  number of levels proven independent by the dependence
+   *                  analysis. When all collapsed levels are independent and
+   *                  no scalar is shared by the iterations, the independent
+   *                  clause is added.
    */
   public static void generateLoopDirectives(XcodeProgram xcodeml,
                                             Xnode startStmt, Xnode endStmt,
                                             int collapse)
   {
-    insertPragmas(xcodeml, startStmt, endStmt, Context.get().getGenerator().
-            getStartLoopDirective(collapse, false, false, ""),
-        Context.get().getGenerator().getEndLoopDirective());
+    DirectiveGenerator dg = Context.get().getGenerator();
+    String clauses = "";
+    if(Xnode.isOfCode(startStmt, Xcode.F_DO_STATEMENT)) {
+      int depth = Math.max(collapse, 1);
+      DependenceAnalysis analysis = new DependenceAnalysis(
+          new NestedDoStatement(startStmt, depth));
+      int safe = analysis.getSafeCollapseDepth();
+      collapse = Math.min(collapse, Math.max(safe, 1));
+      if(safe >= depth && analysis.getSharedScalars().isEmpty()) {
+        clauses = dg.getIndependentClause();
+      }
+    }
+    insertPragmas(xcodeml, startStmt, endStmt,
+        dg.getStartLoopDirective(collapse, false, false, clauses),
+        dg.getEndLoopDirective());
   }
 
   /**
@@ -4,6 +4,9 @@
  */
 package claw.tatsu.directive.configuration;
 
+import claw.tatsu.analysis.cost.CostModel;
+import claw.tatsu.analysis.cost.RooflineCostModel;
+
 import java.util.Map;
 
 /**
@@ -18,12 +21,20 @@ public class AcceleratorConfiguration {
   private static final String ACCELERATOR_LOCAL_STRATEGY =
       "accelerator_local_strategy";
   private static final String ACCELERATOR_COLLAPSE = "accelerator_collapse";
+  private static final String ACCELERATOR_ASYNC_QUEUES =
+      "accelerator_async_queues";
+  private static final String ACCELERATOR_COST_MODEL =
+      "accelerator_cost_model";
+  private static final String COST_MODEL_NONE = "none";
+  private static final String COST_MODEL_ROOFLINE = "roofline";
 
   private AcceleratorDataStrategy _dataStrategy =
       AcceleratorDataStrategy.PRESENT;
   private AcceleratorLocalStrategy _localStrategy =
       AcceleratorLocalStrategy.PRIVATE;
   private boolean _collapseStrategy = false;
+  private int _asyncQueues = 0;
+  private CostModel _costModel = null;
 
   /**
    * Constructs a AcceleratorConfiguration object holding accelerator
@@ -44,6 +55,37 @@ public class AcceleratorConfiguration {
       _collapseStrategy =
           Boolean.parseBoolean(parameters.get(ACCELERATOR_COLLAPSE));
     }
+    if(parameters.containsKey(ACCELERATOR_ASYNC_QUEUES)) {
+      _asyncQueues =
+          Integer.parseInt(parameters.get(ACCELERATOR_ASYNC_QUEUES));
+    }
+    if(parameters.containsKey(ACCELERATOR_COST_MODEL)) {
+      _costModel = createCostModel(parameters.get(ACCELERATOR_COST_MODEL));
+    }
+  }
+
+  /**
+   * Create the cost model from its configuration value.
+   *
+   * @param value none, roofline or the name of a class implementing the
+   *              CostModel interface.
+   * @return New cost model. Null if no cost model is used.
+   * @throws IllegalArgumentException If the class cannot be instantiated.
+   */
+  private static CostModel createCostModel(String value) {
+    if(value == null || value.isEmpty() || value.equals(COST_MODEL_NONE)) {
+      return null;
+    }
+    if(value.equals(COST_MODEL_ROOFLINE)) {
+      return new RooflineCostModel();
+    }
+    try {
+      return Class.forName(value).asSubclass(CostModel.class)
+          .getDeclaredConstructor().newInstance();
+    } catch(ReflectiveOperationException | ClassCastException e) {
+      throw new IllegalArgumentException("Cost model class " + value +
+          " not available");
+    }
   }
 
   /**
@@ -66,4 +108,21 @@ public class AcceleratorConfiguration {
    * @return True if collapse strategy is on. False otherwise.
    */
   public boolean hasCollapseStrategy() { return _collapseStrategy; }
+
+  /**
+   * Get the number of asynchronous queues independent parallel regions can be
+   * launched on.
+   *
+   * @return Number of asynchronous queues. 0 by default meaning parallel
+   * regions are synchronous.
+   */
+  public int getAsyncQueues() { return _asyncQueues; }
+
+  /**
+   * Get the cost model choosing the mapping of the loop nests.
+   *
+   * @return Cost model. Null by default meaning the loop nests are fully
+   * collapsed.
+   */
+  public CostModel getCostModel() { return _costModel; }
 }
@@ -80,6 +80,38 @@ public abstract class DirectiveGenerator {
    */
   public abstract String[] getEndLoopDirective();
 
+  /**
+   * Get the formatted directive to distribute the outer levels of a loop nest
+   * over the gangs when its innermost level is mapped on the vector lanes.
+   * The end of the directive is given by getEndLoopDirective.
+   *
+   * @param value   Collapse value. if greater than 1, a collapse clause will be
+   *                added to the construct.
+   * @param clauses Additional clauses append at the start directive.
+   * @return String value that represents the start of the gang loop.
+   */
+  public abstract String[] getStartGangLoopDirective(int value,
+                                                     String clauses);
+
+  /**
+   * Get the formatted directive to distribute the innermost level of a loop
+   * nest over the vector lanes of a gang.
+   *
+   * @param value   Collapse value. if greater than 1, a collapse clause will be
+   *                added to the construct.
+   * @param clauses Additional clauses append at the start directive.
+   * @return String value that represents the start of the vector loop.
+   */
+  public abstract String[] getStartVectorLoopDirective(int value,
+                                                       String clauses);
+
+  /**
+   * Get the formatted directive to end the vector loop.
+   *
+   * @return String value that represents the end of the vector loop.
+   */
+  public abstract String[] getEndVectorLoopDirective();
+
   /**
    * Get formatted pragma defined by the directive directive prefix and the
    * given clauses.
@@ -184,6 +216,36 @@ public abstract class DirectiveGenerator {
    */
   public abstract String getSequentialClause();
 
+  /**
+   * Get the corresponding clause to assert that the iterations of a loop are
+   * independent.
+   *
+   * @return String value that represents the clause. Empty if the loop
+   * construct already implies independent iterations.
+   */
+  public abstract String getIndependentClause();
+
+  /**
+   * Get the corresponding clause to launch a parallel region asynchronously.
+   *
+   * @param queue  Asynchronous queue of the parallel region. Starts at 1.
+   * @param reads  Arrays only read in the parallel region.
+   * @param writes Arrays written in the parallel region.
+   * @return String value that represents the clause. Empty if asynchronous
+   * parallel regions are not supported.
+   */
+  public abstract String getAsyncClause(int queue, List<String> reads,
+                                        List<String> writes);
+
+  /**
+   * Get the corresponding directive to wait for asynchronous parallel regions.
+   *
+   * @param queues Queues to wait for. All queues if empty.
+   * @return String value that represents the directive. Empty if no wait is
+   * needed.
+   */
+  public abstract String[] getWaitDirective(List<Integer> queues);
+
   /**
    * Get the list of unsupported statements in an directive region.
    *
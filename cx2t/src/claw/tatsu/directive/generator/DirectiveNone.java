@@ -47,6 +47,21 @@ public class DirectiveNone extends DirectiveGenerator {
     return new String[0];
   }
 
+  @Override
+  public String[] getStartGangLoopDirective(int value, String clauses) {
+    return new String[0];
+  }
+
+  @Override
+  public String[] getStartVectorLoopDirective(int value, String clauses) {
+    return new String[0];
+  }
+
+  @Override
+  public String[] getEndVectorLoopDirective() {
+    return new String[0];
+  }
+
   @Override
   public String[] getSingleDirective(String clause) {
     return new String[0];
@@ -106,4 +121,21 @@ public class DirectiveNone extends DirectiveGenerator {
   public String getSequentialClause() {
     return DirectiveGenerator.EMPTY;
   }
+
+  @Override
+  public String getIndependentClause() {
+    return DirectiveGenerator.EMPTY;
+  }
+
+  @Override
+  public String getAsyncClause(int queue, List<String> reads,
+                               List<String> writes)
+  {
+    return DirectiveGenerator.EMPTY;
+  }
+
+  @Override
+  public String[] getWaitDirective(List<Integer> queues) {
+    return new String[0];
+  }
 }
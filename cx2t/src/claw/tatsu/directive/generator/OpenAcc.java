@@ -11,6 +11,7 @@ import claw.tatsu.xcodeml.xnode.common.Xcode;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * OpenACC specific directive directive generator.
@@ -37,6 +38,11 @@ public class OpenAcc extends DirectiveGenerator {
   private static final String OPENACC_UPDATE = "update";
   private static final String OPENACC_DEVICE = "device";
   private static final String OPENACC_HOST = "host";
+  private static final String OPENACC_INDEPENDENT = "independent";
+  private static final String OPENACC_ASYNC = "async";
+  private static final String OPENACC_WAIT = "wait";
+  private static final String OPENACC_GANG = "gang";
+  private static final String OPENACC_VECTOR = "vector";
 
   private OpenAccExecutionMode _mode;
 
@@ -182,6 +188,33 @@ public class OpenAcc extends DirectiveGenerator {
     return OPENACC_SEQUENTIAL;
   }
 
+  @Override
+  public String getIndependentClause() {
+    return OPENACC_INDEPENDENT;
+  }
+
+  @Override
+  public String getAsyncClause(int queue, List<String> reads,
+                               List<String> writes)
+  {
+    // Dependent parallel regions are ordered by their queue
+    return String.format("%s(%d)", OPENACC_ASYNC, queue);
+  }
+
+  @Override
+  public String[] getWaitDirective(List<Integer> queues) {
+    if(queues.isEmpty()) {
+      return new String[]{
+          String.format(FORMAT2, OPENACC_PREFIX, OPENACC_WAIT)
+      };
+    }
+    return new String[]{
+        String.format(FORMAT2, OPENACC_PREFIX, String.format(FORMATPAR,
+            OPENACC_WAIT, queues.stream().map(String::valueOf)
+                .collect(Collectors.joining(","))))
+    };
+  }
+
   @Override
   public String[] getStartLoopDirective(int value, boolean seq,
                                         boolean naked, String clauses)
@@ -225,6 +258,41 @@ public class OpenAcc extends DirectiveGenerator {
     return new String[0];
   }
 
+  @Override
+  public String[] getStartGangLoopDirective(int value, String clauses) {
+    //!$acc loop gang [collapse(<value>)]
+    return new String[]{
+        String.format(FORMAT5, OPENACC_PREFIX, OPENACC_LOOP, OPENACC_GANG,
+            getCollapseClause(value), clauses.trim()).replaceAll("\\s+", " ")
+            .trim()
+    };
+  }
+
+  @Override
+  public String[] getStartVectorLoopDirective(int value, String clauses) {
+    //!$acc loop vector [collapse(<value>)]
+    return new String[]{
+        String.format(FORMAT5, OPENACC_PREFIX, OPENACC_LOOP, OPENACC_VECTOR,
+            getCollapseClause(value), clauses.trim()).replaceAll("\\s+", " ")
+            .trim()
+    };
+  }
+
+  /**
+   * Get the collapse clause for the given value.
+   *
+   * @param value Collapse value.
+   * @return Collapse clause or empty string if value is 1 or less.
+   */
+  private String getCollapseClause(int value) {
+    return value > 1 ? String.format("%s(%d)", OPENACC_COLLAPSE, value) : "";
+  }
+
+  @Override
+  public String[] getEndVectorLoopDirective() {
+    return new String[0];
+  }
+
   @Override
   public List<Xcode> getUnsupportedStatements() {
     return Arrays.asList(
@@ -10,7 +10,9 @@ import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.directive.configuration.OpenMpConfiguration;
 
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * OpenMP base directive directive generator. Implements everything that is
@@ -45,6 +47,12 @@ public class OpenMp extends DirectiveGenerator {
   private static final String OPENMP_ALLOC = "alloc";
   private static final String OPENMP_DO = "do";
   private static final String OPENMP_END = "end";
+  private static final String OPENMP_NOWAIT = "nowait";
+  private static final String OPENMP_DEPEND = "depend";
+  private static final String OPENMP_IN = "in";
+  private static final String OPENMP_INOUT = "inout";
+  private static final String OPENMP_TASKWAIT = "taskwait";
+  private static final String OPENMP_SIMD = "simd";
 
   private OpenMpExecutionMode _mode;
 
@@ -261,6 +269,66 @@ public class OpenMp extends DirectiveGenerator {
     // TODO: For OpenMP this is a region and not a clause
   }
 
+  @Override
+  public String getIndependentClause() {
+    // Iterations of a worksharing loop are always independent
+    return DirectiveGenerator.EMPTY;
+  }
+
+  @Override
+  public String getAsyncClause(int queue, List<String> reads,
+                               List<String> writes)
+  {
+    // Only target regions can be deferred
+    if(!Context.isTarget(Target.GPU)) {
+      return DirectiveGenerator.EMPTY;
+    }
+    // Dependent target tasks are ordered by their depend clauses, not queues
+    Set<String> inout = getDependItems(writes);
+    Set<String> in = getDependItems(reads);
+    in.removeAll(inout);
+    String clauses = OPENMP_NOWAIT;
+    if(!in.isEmpty()) {
+      clauses += " " + String.format(FORMATPAR, OPENMP_DEPEND,
+          String.format("%s:%s", OPENMP_IN, String.join(",", in)));
+    }
+    if(!inout.isEmpty()) {
+      clauses += " " + String.format(FORMATPAR, OPENMP_DEPEND,
+          String.format("%s:%s", OPENMP_INOUT, String.join(",", inout)));
+    }
+    return clauses;
+  }
+
+  /**
+   * Get the depend items of the variables accessed by a target region.
+   * OpenMP 4.5 does not accept structure members in depend clauses and items
+   * of sibling tasks must not partially overlap. A derived type member is
+   * therefore replaced by the variable holding it.
+   *
+   * @param variables Accessed variables. Derived type members are given by
+   *                  their path (t%a).
+   * @return Depend items in the order of the variables.
+   */
+  private static Set<String> getDependItems(List<String> variables) {
+    Set<String> items = new LinkedHashSet<>();
+    for(String variable : variables) {
+      int member = variable.indexOf('%');
+      items.add(member < 0 ? variable : variable.substring(0, member));
+    }
+    return items;
+  }
+
+  @Override
+  public String[] getWaitDirective(List<Integer> queues) {
+    // Depend clauses already order dependent target tasks
+    if(!Context.isTarget(Target.GPU) || !queues.isEmpty()) {
+      return new String[0];
+    }
+    return new String[]{
+        String.format(FORMAT2, OPENMP_PREFIX, OPENMP_TASKWAIT)
+    };
+  }
+
   @Override
   public String[] getStartLoopDirective(int value, boolean seq,
                                         boolean naked, String clauses)
@@ -330,6 +398,49 @@ public class OpenMp extends DirectiveGenerator {
     }
   }
 
+  @Override
+  public String[] getStartGangLoopDirective(int value, String clauses) {
+    // Teams distribute on GPU, worksharing loop on CPU
+    return getStartLoopDirective(value, false, false, clauses);
+  }
+
+  @Override
+  public String[] getStartVectorLoopDirective(int value, String clauses) {
+    clauses = clauses.trim();
+    if(value > 1) {
+      clauses = String.format(FORMAT2, clauses,
+          String.format("%s(%d)", OPENMP_COLLAPSE, value)).trim();
+    }
+    if(Context.isTarget(Target.GPU)) {
+      //!$omp parallel do simd [collapse(#)]
+      return new String[]{
+          String.format(FORMAT5, OPENMP_PREFIX, OPENMP_PARALLEL, OPENMP_DO,
+              OPENMP_SIMD, clauses).trim()
+      };
+    } else {
+      //!$omp simd [collapse(#)]
+      return new String[]{
+          String.format(FORMAT3, OPENMP_PREFIX, OPENMP_SIMD, clauses).trim()
+      };
+    }
+  }
+
+  @Override
+  public String[] getEndVectorLoopDirective() {
+    if(Context.isTarget(Target.GPU)) {
+      //!$omp end parallel do simd
+      return new String[]{
+          String.format(FORMAT5, OPENMP_PREFIX, OPENMP_END, OPENMP_PARALLEL,
+              OPENMP_DO, OPENMP_SIMD)
+      };
+    } else {
+      //!$omp end simd
+      return new String[]{
+          String.format(FORMAT3, OPENMP_PREFIX, OPENMP_END, OPENMP_SIMD)
+      };
+    }
+  }
+
   @Override
   public List<Xcode> getUnsupportedStatements() {
     return Arrays.asList(
@@ -8,6 +8,7 @@ import claw.tatsu.TatsuConstant;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.common.XnodeIndex;
 import org.w3c.dom.Node;
 
 /**
@@ -96,11 +97,13 @@ public final class Body {
       Node nextSibling = currentSibling.getNextSibling();
       targetBody.element().insertBefore(currentSibling,
           firstStatementInBody);
+      XnodeIndex.inserted(currentSibling);
       currentSibling = nextSibling;
     }
     if(included && currentSibling == until.element()) {
       targetBody.element().insertBefore(currentSibling,
           firstStatementInBody);
+      XnodeIndex.inserted(currentSibling);
     }
   }
 
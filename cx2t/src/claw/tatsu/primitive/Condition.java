@@ -7,6 +7,7 @@ package claw.tatsu.primitive;
 import claw.tatsu.xcodeml.xnode.Xname;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.common.XnodeCursor;
 
 import java.util.List;
 import java.util.Set;
@@ -35,8 +36,13 @@ public final class Condition {
     if(!Xnode.isOfCode(condition, Xcode.CONDITION) || variables.isEmpty()) {
       return false;
     }
-    return condition.matchAll(Xcode.VAR).stream()
-        .anyMatch(v -> v.isNotArrayIndex() && variables.contains(v.value()));
+    XnodeCursor cursor = new XnodeCursor(condition, Xcode.VAR);
+    while(cursor.next()) {
+      if(cursor.isNotArrayIndex() && variables.contains(cursor.value())) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
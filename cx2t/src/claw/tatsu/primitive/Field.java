@@ -442,11 +442,8 @@ public final class Field {
       }
     } else { // Array reference to array reference
       List<Xnode> refs = XnodeUtil.getAllArrayReferences(parent,
-          promotionInfo.getIdentifier());
+          promotionInfo.getIdentifier(), Xcode.F_ALLOCATE_STATEMENT);
       for(Xnode ref : refs) {
-        if(ref.matchAncestor(Xcode.F_ALLOCATE_STATEMENT) != null) {
-          continue;
-        }
         int beforePositionIndex = 0; // First arrayIndex after varRef at pos 0
         int inMiddlePositionIndex = 1;
         for(DimensionDefinition dim : promotionInfo.getDimensions()) {
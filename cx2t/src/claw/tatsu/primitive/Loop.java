@@ -11,6 +11,7 @@ import claw.tatsu.xcodeml.abstraction.HoistedNestedDoStatement;
 import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.XcodeML;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
@@ -19,6 +20,7 @@ import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
 import claw.tatsu.xcodeml.xnode.fortran.FortranType;
 import claw.tatsu.xcodeml.xnode.fortran.Xintrinsic;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -432,6 +434,38 @@ public final class Loop {
         Range.compare(indexRange1, indexRange2, withLowerBound);
   }
 
+  /**
+   * Get a key of the iteration range of a do statement. Do statements with
+   * the same iteration range according to
+   * {@link #hasSameIndexRange(Xnode, Xnode)} have equal keys. The step is not
+   * part of the key.
+   *
+   * @param doStmt Do statement.
+   * @return Induction variable, lower and upper bound values. Null if the do
+   * statement has no bounded iteration range.
+   */
+  public static List<String> getIndexRangeKey(Xnode doStmt) {
+    if(!Xnode.isOfCode(doStmt, Xcode.F_DO_STATEMENT)) {
+      return null;
+    }
+    Xnode inductionVar = doStmt.matchDirectDescendant(Xcode.VAR);
+    Xnode indexRange = doStmt.matchDirectDescendant(Xcode.INDEX_RANGE);
+    if(inductionVar == null || indexRange == null
+        || indexRange.getBooleanAttribute(Xattr.IS_ASSUMED_SHAPE))
+    {
+      return null;
+    }
+    Xnode low = indexRange.matchSeq(Xcode.LOWER_BOUND);
+    Xnode up = indexRange.matchSeq(Xcode.UPPER_BOUND);
+    if(low == null || up == null || low.firstChild() == null
+        || up.firstChild() == null)
+    {
+      return null;
+    }
+    return Arrays.asList(inductionVar.value(), low.firstChild().value(),
+        up.firstChild().value());
+  }
+
   /**
    * Compare the iteration range of two do statements.
    *
@@ -5,16 +5,21 @@
 package claw.tatsu.primitive;
 
 import claw.tatsu.common.Context;
+import claw.tatsu.common.DeferredUpdates;
 import claw.tatsu.xcodeml.abstraction.PromotionInfo;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
+import claw.tatsu.xcodeml.module.ModuleCache;
+import claw.tatsu.xcodeml.module.ModuleFileIndex;
 import claw.tatsu.xcodeml.xnode.XnodeUtil;
 import claw.tatsu.xcodeml.xnode.common.*;
 import claw.tatsu.xcodeml.xnode.fortran.*;
 import org.w3c.dom.Document;
 
-import java.io.File;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Primitive transformation and test and utility for XcodeML/F and CLAW enhanced
@@ -47,15 +52,50 @@ public final class Xmod {
     if(moduleSuffix == null) {
       moduleSuffix = "";
     }
-    for(String dir : Context.get().getModuleCache().getSearchPaths()) {
-      String path = dir + "/" + moduleName + moduleSuffix;
-      File f = new File(path);
-      if(f.exists()) {
-        Document doc = XnodeUtil.readXmlFile(path);
-        return doc != null ? new FortranModule(doc, moduleName, dir) : null;
-      }
+    ModuleCache cache = Context.get().getModuleCache();
+    String fileName = moduleName + moduleSuffix;
+    String dir = cache.locate(fileName);
+    String path = dir == null ? null : dir + "/" + fileName;
+    cache.addLookup(fileName, path);
+    if(path == null) {
+      return null;
+    }
+    // Types are only read when looked up
+    ModuleFileIndex index = cache.getPrefetched(path);
+    if(index == null) {
+      index = cache.getStore() != null ? cache.getStore().load(path)
+          : ModuleFileIndex.read(Paths.get(path));
+    }
+    if(index != null) {
+      return new FortranModule(index.getDocument(), moduleName, dir, index);
+    }
+    // Module files that cannot be indexed are read in full
+    Document doc = XnodeUtil.readXmlFile(path);
+    return doc != null ? new FortranModule(doc, moduleName, dir) : null;
+  }
+
+  /**
+   * Start reading in the background the module files the translation unit
+   * may look up: the module files of the modules it uses and of the modules
+   * it defines.
+   *
+   * @param xcodeml Translation unit.
+   */
+  public static void prefetch(XcodeProgram xcodeml) {
+    ModuleCache cache = Context.get().getModuleCache();
+    Set<String> uses = new LinkedHashSet<>();
+    for(Xnode use : xcodeml.matchAll(Xcode.F_USE_DECL)) {
+      uses.add(use.getAttribute(Xattr.NAME));
+    }
+    for(Xnode use : xcodeml.matchAll(Xcode.F_USE_ONLY_DECL)) {
+      uses.add(use.getAttribute(Xattr.NAME));
+    }
+    for(String moduleName : uses) {
+      cache.prefetch(moduleName + getSuffix());
+    }
+    for(Xnode mod : xcodeml.matchAll(Xcode.F_MODULE_DEFINITION)) {
+      cache.prefetch(mod.getAttribute(Xattr.NAME) + XMOD_FILE_EXTENSION);
     }
-    return null;
   }
 
   /**
@@ -105,6 +145,9 @@ public final class Xmod {
 
   /**
    * Update the function signature in the module file to reflects local changes.
+   * Module files are shared by the whole translation unit. When called from a
+   * transformation applied in parallel, the update is deferred until all the
+   * transformations of the group are applied.
    *
    * @param moduleName    Xmod name to update.
    * @param xcodeml       Current XcodeML file unit.
@@ -119,6 +162,28 @@ public final class Xmod {
                                      FfunctionType fctType,
                                      boolean importFctType)
       throws IllegalTransformationException
+  {
+    DeferredUpdates.applyOrDefer(() -> updateModuleSignature(moduleName,
+        xcodeml, fctDef, fctType, importFctType));
+  }
+
+  /**
+   * Update the function signature in the module file.
+   *
+   * @param moduleName    Xmod name to update.
+   * @param xcodeml       Current XcodeML file unit.
+   * @param fctDef        Function definition that has been changed.
+   * @param fctType       Function type that has been changed.
+   * @param importFctType If true, import the functionType.
+   * @throws IllegalTransformationException If the module file or the function
+   *                                        cannot be located
+   */
+  private static void updateModuleSignature(String moduleName,
+                                            XcodeProgram xcodeml,
+                                            FfunctionDefinition fctDef,
+                                            FfunctionType fctType,
+                                            boolean importFctType)
+      throws IllegalTransformationException
   {
     FortranModule mod;
     if(Context.get().getModuleCache().isModuleLoaded(moduleName)) {
@@ -131,6 +196,8 @@ public final class Xmod {
       }
       Context.get().getModuleCache().add(moduleName, mod);
     }
+    mod.load();
+    mod.markModified();
 
     FfunctionType fctTypeMod;
     if(importFctType) {
@@ -4,6 +4,7 @@
  */
 package claw.tatsu.xcodeml.abstraction;
 
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
 import org.w3c.dom.Element;
@@ -91,7 +92,7 @@ public class AssignStatement extends Xnode {
    * @return List of variables.
    */
   public Set<String> getVarNames() {
-    return filterVars(matchAll(Xcode.VAR));
+    return XnodeUtil.findAllReferences(this);
   }
 
   /**
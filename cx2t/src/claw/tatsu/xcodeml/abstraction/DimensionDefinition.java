@@ -34,6 +34,7 @@ public class DimensionDefinition {
 
   private final String _identifier; // Used as array index
   private InsertionPosition _insertionPosition = InsertionPosition.BEFORE;
+  private int _extent = 0; // Typical number of iterations, 0 if unknown
 
   /**
    * Create the special dimension definition used as place holder for
@@ -68,6 +69,22 @@ public class DimensionDefinition {
         BoundDefinition.BoundType.STEP);
   }
 
+  /**
+   * Copy constructor. Bounds are immutable and shared with the original.
+   *
+   * @param other Dimension definition to copy.
+   */
+  private DimensionDefinition(DimensionDefinition other) {
+    _identifier = other._identifier;
+    _lowerBound = other._lowerBound;
+    _upperBound = other._upperBound;
+    _iterationLowerBound = other._iterationLowerBound;
+    _iterationUpperBound = other._iterationUpperBound;
+    _iterationStep = other._iterationStep;
+    _insertionPosition = other._insertionPosition;
+    _extent = other._extent;
+  }
+
   /**
    * Constructs a new dimension object from the extracted information.
    *
@@ -207,6 +224,38 @@ public class DimensionDefinition {
     _insertionPosition = position;
   }
 
+  /**
+   * Get the typical number of iterations over the dimension. The extent hint
+   * is used if set. Otherwise, it is computed from constant iteration bounds.
+   *
+   * @return Number of iterations. 0 if unknown.
+   */
+  public int getExtent() {
+    if(_extent > 0) {
+      return _extent;
+    }
+    if(_identifier.equals(BASE_DIMENSION_ID) || _iterationLowerBound.isVar()
+        || _iterationUpperBound.isVar() || _iterationStep.isVar()
+        || _iterationStep.getIntValue() <= 0)
+    {
+      return 0;
+    }
+    int extent = (_iterationUpperBound.getIntValue()
+        - _iterationLowerBound.getIntValue())
+        / _iterationStep.getIntValue() + 1;
+    return Math.max(extent, 0);
+  }
+
+  /**
+   * Set the typical number of iterations over the dimension. Used when the
+   * iteration bounds are not constant.
+   *
+   * @param extent Number of iterations.
+   */
+  public void setExtent(int extent) {
+    _extent = extent;
+  }
+
   /**
    * Generate the correct indexRange element with lowerBound, upperBound and
    * step from the current dimension.
@@ -263,7 +312,7 @@ public class DimensionDefinition {
    * @return A newly created copy of this dimension definition.
    */
   public DimensionDefinition copy() {
-    return new DimensionDefinition(_identifier, _lowerBound, _upperBound);
+    return new DimensionDefinition(this);
   }
 
   @Override
@@ -4,6 +4,7 @@
  */
 package claw.tatsu.xcodeml.backend;
 
+import claw.tatsu.common.Context;
 import claw.tatsu.xcodeml.xnode.common.XcodeML;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
@@ -95,7 +96,7 @@ public class OmniBackendDriver {
     PrintWriter writer = null;
     try {
       if(outputFilepath == null || outputFilepath.isEmpty()) {
-        writer = new PrintWriter(System.out);
+        writer = new PrintWriter(Context.get().getOut());
       } else {
         writer = new PrintWriter(new BufferedWriter(new
             FileWriter(outputFilepath)));
@@ -117,6 +118,11 @@ public class OmniBackendDriver {
 
       if(writer != null) {
         writer.flush();
+        if(outputFilepath != null && !outputFilepath.isEmpty()) {
+          // Release the file handle. Matters when many units are decompiled
+          // in the same process.
+          writer.close();
+        }
       } else {
         return false;
       }
@@ -0,0 +1,196 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import claw.tatsu.analysis.topology.DirectedGraph;
+import claw.tatsu.analysis.topology.TopologicalSort;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plan the module source files to be processed by the front-end before a set
+ * of input files can be processed. A module source file is planned if its
+ * module file (.xmod) is missing or older than the source. Modules used by a
+ * planned file are resolved the same way.
+ *
+ * Modules are looked for in the directory of the file using them first and
+ * then in the module search paths.
+ *
+ * @author clementval
+ */
+public class ModuleBuildPlanner {
+
+  private static final String XMOD_EXTENSION = ".xmod";
+
+  // Modules provided with the compilers. No warning if only .xmod is found.
+  private static final Set<String> INTRINSIC_MODULES = new HashSet<>(
+      Arrays.asList("omp_lib", "openacc", "iso_c_binding", "iso_fortran_env",
+          "ieee_features", "ieee_exceptions", "ieee_arithmetic"));
+
+  private final ModuleIndex _index;
+  private final List<Path> _searchPaths;
+  private final DirectedGraph<Path> _graph = new DirectedGraph<>();
+  private final Set<Path> _planned = new HashSet<>();
+  private final List<Path[]> _edges = new ArrayList<>();
+  private final List<String> _warnings = new ArrayList<>();
+  private final List<String> _errors = new ArrayList<>();
+
+  /**
+   * Constructs a new planner.
+   *
+   * @param index       Index of the module source files. The directories of
+   *                    the input files and the search paths must have been
+   *                    scanned.
+   * @param searchPaths Module search paths.
+   */
+  public ModuleBuildPlanner(ModuleIndex index, List<Path> searchPaths) {
+    _index = index;
+    _searchPaths = new ArrayList<>();
+    for(Path searchPath : searchPaths) {
+      _searchPaths.add(searchPath.toAbsolutePath().normalize());
+    }
+  }
+
+  /**
+   * Plan the modules needed by an input file.
+   *
+   * @param scanned  File scanned for the use statements. Usually the
+   *                 preprocessed version of the input file.
+   * @param original Original input file. Its directory is searched first.
+   * @throws IOException If a file cannot be read.
+   */
+  public void addInput(Path scanned, Path original) throws IOException {
+    plan(scanned, original.toAbsolutePath().normalize(), true);
+  }
+
+  /**
+   * Plan the modules used by a file.
+   *
+   * @param scanned  File scanned for the use statements.
+   * @param original File using the modules.
+   * @param isInput  True if the file is an input file. Modules that cannot be
+   *                 located are errors for input files and warnings for
+   *                 planned files as they are scanned without preprocessing.
+   * @throws IOException If a file cannot be read.
+   */
+  private void plan(Path scanned, Path original, boolean isInput)
+      throws IOException
+  {
+    List<Path> directories = new ArrayList<>();
+    directories.add(original.getParent());
+    directories.addAll(_searchPaths);
+
+    for(String module : _index.get(scanned).getUsedModules()) {
+      Path moduleFile = findModuleFile(module, directories);
+      Path source = _index.findSource(module, directories);
+
+      if(source == null && moduleFile != null) {
+        if(!INTRINSIC_MODULES.contains(module)) {
+          _warnings.add(original + ": only module file found for " + module
+              + ". Might be out-of-date...");
+        }
+        continue;
+      }
+      if(source == null) {
+        String msg = original + ": cannot locate any source file or module " +
+            "file for module: " + module;
+        if(isInput) {
+          _errors.add(msg);
+        } else {
+          _warnings.add(msg);
+        }
+        continue;
+      }
+      if(moduleFile != null && isUpToDate(moduleFile, source)) {
+        continue;
+      }
+
+      _edges.add(new Path[]{source, original});
+      if(_planned.add(source) && _graph.addNode(source)
+          && !source.equals(original))
+      {
+        plan(source, source, false);
+      }
+    }
+  }
+
+  /**
+   * Find the module file of a module.
+   *
+   * @param module      Name of the module.
+   * @param directories Directories to search in order.
+   * @return Path of the module file. Null if not found.
+   */
+  private static Path findModuleFile(String module, List<Path> directories) {
+    for(Path directory : directories) {
+      Path moduleFile = directory.resolve(module + XMOD_EXTENSION);
+      if(Files.isRegularFile(moduleFile)) {
+        return moduleFile;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Check whether a module file is newer than its source file.
+   *
+   * @param moduleFile Module file.
+   * @param source     Source file of the module.
+   * @return True if the module file is newer.
+   * @throws IOException If a modification time cannot be read.
+   */
+  private static boolean isUpToDate(Path moduleFile, Path source)
+      throws IOException
+  {
+    return Files.getLastModifiedTime(moduleFile)
+        .compareTo(Files.getLastModifiedTime(source)) > 0;
+  }
+
+  /**
+   * Get the planned module source files in build order. A file comes after
+   * the files defining the modules it uses.
+   *
+   * @return Ordered list of module source files.
+   * @throws IOException If the module dependencies are circular.
+   */
+  public List<Path> getBuildOrder() throws IOException {
+    for(Path[] edge : _edges) {
+      // Edges to input files that are not planned themselves are not needed
+      if(!edge[0].equals(edge[1]) && _planned.contains(edge[1])) {
+        _graph.addEdge(edge[0], edge[1]);
+      }
+    }
+    try {
+      return TopologicalSort.sort(_graph);
+    } catch(IllegalArgumentException ex) {
+      throw new IOException("Circular module dependencies");
+    }
+  }
+
+  /**
+   * Get the warnings reported during the planning.
+   *
+   * @return List of warning messages.
+   */
+  public List<String> getWarnings() {
+    return _warnings;
+  }
+
+  /**
+   * Get the errors reported during the planning.
+   *
+   * @return List of error messages.
+   */
+  public List<String> getErrors() {
+    return _errors;
+  }
+}
@@ -8,10 +8,26 @@ import claw.tatsu.primitive.Xmod;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.fortran.FortranModule;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Translator interface
@@ -22,8 +38,19 @@ import java.util.Map;
  */
 public class ModuleCache {
 
+  private static final long POOL_KEEP_ALIVE_S = 1;
+  // Shared by all the caches so batch translations do not multiply threads
+  private static ExecutorService _pool = null;
+
   private final Map<String, FortranModule> _moduleCache;
   private final List<String> _searchPaths;
+  private final List<Path> _writtenFiles;
+  private ModuleStore _store = null;
+  // Module files looked up by the translation. Null if not recorded.
+  private Map<String, String> _lookups = null;
+  // Module files indexed in the background by their path
+  private final Map<String, Future<ModuleFileIndex>> _prefetched =
+      new ConcurrentHashMap<>();
 
   /**
    * Constructs a new empty module cache.
@@ -31,6 +58,7 @@ public class ModuleCache {
   public ModuleCache() {
     _moduleCache = new HashMap<>();
     _searchPaths = new ArrayList<>();
+    _writtenFiles = new ArrayList<>();
   }
 
   /**
@@ -66,7 +94,10 @@ public class ModuleCache {
   }
 
   /**
-   * Write all modules in the cache to files.
+   * Write the modified modules of the cache to files. Modules are written
+   * concurrently on the shared pool, each to a temporary file first and then
+   * moved in place so concurrent translations never read a partially written
+   * module. A module file whose content is unchanged is left untouched.
    *
    * @param ident Number of spaces used to indent the XML file.
    * @throws IllegalTransformationException If module cannot be written.
@@ -75,10 +106,223 @@ public class ModuleCache {
       throws IllegalTransformationException
   {
     String suffix = Xmod.getSuffix();
-    for(Map.Entry<String, FortranModule> pair : _moduleCache.entrySet()) {
-      FortranModule module = pair.getValue();
-      String newModuleName = module.getPath() + module.getName() + suffix;
-      module.write(newModuleName, ident);
+    List<FortranModule> modules = new ArrayList<>();
+    for(FortranModule module : _moduleCache.values()) {
+      if(module.isModified()) {
+        modules.add(module);
+      }
+    }
+    if(modules.isEmpty()) {
+      return;
+    }
+    // Written files are listed in a stable order
+    modules.sort(Comparator.comparing(FortranModule::getName));
+
+    try {
+      List<Future<Path>> jobs = new ArrayList<>();
+      for(FortranModule module : modules) {
+        jobs.add(getPool().submit(() -> write(module, suffix, ident)));
+      }
+      for(Future<Path> job : jobs) {
+        _writtenFiles.add(job.get());
+      }
+    } catch(ExecutionException e) {
+      if(e.getCause() instanceof IllegalTransformationException) {
+        throw (IllegalTransformationException) e.getCause();
+      }
+      throw new IllegalTransformationException(e.getCause().getMessage(), 0);
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalTransformationException("Interrupted while writing " +
+          "module files", 0);
+    }
+  }
+
+  /**
+   * Write a single module to its file unless the file already has the same
+   * content.
+   *
+   * @param module Module to be written.
+   * @param suffix Suffix of the module file name.
+   * @param ident  Number of spaces used to indent the XML file.
+   * @return Absolute path of the module file.
+   * @throws IllegalTransformationException If module cannot be written.
+   */
+  private static Path write(FortranModule module, String suffix, int ident)
+      throws IllegalTransformationException
+  {
+    Path target = Paths.get(module.getPath() + module.getName() + suffix)
+        .toAbsolutePath();
+    try {
+      Path tmp = Files.createTempFile(target.getParent(), module.getName(),
+          ".tmp");
+      try {
+        module.write(tmp.toString(), ident);
+        if(!hasSameContent(tmp, target)) {
+          Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+        }
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch(IOException e) {
+      throw new IllegalTransformationException("Cannot write module file: "
+          + target, 0);
+    }
+    return target;
+  }
+
+  /**
+   * Check whether an existing file has the same content as a new one.
+   *
+   * @param file     New file.
+   * @param existing Existing file.
+   * @return True if the existing file exists and has the same content hash.
+   * @throws IOException If one of the files cannot be read.
+   */
+  private static boolean hasSameContent(Path file, Path existing)
+      throws IOException
+  {
+    return Files.isRegularFile(existing)
+        && Files.size(file) == Files.size(existing)
+        && SourceDependencies.hash(Files.readAllBytes(file))
+        .equals(SourceDependencies.hash(Files.readAllBytes(existing)));
+  }
+
+  /**
+   * Get the module files written by {@link #write(int)}, including the ones
+   * left untouched because their content was unchanged.
+   *
+   * @return Absolute paths of the written module files.
+   */
+  public List<Path> getWrittenFiles() {
+    return _writtenFiles;
+  }
+
+  /**
+   * Locate a module file in the search paths. Search paths are looked up in
+   * order.
+   *
+   * @param fileName Name of the module file.
+   * @return Search path containing the module file. Null if not found.
+   */
+  public String locate(String fileName) {
+    for(String dir : _searchPaths) {
+      if(new File(dir + "/" + fileName).exists()) {
+        return dir;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Start indexing a module file in the background if it is found in the
+   * search paths. The index is loaded from the persistent store if one is
+   * used.
+   *
+   * @param fileName Name of the module file.
+   */
+  public void prefetch(String fileName) {
+    ModuleStore store = _store;
+    String dir = locate(fileName);
+    if(dir == null) {
+      return;
+    }
+    _prefetched.computeIfAbsent(dir + "/" + fileName,
+        path -> getPool().submit(() -> store != null ? store.load(path)
+            : ModuleFileIndex.read(Paths.get(path))));
+  }
+
+  /**
+   * Get a module file indexed in the background. Waits for the index if it is
+   * not ready yet.
+   *
+   * @param path Path of the module file as located in the search paths.
+   * @return New copy of the index. Null if the file was not prefetched or
+   * could not be indexed.
+   */
+  public ModuleFileIndex getPrefetched(String path) {
+    Future<ModuleFileIndex> index = _prefetched.get(path);
+    if(index == null) {
+      return null;
+    }
+    try {
+      return index.get() == null ? null : index.get().copy();
+    } catch(ExecutionException e) {
+      return null;
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  /**
+   * Get the pool reading and writing module files in the background. It is
+   * shared by all the caches and bounded by the number of processors. Its
+   * threads do not prevent the translator from exiting and stop when idle.
+   *
+   * @return Module file pool.
+   */
+  private static synchronized ExecutorService getPool() {
+    if(_pool == null) {
+      int nbThreads = Runtime.getRuntime().availableProcessors();
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(nbThreads, nbThreads,
+          POOL_KEEP_ALIVE_S, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+          r -> {
+            Thread t = new Thread(r, "claw-xmod-io");
+            t.setDaemon(true);
+            return t;
+          });
+      pool.allowCoreThreadTimeOut(true);
+      _pool = pool;
+    }
+    return _pool;
+  }
+
+  /**
+   * Record the module files looked up from now on together with the hash of
+   * their content.
+   */
+  public void recordLookups() {
+    _lookups = Collections.synchronizedMap(new LinkedHashMap<>());
+  }
+
+  /**
+   * Record a module file lookup. Only the first lookup of a file is kept.
+   * Nothing is recorded if {@link #recordLookups()} was not called.
+   *
+   * @param fileName Name of the module file.
+   * @param file     Module file found in the search paths. Null if not found.
+   */
+  public void addLookup(String fileName, String file) {
+    if(_lookups == null || _lookups.containsKey(fileName)) {
+      return;
+    }
+    String found = "";
+    if(file != null) {
+      Path path = Paths.get(file).toAbsolutePath();
+      try {
+        found = path + "\t" + SourceDependencies.hash(Files.readAllBytes(path));
+      } catch(IOException e) {
+        found = path.toString();
+      }
+    }
+    _lookups.put(fileName, found);
+  }
+
+  /**
+   * Get the recorded module file lookups.
+   *
+   * @return Module file names mapped to the absolute path of the file found
+   * and the hash of its content separated by a tab. Empty string if the file
+   * was not found. Empty if lookups are not recorded.
+   */
+  public Map<String, String> getLookups() {
+    if(_lookups == null) {
+      return Collections.emptyMap();
+    }
+    synchronized(_lookups) {
+      return new LinkedHashMap<>(_lookups);
     }
   }
 
@@ -99,4 +343,22 @@ public class ModuleCache {
   public List<String> getSearchPaths() {
     return _searchPaths;
   }
+
+  /**
+   * Set the persistent store used to load module files.
+   *
+   * @param store Module store. Null to read module files directly.
+   */
+  public void setStore(ModuleStore store) {
+    _store = store;
+  }
+
+  /**
+   * Get the persistent store used to load module files.
+   *
+   * @return Module store. Null if module files are read directly.
+   */
+  public ModuleStore getStore() {
+    return _store;
+  }
 }
@@ -0,0 +1,487 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import claw.tatsu.xcodeml.xnode.Xname;
+import claw.tatsu.xcodeml.xnode.common.XtypeTable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lazy view of a module file (.xmod). A single streaming pass builds the
+ * document without the content of the type table and records where each
+ * type is located in the file. Types are parsed into the document only when
+ * they are looked up. The file stays memory-mapped so a module file replaced
+ * in the meantime does not change the types read afterwards.
+ *
+ * @author clementval
+ */
+public class ModuleFileIndex implements XtypeTable.TypeLoader {
+
+  private final ByteBuffer _content;
+  private final Document _document;
+  // Byte range of each type of the type table
+  private final Map<String, long[]> _types;
+  // Byte range of the type table element
+  private final long[] _table;
+  private DocumentBuilder _builder = null;
+
+  /**
+   * Constructs a new index.
+   *
+   * @param content  Content of the module file.
+   * @param document Document without the content of the type table.
+   * @param types    Byte range of each type.
+   * @param table    Byte range of the type table element.
+   */
+  ModuleFileIndex(ByteBuffer content, Document document,
+                  Map<String, long[]> types, long[] table)
+  {
+    _content = content;
+    _document = document;
+    _types = types;
+    _table = table;
+  }
+
+  /**
+   * Index a module file.
+   *
+   * @param file Path to the module file.
+   * @return Index of the module file. Null if the file cannot be read or is
+   * not a UTF-8 module file with a type table.
+   */
+  public static ModuleFileIndex read(Path file) {
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+    {
+      ByteBuffer content = map(channel);
+      return content == null ? null : read(content);
+    } catch(IOException ignored) {
+      return null;
+    }
+  }
+
+  /**
+   * Map the whole content of a file in memory.
+   *
+   * @param channel Channel opened for reading on the file.
+   * @return Mapped content. Null if the file is too large to be mapped.
+   * @throws IOException If the file cannot be mapped.
+   */
+  static MappedByteBuffer map(FileChannel channel) throws IOException {
+    if(channel.size() > Integer.MAX_VALUE) {
+      return null;
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+  }
+
+  /**
+   * Index the content of a module file.
+   *
+   * @param content Content of the module file. Must not change afterwards.
+   * @return Index of the module file. Null if the content is not a UTF-8
+   * module file with a type table.
+   */
+  static ModuleFileIndex read(ByteBuffer content) {
+    try {
+      return index(content);
+    } catch(XMLStreamException | ParserConfigurationException ignored) {
+      return null;
+    }
+  }
+
+  /**
+   * Build the document without the content of the type table and locate the
+   * types.
+   *
+   * @param content Content of the module file.
+   * @return Index of the module file. Null if the file cannot be indexed.
+   * @throws XMLStreamException           If the file is not well-formed.
+   * @throws ParserConfigurationException If no document can be created.
+   */
+  private static ModuleFileIndex index(ByteBuffer content)
+      throws XMLStreamException, ParserConfigurationException
+  {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    XMLStreamReader reader =
+        factory.createXMLStreamReader(asStream(content.duplicate()));
+    String encoding = reader.getCharacterEncodingScheme();
+    if(encoding != null && !encoding.equalsIgnoreCase("UTF-8")
+        && !encoding.equalsIgnoreCase("US-ASCII"))
+    {
+      return null;
+    }
+
+    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .newDocument();
+    Deque<Node> parents = new ArrayDeque<>();
+    parents.push(doc);
+    // Types are located in the content once the file is read
+    List<String> hashes = new ArrayList<>();
+    // Depth of the type table element while it is read. -1 before, 0 after.
+    int tableDepth = -1;
+    while(reader.hasNext()) {
+      int event = reader.next();
+      int depth = parents.size();
+      if(tableDepth > 0) {
+        // Content of the type table is only located
+        if(event == XMLStreamConstants.START_ELEMENT) {
+          parents.push(doc);
+          if(depth == tableDepth) {
+            String hash = reader.getAttributeValue(null, Xname.ATTR_TYPE);
+            if(hash == null) {
+              return null;
+            }
+            hashes.add(hash);
+          }
+        } else if(event == XMLStreamConstants.END_ELEMENT) {
+          if(depth == tableDepth) {
+            tableDepth = 0;
+          }
+          parents.pop();
+        }
+        continue;
+      }
+
+      Node parent = parents.peek();
+      switch(event) {
+        case XMLStreamConstants.START_ELEMENT:
+          Element element = doc.createElement(reader.getLocalName());
+          for(int i = 0; i < reader.getAttributeCount(); ++i) {
+            element.setAttribute(reader.getAttributeLocalName(i),
+                reader.getAttributeValue(i));
+          }
+          parent.appendChild(element);
+          parents.push(element);
+          if(depth == 2 && tableDepth < 0
+              && Xname.TYPE_TABLE.equals(reader.getLocalName()))
+          {
+            tableDepth = parents.size();
+          }
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          parents.pop();
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.SPACE:
+          if(parent != doc) {
+            parent.appendChild(doc.createTextNode(reader.getText()));
+          }
+          break;
+        case XMLStreamConstants.CDATA:
+          parent.appendChild(doc.createCDATASection(reader.getText()));
+          break;
+        case XMLStreamConstants.COMMENT:
+          parent.appendChild(doc.createComment(reader.getText()));
+          break;
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+          parent.appendChild(doc.createProcessingInstruction(
+              reader.getPITarget(), reader.getPIData()));
+          break;
+        default:
+          break;
+      }
+    }
+    reader.close();
+    if(tableDepth != 0 || doc.getDocumentElement() == null) {
+      return null;
+    }
+    doc.getDocumentElement().normalize();
+
+    // Type table start, start and end of each type, type table end
+    long[] bytes = locateTypes(content, hashes.size());
+    if(bytes == null) {
+      return null;
+    }
+    long[] table = new long[]{bytes[0], bytes[bytes.length - 1]};
+    Map<String, long[]> types = new HashMap<>();
+    for(int i = 0; i < hashes.size(); ++i) {
+      types.put(hashes.get(i), new long[]{bytes[2 * i + 1], bytes[2 * i + 2]});
+    }
+    return new ModuleFileIndex(content, doc, types, table);
+  }
+
+  /**
+   * Locate the type table and the types in the content. The locations
+   * reported by streaming parsers are not reliable, so the markup is scanned
+   * directly. Markup characters are ASCII and never part of a multi-byte
+   * UTF-8 sequence.
+   *
+   * @param content UTF-8 content of the module file.
+   * @param nbTypes Number of types in the type table.
+   * @return Byte offsets of the start of the type table, of the start and end
+   * of each type and of the end of the type table. Null if the type table
+   * does not hold the given number of types.
+   */
+  private static long[] locateTypes(ByteBuffer content, int nbTypes) {
+    long[] offsets = new long[2 * nbTypes + 2];
+    int found = 0;
+    int depth = 0;
+    boolean inTable = false;
+    int pos = 0;
+    while(pos < content.limit()) {
+      if(content.get(pos) != '<') {
+        ++pos;
+        continue;
+      }
+      int begin = pos;
+      if(startsWith(content, pos, "<!--")) {
+        pos = skipPast(content, pos + 4, "-->");
+        continue;
+      } else if(startsWith(content, pos, "<![CDATA[")) {
+        pos = skipPast(content, pos + 9, "]]>");
+        continue;
+      } else if(startsWith(content, pos, "<?")) {
+        pos = skipPast(content, pos + 2, "?>");
+        continue;
+      }
+      pos = skipTag(content, pos + 1);
+      if(pos < 0 || startsWith(content, begin, "<!")) {
+        if(pos < 0) {
+          return null;
+        }
+        continue;
+      }
+      boolean isEnd = content.get(begin + 1) == '/';
+      boolean isEmpty = !isEnd && content.get(pos - 2) == '/';
+      int elementDepth = isEnd ? depth-- : ++depth;
+      if(!isEnd && !inTable && elementDepth == 2
+          && startsWith(content, begin + 1, Xname.TYPE_TABLE)
+          && !isNameChar(content.get(begin + 1 + Xname.TYPE_TABLE.length())))
+      {
+        inTable = true;
+        offsets[found++] = begin;
+      } else if(inTable && elementDepth == 3) {
+        if(found == offsets.length - 1) {
+          return null;
+        }
+        offsets[found++] = isEnd ? pos : begin;
+        if(isEmpty) {
+          offsets[found++] = pos;
+        }
+      }
+      if(inTable && elementDepth == 2 && (isEnd || isEmpty)) {
+        offsets[found++] = pos;
+        return found == offsets.length ? offsets : null;
+      }
+      if(isEmpty) {
+        --depth;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Check whether the content has the given ASCII string at a position.
+   *
+   * @param content Content of the file.
+   * @param pos     Position to check.
+   * @param str     ASCII string.
+   * @return True if the string is at the position.
+   */
+  private static boolean startsWith(ByteBuffer content, int pos, String str) {
+    if(pos + str.length() > content.limit()) {
+      return false;
+    }
+    for(int i = 0; i < str.length(); ++i) {
+      if(content.get(pos + i) != str.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the position following the next occurrence of an ASCII string.
+   *
+   * @param content Content of the file.
+   * @param pos     Position to start from.
+   * @param str     ASCII string.
+   * @return Position following the string. End of the content if not found.
+   */
+  private static int skipPast(ByteBuffer content, int pos, String str) {
+    while(pos < content.limit() && !startsWith(content, pos, str)) {
+      ++pos;
+    }
+    return Math.min(pos + str.length(), content.limit());
+  }
+
+  /**
+   * Get the position following the end of a tag. Attribute values may
+   * contain '>'.
+   *
+   * @param content Content of the file.
+   * @param pos     Position following the '<' of the tag.
+   * @return Position following the '>' of the tag. -1 if the tag is not
+   * closed.
+   */
+  private static int skipTag(ByteBuffer content, int pos) {
+    byte quote = 0;
+    for(; pos < content.limit(); ++pos) {
+      byte b = content.get(pos);
+      if(quote != 0) {
+        if(b == quote) {
+          quote = 0;
+        }
+      } else if(b == '"' || b == '\'') {
+        quote = b;
+      } else if(b == '>') {
+        return pos + 1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Check whether a byte can be part of an element name.
+   *
+   * @param b Byte to check.
+   * @return True if the byte is not a delimiter of the name.
+   */
+  private static boolean isNameChar(byte b) {
+    return b != '>' && b != '/' && b != ' ' && b != '\t' && b != '\n'
+        && b != '\r';
+  }
+
+  /**
+   * Create an index of the same file with its own copy of the document.
+   * The file is not read again.
+   *
+   * @return New index whose types are not read yet.
+   */
+  public synchronized ModuleFileIndex copy() {
+    return new ModuleFileIndex(_content,
+        (Document) _document.cloneNode(true), _types, _table);
+  }
+
+  /**
+   * Get the document of the module file. The type table element is empty
+   * until types are read.
+   *
+   * @return Document of the module file.
+   */
+  public Document getDocument() {
+    return _document;
+  }
+
+  /**
+   * Get the byte range of each type in the module file.
+   *
+   * @return Byte range of each type by type hash.
+   */
+  Map<String, long[]> getTypeRanges() {
+    return _types;
+  }
+
+  /**
+   * Get the byte range of the type table element in the module file.
+   *
+   * @return Byte range of the type table.
+   */
+  long[] getTableRange() {
+    return _table;
+  }
+
+  /**
+   * Get the number of types of the module file.
+   *
+   * @return Number of types.
+   */
+  public int getTypeCount() {
+    return _types.size();
+  }
+
+  @Override
+  public boolean hasType(String hash) {
+    return _types.containsKey(hash);
+  }
+
+  @Override
+  public synchronized Element load(String hash) {
+    long[] range = _types.get(hash);
+    return range == null ? null : parse(range);
+  }
+
+  @Override
+  public synchronized Element loadAll() {
+    return parse(_table);
+  }
+
+  /**
+   * Parse an element of the file and import it in the document.
+   *
+   * @param range Byte range of the element.
+   * @return Imported element.
+   */
+  private Element parse(long[] range) {
+    ByteBuffer region = _content.duplicate();
+    region.limit((int) range[1]);
+    region.position((int) range[0]);
+    try {
+      if(_builder == null) {
+        _builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      }
+      Document fragment = _builder.parse(asStream(region));
+      fragment.getDocumentElement().normalize();
+      return (Element) _document.importNode(fragment.getDocumentElement(),
+          true);
+    } catch(Exception e) {
+      // Content was well-formed when indexed and is mapped read-only
+      throw new IllegalStateException("Cannot read module type", e);
+    }
+  }
+
+  /**
+   * Read a buffer as a stream.
+   *
+   * @param buffer Buffer to read from its position to its limit.
+   * @return Stream over the buffer.
+   */
+  private static InputStream asStream(ByteBuffer buffer) {
+    if(buffer.hasArray()) {
+      return new ByteArrayInputStream(buffer.array(),
+          buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+    return new InputStream() {
+      @Override
+      public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+      }
+
+      @Override
+      public int read(byte[] bytes, int off, int len) {
+        if(!buffer.hasRemaining()) {
+          return -1;
+        }
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(bytes, off, count);
+        return count;
+      }
+    };
+  }
+}
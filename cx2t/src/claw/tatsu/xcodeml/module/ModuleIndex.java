@@ -0,0 +1,311 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Index of the modules defined and used by the FORTRAN source files of a set
+ * of directories. Directories are scanned once in parallel. The index can be
+ * saved to a cache file so later runs only scan the files that changed since.
+ *
+ * @author clementval
+ */
+public class ModuleIndex {
+
+  /**
+   * Extensions of the FORTRAN source files in search order.
+   */
+  public static final List<String> FORTRAN_EXTENSIONS = Collections
+      .unmodifiableList(Arrays.asList(".f90", ".F90", ".f", ".F", ".f95",
+          ".f03"));
+
+  // Files generated by the driver are not part of the sources
+  private static final String CLAW_FILE_MARKER = ".claw.";
+  private static final String CACHE_HEADER = "# CLAW module index 1";
+
+  private final Path _cacheFile;
+  private final Map<Path, SourceDependencies> _sources =
+      new ConcurrentHashMap<>();
+  private final Map<Path, List<Path>> _directories = new HashMap<>();
+  private int _scannedFiles = 0;
+
+  /**
+   * Constructs a new module index.
+   *
+   * @param cacheFile File in which the index is kept between runs. If null,
+   *                  the index is not persisted.
+   */
+  public ModuleIndex(Path cacheFile) {
+    _cacheFile = cacheFile == null ? null : cacheFile.toAbsolutePath();
+  }
+
+  /**
+   * Scan the FORTRAN source files of the given directories. Files already
+   * known from the cache file are only scanned if they changed.
+   *
+   * @param directories Directories to be indexed. Sub-directories are not
+   *                    indexed.
+   * @param nbWorkers   Number of parallel workers. If smaller than 1, the
+   *                    number of available processors is used.
+   * @throws IOException If a source file cannot be read.
+   */
+  public void scan(List<Path> directories, int nbWorkers) throws IOException {
+    Map<Path, SourceDependencies> cached = readCache();
+    List<Path> files = new ArrayList<>();
+    for(Path directory : directories) {
+      Path dir = directory.toAbsolutePath().normalize();
+      if(_directories.containsKey(dir)) {
+        continue;
+      }
+      List<Path> sources = listSources(dir);
+      _directories.put(dir, sources);
+      files.addAll(sources);
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(nbWorkers > 0
+        ? nbWorkers : Runtime.getRuntime().availableProcessors());
+    try {
+      List<Future<SourceDependencies>> jobs = new ArrayList<>();
+      for(Path file : files) {
+        Callable<SourceDependencies> job = () ->
+            SourceDependencies.refresh(file, cached.get(file));
+        jobs.add(pool.submit(job));
+      }
+      for(int i = 0; i < files.size(); ++i) {
+        SourceDependencies dependencies = jobs.get(i).get();
+        if(!dependencies.hasSameContent(cached.get(files.get(i)))) {
+          ++_scannedFiles;
+        }
+        _sources.put(files.get(i), dependencies);
+      }
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Module index scan interrupted", e);
+    } catch(ExecutionException e) {
+      if(e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * List the FORTRAN source files of a directory sorted by name.
+   *
+   * @param directory Directory to list.
+   * @return Sorted list of absolute paths. Empty if the directory does not
+   * exist.
+   * @throws IOException If the directory cannot be listed.
+   */
+  private static List<Path> listSources(Path directory) throws IOException {
+    List<Path> sources = new ArrayList<>();
+    if(!Files.isDirectory(directory)) {
+      return sources;
+    }
+    try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for(Path file : stream) {
+        if(isSource(file) && Files.isRegularFile(file)) {
+          sources.add(file);
+        }
+      }
+    }
+    Collections.sort(sources);
+    return sources;
+  }
+
+  /**
+   * Check whether a file name is the one of a FORTRAN source file.
+   *
+   * @param file File to check.
+   * @return True if the file has a FORTRAN extension and is not generated.
+   */
+  private static boolean isSource(Path file) {
+    String name = file.getFileName().toString();
+    if(name.contains(CLAW_FILE_MARKER)) {
+      return false;
+    }
+    for(String ext : FORTRAN_EXTENSIONS) {
+      if(name.endsWith(ext)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the dependencies information of a source file. Files outside the
+   * indexed directories are scanned on demand.
+   *
+   * @param source Path to the FORTRAN source file.
+   * @return Dependencies information of the file.
+   * @throws IOException If the file cannot be read.
+   */
+  public SourceDependencies get(Path source) throws IOException {
+    Path file = source.toAbsolutePath().normalize();
+    SourceDependencies dependencies = _sources.get(file);
+    if(dependencies == null) {
+      dependencies = SourceDependencies.scan(file);
+      ++_scannedFiles;
+      _sources.put(file, dependencies);
+    }
+    return dependencies;
+  }
+
+  /**
+   * Find the source file of a module. Directories are searched in order. A
+   * file named after the module is preferred. Otherwise the first file
+   * defining the module is returned.
+   *
+   * @param module      Name of the module.
+   * @param directories Directories to search. Must have been scanned.
+   * @return Path of the source file. Null if not found.
+   */
+  public Path findSource(String module, List<Path> directories) {
+    String name = module.toLowerCase();
+    List<Path> dirs = new ArrayList<>();
+    for(Path directory : directories) {
+      dirs.add(directory.toAbsolutePath().normalize());
+    }
+    for(Path dir : dirs) {
+      for(String ext : FORTRAN_EXTENSIONS) {
+        Path candidate = dir.resolve(name + ext);
+        if(_sources.containsKey(candidate)) {
+          return candidate;
+        }
+      }
+    }
+    for(Path dir : dirs) {
+      for(Path source : _directories.getOrDefault(dir,
+          Collections.emptyList()))
+      {
+        if(_sources.get(source).getDefinedModules().contains(name)) {
+          return source;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the number of files scanned because they were not in the cache or
+   * changed since it was written.
+   *
+   * @return Number of scanned files.
+   */
+  public int getScannedFiles() {
+    return _scannedFiles;
+  }
+
+  /**
+   * Get the number of indexed source files.
+   *
+   * @return Number of source files.
+   */
+  public int size() {
+    return _sources.size();
+  }
+
+  /**
+   * Read the cache file.
+   *
+   * @return Information of the cached files. Empty if there is no cache file
+   * or if it cannot be used.
+   */
+  private Map<Path, SourceDependencies> readCache() {
+    Map<Path, SourceDependencies> cached = new HashMap<>();
+    if(_cacheFile == null || !Files.isRegularFile(_cacheFile)) {
+      return cached;
+    }
+    try {
+      List<String> lines =
+          Files.readAllLines(_cacheFile, StandardCharsets.UTF_8);
+      if(lines.isEmpty() || !CACHE_HEADER.equals(lines.get(0))) {
+        return cached;
+      }
+      for(String line : lines.subList(1, lines.size())) {
+        int separator = line.indexOf('\t');
+        if(separator <= 0) {
+          continue;
+        }
+        SourceDependencies dependencies =
+            SourceDependencies.decode(line.substring(separator + 1));
+        if(dependencies != null) {
+          cached.put(Paths.get(line.substring(0, separator)), dependencies);
+        }
+      }
+    } catch(IOException ignored) {
+      // The cache is an optimization only. Everything is scanned.
+    }
+    return cached;
+  }
+
+  /**
+   * Write the index to the cache file. The file is written to a temporary
+   * file and moved in place so concurrent runs never read a partial index.
+   * Files of the previous cache that were not part of this run are kept if
+   * they still exist.
+   *
+   * @throws IOException If the cache file cannot be written.
+   */
+  public void save() throws IOException {
+    if(_cacheFile == null) {
+      return;
+    }
+    Map<Path, SourceDependencies> entries = readCache();
+    entries.keySet().removeIf(file -> !Files.isRegularFile(file));
+    // Files scanned on demand (e.g. preprocessed inputs) are not kept
+    for(List<Path> sources : _directories.values()) {
+      for(Path source : sources) {
+        entries.put(source, _sources.get(source));
+      }
+    }
+    List<Path> files = new ArrayList<>(entries.keySet());
+    Collections.sort(files);
+
+    Path directory = _cacheFile.getParent();
+    Files.createDirectories(directory);
+    Path tmp = Files.createTempFile(directory, ".index", ".tmp");
+    try {
+      try(BufferedWriter out =
+              Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+      {
+        out.write(CACHE_HEADER);
+        out.newLine();
+        for(Path file : files) {
+          out.write(file.toString());
+          out.write('\t');
+          out.write(entries.get(file).encode());
+          out.newLine();
+        }
+      }
+      Files.move(tmp, _cacheFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
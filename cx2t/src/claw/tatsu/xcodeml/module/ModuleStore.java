@@ -0,0 +1,415 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent store of indexed module files shared by translator runs.
+ *
+ * The {@link ModuleFileIndex} of each .xmod file read through the store is
+ * saved in a compact binary form in the store directory, so the module file
+ * is not parsed again by later translations and its types are still read
+ * only when they are looked up. Entries are named after the absolute path of
+ * the module file and carry the SHA-256 hash of its content. An entry whose
+ * hash does not match the current content of the module file is ignored and
+ * replaced.
+ *
+ * The binary form holds a table of all the distinct strings of the module
+ * (tag names, attribute values and text) followed by the tree of the
+ * document without the content of the type table, where each string is
+ * referenced by its index, and by the byte range of the type table and of
+ * each type in the module file. Entries and module files are memory-mapped on
+ * load.
+ *
+ * @author clementval
+ */
+public class ModuleStore {
+
+  private static final String ENTRY_EXTENSION = ".bxmod";
+  private static final int MAGIC = 0x434c4d53; // CLMS
+  private static final int FORMAT_VERSION = 2;
+  private static final int HASH_BYTES = 32;
+
+  private static final byte ELEMENT = 1;
+  private static final byte TEXT = 2;
+  private static final byte COMMENT = 3;
+  private static final byte END = 0;
+
+  private final Path _directory;
+
+  /**
+   * Constructs a module store in the given directory. The directory is
+   * created if needed when the first entry is saved.
+   *
+   * @param directory Store directory.
+   */
+  public ModuleStore(String directory) {
+    _directory = Paths.get(directory).toAbsolutePath();
+  }
+
+  /**
+   * Get the directory of the store.
+   *
+   * @return Store directory.
+   */
+  public String getDirectory() {
+    return _directory.toString();
+  }
+
+  /**
+   * Load the index of a module file. The stored form is used when it is up to
+   * date. Otherwise the module file is indexed and the store is updated.
+   *
+   * @param moduleFile Path to the .xmod file.
+   * @return Index of the module file. Null if the file cannot be read or
+   * indexed.
+   */
+  public ModuleFileIndex load(String moduleFile) {
+    Path source = Paths.get(moduleFile).toAbsolutePath();
+    // The mapped content is hashed so the index always matches the content
+    // it reads the types from.
+    ByteBuffer content;
+    try(FileChannel channel = FileChannel.open(source,
+        StandardOpenOption.READ))
+    {
+      content = ModuleFileIndex.map(channel);
+    } catch(IOException e) {
+      return null;
+    }
+    if(content == null) {
+      return null;
+    }
+    byte[] hash = hash(content.duplicate());
+    Path entry = getEntry(source);
+    ModuleFileIndex index = readEntry(entry, hash, content);
+    if(index != null) {
+      return index;
+    }
+    index = ModuleFileIndex.read(content);
+    if(index != null) {
+      try {
+        writeEntry(entry, hash, index);
+      } catch(IOException ignored) {
+        // The store is an optimization only. Keep the indexed module.
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Get the entry path for a module file.
+   *
+   * @param source Absolute path of the module file.
+   * @return Entry path in the store.
+   */
+  Path getEntry(Path source) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] key = digest.digest(
+          source.toString().getBytes(StandardCharsets.UTF_8));
+      String name = source.getFileName().toString();
+      return _directory.resolve(name + "." + toHex(key, 8) + ENTRY_EXTENSION);
+    } catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Compute the hash of a file content.
+   *
+   * @param content Content of the file.
+   * @return SHA-256 hash of the content.
+   */
+  private static byte[] hash(ByteBuffer content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(content);
+      return digest.digest();
+    } catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Read a stored module index.
+   *
+   * @param entry   Entry path in the store.
+   * @param hash    Expected content hash of the module file.
+   * @param content Content of the module file.
+   * @return Index rebuilt from the entry. Null if the entry does not exist,
+   * is outdated or cannot be decoded.
+   */
+  private ModuleFileIndex readEntry(Path entry, byte[] hash,
+                                    ByteBuffer content)
+  {
+    if(!Files.isRegularFile(entry)) {
+      return null;
+    }
+    try(FileChannel channel = FileChannel.open(entry,
+        StandardOpenOption.READ))
+    {
+      MappedByteBuffer buffer = ModuleFileIndex.map(channel);
+      if(buffer == null || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        return null;
+      }
+      byte[] storedHash = new byte[HASH_BYTES];
+      buffer.get(storedHash);
+      if(!Arrays.equals(hash, storedHash)) {
+        return null;
+      }
+      String[] strings = new String[buffer.getInt()];
+      for(int i = 0; i < strings.length; ++i) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        strings[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      Document doc = DocumentBuilderFactory.newInstance()
+          .newDocumentBuilder().newDocument();
+      decodeChildren(buffer, strings, doc, doc);
+      if(doc.getDocumentElement() == null) {
+        return null;
+      }
+      long[] table = readRange(buffer, content);
+      int nbTypes = buffer.getInt();
+      Map<String, long[]> types = new HashMap<>();
+      for(int i = 0; i < nbTypes; ++i) {
+        types.put(strings[buffer.getInt()], readRange(buffer, content));
+      }
+      return new ModuleFileIndex(content, doc, types, table);
+    } catch(IOException | ParserConfigurationException
+        | BufferUnderflowException | IndexOutOfBoundsException ignored)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Decode the children of a node until the end marker.
+   *
+   * @param buffer  Buffer positioned on the first child.
+   * @param strings String table of the entry.
+   * @param doc     Document being rebuilt.
+   * @param parent  Node receiving the children.
+   */
+  private static void decodeChildren(ByteBuffer buffer, String[] strings,
+                                     Document doc, Node parent)
+  {
+    byte kind;
+    while((kind = buffer.get()) != END) {
+      switch(kind) {
+        case ELEMENT:
+          Element element = doc.createElement(strings[buffer.getInt()]);
+          int nbAttributes = buffer.getInt();
+          for(int i = 0; i < nbAttributes; ++i) {
+            element.setAttribute(strings[buffer.getInt()],
+                strings[buffer.getInt()]);
+          }
+          parent.appendChild(element);
+          decodeChildren(buffer, strings, doc, element);
+          break;
+        case TEXT:
+          parent.appendChild(doc.createTextNode(strings[buffer.getInt()]));
+          break;
+        case COMMENT:
+          parent.appendChild(doc.createComment(strings[buffer.getInt()]));
+          break;
+        default:
+          throw new IndexOutOfBoundsException("Unknown node kind " + kind);
+      }
+    }
+  }
+
+  /**
+   * Read a byte range of the module file.
+   *
+   * @param buffer  Buffer positioned on the range.
+   * @param content Content of the module file.
+   * @return Byte range.
+   */
+  private static long[] readRange(ByteBuffer buffer, ByteBuffer content) {
+    long[] range = new long[]{buffer.getLong(), buffer.getLong()};
+    if(range[0] < 0 || range[1] < range[0] || range[1] > content.limit()) {
+      throw new IndexOutOfBoundsException("Range out of the module file");
+    }
+    return range;
+  }
+
+  /**
+   * Save a module index in the store. The entry is written to a temporary
+   * file and moved in place so concurrent translations never read a partial
+   * entry.
+   *
+   * @param entry Entry path in the store.
+   * @param hash  Content hash of the module file.
+   * @param index Index of the module file.
+   * @throws IOException If the entry cannot be written.
+   */
+  private void writeEntry(Path entry, byte[] hash, ModuleFileIndex index)
+      throws IOException
+  {
+    Map<String, Integer> indexes = new HashMap<>();
+    List<String> strings = new ArrayList<>();
+    ByteArrayOutputStream tree = new ByteArrayOutputStream();
+    DataOutputStream treeOut = new DataOutputStream(tree);
+    encodeChildren(index.getDocument(), treeOut, indexes, strings);
+    writeRange(treeOut, index.getTableRange());
+    treeOut.writeInt(index.getTypeRanges().size());
+    for(Map.Entry<String, long[]> type : index.getTypeRanges().entrySet()) {
+      treeOut.writeInt(intern(type.getKey(), indexes, strings));
+      writeRange(treeOut, type.getValue());
+    }
+    treeOut.flush();
+
+    Files.createDirectories(_directory);
+    Path tmp = Files.createTempFile(_directory, ".module", ".tmp");
+    try {
+      try(OutputStream file = Files.newOutputStream(tmp);
+          DataOutputStream out =
+              new DataOutputStream(new BufferedOutputStream(file)))
+      {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.write(hash);
+        out.writeInt(strings.size());
+        for(String str : strings) {
+          byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+        tree.writeTo(out);
+      }
+      Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Write a byte range of the module file.
+   *
+   * @param out   Output of the entry.
+   * @param range Byte range.
+   * @throws IOException If the output cannot be written.
+   */
+  private static void writeRange(DataOutputStream out, long[] range)
+      throws IOException
+  {
+    out.writeLong(range[0]);
+    out.writeLong(range[1]);
+  }
+
+  /**
+   * Encode the children of a node followed by the end marker.
+   *
+   * @param parent  Node whose children are encoded.
+   * @param out     Output of the tree.
+   * @param indexes Index of each string in the string table.
+   * @param strings String table.
+   * @throws IOException If the output cannot be written.
+   */
+  private static void encodeChildren(Node parent, DataOutputStream out,
+                                     Map<String, Integer> indexes,
+                                     List<String> strings)
+      throws IOException
+  {
+    for(Node child = parent.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      switch(child.getNodeType()) {
+        case Node.ELEMENT_NODE:
+          out.writeByte(ELEMENT);
+          out.writeInt(intern(child.getNodeName(), indexes, strings));
+          NamedNodeMap attributes = child.getAttributes();
+          out.writeInt(attributes.getLength());
+          for(int i = 0; i < attributes.getLength(); ++i) {
+            Attr attribute = (Attr) attributes.item(i);
+            out.writeInt(intern(attribute.getName(), indexes, strings));
+            out.writeInt(intern(attribute.getValue(), indexes, strings));
+          }
+          encodeChildren(child, out, indexes, strings);
+          break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+          out.writeByte(TEXT);
+          out.writeInt(intern(child.getNodeValue(), indexes, strings));
+          break;
+        case Node.COMMENT_NODE:
+          out.writeByte(COMMENT);
+          out.writeInt(intern(child.getNodeValue(), indexes, strings));
+          break;
+        default:
+          break;
+      }
+    }
+    out.writeByte(END);
+  }
+
+  /**
+   * Get the index of a string in the string table. The string is added to
+   * the table if needed.
+   *
+   * @param str     String to look for.
+   * @param indexes Index of each string in the string table.
+   * @param strings String table.
+   * @return Index of the string.
+   */
+  private static int intern(String str, Map<String, Integer> indexes,
+                            List<String> strings)
+  {
+    Integer index = indexes.get(str);
+    if(index == null) {
+      index = strings.size();
+      strings.add(str);
+      indexes.put(str, index);
+    }
+    return index;
+  }
+
+  /**
+   * Get the hexadecimal representation of the first bytes of an array.
+   *
+   * @param bytes  Bytes to convert.
+   * @param length Number of bytes to convert.
+   * @return Hexadecimal string.
+   */
+  private static String toHex(byte[] bytes, int length) {
+    StringBuilder str = new StringBuilder();
+    for(int i = 0; i < length && i < bytes.length; ++i) {
+      str.append(String.format("%02x", bytes[i]));
+    }
+    return str.toString();
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Modules defined and used by a FORTRAN source file. The information is
+ * gathered with a line based scan of the source so the file does not have to
+ * go through the front-end. The size, modification time and content hash of
+ * the scanned file are kept to detect outdated information.
+ *
+ * @author clementval
+ */
+public class SourceDependencies {
+
+  private static final Pattern USE_STATEMENT = Pattern.compile(
+      "^\\s*use(?:\\s*,\\s*(?:non_)?intrinsic\\s*::|\\s*::|\\s)\\s*" +
+          "([a-z][a-z0-9_]*)", Pattern.CASE_INSENSITIVE);
+  // MODULE PROCEDURE and separate module procedures are not definitions
+  private static final Pattern MODULE_STATEMENT = Pattern.compile(
+      "^\\s*module\\s+([a-z][a-z0-9_]*)\\s*(?:!.*)?$",
+      Pattern.CASE_INSENSITIVE);
+  private static final String FIELD_SEPARATOR = "\t";
+  private static final String NAME_SEPARATOR = ",";
+
+  private final long _size;
+  private final long _lastModified;
+  private final String _hash;
+  private final Set<String> _definedModules;
+  private final Set<String> _usedModules;
+
+  /**
+   * Constructs a new dependencies information.
+   *
+   * @param size           Size of the scanned file in bytes.
+   * @param lastModified   Modification time of the scanned file in ms.
+   * @param hash           SHA-256 hash of the content of the scanned file.
+   * @param definedModules Modules defined in the file.
+   * @param usedModules    Modules used in the file.
+   */
+  private SourceDependencies(long size, long lastModified, String hash,
+                             Set<String> definedModules,
+                             Set<String> usedModules)
+  {
+    _size = size;
+    _lastModified = lastModified;
+    _hash = hash;
+    _definedModules = definedModules;
+    _usedModules = usedModules;
+  }
+
+  /**
+   * Scan a FORTRAN source file for module definitions and use statements.
+   *
+   * @param source Path to the FORTRAN source file.
+   * @return Dependencies information of the source file.
+   * @throws IOException If the file cannot be read.
+   */
+  public static SourceDependencies scan(Path source) throws IOException {
+    long lastModified = Files.getLastModifiedTime(source).toMillis();
+    byte[] content = Files.readAllBytes(source);
+    Set<String> defined = new LinkedHashSet<>();
+    Set<String> used = new LinkedHashSet<>();
+    // Source encoding is unknown. Only ASCII keywords and names matter.
+    String text = new String(content, StandardCharsets.ISO_8859_1);
+    for(String line : text.split("\r?\n")) {
+      Matcher use = USE_STATEMENT.matcher(line);
+      if(use.find()) {
+        used.add(use.group(1).toLowerCase());
+        continue;
+      }
+      Matcher module = MODULE_STATEMENT.matcher(line);
+      if(module.find()) {
+        defined.add(module.group(1).toLowerCase());
+      }
+    }
+    return new SourceDependencies(content.length, lastModified, hash(content),
+        defined, used);
+  }
+
+  /**
+   * Get the information of a file from previously known information. The
+   * previous information is reused if the file has the same size and
+   * modification time, or the same content. Otherwise the file is scanned.
+   *
+   * @param source   Path to the FORTRAN source file.
+   * @param previous Previous information of the file. Can be null.
+   * @return Up to date dependencies information of the source file.
+   * @throws IOException If the file cannot be read.
+   */
+  static SourceDependencies refresh(Path source, SourceDependencies previous)
+      throws IOException
+  {
+    if(previous == null) {
+      return scan(source);
+    }
+    long size = Files.size(source);
+    long lastModified = Files.getLastModifiedTime(source).toMillis();
+    if(size == previous._size && lastModified == previous._lastModified) {
+      return previous;
+    }
+    if(size == previous._size
+        && hash(Files.readAllBytes(source)).equals(previous._hash))
+    {
+      // Touched but not modified
+      return new SourceDependencies(size, lastModified, previous._hash,
+          previous._definedModules, previous._usedModules);
+    }
+    return scan(source);
+  }
+
+  /**
+   * Check whether the information comes from the same file content as
+   * another one.
+   *
+   * @param other Other information. Can be null.
+   * @return True if both contents have the same hash.
+   */
+  boolean hasSameContent(SourceDependencies other) {
+    return other != null && _hash.equals(other._hash);
+  }
+
+  /**
+   * Compute the hash of a file content.
+   *
+   * @param content Content of the file.
+   * @return Hexadecimal SHA-256 hash.
+   */
+  static String hash(byte[] content) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+      StringBuilder str = new StringBuilder();
+      for(byte b : digest) {
+        str.append(String.format("%02x", b));
+      }
+      return str.toString();
+    } catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Get the modules defined in the source file.
+   *
+   * @return Set of lower case module names.
+   */
+  public Set<String> getDefinedModules() {
+    return Collections.unmodifiableSet(_definedModules);
+  }
+
+  /**
+   * Get the modules used in the source file. Modules defined in the file
+   * itself are not included.
+   *
+   * @return Set of lower case module names.
+   */
+  public Set<String> getUsedModules() {
+    Set<String> used = new LinkedHashSet<>(_usedModules);
+    used.removeAll(_definedModules);
+    return Collections.unmodifiableSet(used);
+  }
+
+  /**
+   * Encode the information as a single line of the index cache.
+   *
+   * @return Encoded fields without the file path.
+   */
+  String encode() {
+    return _size + FIELD_SEPARATOR + _lastModified + FIELD_SEPARATOR + _hash
+        + FIELD_SEPARATOR + String.join(NAME_SEPARATOR, _definedModules)
+        + FIELD_SEPARATOR + String.join(NAME_SEPARATOR, _usedModules);
+  }
+
+  /**
+   * Decode the information from the fields of an index cache line.
+   *
+   * @param fields Fields produced by {@link #encode()}.
+   * @return Decoded information. Null if the fields are malformed.
+   */
+  static SourceDependencies decode(String fields) {
+    String[] values = fields.split(FIELD_SEPARATOR, -1);
+    if(values.length != 5) {
+      return null;
+    }
+    try {
+      return new SourceDependencies(Long.parseLong(values[0]),
+          Long.parseLong(values[1]), values[2], split(values[3]),
+          split(values[4]));
+    } catch(NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Split a list of names.
+   *
+   * @param names Names separated by commas.
+   * @return Set of names.
+   */
+  private static Set<String> split(String names) {
+    Set<String> values = new LinkedHashSet<>();
+    if(!names.isEmpty()) {
+      values.addAll(Arrays.asList(names.split(NAME_SEPARATOR)));
+    }
+    return values;
+  }
+}
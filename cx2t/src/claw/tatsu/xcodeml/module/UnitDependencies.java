@@ -0,0 +1,113 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import claw.tatsu.xcodeml.xnode.Xname;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Modules defined and used by an XcodeML/F translation unit. The information
+ * is gathered with a streaming scan of the file so the unit does not have to
+ * be fully loaded.
+ *
+ * @author clementval
+ */
+public class UnitDependencies {
+
+  private final Set<String> _definedModules;
+  private final Set<String> _usedModules;
+
+  /**
+   * Constructs a new empty dependencies information.
+   */
+  private UnitDependencies() {
+    _definedModules = new LinkedHashSet<>();
+    _usedModules = new LinkedHashSet<>();
+  }
+
+  /**
+   * Scan an XcodeML/F file for module definitions and use statements.
+   *
+   * @param xcodemlFile Path to the XcodeML/F file.
+   * @return Dependencies information of the translation unit.
+   * @throws IOException If the file cannot be read or is not well formed.
+   */
+  public static UnitDependencies scan(String xcodemlFile) throws IOException {
+    UnitDependencies dependencies = new UnitDependencies();
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    try(InputStream in = Files.newInputStream(Paths.get(xcodemlFile))) {
+      XMLStreamReader reader = factory.createXMLStreamReader(in);
+      try {
+        while(reader.hasNext()) {
+          if(reader.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          switch(reader.getLocalName()) {
+            case Xname.F_MODULE_DEFINITION:
+              dependencies.addName(dependencies._definedModules, reader);
+              break;
+            case Xname.F_USE_DECL:
+            case Xname.F_USE_ONLY_DECL:
+              dependencies.addName(dependencies._usedModules, reader);
+              break;
+            default:
+              break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch(XMLStreamException e) {
+      throw new IOException("Cannot scan " + xcodemlFile + ": "
+          + e.getMessage(), e);
+    }
+    return dependencies;
+  }
+
+  /**
+   * Add the name attribute of the current element to the given set.
+   *
+   * @param names  Set in which the name is added.
+   * @param reader Reader positioned on a start element.
+   */
+  private void addName(Set<String> names, XMLStreamReader reader) {
+    String name = reader.getAttributeValue(null, Xname.ATTR_NAME);
+    if(name != null && !name.isEmpty()) {
+      names.add(name.toLowerCase());
+    }
+  }
+
+  /**
+   * Get the modules defined in the translation unit.
+   *
+   * @return Set of lower case module names.
+   */
+  public Set<String> getDefinedModules() {
+    return Collections.unmodifiableSet(_definedModules);
+  }
+
+  /**
+   * Get the modules used in the translation unit. Modules defined in the unit
+   * itself are not included.
+   *
+   * @return Set of lower case module names.
+   */
+  public Set<String> getUsedModules() {
+    Set<String> used = new LinkedHashSet<>(_usedModules);
+    used.removeAll(_definedModules);
+    return Collections.unmodifiableSet(used);
+  }
+}
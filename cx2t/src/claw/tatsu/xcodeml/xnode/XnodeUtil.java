@@ -17,10 +17,7 @@ import org.w3c.dom.NodeList;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.File;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -47,18 +44,32 @@ public class XnodeUtil {
    */
   public static List<Xnode> getAllArrayReferences(Xnode parent,
                                                   String arrayName)
+  {
+    return getAllArrayReferences(parent, arrayName, null);
+  }
+
+  /**
+   * Find all array references elements in a given body and give var name.
+   * References nested in an element of the excluded opcode are skipped.
+   *
+   * @param parent    The body element to search for the array references.
+   * @param arrayName Name of the array for the array reference to be found.
+   * @param excluded  Opcode of the ancestors of the skipped references. No
+   *                  reference is skipped if null.
+   * @return A list of all array references found.
+   */
+  public static List<Xnode> getAllArrayReferences(Xnode parent,
+                                                  String arrayName,
+                                                  Xcode excluded)
   {
     List<Xnode> references = new ArrayList<>();
-    NodeList nList = parent.element().
-        getElementsByTagName(Xname.F_ARRAY_REF);
-    for(int i = 0; i < nList.getLength(); i++) {
-      Node n = nList.item(i);
-      if(n.getNodeType() == Node.ELEMENT_NODE) {
-        Xnode ref = new Xnode((Element) n);
-        Xnode var = ref.matchSeq(Xcode.VAR_REF, Xcode.VAR);
-        if(var != null && var.value().equalsIgnoreCase(arrayName)) {
-          references.add(ref);
-        }
+    XnodeCursor cursor = new XnodeCursor(parent, Xcode.F_ARRAY_REF);
+    while(cursor.next()) {
+      String name = cursor.seqValue(Xcode.VAR_REF, Xcode.VAR);
+      if(name != null && name.equalsIgnoreCase(arrayName)
+          && (excluded == null || !cursor.hasAncestor(excluded)))
+      {
+        references.add(cursor.node());
       }
     }
     return references;
@@ -73,14 +84,10 @@ public class XnodeUtil {
    */
   public static List<Xnode> getAllVarReferences(Xnode parent, String varName) {
     List<Xnode> references = new ArrayList<>();
-    NodeList nList = parent.element().getElementsByTagName(Xname.VAR);
-    for(int i = 0; i < nList.getLength(); i++) {
-      Node n = nList.item(i);
-      if(n.getNodeType() == Node.ELEMENT_NODE) {
-        Xnode var = new Xnode((Element) n);
-        if(var.value().equalsIgnoreCase(varName)) {
-          references.add(var);
-        }
+    XnodeCursor cursor = new XnodeCursor(parent, Xcode.VAR);
+    while(cursor.next()) {
+      if(cursor.value().equalsIgnoreCase(varName)) {
+        references.add(cursor.node());
       }
     }
     return references;
@@ -147,15 +154,15 @@ public class XnodeUtil {
     /* Define all the assign element with array refs which are previous siblings
      * of the end pragma element */
     String s2 = String.format(
-        "following-sibling::%s[text()=\"%s\"]/preceding-sibling::%s[%s]",
+        "following-sibling::%s[text()=$endPragma]/preceding-sibling::%s[%s]",
         Xname.F_PRAGMA_STMT,
-        endPragma,
         Xname.F_ASSIGN_STATEMENT,
         Xname.F_ARRAY_REF
     );
     // Use the Kaysian method to express the intersect operator
     String intersect = XnodeUtil.xPathIntersect(s1, s2);
-    return getFromXpath(from, intersect);
+    return getFromXpath(from, intersect,
+        Collections.singletonMap("endPragma", endPragma));
   }
 
   /**
@@ -169,13 +176,14 @@ public class XnodeUtil {
   public static List<Xnode> getAllArrayReferencesInSiblings(Xnode from,
                                                             String identifier)
   {
-    String s1 = String.format("following-sibling::*//%s[%s[%s[text()=\"%s\"]]]",
+    String s1 = String.format(
+        "following-sibling::*//%s[%s[%s[text()=$identifier]]]",
         Xname.F_ARRAY_REF,
         Xname.VAR_REF,
-        Xname.VAR,
-        identifier
+        Xname.VAR
     );
-    return getFromXpath(from, s1);
+    return getFromXpath(from, s1,
+        Collections.singletonMap("identifier", identifier));
   }
 
   /**
@@ -187,16 +195,16 @@ public class XnodeUtil {
    */
   public static Xnode getFirstArrayAssign(Xnode from, String arrayName) {
     String s1 = String.format(
-        "following::%s[%s[%s[%s[text()=\"%s\"]] and position()=1]]",
+        "following::%s[%s[%s[%s[text()=$arrayName]] and position()=1]]",
         Xname.F_ASSIGN_STATEMENT,
         Xname.F_ARRAY_REF,
         Xname.VAR_REF,
-        Xname.VAR,
-        arrayName
+        Xname.VAR
     );
 
     try {
-      NodeList output = evaluateXpath(from.element(), s1);
+      NodeList output = XpathCache.evaluate(from.element(), s1,
+          Collections.singletonMap("arrayName", arrayName));
       if(output.getLength() == 0) {
         return null;
       }
@@ -228,31 +236,37 @@ public class XnodeUtil {
     String s1 = "following::";
 
     String dynamicPartS1 = "";
+    Map<String, String> variables = new HashMap<>();
     for(int i = inductionVars.size() - 1; i >= 0; --i) {
       /*
        * Here is example of there xpath query format for 1,2 and 3 nested loops
        *
-       * FdoStatement[Var[text()="induction_var"]]
+       * FdoStatement[Var[text()=$var0]]
+       *
+       * FdoStatement[Var[text()=$var0] and
+       * body[FdoStatement[Var[text()=$var1]]]
        *
-       * FdoStatement[Var[text()="induction_var"] and
-       * body[FdoStatement[Var[text()="induction_var"]]]
+       * FdoStatement[Var[text()=$var0] and
+       * body[FdoStatement[Var[text()=$var1] and
+       * body[FdoStatement[Var[text()=$var2]]]]
        *
-       * FdoStatement[Var[text()="induction_var"] and
-       * body[FdoStatement[Var[text()="induction_var"] and
-       * body[FdoStatement[Var[text()="induction_var"]]]]
+       * The induction variables are bound to $var0, $var1 ... so the query
+       * only depends on the depth of the group.
        */
 
+      String variable = "var" + i;
+      variables.put(variable, inductionVars.get(i));
       String tempQuery;
       if(i == inductionVars.size() - 1) { // first iteration
-        tempQuery = String.format("%s[%s[text()=\"%s\"]]",
+        tempQuery = String.format("%s[%s[text()=$%s]]",
             Xname.F_DO_STATEMENT,
             Xname.VAR,
-            inductionVars.get(i));
+            variable);
       } else {
-        tempQuery = String.format("%s[%s[text()=\"%s\"] and %s[%s]]",
+        tempQuery = String.format("%s[%s[text()=$%s] and %s[%s]]",
             Xname.F_DO_STATEMENT,
             Xname.VAR,
-            inductionVars.get(i),
+            variable,
             Xname.BODY,
             dynamicPartS1); // Including previously formed xpath query
       }
@@ -261,7 +275,7 @@ public class XnodeUtil {
     s1 += dynamicPartS1;
     List<HoistedNestedDoStatement> doStatements = new ArrayList<>();
     try {
-      NodeList output = evaluateXpath(from.element(), s1);
+      NodeList output = XpathCache.evaluate(from.element(), s1, variables);
       for(int i = 0; i < output.getLength(); i++) {
         Element el = (Element) output.item(i);
         Xnode doStmt = new Xnode(el);
@@ -278,21 +292,6 @@ public class XnodeUtil {
     return doStatements;
   }
 
-  /**
-   * Evaluates an Xpath expression and return its result as a NodeList.
-   *
-   * @param from  Element to start the evaluation.
-   * @param xpath Xpath expression.
-   * @return Result of evaluation as a NodeList.
-   * @throws XPathExpressionException if evaluation fails.
-   */
-  private static NodeList evaluateXpath(Element from, String xpath)
-      throws XPathExpressionException
-  {
-    XPathExpression ex = XPathFactory.newInstance().newXPath().compile(xpath);
-    return (NodeList) ex.evaluate(from, XPathConstants.NODESET);
-  }
-
   /**
    * Find all array references in the next children that match the given
    * criteria.
@@ -306,6 +305,9 @@ public class XnodeUtil {
    * //FarrayRef[varRef[Var[text()="array6"]] and arrayIndex and
    * arrayIndex[minusExpr[Var and FintConstant[text()="1"]]]]
    *
+   * The identifier and the offset values are bound to XPath variables so the
+   * query only depends on the sign of each offset.
+   *
    * @param from       The element from which the search is initiated.
    * @param identifier Identifier of the array.
    * @param offsets    List of offsets to be search for.
@@ -317,6 +319,8 @@ public class XnodeUtil {
                                                                offsets)
   {
     StringBuilder offsetXpath = new StringBuilder();
+    Map<String, String> variables = new HashMap<>();
+    variables.put("identifier", identifier);
     for(int i = 0; i < offsets.size(); ++i) {
       if(offsets.get(i) == 0) {
         offsetXpath.append(String.format("%s[position()=%s and %s]",
@@ -325,23 +329,25 @@ public class XnodeUtil {
             Xname.VAR
         ));
       } else if(offsets.get(i) > 0) {
+        variables.put("offset" + i, String.valueOf(offsets.get(i)));
         offsetXpath.append(String.
-            format("%s[position()=%s and %s[%s and %s[text()=\"%s\"]]]",
+            format("%s[position()=%s and %s[%s and %s[text()=$offset%s]]]",
                 Xname.ARRAY_INDEX,
                 i + 1,
                 Xname.MINUS_EXPR,
                 Xname.VAR,
                 Xname.F_INT_CONST,
-                offsets.get(i)));
+                i));
       } else {
+        variables.put("offset" + i, String.valueOf(Math.abs(offsets.get(i))));
         offsetXpath.append(String.
-            format("%s[position()=%s and %s[%s and %s[text()=\"%s\"]]]",
+            format("%s[position()=%s and %s[%s and %s[text()=$offset%s]]]",
                 Xname.ARRAY_INDEX,
                 i + 1,
                 Xname.MINUS_EXPR,
                 Xname.VAR,
                 Xname.F_INT_CONST,
-                Math.abs(offsets.get(i))));
+                i));
       }
       if(i != offsets.size() - 1) {
         offsetXpath.append(" and ");
@@ -349,15 +355,15 @@ public class XnodeUtil {
     }
 
     // Start of the Xpath query
-    String xpathQuery = String.format(".//%s[%s[%s[text()=\"%s\"]] and %s]",
+    String xpathQuery = String.format(
+        ".//%s[%s[%s[text()=$identifier]] and %s]",
         Xname.F_ARRAY_REF,
         Xname.VAR_REF,
         Xname.VAR,
-        identifier,
         offsetXpath.toString()
     );
 
-    return getFromXpath(from, xpathQuery);
+    return getFromXpath(from, xpathQuery, variables);
   }
 
   /**
@@ -402,10 +408,12 @@ public class XnodeUtil {
       return names;
     }
 
-    names.addAll(parent.matchAll(Xcode.VAR).stream()
-        .filter(Xnode::isNotArrayIndex)
-        .map(Xnode::value)
-        .collect(Collectors.toList()));
+    XnodeCursor cursor = new XnodeCursor(parent, Xcode.VAR);
+    while(cursor.next()) {
+      if(cursor.isNotArrayIndex()) {
+        names.add(cursor.value());
+      }
+    }
     return names;
   }
 
@@ -418,10 +426,14 @@ public class XnodeUtil {
    * @return A list of all var elements found.
    */
   public static List<Xnode> findAllReferences(Xnode parent, String id) {
-    return parent.matchAll(Xcode.VAR).stream()
-        .filter(Xnode::isNotArrayIndex)
-        .filter(x -> x.value().equalsIgnoreCase(id))
-        .collect(Collectors.toList());
+    List<Xnode> references = new ArrayList<>();
+    XnodeCursor cursor = new XnodeCursor(parent, Xcode.VAR);
+    while(cursor.next()) {
+      if(cursor.isNotArrayIndex() && cursor.value().equalsIgnoreCase(id)) {
+        references.add(cursor.node());
+      }
+    }
+    return references;
   }
 
   /**
@@ -517,18 +529,18 @@ public class XnodeUtil {
    * Get a list of T elements from an xpath query executed from the
    * given element.
    *
-   * @param from  Element to start from.
-   * @param query XPath query to be executed.
+   * @param from      Element to start from.
+   * @param query     XPath query to be executed.
+   * @param variables Values of the variables referenced in the query.
    * @return List of all array references found. List is empty if nothing is
    * found.
    */
-  private static List<Xnode> getFromXpath(Xnode from, String query)
+  private static List<Xnode> getFromXpath(Xnode from, String query,
+                                          Map<String, ?> variables)
   {
     List<Xnode> elements = new ArrayList<>();
     try {
-      XPathExpression ex = XPathFactory.newInstance().newXPath().compile(query);
-      NodeList output = (NodeList) ex.evaluate(from.element(),
-          XPathConstants.NODESET);
+      NodeList output = XpathCache.evaluate(from.element(), query, variables);
       for(int i = 0; i < output.getLength(); i++) {
         Element element = (Element) output.item(i);
         elements.add(new Xnode(element));
@@ -0,0 +1,123 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of compiled XPath expressions. Query parameters are bound to XPath
+ * variables at evaluation time so a query is compiled once whatever the
+ * values it is evaluated with.
+ *
+ * XPath objects and compiled expressions are not thread-safe. Each thread
+ * owns its XPath object and its own bounded LRU cache of expressions.
+ *
+ * @author clementval
+ */
+final class XpathCache {
+
+  private static final int CAPACITY = 128;
+  private static final ThreadLocal<XpathCache> _threadCache =
+      ThreadLocal.withInitial(XpathCache::new);
+
+  private final XPath _xpath;
+  private final Map<String, XPathExpression> _expressions;
+  private Map<String, ?> _variables = Collections.emptyMap();
+
+  /**
+   * Constructs a new empty cache for the current thread.
+   */
+  private XpathCache() {
+    _xpath = XPathFactory.newInstance().newXPath();
+    _xpath.setXPathVariableResolver(name ->
+        _variables.get(name.getLocalPart()));
+    _expressions = new LinkedHashMap<String, XPathExpression>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<String, XPathExpression> eldest)
+      {
+        return size() > CAPACITY;
+      }
+    };
+  }
+
+  /**
+   * Evaluate an XPath query from the given node.
+   *
+   * @param from      Context node of the evaluation.
+   * @param query     XPath query. Parameters are referenced as $name.
+   * @param variables Values of the variables referenced in the query.
+   * @return Nodes selected by the query.
+   * @throws XPathExpressionException If the query is malformed or the
+   *                                  evaluation fails.
+   */
+  static NodeList evaluate(Node from, String query, Map<String, ?> variables)
+      throws XPathExpressionException
+  {
+    return _threadCache.get().evaluateQuery(from, query, variables);
+  }
+
+  /**
+   * Evaluate an XPath query without variables from the given node.
+   *
+   * @param from  Context node of the evaluation.
+   * @param query XPath query.
+   * @return Nodes selected by the query.
+   * @throws XPathExpressionException If the query is malformed or the
+   *                                  evaluation fails.
+   */
+  static NodeList evaluate(Node from, String query)
+      throws XPathExpressionException
+  {
+    return evaluate(from, query, Collections.emptyMap());
+  }
+
+  /**
+   * Evaluate an XPath query with the expressions cached for this thread.
+   *
+   * @param from      Context node of the evaluation.
+   * @param query     XPath query.
+   * @param variables Values of the variables referenced in the query.
+   * @return Nodes selected by the query.
+   * @throws XPathExpressionException If the query is malformed or the
+   *                                  evaluation fails.
+   */
+  private NodeList evaluateQuery(Node from, String query,
+                                 Map<String, ?> variables)
+      throws XPathExpressionException
+  {
+    XPathExpression expression = _expressions.get(query);
+    if(expression == null) {
+      expression = _xpath.compile(query);
+      _expressions.put(query, expression);
+    }
+    _variables = variables;
+    try {
+      return (NodeList) expression.evaluate(from, XPathConstants.NODESET);
+    } finally {
+      _variables = Collections.emptyMap();
+    }
+  }
+
+  /**
+   * Get the number of expressions cached for the current thread.
+   *
+   * @return Number of cached expressions.
+   */
+  static int size() {
+    return _threadCache.get()._expressions.size();
+  }
+}
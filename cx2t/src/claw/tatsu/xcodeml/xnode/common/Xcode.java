@@ -174,11 +174,17 @@ public enum Xcode {
   NONE(Xname.NONE);
 
   private static final Map<String, Xcode> _stringToEnum = new HashMap<>();
+  // Exact XcodeML tag names. Avoids case conversion for well-formed elements.
+  private static final Map<String, Xcode> _tagToEnum = new HashMap<>();
 
   static {
     for(Xcode code : values()) {
       _stringToEnum.put(code.toString().toLowerCase(), code);
     }
+    for(Xcode code : values()) {
+      _tagToEnum.put(code.toString(), _stringToEnum.get(
+          code.toString().toLowerCase()));
+    }
   }
 
   private final String _irValue;
@@ -206,8 +212,22 @@ public enum Xcode {
   }
 
   public static Xcode fromString(String value) {
-    return (value == null || !_stringToEnum.containsKey(value.toLowerCase())) ?
-        NONE : _stringToEnum.get(value.toLowerCase());
+    Xcode code = value == null ? null : _stringToEnum.get(value.toLowerCase());
+    return code == null ? NONE : code;
+  }
+
+  /**
+   * Get the opcode corresponding to an element tag name. Tag names written as
+   * in the XcodeML specification are resolved without any allocation. Other
+   * tag names are resolved case-insensitively as in
+   * {@link #fromString(String)}.
+   *
+   * @param tagName Tag name of the element.
+   * @return Corresponding opcode. NONE if the tag name is unknown.
+   */
+  public static Xcode fromTag(String tagName) {
+    Xcode code = tagName == null ? null : _tagToEnum.get(tagName);
+    return code == null ? fromString(tagName) : code;
   }
 
   @Override
@@ -6,24 +6,23 @@ package claw.tatsu.xcodeml.xnode.common;
 
 import claw.tatsu.TatsuConstant;
 import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
 import claw.tatsu.primitive.Pragma;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.Xname;
 import claw.tatsu.xcodeml.xnode.fortran.*;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 
-import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.File;
+import java.io.BufferedWriter;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -37,6 +36,7 @@ import java.util.stream.Collectors;
  */
 public class XcodeML extends Xnode {
 
+  private static final int WRITE_BUFFER_SIZE = 1 << 16;
   private final XtypeTable _typeTable;
   private Document _xcodemlDoc;
 
@@ -88,7 +88,7 @@ public class XcodeML extends Xnode {
    * @return Newly created node.
    */
   public Xnode createNode(Xcode opcode) {
-    return new Xnode(getDocument().createElement(opcode.code()));
+    return new Xnode(getDocument().createElement(opcode.code()), opcode);
   }
 
   /**
@@ -103,6 +103,14 @@ public class XcodeML extends Xnode {
     return comment;
   }
 
+  /**
+   * Record that the unit has been modified by one of the import or
+   * parameter creation helpers. Nothing is recorded by default.
+   */
+  protected void markModified() {
+    // Only units written back conditionally track their modifications
+  }
+
   /**
    * @return The XML Document representing the XcodeML file.
    */
@@ -205,6 +213,7 @@ public class XcodeML extends Xnode {
 
     Xnode importedType = importNode(type);
     getTypeTable().add(importedType);
+    markModified();
     if(importedType.hasAttribute(Xattr.REF)
         && !FortranType.isBuiltInType(importedType.getAttribute(Xattr.REF)))
     {
@@ -225,38 +234,36 @@ public class XcodeML extends Xnode {
    * @return Imported node.
    */
   public Xnode importNode(Xnode node) {
-    return new Xnode((Element) getDocument().importNode(node.element(), true));
+    return new Xnode((Element) getDocument().importNode(node.element(), true),
+        node.opcode());
   }
 
   /**
-   * Write the XcodeML to file or std out
+   * Write the XcodeML to file or std out. The document is streamed directly
+   * from the DOM. Whitespace-only text nodes between elements are skipped.
    *
    * @param outputFile Path of the output file or null to output on std out
-   * @param indent     Number of spaces used for the indentation
+   * @param indent     Number of spaces used for the indentation. 0 to write
+   *                   the XcodeML without indentation.
    * @throws IllegalTransformationException if XML file cannot be written.
    */
   public void write(String outputFile, int indent)
       throws IllegalTransformationException
   {
     try {
-      cleanEmptyTextNodes(this.getDocument());
-      TransformerFactory factory = TransformerFactory.newInstance();
-      factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-      factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
-      Transformer transformer = factory.newTransformer();
-      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-      transformer.setOutputProperty(
-          "{http://xml.apache.org/xslt}indent-amount",
-          Integer.toString(indent));
-      DOMSource source = new DOMSource(this.getDocument());
       if(outputFile == null) {
         // Output to console
-        StreamResult console = new StreamResult(System.out);
-        transformer.transform(source, console);
+        Writer console = new BufferedWriter(new OutputStreamWriter(
+            Context.get().getOut(), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        new XcodeMLWriter(console, indent).write(getDocument());
       } else {
         // Output to file
-        StreamResult console = new StreamResult(new File(outputFile));
-        transformer.transform(source, console);
+        try(Writer file = new BufferedWriter(new OutputStreamWriter(
+            Files.newOutputStream(Paths.get(outputFile)),
+            StandardCharsets.UTF_8), WRITE_BUFFER_SIZE))
+        {
+          new XcodeMLWriter(file, indent).write(getDocument());
+        }
       }
     } catch(Exception ignored) {
       throw new IllegalTransformationException("Cannot output file: " +
@@ -264,70 +271,10 @@ public class XcodeML extends Xnode {
     }
   }
 
-  /**
-   * Removes text nodes that only contains whitespace. The conditions for
-   * removing text nodes, besides only containing whitespace, are: If the
-   * parent node has at least one child of any of the following types, all
-   * whitespace-only text-node children will be removed: - ELEMENT child -
-   * CDATA child - COMMENT child.
-   *
-   * @param parentNode Root node to start the cleaning.
-   */
-  private void cleanEmptyTextNodes(Node parentNode) {
-    boolean removeEmptyTextNodes = false;
-    Node childNode = parentNode.getFirstChild();
-    while(childNode != null) {
-      removeEmptyTextNodes |= checkNodeTypes(childNode);
-      childNode = childNode.getNextSibling();
-    }
-
-    if(removeEmptyTextNodes) {
-      removeEmptyTextNodes(parentNode);
-    }
-  }
-
-  /**
-   * Remove all empty text nodes in the subtree.
-   *
-   * @param parentNode Root node to start the search.
-   */
-  private void removeEmptyTextNodes(Node parentNode) {
-    Node childNode = parentNode.getFirstChild();
-    while(childNode != null) {
-      // grab the "nextSibling" before the child node is removed
-      Node nextChild = childNode.getNextSibling();
-      short nodeType = childNode.getNodeType();
-      if(nodeType == Node.TEXT_NODE) {
-        boolean containsOnlyWhitespace = childNode.getNodeValue()
-            .trim().isEmpty();
-        if(containsOnlyWhitespace) {
-          parentNode.removeChild(childNode);
-        }
-      }
-      childNode = nextChild;
-    }
-  }
-
-
   /*
    * Node creation section
    */
 
-  /**
-   * Check the type of the given node.
-   *
-   * @param childNode Node to be checked.
-   * @return True if the node contains data. False otherwise.
-   */
-  private boolean checkNodeTypes(Node childNode) {
-    short nodeType = childNode.getNodeType();
-    if(nodeType == Node.ELEMENT_NODE) {
-      cleanEmptyTextNodes(childNode); // recurse into subtree
-    }
-    return nodeType == Node.ELEMENT_NODE || nodeType == Node.CDATA_SECTION_NODE
-        || nodeType == Node.COMMENT_NODE;
-  }
-
   /**
    * Constructs a new name node with name value and optional type.
    *
@@ -860,6 +807,7 @@ public class XcodeML extends Xnode {
     } else {
       fctType.addParameters(hook, newParam);
     }
+    markModified();
     return newParam;
   }
 
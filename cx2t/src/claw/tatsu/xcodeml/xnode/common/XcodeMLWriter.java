@@ -0,0 +1,300 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streaming serializer writing an XcodeML document straight from the DOM.
+ *
+ * Whitespace-only text nodes are skipped when their parent also holds
+ * elements, comments or CDATA sections. Indentation is optional. Elements
+ * holding text are always written on a single line so their value is kept
+ * as is.
+ *
+ * @author clementval
+ */
+public final class XcodeMLWriter {
+
+  private static final String XML_DECLARATION =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+  private static final int BUFFER_SIZE = 1 << 14;
+
+  private final Writer _out;
+  private final int _indent;
+  // Characters are gathered here and handed to the output in large blocks.
+  private final char[] _buffer = new char[BUFFER_SIZE];
+  private int _length = 0;
+
+  /**
+   * Constructs a new writer.
+   *
+   * @param out    Output. The caller is in charge of closing it.
+   * @param indent Number of spaces per indentation level. 0 or less to write
+   *               the document without indentation and line breaks.
+   */
+  public XcodeMLWriter(Writer out, int indent) {
+    _out = out;
+    _indent = indent;
+  }
+
+  /**
+   * Write a whole document.
+   *
+   * @param doc Document to be written.
+   * @throws IOException If the output cannot be written.
+   */
+  public void write(Document doc) throws IOException {
+    put(XML_DECLARATION);
+    for(Node child = doc.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      if(child.getNodeType() != Node.TEXT_NODE) {
+        newLine(0);
+        writeNode(child, 0);
+      }
+    }
+    put('\n');
+    flushBuffer();
+    _out.flush();
+  }
+
+  /**
+   * Write a node and its subtree.
+   *
+   * @param node  Node to be written.
+   * @param depth Depth of the node used for the indentation.
+   * @throws IOException If the output cannot be written.
+   */
+  private void writeNode(Node node, int depth) throws IOException {
+    switch(node.getNodeType()) {
+      case Node.ELEMENT_NODE:
+        writeElement(node, depth);
+        break;
+      case Node.TEXT_NODE:
+        escape(node.getNodeValue(), false);
+        break;
+      case Node.CDATA_SECTION_NODE:
+        put("<![CDATA[");
+        put(node.getNodeValue());
+        put("]]>");
+        break;
+      case Node.COMMENT_NODE:
+        put("<!--");
+        put(node.getNodeValue());
+        put("-->");
+        break;
+      case Node.PROCESSING_INSTRUCTION_NODE:
+        put("<?");
+        put(node.getNodeName());
+        put(' ');
+        put(node.getNodeValue());
+        put("?>");
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Write an element, its attributes and its children.
+   *
+   * @param element Element to be written.
+   * @param depth   Depth of the element used for the indentation.
+   * @throws IOException If the output cannot be written.
+   */
+  private void writeElement(Node element, int depth) throws IOException {
+    put('<');
+    put(element.getNodeName());
+    NamedNodeMap attributes = element.getAttributes();
+    for(int i = 0; i < attributes.getLength(); ++i) {
+      Attr attribute = (Attr) attributes.item(i);
+      put(' ');
+      put(attribute.getName());
+      put("=\"");
+      escape(attribute.getValue(), true);
+      put('"');
+    }
+
+    boolean structured = false;
+    boolean hasText = false;
+    for(Node child = element.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      short type = child.getNodeType();
+      structured |= type == Node.ELEMENT_NODE || type == Node.COMMENT_NODE
+          || type == Node.CDATA_SECTION_NODE;
+      hasText |= type == Node.TEXT_NODE && !isWhitespace(child.getNodeValue());
+    }
+
+    if(element.getFirstChild() == null) {
+      put("/>");
+      return;
+    }
+    put('>');
+    // Indentation would change the value of mixed content
+    boolean indent = structured && !hasText;
+    for(Node child = element.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      if(structured && child.getNodeType() == Node.TEXT_NODE
+          && isWhitespace(child.getNodeValue()))
+      {
+        continue;
+      }
+      if(indent) {
+        newLine(depth + 1);
+      }
+      writeNode(child, depth + 1);
+    }
+    if(indent) {
+      newLine(depth);
+    }
+    put("</");
+    put(element.getNodeName());
+    put('>');
+  }
+
+  /**
+   * Start a new indented line if indentation is enabled.
+   *
+   * @param depth Indentation level.
+   * @throws IOException If the output cannot be written.
+   */
+  private void newLine(int depth) throws IOException {
+    if(_indent <= 0) {
+      return;
+    }
+    put('\n');
+    for(int i = depth * _indent; i > 0; --i) {
+      put(' ');
+    }
+  }
+
+  /**
+   * Append a character to the buffer.
+   *
+   * @param c Character to append.
+   * @throws IOException If the output cannot be written.
+   */
+  private void put(char c) throws IOException {
+    if(_length == BUFFER_SIZE) {
+      flushBuffer();
+    }
+    _buffer[_length++] = c;
+  }
+
+  /**
+   * Append a string to the buffer.
+   *
+   * @param str String to append.
+   * @throws IOException If the output cannot be written.
+   */
+  private void put(String str) throws IOException {
+    put(str, 0, str.length());
+  }
+
+  /**
+   * Append a part of a string to the buffer.
+   *
+   * @param str    String to append.
+   * @param offset Index of the first character to append.
+   * @param count  Number of characters to append.
+   * @throws IOException If the output cannot be written.
+   */
+  private void put(String str, int offset, int count) throws IOException {
+    while(count > 0) {
+      if(_length == BUFFER_SIZE) {
+        flushBuffer();
+      }
+      int chunk = Math.min(count, BUFFER_SIZE - _length);
+      str.getChars(offset, offset + chunk, _buffer, _length);
+      _length += chunk;
+      offset += chunk;
+      count -= chunk;
+    }
+  }
+
+  /**
+   * Hand the buffered characters to the output.
+   *
+   * @throws IOException If the output cannot be written.
+   */
+  private void flushBuffer() throws IOException {
+    _out.write(_buffer, 0, _length);
+    _length = 0;
+  }
+
+  /**
+   * Check whether a string contains only whitespace.
+   *
+   * @param value String to check.
+   * @return True if the string is empty or contains only whitespace.
+   */
+  private static boolean isWhitespace(String value) {
+    if(value == null) {
+      return true;
+    }
+    for(int i = 0; i < value.length(); ++i) {
+      if(value.charAt(i) > ' ') { // Same definition as String.trim()
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write a string with the XML special characters escaped.
+   *
+   * @param value     String to be written.
+   * @param attribute True if the string is an attribute value.
+   * @throws IOException If the output cannot be written.
+   */
+  private void escape(String value, boolean attribute) throws IOException {
+    int start = 0;
+    for(int i = 0; i < value.length(); ++i) {
+      String replacement;
+      switch(value.charAt(i)) {
+        case '&':
+          replacement = "&amp;";
+          break;
+        case '<':
+          replacement = "&lt;";
+          break;
+        case '>':
+          replacement = "&gt;";
+          break;
+        case '"':
+          replacement = attribute ? "&quot;" : null;
+          break;
+        case '\r':
+          replacement = "&#13;";
+          break;
+        case '\n':
+          replacement = attribute ? "&#10;" : null;
+          break;
+        case '\t':
+          replacement = attribute ? "&#9;" : null;
+          break;
+        default:
+          replacement = null;
+          break;
+      }
+      if(replacement != null) {
+        put(value, start, i - start);
+        put(replacement);
+        start = i + 1;
+      }
+    }
+    put(value, start, value.length() - start);
+  }
+}
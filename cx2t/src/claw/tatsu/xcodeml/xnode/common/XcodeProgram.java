@@ -4,10 +4,13 @@
  */
 package claw.tatsu.xcodeml.xnode.common;
 
+import claw.tatsu.common.DeferredUpdates;
 import claw.tatsu.xcodeml.error.XanalysisError;
 import claw.tatsu.xcodeml.xnode.Xname;
 import claw.tatsu.xcodeml.xnode.XnodeUtil;
 import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
 import java.io.BufferedInputStream;
 import java.io.File;
@@ -54,6 +57,8 @@ public class XcodeProgram extends XcodeML {
    */
   private XcodeProgram(Document doc) {
     super(doc);
+    XnodeIndex.install(doc);
+    getTypeTable().setHashSeed(getSourceFileOnly());
     _errors = new ArrayList<>();
     _warnings = new ArrayList<>();
   }
@@ -104,6 +109,36 @@ public class XcodeProgram extends XcodeML {
     return createFromDocument(doc);
   }
 
+  /**
+   * Prepare the translation unit to be transformed by several threads, each
+   * one modifying a different function definition. Creating the nodes lazily
+   * expanded by the DOM implementation and building the element index are
+   * not thread-safe. Both are done upfront.
+   */
+  public void prepareConcurrentTransformation() {
+    Node node = getDocument().getDocumentElement();
+    while(node != null) {
+      if(node.hasAttributes()) {
+        NamedNodeMap attributes = node.getAttributes();
+        for(int i = 0; i < attributes.getLength(); ++i) {
+          attributes.item(i).getNodeValue();
+        }
+      } else {
+        node.getNodeValue();
+      }
+      Node next = node.getFirstChild();
+      for(Node up = node; next == null && up != null; up = up.getParentNode())
+      {
+        next = up.getNextSibling();
+      }
+      node = next;
+    }
+    XnodeIndex index = XnodeIndex.of(getDocument().getDocumentElement());
+    if(index != null) {
+      index.ensureBuilt();
+    }
+  }
+
   /**
    * Read all the XcodeML document information: version, language, time, source,
    * compiler info.
@@ -184,7 +219,8 @@ public class XcodeProgram extends XcodeML {
     if(msg == null || msg.isEmpty()) {
       return;
     }
-    list.add(new XanalysisError(msg, lineno));
+    DeferredUpdates.applyOrDefer(() ->
+        list.add(new XanalysisError(msg, lineno)));
   }
 
   /**
@@ -108,7 +108,7 @@ public class XdeclTable extends Xnode {
   public void add(Xnode decl) {
     String key = decl.matchSeq(Xcode.NAME).value();
     if(!_table.containsKey(key)) {
-      _baseElement.appendChild(decl.cloneRawNode());
+      append(decl, true);
       _table.put(key, decl);
     }
   }
@@ -122,8 +122,7 @@ public class XdeclTable extends Xnode {
     if(_baseElement.getFirstChild() != null) {
       String key = decl.matchSeq(Xcode.NAME).value();
       if(!_table.containsKey(key)) {
-        _baseElement.insertBefore(decl.cloneRawNode(),
-            _baseElement.getFirstChild());
+        insert(decl, true);
         _table.put(decl.matchSeq(Xcode.NAME).value(), decl);
       }
     } else {
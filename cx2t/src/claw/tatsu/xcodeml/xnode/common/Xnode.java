@@ -29,6 +29,8 @@ public class Xnode {
   public static final int UNDEF_DEPTH = -1;
   final Element _baseElement;
   private boolean _isDeleted = false;
+  // Resolved once from the tag name. The element of a node never changes.
+  private Xcode _opcode;
 
   /**
    * Constructs an Xnode object from an element in the AST.
@@ -39,6 +41,18 @@ public class Xnode {
     _baseElement = element;
   }
 
+  /**
+   * Constructs an Xnode object from an element in the AST whose opcode is
+   * already known.
+   *
+   * @param element Base element for the Xnode object.
+   * @param opcode  Opcode of the element.
+   */
+  public Xnode(Element element, Xcode opcode) {
+    _baseElement = element;
+    _opcode = opcode;
+  }
+
   /**
    * Delete this nodes with all its next siblings.
    */
@@ -61,10 +75,11 @@ public class Xnode {
    * @return Opcode.
    */
   public Xcode opcode() {
-    if(_baseElement == null) {
-      return Xcode.NONE;
+    if(_opcode == null) {
+      _opcode = _baseElement == null ? Xcode.NONE
+          : Xcode.fromTag(_baseElement.getTagName());
     }
-    return Xcode.fromString(_baseElement.getTagName().toLowerCase());
+    return _opcode;
   }
 
   /**
@@ -149,6 +164,7 @@ public class Xnode {
    */
   public void setValue(String value) {
     if(_baseElement != null) {
+      XnodeIndex.childrenRemoved(_baseElement);
       _baseElement.setTextContent(value);
     }
   }
@@ -248,9 +264,10 @@ public class Xnode {
     if(_baseElement == null) {
       return nodes;
     }
-    NodeList children = _baseElement.getChildNodes();
-    for(int i = 0; i < children.getLength(); ++i) {
-      Node child = children.item(i);
+    // NodeList caches are shared by the document. Siblings are walked instead.
+    for(Node child = _baseElement.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
       if(child.getNodeType() == Node.ELEMENT_NODE) {
         nodes.add(new Xnode((Element) child));
       }
@@ -286,6 +303,7 @@ public class Xnode {
     if(_baseElement == null || _baseElement.getParentNode() == null) {
       return;
     }
+    XnodeIndex.removed(_baseElement);
     _baseElement.getParentNode().removeChild(_baseElement);
   }
 
@@ -316,11 +334,9 @@ public class Xnode {
    */
   public void append(Xnode node, boolean clone) {
     if(node != null && _baseElement != null) {
-      if(clone) {
-        _baseElement.appendChild(node.cloneRawNode());
-      } else {
-        _baseElement.appendChild(node.element());
-      }
+      Node toAppend = clone ? node.cloneRawNode() : node.element();
+      _baseElement.appendChild(toAppend);
+      XnodeIndex.inserted(toAppend);
     }
   }
 
@@ -341,12 +357,13 @@ public class Xnode {
    */
   public void insert(Xnode node, boolean clone) {
     if(node != null && _baseElement != null) {
-      NodeList children = _baseElement.getChildNodes();
-      Node toInsert = clone ? node.cloneRawNode() : node.element();
-      if(children.getLength() == 0) {
+      Node first = _baseElement.getFirstChild();
+      if(first == null) {
         append(node, clone);
       } else {
-        _baseElement.insertBefore(toInsert, children.item(0));
+        Node toInsert = clone ? node.cloneRawNode() : node.element();
+        _baseElement.insertBefore(toInsert, first);
+        XnodeIndex.inserted(toInsert);
       }
     }
   }
@@ -406,7 +423,7 @@ public class Xnode {
    */
   public Xnode cloneNode() {
     Node clone = cloneRawNode();
-    return new Xnode((Element) clone);
+    return new Xnode((Element) clone, opcode());
   }
 
   /**
@@ -561,6 +578,8 @@ public class Xnode {
 
   /**
    * Find node with the given opcode in the descendants of the current node.
+   * Nodes attached to an XcodeProgram are looked up in the opcode index of the
+   * program.
    *
    * @param opcode Opcode of the node to be matched.
    * @return The matched node. Null if nothing matched.
@@ -570,12 +589,17 @@ public class Xnode {
     if(_baseElement == null) {
       return null;
     }
+    XnodeIndex index = XnodeIndex.of(_baseElement);
+    if(index != null && index.contains(_baseElement)) {
+      Element element = index.matchFirst(_baseElement, opcode);
+      return element == null ? null : new Xnode(element, opcode);
+    }
     NodeList elements = _baseElement.getElementsByTagName(opcode.code());
     if(elements.getLength() == 0) {
       return null;
     }
     return (elements.item(0) == null) ? null :
-        new Xnode((Element) elements.item(0));
+        new Xnode((Element) elements.item(0), opcode);
   }
 
   /**
@@ -596,10 +620,18 @@ public class Xnode {
    * @return The matched node. Null if no node found.
    */
   public Xnode matchDirectDescendant(List<Xcode> opcodes) {
-    List<Xnode> children = children();
-    for(Xnode child : children) {
-      if(opcodes.contains(child.opcode())) {
-        return child;
+    if(_baseElement == null) {
+      return null;
+    }
+    for(Node child = _baseElement.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      if(child.getNodeType() == Node.ELEMENT_NODE) {
+        Element element = (Element) child;
+        Xcode opcode = Xcode.fromTag(element.getTagName());
+        if(opcodes.contains(opcode)) {
+          return new Xnode(element, opcode);
+        }
       }
     }
     return null;
@@ -623,7 +655,8 @@ public class Xnode {
   }
 
   /**
-   * Match all nodes with the given opcode in the subtree.
+   * Match all nodes with the given opcode in the subtree. Nodes attached to
+   * an XcodeProgram are looked up in the opcode index of the program.
    *
    * @param opcode Opcode of the nodes to be matched.
    * @return List of all nodes matched in the subtree.
@@ -633,11 +666,18 @@ public class Xnode {
     if(_baseElement == null) {
       return nodes;
     }
+    XnodeIndex index = XnodeIndex.of(_baseElement);
+    if(index != null && index.contains(_baseElement)) {
+      for(Element element : index.matchAll(_baseElement, opcode)) {
+        nodes.add(new Xnode(element, opcode));
+      }
+      return nodes;
+    }
     NodeList rawNodes = _baseElement.getElementsByTagName(opcode.code());
     for(int i = 0; i < rawNodes.getLength(); i++) {
       Node n = rawNodes.item(i);
       if(n.getNodeType() == Node.ELEMENT_NODE) {
-        nodes.add(new Xnode((Element) n));
+        nodes.add(new Xnode((Element) n, opcode));
       }
     }
     return nodes;
@@ -663,7 +703,7 @@ public class Xnode {
       if(nextNode.getNodeType() == Node.ELEMENT_NODE) {
         Element element = (Element) nextNode;
         if(element.getTagName().equals(opcode.code())) {
-          return new Xnode(element);
+          return new Xnode(element, opcode);
         }
       }
       nextNode = down ? nextNode.getNextSibling() : nextNode.getParentNode();
@@ -700,6 +740,7 @@ public class Xnode {
       Node parent = _baseElement.getParentNode();
       if(parent != null) {
         parent.insertBefore(node.element(), _baseElement.getNextSibling());
+        XnodeIndex.inserted(node.element());
       }
     }
   }
@@ -751,6 +792,7 @@ public class Xnode {
       Node parent = _baseElement.getParentNode();
       if(parent != null) {
         parent.insertBefore(node.element(), _baseElement);
+        XnodeIndex.inserted(node.element());
       }
     }
   }
@@ -0,0 +1,404 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.List;
+
+/**
+ * Cursor walking the elements of a subtree in document order without
+ * allocating an Xnode for each visited element. The root of the walk is not
+ * visited itself, as for {@link Xnode#matchAll(Xcode)}. A cursor can be reset
+ * on another root and reused for several walks.
+ *
+ * A cursor reset with an opcode only visits the elements of this opcode. They
+ * are looked up in the opcode index of the program when the subtree is
+ * attached to one, which is much cheaper than walking the whole subtree.
+ *
+ * A cursor reset without opcode visits all the elements. {@link #next()}
+ * enters them in pre-order. {@link #nextEvent()} also stops on each element
+ * when it is exited, once all its children have been visited.
+ *
+ * The subtree must not be modified during the walk.
+ *
+ * @author clementval
+ */
+public final class XnodeCursor {
+
+  private Element _root;
+  private Element _current;
+  private Xcode _opcode;
+  private boolean _exit;
+  private boolean _skipChildren;
+  private int _depth;
+
+  // Matched elements when the walk is restricted to one opcode
+  private Xcode _matchedOpcode;
+  private List<Element> _indexed;
+  private NodeList _matched;
+  private int _matchedPosition;
+  private Element _skipped;
+
+  /**
+   * Constructs a cursor without root. It must be reset before being used.
+   */
+  public XnodeCursor() {
+  }
+
+  /**
+   * Constructs a cursor walking all the elements of the subtree of the given
+   * node.
+   *
+   * @param root Root node of the walk.
+   */
+  public XnodeCursor(Xnode root) {
+    reset(root);
+  }
+
+  /**
+   * Constructs a cursor walking the elements of the given opcode in the
+   * subtree of the given node.
+   *
+   * @param root   Root node of the walk.
+   * @param opcode Opcode of the visited elements.
+   */
+  public XnodeCursor(Xnode root, Xcode opcode) {
+    reset(root, opcode);
+  }
+
+  /**
+   * Restart the cursor on all the elements of the subtree of the given node.
+   *
+   * @param root Root node of the walk.
+   * @return This cursor.
+   */
+  public XnodeCursor reset(Xnode root) {
+    _root = root == null ? null : root.element();
+    _current = null;
+    _opcode = null;
+    _exit = false;
+    _skipChildren = false;
+    _depth = 0;
+    _matchedOpcode = null;
+    _indexed = null;
+    _matched = null;
+    _matchedPosition = 0;
+    _skipped = null;
+    return this;
+  }
+
+  /**
+   * Restart the cursor on the elements of the given opcode in the subtree of
+   * the given node.
+   *
+   * @param root   Root node of the walk.
+   * @param opcode Opcode of the visited elements.
+   * @return This cursor.
+   */
+  public XnodeCursor reset(Xnode root, Xcode opcode) {
+    reset(root);
+    if(_root == null) {
+      return this;
+    }
+    _matchedOpcode = opcode;
+    XnodeIndex index = XnodeIndex.of(_root);
+    if(index != null && index.contains(_root)) {
+      _indexed = index.matchAll(_root, opcode);
+    } else {
+      _matched = _root.getElementsByTagName(opcode.code());
+    }
+    return this;
+  }
+
+  /**
+   * Move the cursor to the next element entered in pre-order.
+   *
+   * @return True if the cursor is on an element. False if the walk is over.
+   */
+  public boolean next() {
+    while(nextEvent()) {
+      if(!_exit) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Move the cursor to the next event of the walk. An element is entered
+   * before any of its children and exited after all of them. Elements are
+   * only entered when the walk is restricted to one opcode.
+   *
+   * @return True if the cursor is on an element. False if the walk is over.
+   */
+  public boolean nextEvent() {
+    if(_root == null) {
+      return false;
+    }
+    if(_matchedOpcode != null) {
+      return nextMatched();
+    }
+    Element next;
+    if(_current == null) {
+      next = firstChild(_root);
+      if(next == null) {
+        _root = null;
+        return false;
+      }
+      _depth = 1;
+    } else if(!_exit) {
+      next = _skipChildren ? null : firstChild(_current);
+      _skipChildren = false;
+      if(next == null) {
+        _exit = true;
+        return true;
+      }
+      ++_depth;
+    } else {
+      next = nextSibling(_current);
+      if(next == null) {
+        Node parent = _current.getParentNode();
+        if(parent == _root || !(parent instanceof Element)) {
+          _root = null;
+          _current = null;
+          return false;
+        }
+        _current = (Element) parent;
+        _opcode = null;
+        --_depth;
+        return true;
+      }
+    }
+    _current = next;
+    _opcode = null;
+    _exit = false;
+    return true;
+  }
+
+  /**
+   * Move the cursor to the next matched element that is not nested in an
+   * element whose children are skipped.
+   *
+   * @return True if the cursor is on an element. False if the walk is over.
+   */
+  private boolean nextMatched() {
+    if(_skipChildren) {
+      _skipped = _current;
+      _skipChildren = false;
+    }
+    int size = _indexed != null ? _indexed.size() : _matched.getLength();
+    while(_matchedPosition < size) {
+      Element next = _indexed != null ? _indexed.get(_matchedPosition++)
+          : (Element) _matched.item(_matchedPosition++);
+      if(_skipped == null || !isNested(next, _skipped)) {
+        _current = next;
+        _opcode = _matchedOpcode;
+        _skipped = null;
+        return true;
+      }
+    }
+    _root = null;
+    _current = null;
+    return false;
+  }
+
+  /**
+   * Do not visit the children of the element that has just been entered. The
+   * next event is the exit of this element in a walk of all the elements.
+   */
+  public void skipChildren() {
+    _skipChildren = !_exit;
+  }
+
+  /**
+   * Check whether the cursor is exiting the current element.
+   *
+   * @return True if the element is exited. False if it is entered.
+   */
+  public boolean isExit() {
+    return _exit;
+  }
+
+  /**
+   * Get the depth of the current element relative to the root of a walk of
+   * all the elements. Children of the root are at depth 1.
+   *
+   * @return Depth of the current element. 0 when the walk is restricted to
+   * one opcode.
+   */
+  public int depth() {
+    return _depth;
+  }
+
+  /**
+   * Get the opcode of the current element.
+   *
+   * @return Opcode. NONE if the cursor is not on an element.
+   */
+  public Xcode opcode() {
+    if(_opcode == null) {
+      _opcode = _current == null ? Xcode.NONE
+          : Xcode.fromTag(_current.getTagName());
+    }
+    return _opcode;
+  }
+
+  /**
+   * Check whether the current element is of the given opcode.
+   *
+   * @param opcode Opcode to check.
+   * @return True if the current element is of the given opcode.
+   */
+  public boolean is(Xcode opcode) {
+    return opcode() == opcode;
+  }
+
+  /**
+   * Get the opcode of the parent of the current element.
+   *
+   * @return Opcode. NONE if the current element has no parent element.
+   */
+  public Xcode parentOpcode() {
+    Node parent = _current == null ? null : _current.getParentNode();
+    return parent instanceof Element
+        ? Xcode.fromTag(((Element) parent).getTagName()) : Xcode.NONE;
+  }
+
+  /**
+   * Check whether the current element is not a direct child of an arrayIndex
+   * element. Same as {@link Xnode#isNotArrayIndex()}.
+   *
+   * @return True if the parent element is not an arrayIndex.
+   */
+  public boolean isNotArrayIndex() {
+    return parentOpcode() != Xcode.ARRAY_INDEX;
+  }
+
+  /**
+   * Check whether the current element has an ancestor of the given opcode.
+   * Same as a null check of {@link Xnode#matchAncestor(Xcode)}.
+   *
+   * @param opcode Opcode of the ancestor.
+   * @return True if an ancestor of the given opcode exists.
+   */
+  public boolean hasAncestor(Xcode opcode) {
+    Node ancestor = _current == null ? null : _current.getParentNode();
+    while(ancestor instanceof Element) {
+      if(((Element) ancestor).getTagName().equals(opcode.code())) {
+        return true;
+      }
+      ancestor = ancestor.getParentNode();
+    }
+    return false;
+  }
+
+  /**
+   * Get the value of the current element. Same as {@link Xnode#value()}.
+   *
+   * @return Trimmed and lower cased text content of the element.
+   */
+  public String value() {
+    return _current == null ? "" : value(_current);
+  }
+
+  /**
+   * Get the value of the element reached from the current element by the
+   * sequence of direct children. Same as {@link Xnode#matchSeq(Xcode...)}
+   * followed by {@link Xnode#value()}.
+   *
+   * @param opcodes Sequence of opcodes of the direct children.
+   * @return Value of the reached element. Null if the sequence does not match.
+   */
+  public String seqValue(Xcode... opcodes) {
+    Element element = _current;
+    for(Xcode opcode : opcodes) {
+      if(element == null) {
+        return null;
+      }
+      Element child = firstChild(element);
+      while(child != null && !child.getTagName().equals(opcode.code())) {
+        child = nextSibling(child);
+      }
+      element = child;
+    }
+    return element == null ? null : value(element);
+  }
+
+  /**
+   * Get the current element.
+   *
+   * @return Current element. Null if the cursor is not on an element.
+   */
+  public Element element() {
+    return _current;
+  }
+
+  /**
+   * Create an Xnode for the current element. This is the only method of the
+   * cursor allocating a node and should be called on matched elements only.
+   *
+   * @return New node wrapping the current element.
+   */
+  public Xnode node() {
+    return _current == null ? null : new Xnode(_current, opcode());
+  }
+
+  /**
+   * Get the value of an element as in {@link Xnode#value()}.
+   *
+   * @param element Element to read.
+   * @return Trimmed and lower cased text content of the element.
+   */
+  private static String value(Element element) {
+    return element.getTextContent().trim().toLowerCase();
+  }
+
+  /**
+   * Check whether a node is nested in another one.
+   *
+   * @param node     Node to check.
+   * @param ancestor Possible ancestor.
+   * @return True if the node is a descendant of the ancestor.
+   */
+  private static boolean isNested(Node node, Node ancestor) {
+    for(Node n = node.getParentNode(); n != null; n = n.getParentNode()) {
+      if(n == ancestor) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the first child element of a node.
+   *
+   * @param node Parent node.
+   * @return First child element. Null if there is none.
+   */
+  private static Element firstChild(Node node) {
+    Node child = node.getFirstChild();
+    while(child != null && child.getNodeType() != Node.ELEMENT_NODE) {
+      child = child.getNextSibling();
+    }
+    return (Element) child;
+  }
+
+  /**
+   * Get the next sibling element of a node.
+   *
+   * @param node Node to start from.
+   * @return Next sibling element. Null if there is none.
+   */
+  private static Element nextSibling(Node node) {
+    Node sibling = node.getNextSibling();
+    while(sibling != null && sibling.getNodeType() != Node.ELEMENT_NODE) {
+      sibling = sibling.getNextSibling();
+    }
+    return (Element) sibling;
+  }
+}
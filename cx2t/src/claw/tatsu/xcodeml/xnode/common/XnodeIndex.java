@@ -0,0 +1,431 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Index from opcode to the elements of an XcodeML document. Each indexed
+ * element gets a position that follows the document order. The descendants
+ * of an element are the elements positioned between the element and its last
+ * descendant so subtree queries are answered without walking the tree.
+ *
+ * The index is built on the first query and kept up to date by the mutation
+ * methods of Xnode. Positions are spaced so a subtree inserted in the
+ * document is labelled in the gap left between its neighbours. When the gap
+ * is exhausted, the smallest enclosing subtree with enough room is labelled
+ * again. Only the elements of that subtree are walked so function definitions
+ * transformed concurrently by other threads are not read.
+ *
+ * Only elements attached to the document are indexed. Callers fall back to a
+ * DOM search for detached subtrees.
+ *
+ * @author clementval
+ */
+public final class XnodeIndex {
+
+  private static final String USER_DATA_KEY = "claw.tatsu.xnode.index";
+  private static final long SPACING = 1L << 32;
+  // Minimal spacing of the elements of a relabelled subtree
+  private static final long MIN_SPACING = 1L << 16;
+
+  private final Document _document;
+  private final Map<Xcode, TreeMap<Long, Element>> _elements;
+  private final Map<Node, Long> _positions;
+  private boolean _built = false;
+
+  /**
+   * Constructs a new empty index for the given document.
+   *
+   * @param document Document to be indexed.
+   */
+  private XnodeIndex(Document document) {
+    _document = document;
+    _elements = new EnumMap<>(Xcode.class);
+    _positions = new IdentityHashMap<>();
+  }
+
+  /**
+   * Attach a new index to the document.
+   *
+   * @param document Document to be indexed.
+   */
+  static void install(Document document) {
+    if(document != null) {
+      document.setUserData(USER_DATA_KEY, new XnodeIndex(document), null);
+    }
+  }
+
+  /**
+   * Get the index of the document owning the given node.
+   *
+   * @param node Node of an XcodeML document.
+   * @return Index of the document. Null if the document is not indexed.
+   */
+  static XnodeIndex of(Node node) {
+    Document document = node == null ? null : node.getOwnerDocument();
+    return document == null ? null
+        : (XnodeIndex) document.getUserData(USER_DATA_KEY);
+  }
+
+  /**
+   * Record a node inserted or moved with raw DOM operations. Mutations done
+   * through Xnode are recorded automatically.
+   *
+   * @param node Node that has been inserted or moved.
+   */
+  public static void inserted(Node node) {
+    XnodeIndex index = of(node);
+    if(index != null) {
+      index.attach(node);
+    }
+  }
+
+  /**
+   * Forget a node before it is removed from the document.
+   *
+   * @param node Node about to be removed.
+   */
+  static void removed(Node node) {
+    XnodeIndex index = of(node);
+    if(index != null) {
+      index.detach(node);
+    }
+  }
+
+  /**
+   * Forget the children of a node before they are replaced.
+   *
+   * @param node Node whose children are about to be removed.
+   */
+  static void childrenRemoved(Node node) {
+    XnodeIndex index = of(node);
+    if(index != null) {
+      index.detachChildren(node);
+    }
+  }
+
+  /**
+   * Check whether the node is indexed. The index is built if needed.
+   *
+   * @param node Node to check.
+   * @return True if the node is attached to the document and indexed.
+   */
+  synchronized boolean contains(Node node) {
+    if(!_built) {
+      build();
+    }
+    return _positions.containsKey(node);
+  }
+
+  /**
+   * Get all the elements with the given opcode in the subtree of an indexed
+   * element. The root element itself is not included.
+   *
+   * @param root   Indexed root of the subtree.
+   * @param opcode Opcode of the elements.
+   * @return Elements in document order.
+   */
+  synchronized List<Element> matchAll(Element root, Xcode opcode) {
+    return new ArrayList<>(subtree(root, opcode).values());
+  }
+
+  /**
+   * Get the first element with the given opcode in the subtree of an indexed
+   * element. The root element itself is not included.
+   *
+   * @param root   Indexed root of the subtree.
+   * @param opcode Opcode of the element.
+   * @return First element in document order. Null if nothing matched.
+   */
+  synchronized Element matchFirst(Element root, Xcode opcode) {
+    Map.Entry<Long, Element> first = subtree(root, opcode).firstEntry();
+    return first == null ? null : first.getValue();
+  }
+
+  /**
+   * Get the elements of a subtree restricted to one opcode.
+   *
+   * @param root   Indexed root of the subtree.
+   * @param opcode Opcode of the elements.
+   * @return Map view of the range of positions covered by the subtree.
+   */
+  private NavigableMap<Long, Element> subtree(Element root, Xcode opcode) {
+    if(!_built) {
+      build();
+    }
+    Long first = _positions.get(root);
+    Long last = _positions.get(lastDescendant(root));
+    TreeMap<Long, Element> elements = _elements.get(opcode);
+    if(first == null || last == null || elements == null) {
+      return Collections.emptyNavigableMap();
+    }
+    return elements.subMap(first, false, last, true);
+  }
+
+  /**
+   * Remove the subtree of the node from the index. Must be called before the
+   * node is removed from the document.
+   *
+   * @param node Root of the removed subtree.
+   */
+  private synchronized void detach(Node node) {
+    if(_built && _positions.containsKey(node)) {
+      forget(node);
+    }
+  }
+
+  /**
+   * Remove the descendants of the node from the index. Must be called before
+   * the children of the node are replaced.
+   *
+   * @param node Node whose children are removed.
+   */
+  private synchronized void detachChildren(Node node) {
+    if(!_built) {
+      return;
+    }
+    for(Node child = node.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      if(_positions.containsKey(child)) {
+        forget(child);
+      }
+    }
+  }
+
+  /**
+   * Index the subtree of a node after it has been inserted or moved. The
+   * subtree is labelled between its predecessor and its successor in document
+   * order.
+   *
+   * @param node Root of the inserted subtree.
+   */
+  private synchronized void attach(Node node) {
+    if(!_built || node.getNodeType() != Node.ELEMENT_NODE) {
+      return;
+    }
+    if(_positions.containsKey(node)) {
+      forget(node); // Node is moved
+    }
+    Node parent = node.getParentNode();
+    if(parent == null || !_positions.containsKey(parent)) {
+      return; // Inserted in a detached subtree
+    }
+
+    Element predecessor = (Element) parent;
+    Element previous = previousElement(node);
+    if(previous != null) {
+      predecessor = lastDescendant(previous);
+    }
+    Element successor = null;
+    for(Node n = node; n != null && successor == null; n = n.getParentNode()) {
+      successor = nextElement(n);
+    }
+
+    Long low = _positions.get(predecessor);
+    Long high = successor == null ? Long.valueOf(Long.MAX_VALUE)
+        : _positions.get(successor);
+    List<Element> subtree = new ArrayList<>();
+    collect(node, subtree);
+    if(low == null || high == null
+        || high - low - 1 < subtree.size())
+    {
+      relabel(parent);
+      return;
+    }
+    long step = (high - low) / (subtree.size() + 1);
+    long position = low;
+    for(Element element : subtree) {
+      position += step;
+      add(element, position);
+    }
+  }
+
+  /**
+   * Label again the smallest subtree enclosing the given node whose range of
+   * positions leaves enough room for all its elements. The index is dropped
+   * if no such subtree exists.
+   *
+   * @param node Node whose subtree must be labelled again.
+   */
+  private void relabel(Node node) {
+    for(Node root = node; root != null
+        && root.getNodeType() == Node.ELEMENT_NODE;
+        root = root.getParentNode())
+    {
+      Long low = _positions.get(root);
+      Element successor = null;
+      for(Node n = root; n != null && successor == null; n = n.getParentNode())
+      {
+        successor = nextElement(n);
+      }
+      Long high = successor == null ? Long.valueOf(Long.MAX_VALUE)
+          : _positions.get(successor);
+      if(low == null || high == null) {
+        break;
+      }
+      List<Element> subtree = new ArrayList<>();
+      collect(root, subtree);
+      long step = (high - low) / subtree.size();
+      if(step >= MIN_SPACING) {
+        forget(root);
+        long position = low;
+        for(Element element : subtree) {
+          add(element, position);
+          position += step;
+        }
+        return;
+      }
+    }
+    invalidate();
+  }
+
+  /**
+   * Build the index if it is not built yet.
+   */
+  synchronized void ensureBuilt() {
+    if(!_built) {
+      build();
+    }
+  }
+
+  /**
+   * Label all the elements of the document from scratch.
+   */
+  private void build() {
+    _elements.clear();
+    _positions.clear();
+    List<Element> all = new ArrayList<>();
+    collect(_document.getDocumentElement(), all);
+    long position = 0;
+    for(Element element : all) {
+      position += SPACING;
+      add(element, position);
+    }
+    _built = true;
+  }
+
+  /**
+   * Drop the index. It is rebuilt on the next query.
+   */
+  private void invalidate() {
+    _elements.clear();
+    _positions.clear();
+    _built = false;
+  }
+
+  /**
+   * Add an element to the index.
+   *
+   * @param element  Element to add.
+   * @param position Position of the element.
+   */
+  private void add(Element element, long position) {
+    _positions.put(element, position);
+    _elements.computeIfAbsent(Xcode.fromTag(element.getTagName()),
+        k -> new TreeMap<>()).put(position, element);
+  }
+
+  /**
+   * Remove all the elements of a subtree from the index.
+   *
+   * @param node Root of the subtree.
+   */
+  private void forget(Node node) {
+    List<Element> subtree = new ArrayList<>();
+    collect(node, subtree);
+    for(Element element : subtree) {
+      Long position = _positions.remove(element);
+      TreeMap<Long, Element> elements =
+          _elements.get(Xcode.fromTag(element.getTagName()));
+      if(position != null && elements != null) {
+        elements.remove(position);
+      }
+    }
+  }
+
+  /**
+   * Collect the elements of a subtree in document order.
+   *
+   * @param node     Root of the subtree.
+   * @param elements List receiving the elements.
+   */
+  private static void collect(Node node, List<Element> elements) {
+    if(node == null || node.getNodeType() != Node.ELEMENT_NODE) {
+      return;
+    }
+    elements.add((Element) node);
+    for(Node child = node.getFirstChild(); child != null;
+        child = child.getNextSibling())
+    {
+      collect(child, elements);
+    }
+  }
+
+  /**
+   * Get the last element of a subtree in document order.
+   *
+   * @param element Root of the subtree.
+   * @return Last descendant element. The element itself if it has no element
+   * child.
+   */
+  private static Element lastDescendant(Element element) {
+    Element last = element;
+    Node child = last.getLastChild();
+    while(child != null) {
+      if(child.getNodeType() == Node.ELEMENT_NODE) {
+        last = (Element) child;
+        child = last.getLastChild();
+      } else {
+        child = child.getPreviousSibling();
+      }
+    }
+    return last;
+  }
+
+  /**
+   * Get the previous sibling element of a node.
+   *
+   * @param node Node to start from.
+   * @return Previous sibling element. Null if there is none.
+   */
+  private static Element previousElement(Node node) {
+    for(Node n = node.getPreviousSibling(); n != null;
+        n = n.getPreviousSibling())
+    {
+      if(n.getNodeType() == Node.ELEMENT_NODE) {
+        return (Element) n;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the next sibling element of a node.
+   *
+   * @param node Node to start from.
+   * @return Next sibling element. Null if there is none.
+   */
+  private static Element nextElement(Node node) {
+    for(Node n = node.getNextSibling(); n != null; n = n.getNextSibling()) {
+      if(n.getNodeType() == Node.ELEMENT_NODE) {
+        return (Element) n;
+      }
+    }
+    return null;
+  }
+}
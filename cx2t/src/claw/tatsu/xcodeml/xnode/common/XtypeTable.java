@@ -4,15 +4,24 @@
  */
 package claw.tatsu.xcodeml.xnode.common;
 
+import claw.tatsu.common.DeferredUpdates;
 import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
 import claw.tatsu.xcodeml.xnode.fortran.FfunctionType;
 import claw.tatsu.xcodeml.xnode.fortran.FortranType;
 import claw.tatsu.xcodeml.xnode.fortran.FstructType;
+import claw.tatsu.xcodeml.xnode.Xname;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The XtypeTable represents the typeTable (3.1) element in XcodeML intermediate
@@ -28,7 +37,49 @@ import java.util.Map;
  */
 public class XtypeTable extends Xnode {
 
+  /**
+   * Source of the types of a table read lazily. Types are read from the
+   * source the first time they are looked up.
+   */
+  public interface TypeLoader {
+
+    /**
+     * Check whether the source defines a type.
+     *
+     * @param hash Hash of the type.
+     * @return True if the type is defined by the source.
+     */
+    boolean hasType(String hash);
+
+    /**
+     * Read a single type from the source.
+     *
+     * @param hash Hash of the type.
+     * @return Type element owned by the document of the table but not
+     * attached. Null if the type is not defined by the source.
+     */
+    Element load(String hash);
+
+    /**
+     * Read the complete type table from the source.
+     *
+     * @return Type table element owned by the document of the table but not
+     * attached.
+     */
+    Element loadAll();
+  }
+
+  // Scope of the hashes generated on the current thread
+  private static final ThreadLocal<String> _hashScope = new ThreadLocal<>();
+
   private final Map<String, Xnode> _table;
+  // Number of hashes generated in each scope
+  private final Map<String, Integer> _hashCounters =
+      Collections.synchronizedMap(new HashMap<>());
+  private String _hashSeed = "";
+  private TypeLoader _loader = null;
+  // Hashes of the types read from the loader
+  private final Set<String> _loaded = new HashSet<>();
 
   /**
    * Element standard ctor. Pass the base element to the base class and read
@@ -38,7 +89,8 @@ public class XtypeTable extends Xnode {
    */
   public XtypeTable(Xnode node) {
     super(node == null ? null : node.element());
-    _table = new LinkedHashMap<>();
+    // Types can be added by transformations applied in parallel
+    _table = Collections.synchronizedMap(new LinkedHashMap<>());
     readTable();
   }
 
@@ -48,23 +100,127 @@ public class XtypeTable extends Xnode {
   private void readTable() {
     List<Xnode> elements = children();
     for(Xnode n : elements) {
-      switch(n.opcode()) {
-        case F_BASIC_TYPE:
-          FbasicType bt = new FbasicType(n);
-          _table.put(bt.getType(), bt);
-          break;
-        case F_FUNCTION_TYPE:
-          FfunctionType ft = new FfunctionType(n);
-          _table.put(ft.getType(), ft);
-          break;
-        case F_STRUCT_TYPE:
-          FstructType st = new FstructType(n);
-          _table.put(st.getType(), st);
-          break;
+      Xnode type = wrap(n);
+      if(type != null) {
+        _table.put(type.getType(), type);
       }
     }
   }
 
+  /**
+   * Wrap a type element in its specific class.
+   *
+   * @param n Type element.
+   * @return FbasicType, FfunctionType or FstructType. Null if the node is not
+   * a type.
+   */
+  private static Xnode wrap(Xnode n) {
+    switch(n.opcode()) {
+      case F_BASIC_TYPE:
+        return new FbasicType(n);
+      case F_FUNCTION_TYPE:
+        return new FfunctionType(n);
+      case F_STRUCT_TYPE:
+        return new FstructType(n);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Read the types of the table lazily from the given source. Only the types
+   * already read are part of the table element, counted by {@link #size()}
+   * and listed by {@link #values()} until {@link #loadAll()} is called.
+   *
+   * @param loader Source of the types.
+   */
+  public void setLoader(TypeLoader loader) {
+    _loader = loader;
+  }
+
+  /**
+   * Check whether all the types of the table have been read.
+   *
+   * @return False if some types are still to be read from the source.
+   */
+  public boolean isLoaded() {
+    return _loader == null;
+  }
+
+  /**
+   * Read a type from the source of a lazy table.
+   *
+   * @param hash Hash of the type.
+   * @return Type node appended to the table. Null if not found.
+   */
+  private Xnode load(String hash) {
+    synchronized(_table) {
+      Xnode type = _table.get(hash);
+      if(type != null || _loader == null || _loaded.contains(hash)) {
+        return type;
+      }
+      Element element = _loader.load(hash);
+      type = element == null ? null : wrap(new Xnode(element));
+      if(type != null) {
+        append(type);
+        _table.put(hash, type);
+        _loaded.add(hash);
+      }
+      return type;
+    }
+  }
+
+  /**
+   * Read all the remaining types of a lazy table. Types keep the order of
+   * the source and are followed by the types added since. Types already read
+   * are kept so nodes referring to them stay valid.
+   */
+  public void loadAll() {
+    synchronized(_table) {
+      if(_loader == null) {
+        return;
+      }
+      Element table = _loader.loadAll();
+      List<Xnode> added = new ArrayList<>();
+      for(Xnode n : children()) {
+        if(!_loaded.contains(n.getType())) {
+          added.add(n);
+        }
+      }
+      while(element().getFirstChild() != null) {
+        element().removeChild(element().getFirstChild());
+      }
+      Node crt = table.getFirstChild();
+      while(crt != null) {
+        Node next = crt.getNextSibling();
+        Xnode read = crt.getNodeType() == Node.ELEMENT_NODE
+            ? _table.get(((Element) crt).getAttribute(Xname.ATTR_TYPE)) : null;
+        if(read != null && _loaded.contains(read.getType())) {
+          // Keep the node already read instead of the new one
+          element().appendChild(read.element());
+        } else {
+          element().appendChild(crt);
+        }
+        crt = next;
+      }
+      for(Xnode n : added) {
+        append(n);
+      }
+
+      Map<String, Xnode> previous = new HashMap<>(_table);
+      _table.clear();
+      for(Xnode n : children()) {
+        Xnode type = previous.get(n.getType());
+        type = type != null && type.element() == n.element() ? type : wrap(n);
+        if(type != null) {
+          _table.put(type.getType(), type);
+        }
+      }
+      _loaded.clear();
+      _loader = null;
+    }
+  }
+
   /**
    * Check if the node is of type FbasicType.
    *
@@ -158,8 +314,15 @@ public class XtypeTable extends Xnode {
   public void add(Xnode type) {
     if(!type.getType().isEmpty()) {
       // TODO should be cloned?
-      _baseElement.appendChild(type.cloneRawNode());
+      Xnode copy = new Xnode((Element) type.cloneRawNode());
+      // Available right away for lookups
       _table.put(type.getType(), type);
+      // Appended in the serial order when added from a parallel phase
+      DeferredUpdates.applyOrDefer(() -> {
+        append(copy);
+        _table.remove(type.getType());
+        _table.put(type.getType(), type);
+      });
     }
   }
 
@@ -242,7 +405,7 @@ public class XtypeTable extends Xnode {
     if(_table.containsKey(hash)) {
       return _table.get(hash);
     }
-    return null;
+    return _loader == null ? null : load(hash);
   }
 
   /**
@@ -252,11 +415,44 @@ public class XtypeTable extends Xnode {
    * @return True if the element is present. False otherwise.
    */
   public boolean hasType(String hash) {
-    return _table.containsKey(hash);
+    return _table.containsKey(hash)
+        || (_loader != null && _loader.hasType(hash));
+  }
+
+  /**
+   * Set the seed of the hashes generated in this table. Tables of different
+   * translation units should use different seeds.
+   *
+   * @param seed Seed of the generated hashes.
+   */
+  public void setHashSeed(String seed) {
+    _hashSeed = seed == null ? "" : seed;
+  }
+
+  /**
+   * Set the scope of the hashes generated on the current thread until
+   * {@link #clearHashScope()} is called. Each scope numbers its hashes
+   * independently so the hashes generated in a scope do not depend on the
+   * hashes generated concurrently in other scopes.
+   *
+   * @param scope Stable name of the scope.
+   */
+  public static void setHashScope(String scope) {
+    _hashScope.set(scope);
+  }
+
+  /**
+   * Reset the scope of the hashes generated on the current thread.
+   */
+  public static void clearHashScope() {
+    _hashScope.remove();
   }
 
   /**
-   * Generate a unique hash in the current type table.
+   * Generate a unique hash in the current type table. The hash is derived
+   * from the seed of the table, the scope of the current thread and the
+   * number of hashes already generated in this scope so identical inputs
+   * give identical hashes.
    *
    * @param type Type to generate the hash.
    * @return New unique hash.
@@ -265,9 +461,11 @@ public class XtypeTable extends Xnode {
     if(type == null) {
       return "";
     }
+    String scope = _hashScope.get() == null ? "" : _hashScope.get();
     String hash;
     do {
-      hash = type.generateHash();
+      int index = _hashCounters.merge(scope, 1, Integer::sum);
+      hash = type.generateHash(_hashSeed + "/" + scope + "/" + index);
     } while(hasType(hash));
     return hash;
   }
@@ -283,6 +481,8 @@ public class XtypeTable extends Xnode {
 
   @Override
   public XtypeTable cloneNode() {
-    return new XtypeTable(super.cloneNode());
+    XtypeTable table = new XtypeTable(super.cloneNode());
+    table.setHashSeed(_hashSeed);
+    return table;
   }
 }
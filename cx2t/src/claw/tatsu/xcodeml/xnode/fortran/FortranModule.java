@@ -6,6 +6,7 @@ package claw.tatsu.xcodeml.xnode.fortran;
 
 import claw.tatsu.primitive.Function;
 import claw.tatsu.primitive.Xmod;
+import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.common.*;
 import org.w3c.dom.Document;
 
@@ -26,6 +27,7 @@ public class FortranModule extends XcodeML {
   private final String _name;
 
   private final XsymbolTable _identifiers;
+  private volatile boolean _modified = false;
 
   /**
    * Constructs a basic FortranModule object representing the XcodeML module
@@ -40,6 +42,71 @@ public class FortranModule extends XcodeML {
     _name = name;
     _path = path.endsWith("/") ? path : path + "/";
     _identifiers = new XsymbolTable(matchSeq(Xcode.IDENTIFIERS));
+    getTypeTable().setHashSeed(name);
+  }
+
+  /**
+   * Constructs a FortranModule object whose types are read lazily. Only the
+   * types looked up are part of the document until {@link #load()} is
+   * called.
+   *
+   * @param baseElement XcodeML document without the content of the type
+   *                    table.
+   * @param name        Name of the module.
+   * @param path        Path of the XcodeML module file without the filename.
+   * @param types       Source of the types of the module.
+   */
+  public FortranModule(Document baseElement, String name, String path,
+                       XtypeTable.TypeLoader types)
+  {
+    this(baseElement, name, path);
+    getTypeTable().setLoader(types);
+  }
+
+  /**
+   * Read the complete module. Must be called before the module is modified.
+   */
+  public void load() {
+    getTypeTable().loadAll();
+  }
+
+  /**
+   * Check whether the complete module has been read.
+   *
+   * @return True if all the types of the module are part of the document.
+   */
+  public boolean isLoaded() {
+    return getTypeTable().isLoaded();
+  }
+
+  /**
+   * Write the complete module. Types not read yet are read first.
+   *
+   * @see XcodeML#write(String, int)
+   */
+  @Override
+  public void write(String outputFile, int indent)
+      throws IllegalTransformationException
+  {
+    load();
+    super.write(outputFile, indent);
+  }
+
+  /**
+   * Record that the module has been modified and must be written back.
+   */
+  @Override
+  public void markModified() {
+    _modified = true;
+  }
+
+  /**
+   * Check whether the module has been modified since it was read.
+   *
+   * @return True if the module must be written back.
+   */
+  public boolean isModified() {
+    return _modified;
   }
 
   /**
@@ -6,7 +6,9 @@ package claw.tatsu.xcodeml.xnode.fortran;
 
 import claw.tatsu.xcodeml.xnode.Xname;
 
-import java.util.Random;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Enum representing the type coming from OMNI Compiler.
@@ -27,10 +29,8 @@ public enum FortranType {
   VOID('V', Xname.TYPE_F_VOID),
   NONE('N', "");
 
-  // Java 1.8 should use SecureRandom
-  private final Random rand = new Random();
-
   private static final int HASH_LENGTH = 12;
+  private static final String HASH_ALGORITHM = "SHA-1";
   private final char _prefix;
   private final String _irValue;
 
@@ -92,16 +92,27 @@ public enum FortranType {
   }
 
   /**
-   * Get a new unique hash with the current FortranType prefix.
+   * Get a hash with the current FortranType prefix. The hash is a digest of
+   * the given key so the same key always gives the same hash.
    *
-   * @return The new unique hash.
+   * @param key Key identifying the new type.
+   * @return The new hash.
    */
-  public String generateHash() {
+  public String generateHash(String key) {
+    byte[] digest;
+    try {
+      digest = MessageDigest.getInstance(HASH_ALGORITHM)
+          .digest((_prefix + key).getBytes(StandardCharsets.UTF_8));
+    } catch(NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-1
+      throw new IllegalStateException(e);
+    }
     StringBuilder sb = new StringBuilder();
-    while(sb.length() < HASH_LENGTH) {
-      sb.append(Integer.toHexString(this.rand.nextInt()));
+    sb.append(_prefix);
+    for(int i = 0; sb.length() <= HASH_LENGTH; ++i) {
+      sb.append(String.format("%02x", digest[i]));
     }
-    return _prefix + sb.toString().substring(0, HASH_LENGTH);
+    return sb.substring(0, HASH_LENGTH + 1);
   }
 
   /**
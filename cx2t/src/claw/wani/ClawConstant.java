@@ -21,6 +21,7 @@ public class ClawConstant {
   public static final int DEFAULT_MAX_COLUMN = 80;
   public static final String CLAW = "claw";
   public static final int INDENT_OUTPUT = 2; // Number of spaces for indent
+  public static final int INDENT_NONE = 0; // Machine consumed output
 
   public static final String EXTRACTION_SUFFIX = "_extracted";
 
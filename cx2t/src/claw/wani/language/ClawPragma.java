@@ -20,6 +20,7 @@ import claw.wani.x2t.configuration.Configuration;
 import claw.wani.x2t.configuration.ModelConfig;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.InputMismatchException;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.IntervalSet;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 
@@ -34,6 +35,24 @@ public class ClawPragma extends AnalyzedPragma {
 
   private static final String PREFIX_CLAW = "claw";
   private static final String IGNORE = "ignore";
+  private static final int CACHE_CAPACITY = 1024;
+
+  /*
+   * Analyzed pragmas by naked pragma string. Identical directives are
+   * frequent in large code bases and are parsed only once. Cached objects are
+   * never handed out, only copies of them.
+   */
+  private static final Map<String, ClawPragma> _cache =
+      Collections.synchronizedMap(
+          new LinkedHashMap<String, ClawPragma>(16, 0.75f, true)
+          {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, ClawPragma> eldest)
+            {
+              return size() > CACHE_CAPACITY;
+            }
+          });
 
   private ClawDirective _directive;
   private final Set<ClawClause> _clauses = new HashSet<>();
@@ -218,8 +237,40 @@ public class ClawPragma extends AnalyzedPragma {
           rawPragma.toLowerCase().indexOf(IGNORE) + IGNORE.length());
     }
 
+    ClawPragma analyzed = _cache.get(rawPragma);
+    if(analyzed == null) {
+      analyzed = parse(rawPragma, lineno);
+      if(analyzed == null) {
+        return null;
+      }
+      _cache.put(rawPragma, analyzed);
+    }
+    return analyzed.copy();
+  }
+
+  /**
+   * Remove all the analyzed pragmas from the cache.
+   */
+  static void clearCache() {
+    _cache.clear();
+  }
+
+  /**
+   * Parse a naked pragma statement with the CLAW parser. The fast SLL
+   * prediction mode is tried first. Full LL prediction is only used if SLL
+   * fails as SLL can reject valid input but never accepts invalid one.
+   *
+   * @param nakedPragma Naked pragma statement to be parsed.
+   * @param lineno      Line number of the pragma statement.
+   * @return A ClawPragma object with the corresponding extracted information.
+   * @throws IllegalDirectiveException If directive does not follow the CLAW
+   *                                   language specification.
+   */
+  private static ClawPragma parse(String nakedPragma, int lineno)
+      throws IllegalDirectiveException
+  {
     // Instantiate the lexer with the raw string input
-    ClawLexer lexer = new ClawLexer(CharStreams.fromString(rawPragma));
+    ClawLexer lexer = new ClawLexer(CharStreams.fromString(nakedPragma));
 
     // Get a list of matched tokens
     CommonTokenStream tokens = new CommonTokenStream(lexer);
@@ -229,6 +280,16 @@ public class ClawPragma extends AnalyzedPragma {
     parser.setErrorHandler(new BailErrorStrategy());
     parser.removeErrorListeners();
 
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    try {
+      return parser.analyze().l;
+    } catch(ParseCancellationException ignored) {
+      // Rewind and retry with full LL prediction to report accurate errors
+      tokens.seek(0);
+      parser.reset();
+      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+    }
+
     try {
       // Start the parser analysis from the "analyze" entry point
       ClawParser.AnalyzeContext ctx = parser.analyze();
@@ -246,11 +307,66 @@ public class ClawPragma extends AnalyzedPragma {
             getTokens(nvex.getExpectedTokens(), parser), lineno,
             nvex.getOffendingToken().getCharPositionInLine());
       }
-      throw new IllegalDirectiveException(rawPragma,
+      throw new IllegalDirectiveException(nakedPragma,
           "Unsupported construct", lineno, 0);
     }
   }
 
+  /**
+   * Create a copy of an analyzed pragma. Collections and the local model
+   * configuration are copied so the copy can be modified independently. The
+   * copy is not attached to any pragma.
+   *
+   * @return A newly created copy of this object.
+   */
+  private ClawPragma copy() {
+    ClawPragma copy = new ClawPragma();
+    copy._directive = _directive;
+    copy._clauses.addAll(_clauses);
+    copy._clauseStringValues.putAll(_clauseStringValues);
+    for(Map.Entry<ClawClause, List<String>> values
+        : _clauseListStringValues.entrySet())
+    {
+      copy._clauseListStringValues.put(values.getKey(),
+          new ArrayList<>(values.getValue()));
+    }
+    copy._collapseClauseValue = _collapseClauseValue;
+    copy._mappingValues = copyOf(_mappingValues);
+    copy._offsetValues = copyOf(_offsetValues);
+    if(_rangeValue != null) {
+      copy._rangeValue = new ClawRange(_rangeValue.getInductionVar(),
+          _rangeValue.getLowerBound(), _rangeValue.getUpperBound(),
+          _rangeValue.getStep());
+    }
+    copy._reshapeInfos = copyOf(_reshapeInfos);
+    if(_overDataValues != null) {
+      copy._overDataValues = new HashSet<>(_overDataValues);
+    }
+    copy._copyClauseValue = _copyClauseValue;
+    copy._updateClauseValue = _updateClauseValue;
+    copy._targetClauseValues = copyOf(_targetClauseValues);
+    copy._constraintClauseValue = _constraintClauseValue;
+    copy._cleanupClauseValue = _cleanupClauseValue;
+    copy._localModelConfig = _localModelConfig.copy();
+    copy._errors.addAll(_errors);
+    copy._scaModelConfig = _scaModelConfig;
+    if(isEndPragma()) {
+      copy.setEndPragma();
+    }
+    return copy;
+  }
+
+  /**
+   * Copy a list of values.
+   *
+   * @param values List to be copied. Can be null.
+   * @param <T>    Type of the values.
+   * @return New list with the same values. Null if values is null.
+   */
+  private static <T> List<T> copyOf(List<T> values) {
+    return values == null ? null : new ArrayList<>(values);
+  }
+
   /**
    * Create an instance of ClawPragma that correspond to a loop-fusion
    * directive. Used for dynamically created transformation.
@@ -5,7 +5,9 @@
 package claw.wani.report;
 
 import claw.ClawVersion;
+import claw.shenron.transformation.Transformation;
 import claw.shenron.transformation.TransformationGroup;
+import claw.wani.transformation.sca.ScaGPU;
 import claw.wani.x2t.configuration.Configuration;
 import claw.wani.x2t.translator.ClawTranslator;
 import claw.wani.x2t.translator.ClawTranslatorDriver;
@@ -53,7 +55,7 @@ public class ClawTransformationReport {
     printHeader("CLAW Transformation Report");
     printMainInfo(translator, args);
     printTransformationOrderInfo(translator.getTranslator());
-    printTransformationInfo();
+    printTransformationInfo(translator.getTranslator());
     _report.flush();
   }
 
@@ -145,9 +147,40 @@ public class ClawTransformationReport {
     }
   }
 
-  private void printTransformationInfo() throws Exception {
+  /**
+   * Print information about the applied transformations. Currently lists the
+   * loop mapping chosen by the cost model for each SCA routine on GPU.
+   *
+   * @param translator Current translator used during the transformation.
+   * @throws Exception If file cannot be created or cannot be written.
+   */
+  private void printTransformationInfo(ClawTranslator translator)
+      throws Exception
+  {
     printTitle("Transformation");
-    // TODO
+    List<String[]> infos = new ArrayList<>();
+    for(TransformationGroup group : translator.getGroups().values()) {
+      for(Transformation transformation : group.getTransformations()) {
+        if(transformation instanceof ScaGPU) {
+          ScaGPU sca = (ScaGPU) transformation;
+          if(sca.getLoopMapping() != null) {
+            infos.add(new String[]{sca.getRoutineName(),
+                sca.getLoopMapping().toString()});
+          }
+        }
+      }
+    }
+
+    int indentCol = 0;
+    for(String[] info : infos) {
+      if(info[0].length() > indentCol) {
+        indentCol = info[0].length();
+      }
+    }
+
+    for(String[] info : infos) {
+      printInfo(info[0], info[1], indentCol + 1);
+    }
   }
 
   /**
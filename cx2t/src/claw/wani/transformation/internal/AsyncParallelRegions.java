@@ -0,0 +1,656 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.internal;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.TatsuConstant;
+import claw.tatsu.common.Context;
+import claw.tatsu.directive.common.Directive;
+import claw.tatsu.directive.generator.DirectiveGenerator;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
+import claw.tatsu.xcodeml.xnode.fortran.FortranType;
+import claw.wani.transformation.ClawTransformation;
+
+import java.util.*;
+
+/**
+ * The AsyncParallelRegions transformation launches consecutive parallel
+ * regions asynchronously.
+ *
+ * Parallel regions following each other in the same code block, only
+ * separated by host assignments not touching their variables, form a group.
+ * The arrays, scalars and derived type members read and written by each
+ * region decide its queue: a region independent of the regions still running
+ * is launched on a free queue, a dependent region is launched on the queue of
+ * the region it depends on. A region or a host assignment with a reference
+ * that cannot be classified, such as a pointer that may alias any other
+ * variable, ends the group and is left synchronous.
+ * When a region depends on regions of several queues, a wait directive for
+ * the other queues is generated before it. A wait directive is generated at
+ * the end of each group so the code following it, including the routine
+ * exit, sees the results.
+ *
+ * @author clementval
+ */
+public class AsyncParallelRegions extends ClawTransformation {
+
+  private final int _queues;
+
+  /**
+   * Constructs a new AsyncParallelRegions transformation.
+   *
+   * @param queues Number of asynchronous queues.
+   */
+  public AsyncParallelRegions(int queues) {
+    super();
+    _queues = queues;
+  }
+
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    return _queues > 0 && !Context.get().getGenerator()
+        .getAsyncClause(1, Collections.emptyList(), Collections.emptyList())
+        .isEmpty();
+  }
+
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation other)
+  {
+    assign(xcodeml, _queues);
+    transformed();
+  }
+
+  /**
+   * Assign the parallel regions of the translation unit to asynchronous
+   * queues.
+   *
+   * @param xcodeml Current translation unit.
+   * @param queues  Number of asynchronous queues.
+   */
+  static void assign(XcodeProgram xcodeml, int queues) {
+    List<List<Region>> groups = new ArrayList<>();
+    for(Xnode body : xcodeml.matchAll(Xcode.BODY)) {
+      groups.addAll(getGroups(xcodeml, body));
+    }
+    for(List<Region> group : groups) {
+      schedule(xcodeml, group, queues);
+    }
+  }
+
+  /**
+   * Get the groups of consecutive parallel regions in a body.
+   *
+   * @param xcodeml Current translation unit.
+   * @param body    Body node.
+   * @return Groups of at least two parallel regions.
+   */
+  private static List<List<Region>> getGroups(XcodeProgram xcodeml,
+                                              Xnode body)
+  {
+    List<List<Region>> groups = new ArrayList<>();
+    List<Region> group = new ArrayList<>();
+    Set<String> variables = new HashSet<>();
+    Xnode stmt = body.firstChild();
+    while(stmt != null) {
+      Region region = getRegion(xcodeml, stmt);
+      if(region != null && region.isClassified()) {
+        group.add(region);
+        variables.addAll(region.getReads());
+        variables.addAll(region.getWrites());
+        stmt = region.getEnd().nextSibling();
+        continue;
+      }
+      if(region != null || !isHostStatement(xcodeml, stmt, variables)) {
+        addGroup(groups, group);
+        group = new ArrayList<>();
+        variables.clear();
+      }
+      if(region != null) {
+        stmt = region.getEnd().nextSibling();
+        continue;
+      }
+      stmt = stmt.nextSibling();
+    }
+    addGroup(groups, group);
+    return groups;
+  }
+
+  /**
+   * Add a group if it has enough parallel regions to overlap.
+   *
+   * @param groups List of groups.
+   * @param group  Group to add.
+   */
+  private static void addGroup(List<List<Region>> groups, List<Region> group) {
+    if(group.size() > 1) {
+      groups.add(group);
+    }
+  }
+
+  /**
+   * Check whether a statement can be executed by the host while parallel
+   * regions of its group are running.
+   *
+   * @param xcodeml   Current translation unit.
+   * @param stmt      Statement to check.
+   * @param variables Variables accessed by the parallel regions of the group.
+   * @return True if the statement is an assignment without call nor access to
+   * the variables. False otherwise.
+   */
+  private static boolean isHostStatement(XcodeProgram xcodeml, Xnode stmt,
+                                         Set<String> variables)
+  {
+    if(!stmt.is(Xcode.F_ASSIGN_STATEMENT)) {
+      return false;
+    }
+    for(Xnode call : stmt.matchAll(Xcode.FUNCTION_CALL)) {
+      if(!call.getBooleanAttribute(Xattr.IS_INTRINSIC)) {
+        return false;
+      }
+    }
+    Set<String> accessed = new HashSet<>();
+    return gatherVariables(xcodeml, stmt, accessed)
+        && !overlap(accessed, variables);
+  }
+
+  /**
+   * Get the parallel region starting at the given statement.
+   *
+   * @param xcodeml Current translation unit.
+   * @param stmt    Statement to check.
+   * @return Parallel region. Null if the statement does not start a parallel
+   * region or if the region is already asynchronous.
+   */
+  private static Region getRegion(XcodeProgram xcodeml, Xnode stmt) {
+    DirectiveGenerator dg = Context.get().getGenerator();
+    String startDirective = dg.getStartParallelDirective(null)[0];
+    String[] endDirectives = dg.getEndParallelDirective();
+    String endDirective = endDirectives[endDirectives.length - 1];
+    if(!isDirective(stmt, startDirective)) {
+      return null;
+    }
+
+    List<Xnode> start = new ArrayList<>();
+    start.add(stmt);
+    Xnode last = stmt;
+    while(isContinued(last) && isPragma(last.nextSibling())) {
+      last = last.nextSibling();
+      start.add(last);
+    }
+    String asyncKeyword = dg.getAsyncClause(1, Collections.emptyList(),
+        Collections.emptyList()).split("[ (]")[0];
+    if(Arrays.asList(join(start).split("[ (]")).contains(asyncKeyword)) {
+      return null;
+    }
+
+    Set<String> reads = new TreeSet<>();
+    Set<String> writes = new TreeSet<>();
+    // Induction variables of the loops are private to the region
+    Set<String> inductions = new HashSet<>();
+    boolean classified = true;
+    Xnode crt = last.nextSibling();
+    while(crt != null) {
+      if(isPragma(crt)) {
+        if(crt.value().trim().toLowerCase().equals(endDirective)) {
+          reads.removeAll(inductions);
+          writes.removeAll(inductions);
+          reads.removeAll(writes);
+          return new Region(start, crt, reads, writes, classified);
+        } else if(isDirective(crt, startDirective)) {
+          return null;
+        }
+      } else {
+        classified &= gatherVariables(xcodeml, crt, reads);
+        List<Xnode> assigns = crt.matchAll(Xcode.F_ASSIGN_STATEMENT);
+        if(crt.is(Xcode.F_ASSIGN_STATEMENT)) {
+          assigns.add(crt);
+        }
+        for(Xnode assign : assigns) {
+          classified &= gatherTarget(assign.firstChild(), writes);
+        }
+        for(Xnode call : crt.matchAll(Xcode.FUNCTION_CALL)) {
+          if(!call.getBooleanAttribute(Xattr.IS_INTRINSIC)) {
+            classified &= gatherArguments(call, writes);
+          }
+        }
+        List<Xnode> loops = crt.matchAll(Xcode.F_DO_STATEMENT);
+        if(crt.is(Xcode.F_DO_STATEMENT)) {
+          loops.add(crt);
+        }
+        for(Xnode loop : loops) {
+          Xnode induction = loop.matchDirectDescendant(Xcode.VAR);
+          if(induction != null) {
+            inductions.add(induction.value());
+          }
+        }
+      }
+      crt = crt.nextSibling();
+    }
+    return null;
+  }
+
+  /**
+   * Gather the names of the variables referenced in a node. Arrays and
+   * scalars are named after the variable, derived type members after the
+   * variable and the member path such as t%a.
+   *
+   * @param xcodeml   Current translation unit.
+   * @param root      Root node of the search.
+   * @param variables Set receiving the variable names.
+   * @return False if one of the references cannot be classified. True
+   * otherwise.
+   */
+  private static boolean gatherVariables(XcodeProgram xcodeml, Xnode root,
+                                         Set<String> variables)
+  {
+    if(root == null) {
+      return true;
+    }
+    List<Xnode> refs = root.matchAll(Xcode.VAR);
+    refs.addAll(root.matchAll(Xcode.F_MEMBER_REF));
+    if(root.is(Xcode.VAR) || root.is(Xcode.F_MEMBER_REF)) {
+      refs.add(root);
+    }
+    boolean classified = true;
+    for(Xnode ref : refs) {
+      if(!isClassified(xcodeml, ref)) {
+        classified = false;
+      } else if(!isMemberBase(ref)) {
+        String name = getName(ref);
+        if(name == null) {
+          classified = false;
+        } else {
+          variables.add(name);
+        }
+      }
+    }
+    return classified;
+  }
+
+  /**
+   * Gather the name of the variable assigned through a reference. Only the
+   * referenced variable is assigned, not the ones used in its subscripts.
+   *
+   * @param ref       Reference on the left-hand side of an assignment.
+   * @param variables Set receiving the variable name.
+   * @return False if the reference cannot be classified. True otherwise.
+   */
+  private static boolean gatherTarget(Xnode ref, Set<String> variables) {
+    String name = getName(ref);
+    if(name == null) {
+      return false;
+    }
+    variables.add(name);
+    return true;
+  }
+
+  /**
+   * Gather the names of the variables passed to a procedure. They may be
+   * assigned by the procedure. Other arguments are expressions.
+   *
+   * @param call      FunctionCall node.
+   * @param variables Set receiving the variable names.
+   * @return False if an argument cannot be classified. True otherwise.
+   */
+  private static boolean gatherArguments(Xnode call, Set<String> variables) {
+    Xnode arguments = call.matchDirectDescendant(Xcode.ARGUMENTS);
+    if(arguments == null) {
+      return true;
+    }
+    boolean classified = true;
+    for(Xnode argument : arguments.children()) {
+      Xnode value = argument.is(Xcode.NAMED_VALUE)
+          ? argument.firstChild() : argument;
+      if(Xnode.isOfCode(value, Xcode.VAR)
+          || Xnode.isOfCode(value, Xcode.F_MEMBER_REF)
+          || value.matchDirectDescendant(Xcode.VAR_REF) != null)
+      {
+        classified &= gatherTarget(value, variables);
+      }
+    }
+    return classified;
+  }
+
+  /**
+   * Get the name of the variable accessed by a reference.
+   *
+   * @param ref Var, FmemberRef or array or substring reference node.
+   * @return Lower case name of the variable, followed by the member path for
+   * a derived type member. Null if the reference cannot be named.
+   */
+  private static String getName(Xnode ref) {
+    if(ref == null) {
+      return null;
+    }
+    if(ref.is(Xcode.VAR)) {
+      return ref.value();
+    }
+    Xnode varRef = ref.matchDirectDescendant(Xcode.VAR_REF);
+    String base = varRef == null ? null : getName(varRef.firstChild());
+    if(base == null || !ref.is(Xcode.F_MEMBER_REF)) {
+      return base;
+    }
+    String member = ref.getAttribute(Xattr.MEMBER);
+    return member == null ? null : base + "%" + member.toLowerCase();
+  }
+
+  /**
+   * Check whether a reference is the base of a derived type member reference.
+   * It is then named by the member reference.
+   *
+   * @param ref Var or FmemberRef node.
+   * @return True if the reference is only used to access a member.
+   */
+  private static boolean isMemberBase(Xnode ref) {
+    Xnode parent = ref.ancestor();
+    while(Xnode.isOfCode(parent, Xcode.VAR_REF)) {
+      Xnode owner = parent.ancestor();
+      if(Xnode.isOfCode(owner, Xcode.F_MEMBER_REF)) {
+        return true;
+      }
+      if(!Xnode.isOfCode(owner, Xcode.F_ARRAY_REF)
+          && !Xnode.isOfCode(owner, Xcode.F_CHARACTER_REF))
+      {
+        return false;
+      }
+      parent = owner.ancestor();
+    }
+    return false;
+  }
+
+  /**
+   * Check whether the variable accessed by a reference is known. Pointers may
+   * alias any other variable.
+   *
+   * @param xcodeml Current translation unit.
+   * @param ref     Var or FmemberRef node.
+   * @return True if the type of the reference is known and is not a pointer.
+   */
+  private static boolean isClassified(XcodeProgram xcodeml, Xnode ref) {
+    String type = ref.getType();
+    if(FortranType.isBuiltInType(type)) {
+      return true;
+    }
+    if(type == null) {
+      return false;
+    }
+    FbasicType bType = xcodeml.getTypeTable().getBasicType(type);
+    if(bType != null) {
+      return !bType.isPointer();
+    }
+    return xcodeml.getTypeTable().isStructType(type);
+  }
+
+  /**
+   * Check whether two sets of variables overlap. A variable overlaps its
+   * derived type members.
+   *
+   * @param first  Variable names.
+   * @param second Variable names.
+   * @return True if a variable of a set is, contains or is part of a variable
+   * of the other set.
+   */
+  private static boolean overlap(Set<String> first, Set<String> second) {
+    for(String a : first) {
+      for(String b : second) {
+        if(a.equals(b) || a.startsWith(b + "%") || b.startsWith(a + "%")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Assign the parallel regions of a group to asynchronous queues and
+   * generate the needed wait directives.
+   *
+   * @param xcodeml Current translation unit.
+   * @param group   Consecutive parallel regions.
+   * @param queues  Number of asynchronous queues.
+   */
+  private static void schedule(XcodeProgram xcodeml, List<Region> group,
+                               int queues)
+  {
+    DirectiveGenerator dg = Context.get().getGenerator();
+    // Variables read and written by the regions still running on each queue
+    List<Set<String>> reads = new ArrayList<>();
+    List<Set<String>> writes = new ArrayList<>();
+    for(int i = 0; i < queues; ++i) {
+      reads.add(new HashSet<>());
+      writes.add(new HashSet<>());
+    }
+
+    int next = 0;
+    for(Region region : group) {
+      List<Integer> dependences = new ArrayList<>();
+      for(int i = 0; i < queues; ++i) {
+        if(region.dependsOn(reads.get(i), writes.get(i))) {
+          dependences.add(i);
+        }
+      }
+
+      int queue;
+      if(dependences.isEmpty()) {
+        // Prefer a queue without running region
+        queue = next;
+        for(int i = 0; i < queues; ++i) {
+          int candidate = (next + i) % queues;
+          if(reads.get(candidate).isEmpty()
+              && writes.get(candidate).isEmpty())
+          {
+            queue = candidate;
+            break;
+          }
+        }
+        next = (queue + 1) % queues;
+      } else {
+        // Regions of the same queue are executed in order
+        queue = dependences.get(0);
+        List<Integer> waits = new ArrayList<>();
+        for(int i : dependences.subList(1, dependences.size())) {
+          waits.add(i + 1);
+          reads.get(i).clear();
+          writes.get(i).clear();
+        }
+        if(!waits.isEmpty()) {
+          Directive.generateWait(xcodeml, region.getStart().get(0), waits,
+              false);
+        }
+      }
+      reads.get(queue).addAll(region.getReads());
+      writes.get(queue).addAll(region.getWrites());
+      addClause(xcodeml, region.getStart(), dg.getAsyncClause(queue + 1,
+          new ArrayList<>(region.getReads()),
+          new ArrayList<>(region.getWrites())));
+    }
+
+    Directive.generateWait(xcodeml, group.get(group.size() - 1).getEnd(),
+        Collections.emptyList(), true);
+  }
+
+  /**
+   * Add a clause to a directive and split it again if needed.
+   *
+   * @param xcodeml Current translation unit.
+   * @param chunks  Pragma statements of the directive.
+   * @param clause  Clause to add.
+   */
+  private static void addClause(XcodeProgram xcodeml, List<Xnode> chunks,
+                                String clause)
+  {
+    List<Xnode> pragmas = xcodeml.createPragma(join(chunks) + " " + clause,
+        Context.get().getMaxColumns());
+    for(Xnode pragma : pragmas) {
+      chunks.get(0).insertBefore(pragma);
+    }
+    for(Xnode chunk : chunks) {
+      chunk.delete();
+    }
+  }
+
+  /**
+   * Join the pragma statements of a directive split on several lines.
+   *
+   * @param chunks Pragma statements of the directive.
+   * @return Directive value on a single line.
+   */
+  private static String join(List<Xnode> chunks) {
+    String prefix = Context.get().getGenerator().getPrefix();
+    StringBuilder directive = new StringBuilder();
+    for(int i = 0; i < chunks.size(); ++i) {
+      String chunk = chunks.get(i).value().trim().toLowerCase();
+      if(chunk.endsWith(TatsuConstant.CONTINUATION_LINE_SYMBOL)) {
+        chunk = chunk.substring(0, chunk.length()
+            - TatsuConstant.CONTINUATION_LINE_SYMBOL.length()).trim();
+      }
+      if(i > 0 && chunk.startsWith(prefix)) {
+        chunk = chunk.substring(prefix.length()).trim();
+      }
+      directive.append(i > 0 ? " " : "").append(chunk);
+    }
+    return directive.toString();
+  }
+
+  /**
+   * Check whether a node is a pragma statement.
+   *
+   * @param node Node to check.
+   * @return True if the node is a pragma statement.
+   */
+  private static boolean isPragma(Xnode node) {
+    return Xnode.isOfCode(node, Xcode.F_PRAGMA_STATEMENT);
+  }
+
+  /**
+   * Check whether a pragma statement is continued on the next one.
+   *
+   * @param pragma Pragma statement to check.
+   * @return True if the pragma ends with the continuation symbol.
+   */
+  private static boolean isContinued(Xnode pragma) {
+    return pragma.value().trim()
+        .endsWith(TatsuConstant.CONTINUATION_LINE_SYMBOL);
+  }
+
+  /**
+   * Check whether a node is a pragma statement starting with the given
+   * directive.
+   *
+   * @param node      Node to check.
+   * @param directive Directive value without clauses.
+   * @return True if the pragma is the directive, with or without clauses.
+   */
+  private static boolean isDirective(Xnode node, String directive) {
+    if(!isPragma(node)) {
+      return false;
+    }
+    String value = node.value().trim().toLowerCase();
+    return value.equals(directive) || value.startsWith(directive + " ");
+  }
+
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    return false; // independent transformation
+  }
+
+  /**
+   * Parallel region with the variables it accesses.
+   */
+  private static class Region {
+
+    private final List<Xnode> _start;
+    private final Xnode _end;
+    private final Set<String> _reads;
+    private final Set<String> _writes;
+    private final boolean _classified;
+
+    /**
+     * Constructs a new parallel region.
+     *
+     * @param start      Pragma statements of the start directive.
+     * @param end        Last pragma statement of the end directive.
+     * @param reads      Variables only read in the region.
+     * @param writes     Variables written in the region.
+     * @param classified False if a reference of the region cannot be
+     *                   classified.
+     */
+    Region(List<Xnode> start, Xnode end, Set<String> reads,
+           Set<String> writes, boolean classified)
+    {
+      _start = start;
+      _end = end;
+      _reads = reads;
+      _writes = writes;
+      _classified = classified;
+    }
+
+    /**
+     * Check whether the region depends on running regions.
+     *
+     * @param reads  Variables only read by the running regions.
+     * @param writes Variables written by the running regions.
+     * @return True if the region writes a variable accessed by the running
+     * regions or reads a variable they write.
+     */
+    boolean dependsOn(Set<String> reads, Set<String> writes) {
+      return overlap(_writes, reads) || overlap(_writes, writes)
+          || overlap(_reads, writes);
+    }
+
+    /**
+     * Check whether all the references of the region are classified.
+     *
+     * @return False if the region may access any variable.
+     */
+    boolean isClassified() {
+      return _classified;
+    }
+
+    /**
+     * Get the pragma statements of the start directive.
+     *
+     * @return Pragma statements.
+     */
+    List<Xnode> getStart() {
+      return _start;
+    }
+
+    /**
+     * Get the last pragma statement of the end directive.
+     *
+     * @return Pragma statement.
+     */
+    Xnode getEnd() {
+      return _end;
+    }
+
+    /**
+     * Get the variables only read in the region.
+     *
+     * @return Variable names.
+     */
+    Set<String> getReads() {
+      return _reads;
+    }
+
+    /**
+     * Get the variables written in the region.
+     *
+     * @return Variable names.
+     */
+    Set<String> getWrites() {
+      return _writes;
+    }
+  }
+}
@@ -63,6 +63,11 @@ public class OpenAccContinuation extends ClawTransformation {
         startsWith(CompilerDirective.OPENACC.getPrefix());
   }
 
+  @Override
+  public boolean isFunctionLocal() {
+    return true;
+  }
+
   /**
    * @return Always false as independent transformation are applied one by one.
    * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
@@ -56,6 +56,11 @@ public class Kcaching extends ClawTransformation {
     return true;
   }
 
+  @Override
+  public boolean isFunctionLocal() {
+    return true;
+  }
+
   /**
    * @return Always false as independent transformation are applied one by one.
    * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
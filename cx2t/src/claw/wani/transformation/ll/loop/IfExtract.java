@@ -61,6 +61,11 @@ public class IfExtract extends ClawTransformation {
     return true;
   }
 
+  @Override
+  public boolean isFunctionLocal() {
+    return true;
+  }
+
   @Override
   public boolean canBeTransformedWith(XcodeProgram xcodeml,
                                       Transformation other)
@@ -478,8 +478,7 @@ public class LoopExtraction extends ClawTransformation {
     _claw.getPragma().insertAfter(loop);
 
     // Move the call into the loop body
-    loop.body().element().
-        appendChild(_fctCall.element().getParentNode());
+    loop.body().append(_fctCall.ancestor());
 
     insertDeclaration(doStmt.matchSeq(Xcode.VAR).value());
     if(doStmt.matchSeq(Xcode.INDEX_RANGE, Xcode.LOWER_BOUND, Xcode.VAR)
@@ -6,6 +6,8 @@ package claw.wani.transformation.ll.loop;
 
 import claw.shenron.transformation.Transformation;
 import claw.shenron.translator.Translator;
+import claw.tatsu.analysis.dependency.Dependence;
+import claw.tatsu.analysis.dependency.DependenceAnalysis;
 import claw.tatsu.primitive.Loop;
 import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
@@ -20,6 +22,9 @@ import claw.wani.transformation.ClawTransformation;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A LoopFusion transformation is a dependent transformation. If two LoopFusion
@@ -37,6 +42,9 @@ public class LoopFusion extends ClawTransformation {
   private String _groupClauseLabel = ClawConstant.EMPTY_STRING;
   // The loop statement involved in the Transformation
   private NestedDoStatement _doStmt;
+  // Units refused only because their fusion would reverse a dependence
+  private final Map<LoopFusion, Dependence> _preventingDependences =
+      new HashMap<>();
 
   /**
    * Constructs a new LoopFusion triggered from a specific pragma.
@@ -147,7 +155,8 @@ public class LoopFusion extends ClawTransformation {
    * Check whether the loop fusion unit can be merged with the given loop fusion
    * unit. To be able to be transformed together, the loop fusion units must
    * share the same parent block, the same iteration range, the same group
-   * option and both units must be not transformed.
+   * option and both units must be not transformed. The fusion must not reverse
+   * a dependence between the two units.
    *
    * @param transformation The other loop fusion unit to be merge with this one.
    * @return True if the two loop fusion unit can be merge together.
@@ -191,12 +200,75 @@ public class LoopFusion extends ClawTransformation {
           return false;
         }
       }
-      return true;
-    } else {
+    } else if(!Loop.hasSameIndexRange(_doStmt.getOuterStatement(),
+        other.getNestedDoStmt().getOuterStatement()))
+    {
       // Loop must share the same iteration range
-      return Loop.hasSameIndexRange(_doStmt.getOuterStatement(),
-          other.getNestedDoStmt().getOuterStatement());
+      return false;
     }
+
+    // Fusion must not reverse a dependence between the two loops
+    Dependence dependence = findPreventingDependence(other);
+    if(dependence != null) {
+      _preventingDependences.put(other, dependence);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Report the first refused loop fusion unit whose fusion would reverse a
+   * dependence. Units refused for another reason are not reported. The fusion
+   * is reported once for this unit whatever the number of refused units.
+   *
+   * @param xcodeml Current translation unit.
+   * @param refused Loop fusion units refused by this one.
+   */
+  @Override
+  public void reportRefusal(XcodeProgram xcodeml, List<Transformation> refused)
+  {
+    for(Transformation other : refused) {
+      Dependence dependence = _preventingDependences.get(other);
+      if(dependence != null) {
+        xcodeml.addWarning("loop-fusion prevented by the dependence on "
+                + dependence.getArray(),
+            Arrays.asList(getStartLine(), ((LoopFusion) other).getStartLine()));
+        break;
+      }
+    }
+    _preventingDependences.clear();
+  }
+
+  /**
+   * Find a dependence between this loop fusion unit and another one that
+   * would be reversed by their fusion.
+   *
+   * @param other The other loop fusion unit to be merge with this one.
+   * @return Dependence preventing the fusion. Null if there is none.
+   */
+  private Dependence findPreventingDependence(LoopFusion other) {
+    int depth = 1;
+    if(_claw.hasClause(ClawClause.COLLAPSE) && _claw.getCollapseValue() > 0) {
+      depth = _claw.getCollapseValue();
+    }
+    return DependenceAnalysis.findFusionPreventingDependence(_doStmt,
+        other.getNestedDoStmt(), depth);
+  }
+
+  /**
+   * Loop fusion units can only be merged if they share the same group option
+   * and the same iteration range of the outer do statement. The parent block
+   * is not part of the key as it changes when enclosing loops are merged.
+   *
+   * @return Group option and iteration range of the outer do statement. Null
+   * if the iteration range cannot be compared.
+   */
+  @Override
+  public Object getCompatibilityKey() {
+    List<String> rangeKey = _doStmt == null
+        ? null : Loop.getIndexRangeKey(_doStmt.getOuterStatement());
+    return rangeKey == null
+        ? null : Arrays.asList(getGroupClauseLabel(), rangeKey);
   }
 
   /**
@@ -6,6 +6,8 @@ package claw.wani.transformation.ll.loop;
 
 import claw.shenron.transformation.Transformation;
 import claw.shenron.translator.Translator;
+import claw.tatsu.analysis.dependency.Dependence;
+import claw.tatsu.analysis.dependency.DependenceAnalysis;
 import claw.tatsu.directive.common.Directive;
 import claw.tatsu.primitive.Loop;
 import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
@@ -17,6 +19,8 @@ import claw.wani.language.ClawPragma;
 import claw.wani.language.ClawClause;
 import claw.wani.transformation.ClawTransformation;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -82,6 +86,7 @@ public class LoopInterchange extends ClawTransformation {
    * Loop fusion analysis:
    * - Find the different do statement that will be reordered.
    * - Check the validity of the new ordering option.
+   * - Check that the new ordering does not reverse a dependence.
    *
    * @param xcodeml    The XcodeML on which the transformations are applied.
    * @param translator The translator used to applied the transformations.
@@ -122,6 +127,27 @@ public class LoopInterchange extends ClawTransformation {
             _claw.getPragma().lineNo());
       }
     }
+
+    // The new order must not reverse a dependence of the loop nest
+    List<String> newOrder = new ArrayList<>();
+    if(_claw.values(ClawClause.INTERCHANGE_INDEXES) != null) {
+      newOrder.addAll(_claw.values(ClawClause.INTERCHANGE_INDEXES));
+    } else {
+      newOrder.addAll(_doStmts.getInductionVariables());
+      Collections.reverse(newOrder);
+    }
+    Dependence dependence =
+        new DependenceAnalysis(_doStmts).findReversedDependence(newOrder);
+    if(dependence != null) {
+      xcodeml.addError("loop-interchange reverses the dependence on "
+          + dependence.getArray(), _claw.getPragma().lineNo());
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean isFunctionLocal() {
     return true;
   }
 
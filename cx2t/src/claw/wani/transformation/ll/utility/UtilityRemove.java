@@ -94,6 +94,11 @@ public class UtilityRemove extends ClawBlockTransformation {
     }
   }
 
+  @Override
+  public boolean isFunctionLocal() {
+    return true;
+  }
+
   /**
    * @return Always false as independent transformation are applied one by one.
    * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
@@ -62,6 +62,11 @@ public class ModelData extends ClawBlockTransformation {
     return true;
   }
 
+  @Override
+  public boolean isFunctionLocal() {
+    return true;
+  }
+
   @Override
   public boolean canBeTransformedWith(XcodeProgram xcodeml,
                                       Transformation other)
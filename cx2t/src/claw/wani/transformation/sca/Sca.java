@@ -453,6 +453,11 @@ public class Sca extends ClawTransformation {
     }
   }
 
+  @Override
+  public boolean isFunctionLocal() {
+    return true;
+  }
+
   /**
    * @return Always false as independent transformation are applied one by one.
    * @see Transformation#canBeTransformedWith(XcodeProgram, Transformation)
@@ -0,0 +1,559 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.sca;
+
+import claw.shenron.transformation.Transformation;
+import claw.shenron.translator.Translator;
+import claw.tatsu.directive.common.DataMovement;
+import claw.tatsu.directive.common.Directive;
+import claw.tatsu.primitive.Function;
+import claw.tatsu.xcodeml.xnode.common.Xattr;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionType;
+import claw.wani.transformation.ClawTransformation;
+
+import java.util.*;
+
+/**
+ * The ScaDataRegion transformation places the device data regions of the
+ * forwarded calls when the hoist data strategy is used.
+ *
+ * Instead of one data region and two update directives around each call, the
+ * calls of a function definition share a single data region placed around the
+ * outermost statements containing them. Update directives are generated once
+ * at the beginning and at the end of the region, and around a call only for
+ * the arrays also accessed by host code in the region.
+ *
+ * The call graph of the forwarded calls is used to go one step further: a
+ * private or internal function only called by forwarded calls creating its
+ * array arguments finds them on the device. Such arguments are declared
+ * present in its data region and are not updated, unless its host code
+ * accesses them.
+ *
+ * @author clementval
+ */
+public class ScaDataRegion extends ClawTransformation {
+
+  private final List<ScaForward> _forwards;
+
+  /**
+   * Constructs a new ScaDataRegion transformation for the forwarded calls of
+   * a translation unit.
+   *
+   * @param forwards Forward transformations whose data region is hoisted.
+   */
+  public ScaDataRegion(List<ScaForward> forwards) {
+    super();
+    _forwards = forwards;
+  }
+
+  @Override
+  public boolean analyze(XcodeProgram xcodeml, Translator translator) {
+    return !_forwards.isEmpty();
+  }
+
+  @Override
+  public void transform(XcodeProgram xcodeml, Translator translator,
+                        Transformation other)
+  {
+    List<Request> requests = new ArrayList<>();
+    for(ScaForward forward : _forwards) {
+      if(forward.getDataRequest() != null) {
+        requests.add(forward.getDataRequest());
+      }
+    }
+    place(xcodeml, requests);
+    transformed();
+  }
+
+  /**
+   * Generate the data regions and update directives of the forwarded calls.
+   *
+   * @param xcodeml  Current translation unit.
+   * @param requests Data requirements of the forwarded calls.
+   */
+  static void place(XcodeProgram xcodeml, List<Request> requests) {
+    // Group the calls by calling function in order of appearance
+    Map<FfunctionDefinition, List<Request>> regions = new LinkedHashMap<>();
+    for(Request request : requests) {
+      FfunctionDefinition fctDef = request.getHook().findParentFunction();
+      if(fctDef != null) {
+        regions.computeIfAbsent(fctDef, k -> new ArrayList<>()).add(request);
+      }
+    }
+
+    for(Map.Entry<FfunctionDefinition, List<Request>> region
+        : regions.entrySet())
+    {
+      FfunctionDefinition fctDef = region.getKey();
+      List<Xnode> range = getRange(fctDef, region.getValue());
+      if(range == null) {
+        // The region cannot be hoisted, each call gets its own region
+        for(Request request : region.getValue()) {
+          generateCallRegion(xcodeml, request);
+        }
+      } else {
+        Set<String> accessed =
+            getHostAccesses(fctDef, range, region.getValue());
+        generateHoistedRegion(xcodeml, range, region.getValue(), accessed,
+            getPresentArguments(xcodeml, fctDef, requests, accessed));
+      }
+    }
+  }
+
+  /**
+   * Get the statements of the function body enclosing all the forwarded
+   * calls.
+   *
+   * @param fctDef   Function definition holding the calls.
+   * @param requests Data requirements of the calls.
+   * @return Statements from the first to the last statement holding a call.
+   * Null if the range contains a statement leaving it.
+   */
+  private static List<Xnode> getRange(FfunctionDefinition fctDef,
+                                      List<Request> requests)
+  {
+    List<Xnode> statements = fctDef.body().children();
+    int first = statements.size();
+    int last = -1;
+    for(Request request : requests) {
+      Xnode statement = request.getHook();
+      while(statement != null
+          && !fctDef.body().equals(statement.ancestor()))
+      {
+        statement = statement.ancestor();
+      }
+      int index = statements.indexOf(statement);
+      if(index < 0) {
+        return null;
+      }
+      first = Math.min(first, index);
+      last = Math.max(last, index);
+    }
+    List<Xnode> range = statements.subList(first, last + 1);
+    for(Xnode statement : range) {
+      if(statement.is(Xcode.F_RETURN_STATEMENT)
+          || statement.is(Xcode.GOTO_STATEMENT)
+          || !statement.matchAll(Xcode.F_RETURN_STATEMENT).isEmpty()
+          || !statement.matchAll(Xcode.GOTO_STATEMENT).isEmpty())
+      {
+        return null;
+      }
+    }
+    return range;
+  }
+
+  /**
+   * Get the arrays of the data region accessed by host code in the range.
+   * Calls to other procedures are assumed to access the arrays not declared
+   * in the function.
+   *
+   * @param fctDef   Function definition holding the calls.
+   * @param range    Statements enclosed in the data region.
+   * @param requests Data requirements of the calls.
+   * @return Lower case names of the accessed arrays.
+   */
+  private static Set<String> getHostAccesses(FfunctionDefinition fctDef,
+                                             List<Xnode> range,
+                                             List<Request> requests)
+  {
+    Set<Xnode> hooks = new HashSet<>();
+    Set<String> arrays = new HashSet<>();
+    for(Request request : requests) {
+      hooks.add(request.getHook());
+      arrays.addAll(getNames(request.getCreates()));
+    }
+
+    Set<String> accessed = new HashSet<>();
+    for(Xnode statement : range) {
+      for(Xnode var : statement.matchAll(Xcode.VAR)) {
+        if(!isInHook(var, statement, hooks)) {
+          accessed.add(var.value().toLowerCase());
+        }
+      }
+      for(Xnode call : statement.matchAll(Xcode.FUNCTION_CALL)) {
+        if(!call.getBooleanAttribute(Xattr.IS_INTRINSIC)
+            && !isInHook(call, statement, hooks))
+        {
+          for(String array : arrays) {
+            if(!fctDef.getDeclarationTable().contains(array)) {
+              accessed.add(array);
+            }
+          }
+        }
+      }
+    }
+    accessed.retainAll(arrays);
+    return accessed;
+  }
+
+  /**
+   * Check whether a node is part of a forwarded call statement.
+   *
+   * @param node      Node to check.
+   * @param statement Outermost statement holding the node.
+   * @param hooks     Forwarded call statements.
+   * @return True if the node or one of its ancestors up to the statement is a
+   * forwarded call statement.
+   */
+  private static boolean isInHook(Xnode node, Xnode statement,
+                                  Set<Xnode> hooks)
+  {
+    for(Xnode crt = node; crt != null; crt = crt.ancestor()) {
+      if(hooks.contains(crt)) {
+        return true;
+      }
+      if(crt.equals(statement)) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the dummy arguments of a function already present on the device
+   * when it is called. The function must not be callable from other
+   * translation units and every call must be a forwarded call creating the
+   * actual argument.
+   *
+   * @param xcodeml  Current translation unit.
+   * @param fctDef   Function definition holding the calls.
+   * @param requests Data requirements of all the forwarded calls.
+   * @param accessed Arrays accessed by the host code of the function.
+   * @return Lower case names of the present dummy arguments.
+   */
+  private static Set<String> getPresentArguments(XcodeProgram xcodeml,
+                                                 FfunctionDefinition fctDef,
+                                                 List<Request> requests,
+                                                 Set<String> accessed)
+  {
+    FfunctionType fctType = xcodeml.getTypeTable().getFunctionType(fctDef);
+    if(fctType == null || fctType.isProgram()
+        || !(fctType.isInternal()
+        || fctType.getBooleanAttribute(Xattr.IS_PRIVATE))
+        || isTypeBound(xcodeml, fctDef.getName()))
+    {
+      return Collections.emptySet();
+    }
+
+    Map<Xnode, Request> forwarded = new HashMap<>();
+    for(Request request : requests) {
+      forwarded.put(request.getCall(), request);
+    }
+
+    List<String> parameters = new ArrayList<>();
+    for(Xnode parameter : fctType.getParameters()) {
+      parameters.add(parameter.value().toLowerCase());
+    }
+    Set<String> present = new HashSet<>(parameters);
+    present.removeAll(accessed);
+
+    for(Xnode call : xcodeml.matchAll(Xcode.FUNCTION_CALL)) {
+      if(!fctDef.getName().equalsIgnoreCase(
+          Function.getFctNameFromFctCall(call)))
+      {
+        continue;
+      }
+      Request caller = forwarded.get(call);
+      if(caller == null) {
+        return Collections.emptySet();
+      }
+      Set<String> created = getNames(caller.getCreates());
+      Set<String> passed = new HashSet<>();
+      Xnode arguments = call.matchSeq(Xcode.ARGUMENTS);
+      List<Xnode> args = arguments == null
+          ? Collections.emptyList() : arguments.children();
+      for(int i = 0; i < args.size(); ++i) {
+        Xnode arg = args.get(i);
+        String dummy = i < parameters.size() ? parameters.get(i) : null;
+        if(arg.is(Xcode.NAMED_VALUE)) {
+          dummy = arg.getAttribute(Xattr.NAME).toLowerCase();
+          arg = arg.firstChild();
+        }
+        Xnode var = arg.is(Xcode.VAR) ? arg : arg.matchDescendant(Xcode.VAR);
+        if(dummy != null && var != null
+            && created.contains(var.value().toLowerCase()))
+        {
+          passed.add(dummy);
+        }
+      }
+      present.retainAll(passed);
+    }
+    return present;
+  }
+
+  /**
+   * Check whether a procedure is bound to a derived type.
+   *
+   * @param xcodeml Current translation unit.
+   * @param name    Name of the procedure.
+   * @return True if a type-bound procedure refers to the procedure.
+   */
+  private static boolean isTypeBound(XcodeProgram xcodeml, String name) {
+    for(Xnode binding : xcodeml.matchAll(Xcode.TYPE_BOUND_PROCEDURE)) {
+      for(Xnode ref : binding.matchAll(Xcode.NAME)) {
+        if(name.equalsIgnoreCase(ref.value())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Generate one data region around the statements holding the forwarded
+   * calls of a function.
+   *
+   * @param xcodeml  Current translation unit.
+   * @param range    Statements enclosed in the data region.
+   * @param requests Data requirements of the calls.
+   * @param accessed Arrays accessed by host code in the region.
+   * @param present  Arrays already present on the device.
+   */
+  private static void generateHoistedRegion(XcodeProgram xcodeml,
+                                            List<Xnode> range,
+                                            List<Request> requests,
+                                            Set<String> accessed,
+                                            Set<String> present)
+  {
+    Map<String, String> arrays = new LinkedHashMap<>();
+    Set<String> in = new LinkedHashSet<>();
+    Set<String> out = new LinkedHashSet<>();
+    for(Request request : requests) {
+      merge(arrays, request.getCreates());
+      in.addAll(getNames(request.getUpdatedIn()));
+      out.addAll(getNames(request.getUpdatedOut()));
+    }
+    if(arrays.isEmpty()) {
+      return;
+    }
+
+    List<String> presents = new ArrayList<>();
+    List<String> creates = new ArrayList<>();
+    for(Map.Entry<String, String> array : arrays.entrySet()) {
+      if(present.contains(array.getKey())) {
+        presents.add(array.getValue());
+      } else {
+        creates.add(array.getValue());
+      }
+    }
+
+    Xnode first = range.get(0);
+    Xnode last = range.get(range.size() - 1);
+    Directive.generateDataRegionClause(xcodeml, presents, creates, first,
+        last);
+    Directive.generateUpdate(xcodeml, first,
+        select(arrays, in, accessed, present), DataMovement.HOST_TO_DEVICE);
+    Directive.generateUpdate(xcodeml, last,
+        select(arrays, out, accessed, present), DataMovement.DEVICE_TO_HOST);
+
+    // Arrays accessed by host code are kept in sync around each call
+    for(Request request : requests) {
+      Directive.generateUpdate(xcodeml, request.getHook(),
+          filter(request.getUpdatedIn(), accessed),
+          DataMovement.HOST_TO_DEVICE);
+      Directive.generateUpdate(xcodeml, request.getHook(),
+          filter(request.getUpdatedOut(), accessed),
+          DataMovement.DEVICE_TO_HOST);
+    }
+  }
+
+  /**
+   * Generate the data region and update directives around a single call.
+   *
+   * @param xcodeml Current translation unit.
+   * @param request Data requirements of the call.
+   */
+  private static void generateCallRegion(XcodeProgram xcodeml,
+                                         Request request)
+  {
+    Directive.generateDataRegionClause(xcodeml, Collections.emptyList(),
+        request.getCreates(), request.getHook(), request.getHook());
+    Directive.generateUpdate(xcodeml, request.getHook(),
+        request.getUpdatedIn(), DataMovement.HOST_TO_DEVICE);
+    Directive.generateUpdate(xcodeml, request.getHook(),
+        request.getUpdatedOut(), DataMovement.DEVICE_TO_HOST);
+  }
+
+  /**
+   * Add array representations to the arrays of a region. An array passed
+   * with different representations is used as a whole.
+   *
+   * @param arrays          Representation of each array of the region.
+   * @param representations Representations to be added.
+   */
+  private static void merge(Map<String, String> arrays,
+                            List<String> representations)
+  {
+    for(String representation : representations) {
+      String name = getName(representation);
+      String previous = arrays.putIfAbsent(name, representation);
+      if(previous != null && !previous.equals(representation)) {
+        arrays.put(name, name);
+      }
+    }
+  }
+
+  /**
+   * Select the region arrays updated at the boundaries of the region.
+   *
+   * @param arrays   Representation of each array of the region.
+   * @param names    Arrays updated by at least one call.
+   * @param accessed Arrays updated around the calls instead.
+   * @param present  Arrays kept in sync by the callers.
+   * @return Representations of the selected arrays.
+   */
+  private static List<String> select(Map<String, String> arrays,
+                                     Set<String> names, Set<String> accessed,
+                                     Set<String> present)
+  {
+    List<String> selected = new ArrayList<>();
+    for(String name : names) {
+      if(arrays.containsKey(name) && !accessed.contains(name)
+          && !present.contains(name))
+      {
+        selected.add(arrays.get(name));
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Keep the representations of the given arrays.
+   *
+   * @param representations Array representations.
+   * @param names           Lower case names of the arrays to keep.
+   * @return Filtered representations.
+   */
+  private static List<String> filter(List<String> representations,
+                                     Set<String> names)
+  {
+    List<String> filtered = new ArrayList<>();
+    for(String representation : representations) {
+      if(names.contains(getName(representation))) {
+        filtered.add(representation);
+      }
+    }
+    return filtered;
+  }
+
+  /**
+   * Get the names of arrays from their representations.
+   *
+   * @param representations Array representations.
+   * @return Lower case names of the arrays.
+   */
+  private static Set<String> getNames(List<String> representations) {
+    Set<String> names = new LinkedHashSet<>();
+    for(String representation : representations) {
+      names.add(getName(representation));
+    }
+    return names;
+  }
+
+  /**
+   * Get the name of an array from its representation. For a member of a
+   * derived type, the name of the variable is returned.
+   *
+   * @param representation Array representation such as q(:,:).
+   * @return Lower case name of the array.
+   */
+  private static String getName(String representation) {
+    int end = representation.length();
+    for(char delimiter : new char[]{'(', '%'}) {
+      int index = representation.indexOf(delimiter);
+      if(index >= 0) {
+        end = Math.min(end, index);
+      }
+    }
+    return representation.substring(0, end).trim().toLowerCase();
+  }
+
+  @Override
+  public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                      Transformation other)
+  {
+    return false; // independent transformation
+  }
+
+  /**
+   * Data requirements of a forwarded call whose data region is hoisted.
+   */
+  static class Request {
+
+    private final Xnode _hook;
+    private final Xnode _call;
+    private final List<String> _creates;
+    private final List<String> _updatedIn;
+    private final List<String> _updatedOut;
+
+    /**
+     * Constructs new data requirements.
+     *
+     * @param hook       Statement holding the call.
+     * @param call       FunctionCall node.
+     * @param creates    Arrays to be created on the device.
+     * @param updatedIn  Arrays read by the call and updated before it.
+     * @param updatedOut Arrays written by the call and updated after it.
+     */
+    Request(Xnode hook, Xnode call, List<String> creates,
+            List<String> updatedIn, List<String> updatedOut)
+    {
+      _hook = hook;
+      _call = call;
+      _creates = creates;
+      _updatedIn = updatedIn;
+      _updatedOut = updatedOut;
+    }
+
+    /**
+     * Get the statement holding the call.
+     *
+     * @return Statement node.
+     */
+    Xnode getHook() {
+      return _hook;
+    }
+
+    /**
+     * Get the forwarded call.
+     *
+     * @return FunctionCall node.
+     */
+    Xnode getCall() {
+      return _call;
+    }
+
+    /**
+     * Get the arrays to be created on the device.
+     *
+     * @return Array representations.
+     */
+    List<String> getCreates() {
+      return _creates;
+    }
+
+    /**
+     * Get the arrays read by the call.
+     *
+     * @return Array representations.
+     */
+    List<String> getUpdatedIn() {
+      return _updatedIn;
+    }
+
+    /**
+     * Get the arrays written by the call.
+     *
+     * @return Array representations.
+     */
+    List<String> getUpdatedOut() {
+      return _updatedOut;
+    }
+  }
+}
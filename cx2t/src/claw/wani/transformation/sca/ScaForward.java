@@ -12,6 +12,7 @@ import claw.tatsu.common.Target;
 import claw.tatsu.common.Utility;
 import claw.tatsu.directive.common.DataMovement;
 import claw.tatsu.directive.common.Directive;
+import claw.tatsu.directive.configuration.AcceleratorDataStrategy;
 import claw.tatsu.primitive.*;
 import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
 import claw.tatsu.xcodeml.abstraction.InsertionPosition;
@@ -24,6 +25,7 @@ import claw.tatsu.xcodeml.xnode.fortran.*;
 import claw.wani.language.ClawPragma;
 import claw.wani.language.ClawClause;
 import claw.wani.transformation.ClawTransformation;
+import claw.wani.x2t.configuration.Configuration;
 import claw.wani.x2t.translator.ClawTranslator;
 
 import java.util.*;
@@ -56,6 +58,7 @@ public class ScaForward extends ClawTransformation {
   private String _calledFctName;  // For topological sorting
   private String _callingFctName; // For topological sorting
   private boolean _isNestedInAssignment;
+  private ScaDataRegion.Request _dataRequest = null;
 
   /**
    * Constructs a new Sca transformation triggered from a specific
@@ -571,19 +574,18 @@ public class ScaForward extends ClawTransformation {
       fctCallAncestor = _fctCall.matchAncestor(Xcode.F_ASSIGN_STATEMENT);
     }
 
-    if(_claw.hasClause(ClawClause.CREATE) && Context.isTarget(Target.GPU)) {
-      List<String> creates = XnodeUtil.gatherArguments(xcodeml, _fctCall,
-          _fctType, _mod, Intent.INOUT, true);
-
-      if(_fctType.isFunction()) {
-        String returnValue = XnodeUtil.gatherReturnValue(xcodeml, _fctCall);
-        if(returnValue != null) {
-          creates.add(returnValue);
-        }
-      }
+    if(isDataRegionHoisted()) {
+      // Data region and updates are placed by the ScaDataRegion transformation
+      _dataRequest = new ScaDataRegion.Request(fctCallAncestor, _fctCall,
+          gatherCreatedVariables(xcodeml),
+          gatherUpdatedVariables(xcodeml, DataMovement.HOST_TO_DEVICE),
+          gatherUpdatedVariables(xcodeml, DataMovement.DEVICE_TO_HOST));
+      return;
+    }
 
+    if(_claw.hasClause(ClawClause.CREATE) && Context.isTarget(Target.GPU)) {
       Directive.generateDataRegionClause(xcodeml, Collections.emptyList(),
-          creates, fctCallAncestor, fctCallAncestor);
+          gatherCreatedVariables(xcodeml), fctCallAncestor, fctCallAncestor);
     }
 
     Xnode preHook = fctCallAncestor;
@@ -591,29 +593,17 @@ public class ScaForward extends ClawTransformation {
 
     if(_claw.hasClause(ClawClause.UPDATE) && Context.isTarget(Target.GPU)) {
       // Generate update from HOST TO DEVICE
-      if(_claw.getUpdateClauseValue() == DataMovement.TWO_WAY ||
-          _claw.getUpdateClauseValue() == DataMovement.HOST_TO_DEVICE)
-      {
-        List<String> out = XnodeUtil.gatherArguments(xcodeml, _fctCall,
-            _fctType, _mod, Intent.IN, true);
-        preHook = Directive.generateUpdate(xcodeml, fctCallAncestor, out,
+      List<String> in =
+          gatherUpdatedVariables(xcodeml, DataMovement.HOST_TO_DEVICE);
+      if(!in.isEmpty()) {
+        preHook = Directive.generateUpdate(xcodeml, fctCallAncestor, in,
             DataMovement.HOST_TO_DEVICE);
       }
 
       // Generate update from DEVICE to HOST
-      if(_claw.getUpdateClauseValue() == DataMovement.TWO_WAY
-          || _claw.getUpdateClauseValue() == DataMovement.DEVICE_TO_HOST)
-      {
-        List<String> out = XnodeUtil.gatherArguments(xcodeml, _fctCall,
-            _fctType, _mod, Intent.OUT, true);
-
-        if(_fctType.isFunction()) {
-          String returnValue = XnodeUtil.gatherReturnValue(xcodeml, _fctCall);
-          if(returnValue != null) {
-            out.add(returnValue);
-          }
-        }
-
+      List<String> out =
+          gatherUpdatedVariables(xcodeml, DataMovement.DEVICE_TO_HOST);
+      if(!out.isEmpty()) {
         postHook = Directive.generateUpdate(xcodeml, fctCallAncestor, out,
             DataMovement.DEVICE_TO_HOST);
       }
@@ -624,6 +614,76 @@ public class ScaForward extends ClawTransformation {
     }
   }
 
+  /**
+   * Check whether the data region of the forwarded call is placed by the
+   * ScaDataRegion transformation instead of around the call itself.
+   *
+   * @return True if the target is GPU, the data strategy is hoist and the
+   * directive has a create clause without a parallel clause.
+   */
+  public boolean isDataRegionHoisted() {
+    return Context.isTarget(Target.GPU)
+        && Configuration.get().accelerator().getDataStrategy()
+        == AcceleratorDataStrategy.HOIST
+        && _claw.hasClause(ClawClause.CREATE)
+        && !_claw.hasClause(ClawClause.PARALLEL);
+  }
+
+  /**
+   * Gather the arrays to be created on the device for the forwarded call.
+   *
+   * @param xcodeml Current XcodeML program unit.
+   * @return Representation of the array arguments and array return value.
+   */
+  private List<String> gatherCreatedVariables(XcodeProgram xcodeml) {
+    List<String> creates = XnodeUtil.gatherArguments(xcodeml, _fctCall,
+        _fctType, _mod, Intent.INOUT, true);
+
+    if(_fctType.isFunction()) {
+      String returnValue = XnodeUtil.gatherReturnValue(xcodeml, _fctCall);
+      if(returnValue != null) {
+        creates.add(returnValue);
+      }
+    }
+    return creates;
+  }
+
+  /**
+   * Gather the arrays to be updated before or after the forwarded call
+   * according to the update clause.
+   *
+   * @param xcodeml   Current XcodeML program unit.
+   * @param direction HOST_TO_DEVICE for the arrays read by the call,
+   *                  DEVICE_TO_HOST for the arrays written by the call.
+   * @return Representation of the arrays. Empty if the update clause does not
+   * include the direction.
+   */
+  private List<String> gatherUpdatedVariables(XcodeProgram xcodeml,
+                                              DataMovement direction)
+  {
+    if(!_claw.hasClause(ClawClause.UPDATE)
+        || (_claw.getUpdateClauseValue() != DataMovement.TWO_WAY
+        && _claw.getUpdateClauseValue() != direction))
+    {
+      return new ArrayList<>();
+    }
+
+    if(direction == DataMovement.HOST_TO_DEVICE) {
+      return XnodeUtil.gatherArguments(xcodeml, _fctCall, _fctType, _mod,
+          Intent.IN, true);
+    }
+
+    List<String> out = XnodeUtil.gatherArguments(xcodeml, _fctCall,
+        _fctType, _mod, Intent.OUT, true);
+    if(_fctType.isFunction()) {
+      String returnValue = XnodeUtil.gatherReturnValue(xcodeml, _fctCall);
+      if(returnValue != null) {
+        out.add(returnValue);
+      }
+    }
+    return out;
+  }
+
   /**
    * Apply promotion to the result return variable of a forward call.
    *
@@ -800,4 +860,15 @@ public class ScaForward extends ClawTransformation {
   public String getCallingFctName() {
     return _callingFctName;
   }
+
+  /**
+   * Get the data requirements of the forwarded call when its data region is
+   * hoisted.
+   *
+   * @return Data requirements. Null if the transformation was not applied or
+   * if the data region is generated around the call.
+   */
+  ScaDataRegion.Request getDataRequest() {
+    return _dataRequest;
+  }
 }
@@ -6,12 +6,16 @@ package claw.wani.transformation.sca;
 
 import claw.shenron.transformation.Transformation;
 import claw.shenron.translator.Translator;
+import claw.tatsu.analysis.cost.CostModel;
+import claw.tatsu.analysis.cost.LoopMapping;
+import claw.tatsu.analysis.cost.LoopNestProfile;
 import claw.tatsu.common.CompilerDirective;
 import claw.tatsu.common.Context;
 import claw.tatsu.directive.common.Directive;
 import claw.tatsu.directive.generator.DirectiveGenerator;
 import claw.tatsu.primitive.Body;
 import claw.tatsu.primitive.Field;
+import claw.tatsu.xcodeml.abstraction.DimensionDefinition;
 import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.abstraction.PromotionInfo;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
@@ -70,10 +74,16 @@ import java.util.List;
  * (if more that 1).
  * </ul>
  *
+ * When a cost model is configured, it decides how many generated do
+ * statements are collapsed and whether the innermost one is distributed
+ * separately over the vector lanes (acc loop vector, omp parallel do simd).
+ *
  * @author clementval
  */
 public class ScaGPU extends Sca {
 
+  private LoopMapping _loopMapping = null;
+
   /**
    * Constructs a new SCA transformation triggered from a specific
    * pragma for a GPU target.
@@ -84,6 +94,24 @@ public class ScaGPU extends Sca {
     super(directive);
   }
 
+  /**
+   * Get the mapping of the generated loop nest chosen by the cost model.
+   *
+   * @return Loop mapping or null if no cost model is configured.
+   */
+  public LoopMapping getLoopMapping() {
+    return _loopMapping;
+  }
+
+  /**
+   * Get the name of the transformed function/subroutine.
+   *
+   * @return Name of the function/subroutine or null if not yet analyzed.
+   */
+  public String getRoutineName() {
+    return _fctDef == null ? null : _fctDef.getName();
+  }
+
   @Override
   public boolean analyze(XcodeProgram xcodeml, Translator translator) {
 
@@ -406,13 +434,45 @@ public class ScaGPU extends Sca {
         createList, loops.getOuterStatement(), loops.getOuterStatement());
 
     // Generate the parallel region
-    Directive.generateParallelLoopClause(xcodeml, privateList,
-        loops.getOuterStatement(), loops.getOuterStatement(), null,
-        loops.size() + collapse);
+    _loopMapping = mapLoops(config.getCostModel(), loops);
+    if(_loopMapping == null || (!_loopMapping.isSplit()
+        && _loopMapping.getCollapse() == loops.size()))
+    {
+      Directive.generateParallelLoopClause(xcodeml, privateList,
+          loops.getOuterStatement(), loops.getOuterStatement(), null,
+          loops.size() + collapse);
+    } else if(_loopMapping.isSplit()) {
+      Directive.generateGangVectorLoopClause(xcodeml, privateList,
+          loops.getOuterStatement(), loops.getInnerStatement(),
+          _loopMapping.getCollapse(), 1 + collapse);
+    } else {
+      Directive.generateParallelLoopClause(xcodeml, privateList,
+          loops.getOuterStatement(), loops.getOuterStatement(), null,
+          _loopMapping.getCollapse());
+    }
 
     Directive.generateRoutineDirectives(xcodeml, _fctDef);
   }
 
+  /**
+   * Choose the mapping of the generated loop nest with the cost model.
+   *
+   * @param model Configured cost model or null.
+   * @param loops Generated loop nest.
+   * @return Chosen mapping or null if no cost model is configured.
+   */
+  private LoopMapping mapLoops(CostModel model, NestedDoStatement loops) {
+    if(model == null) {
+      return null;
+    }
+    List<DimensionDefinition> dimensions = _claw.getDefaultLayoutReversed();
+    int[] extents = new int[dimensions.size()];
+    for(int i = 0; i < extents.length; ++i) {
+      extents[i] = dimensions.get(i).getExtent();
+    }
+    return model.map(LoopNestProfile.of(loops, extents));
+  }
+
   /**
    * Apply the private local array strategy. Gather all information about
    * local array requiring a privatization.
@@ -32,15 +32,20 @@ import javax.xml.validation.Validator;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -91,6 +96,8 @@ public class Configuration {
   // SCA configuration keys
   public static final String SCA_ELEMENTAL_PROMOTION_ASSUMED =
       "sca_elemental_promotion_assumed";
+  // Number of workers applying independent transformations
+  public static final String TRANSFORMATION_WORKERS = "transformation_workers";
   // env var
   private static final String CLAW_TRANS_SET_PATH = "CLAW_TRANS_SET_PATH";
 
@@ -102,7 +109,25 @@ public class Configuration {
   private AcceleratorConfiguration _accelerator;
   private String[] _transSetPaths;
   private boolean _forcePure = false;
-  private final ModelConfig _modelConfig;
+  private ModelConfig _modelConfig;
+  private String _modelConfigFile;
+  // Files read and external jars of the sets kept for the snapshot
+  private List<String> _sources;
+  private Map<String, String> _setJars;
+  private boolean _fromSnapshot = false;
+
+  /* Validated documents and external jar loaders are kept for the lifetime of
+   * the JVM so a resident translator does not validate the same files again
+   * for each translation. */
+  private static final Map<String, ValidatedDocument> _validatedDocuments =
+      new HashMap<>();
+  private static final Map<String, URLClassLoader> _externalLoaders =
+      new HashMap<>();
+
+  // Configuration bound to the current thread. Has priority over the global
+  // one.
+  private static final ThreadLocal<Configuration> _threadConfiguration =
+      new ThreadLocal<>();
 
   /**
    * Lazy holder pattern.
@@ -120,12 +145,39 @@ public class Configuration {
   }
 
   /**
-   * Get the unique instance.
+   * Get the current configuration. This is the configuration bound to the
+   * current thread if any. The global configuration otherwise.
    *
-   * @return Unique Configuration instance.
+   * @return Current Configuration instance.
    */
   public static Configuration get() {
-    return LazyHolder.INSTANCE;
+    Configuration configuration = _threadConfiguration.get();
+    return configuration != null ? configuration : LazyHolder.INSTANCE;
+  }
+
+  /**
+   * Create a new configuration independent from the global one. The
+   * configuration has to be loaded and bound to a thread to be used.
+   *
+   * @return New Configuration instance.
+   */
+  public static Configuration create() {
+    return new Configuration();
+  }
+
+  /**
+   * Bind a configuration to the current thread. Every call to {@link #get()}
+   * from this thread returns the bound configuration until it is unbound.
+   *
+   * @param configuration Configuration to bind. If null, the current thread is
+   *                      unbound and uses the global configuration again.
+   */
+  public static void bind(Configuration configuration) {
+    if(configuration == null) {
+      _threadConfiguration.remove();
+    } else {
+      _threadConfiguration.set(configuration);
+    }
   }
 
   /**
@@ -180,13 +232,42 @@ public class Configuration {
                    String userDefinedTarget, String userDefinedDirective,
                    int userMaxColumns)
       throws Exception
+  {
+    load(configPath, userConfigFile, modelConfig, userDefinedTarget,
+        userDefinedDirective, userMaxColumns, null);
+  }
+
+  /**
+   * Constructs a new configuration object from the give configuration file or
+   * from its snapshot.
+   *
+   * @param configPath           Path to the configuration files and XSD
+   *                             schemas.
+   * @param userConfigFile       Path to the alternative configuration.
+   * @param modelConfig          SCA specific model configuration.
+   * @param userDefinedTarget    Target option passed by user. Can be null.
+   * @param userDefinedDirective Directive option passed by user. Can be null.
+   * @param userMaxColumns       Max column option passed by user. Can be 0.
+   * @param snapshot             Snapshot of the configuration. Used if it is
+   *                             up to date. Otherwise the configuration files
+   *                             are read and the snapshot is updated. Can be
+   *                             null.
+   * @throws Exception If configuration cannot be loaded properly.
+   */
+  public void load(String configPath, String userConfigFile, String modelConfig,
+                   String userDefinedTarget, String userDefinedDirective,
+                   int userMaxColumns, String snapshot)
+      throws Exception
   {
     _configuration_path = configPath;
     _parameters = new HashMap<>();
     _groups = new ArrayList<>();
     _availableGroups = new HashMap<>();
-    boolean readDefault = true;
-    Document userConf = null;
+    _forcePure = false;
+    _modelConfig = new ModelConfig();
+    _modelConfigFile = modelConfig;
+    _sources = new ArrayList<>();
+    _setJars = new HashMap<>();
 
     // Read the environment variable for external transformation sets
     _transSetPaths = new String[0];
@@ -195,6 +276,51 @@ public class Configuration {
       _transSetPaths = System.getenv(CLAW_TRANS_SET_PATH).split(";");
     }
 
+    _fromSnapshot = snapshot != null && readSnapshot(snapshot, userConfigFile);
+    if(!_fromSnapshot) {
+      readConfigurationFiles(userConfigFile);
+      if(snapshot != null) {
+        try {
+          writeSnapshot(snapshot, userConfigFile);
+        } catch(IOException ignored) {
+          // The snapshot is an optimization only
+        }
+      }
+    }
+
+    setUserDefinedTarget(userDefinedTarget);
+    setUserDefineDirective(userDefinedDirective);
+
+    switch(getCurrentDirective()) {
+      case OPENACC:
+        _accelerator = new OpenAccConfiguration(_parameters);
+        break;
+      case OPENMP:
+        _accelerator = new OpenMpConfiguration(_parameters);
+        break;
+      default:
+        _accelerator = new AcceleratorConfiguration(_parameters);
+    }
+
+    Context.get().init(getCurrentDirective(), getCurrentTarget(), _accelerator,
+        userMaxColumns);
+
+    if(modelConfig != null) {
+      getModelConfig().load(modelConfig);
+    }
+  }
+
+  /**
+   * Read and validate the default and user configuration files and the
+   * transformation sets they use.
+   *
+   * @param userConfigFile Path to the alternative configuration. Can be null.
+   * @throws Exception If configuration cannot be loaded properly.
+   */
+  private void readConfigurationFiles(String userConfigFile) throws Exception {
+    boolean readDefault = true;
+    Document userConf = null;
+
     // Configuration has been given by the user. Read it first.
     if(userConfigFile != null) {
       File userConfiguration = Paths.get(userConfigFile).toFile();
@@ -216,27 +342,110 @@ public class Configuration {
       // Then the default one is not read.
       readConfiguration(userConf, false);
     }
+  }
 
-    setUserDefinedTarget(userDefinedTarget);
-    setUserDefineDirective(userDefinedDirective);
-
-    switch(getCurrentDirective()) {
-      case OPENACC:
-        _accelerator = new OpenAccConfiguration(_parameters);
-        break;
-      case OPENMP:
-        _accelerator = new OpenMpConfiguration(_parameters);
-        break;
-      default:
-        _accelerator = new AcceleratorConfiguration(_parameters);
+  /**
+   * Read the parameters and groups from a snapshot of the configuration.
+   *
+   * @param snapshotFile   Snapshot file.
+   * @param userConfigFile Path to the alternative configuration. Can be null.
+   * @return True if the snapshot is up to date and has been read. False
+   * otherwise.
+   */
+  private boolean readSnapshot(String snapshotFile, String userConfigFile) {
+    ConfigurationSnapshot snapshot = ConfigurationSnapshot.read(snapshotFile,
+        getSnapshotKey(userConfigFile));
+    if(snapshot == null) {
+      return false;
     }
+    try {
+      List<GroupConfiguration> groups = new ArrayList<>();
+      for(ConfigurationSnapshot.Group g : snapshot.getGroups()) {
+        Class<?> transClass = g._jar == null ? Class.forName(g._className)
+            : Class.forName(g._className, true, loadExternalJar(g._jar));
+        groups.add(new GroupConfiguration(g._setName, g._name, g._type,
+            g._trigger, g._className, g._directive, transClass));
+        if(g._jar != null) {
+          _setJars.put(g._setName, g._jar);
+        }
+      }
+      _parameters.putAll(snapshot.getParameters());
+      _groups.addAll(groups);
+      _sources.addAll(snapshot.getSources());
+      return true;
+    } catch(ClassNotFoundException | IOException e) {
+      return false;
+    }
+  }
 
-    Context.get().init(getCurrentDirective(), getCurrentTarget(), _accelerator,
-        userMaxColumns);
+  /**
+   * Read and validate the configuration files and write their snapshot. Later
+   * loads with the same configuration use the snapshot as long as none of the
+   * files has changed.
+   *
+   * @param configPath     Path to the configuration files and XSD schemas.
+   * @param userConfigFile Path to the alternative configuration. Can be null.
+   * @param snapshotFile   Snapshot file to write.
+   * @throws Exception If configuration cannot be loaded properly or the
+   *                   snapshot cannot be written.
+   */
+  public void compileSnapshot(String configPath, String userConfigFile,
+                              String snapshotFile)
+      throws Exception
+  {
+    load(configPath, userConfigFile, null, null, null, 0, null);
+    writeSnapshot(snapshotFile, userConfigFile);
+  }
 
-    if(modelConfig != null) {
-      getModelConfig().load(modelConfig);
+  /**
+   * Write a snapshot of the parameters and groups read from the configuration
+   * files. Must be called before the parameters are modified by the options.
+   *
+   * @param snapshotFile   Snapshot file.
+   * @param userConfigFile Path to the alternative configuration the
+   *                       configuration was loaded with. Can be null.
+   * @throws IOException If the snapshot cannot be written.
+   */
+  private void writeSnapshot(String snapshotFile, String userConfigFile)
+      throws IOException
+  {
+    Map<String, String> parameters = new LinkedHashMap<>();
+    for(String key : new TreeSet<>(_parameters.keySet())) {
+      parameters.put(key, _parameters.get(key));
+    }
+    List<ConfigurationSnapshot.Group> groups = new ArrayList<>();
+    for(GroupConfiguration g : _groups) {
+      groups.add(new ConfigurationSnapshot.Group(g.getSetName(), g.getName(),
+          g.getType(), g.getTriggerType(), g.getTransformationClassName(),
+          g.getDirective(), _setJars.get(g.getSetName())));
     }
+    new ConfigurationSnapshot(parameters, groups, _sources)
+        .write(snapshotFile, getSnapshotKey(userConfigFile));
+  }
+
+  /**
+   * Get the key of the options the configuration is loaded with. A snapshot
+   * is only valid for the same key.
+   *
+   * @param userConfigFile Path to the alternative configuration. Can be null.
+   * @return Compiler version, configuration paths and external set paths.
+   */
+  private String getSnapshotKey(String userConfigFile) {
+    return ClawVersion.VERSION + '\n'
+        + Paths.get(_configuration_path).toAbsolutePath() + '\n'
+        + (userConfigFile == null ? ""
+        : Paths.get(userConfigFile).toAbsolutePath()) + '\n'
+        + String.join(";", _transSetPaths);
+  }
+
+  /**
+   * Check whether the configuration has been read from a snapshot.
+   *
+   * @return True if the configuration comes from a snapshot. False if the
+   * configuration files have been read.
+   */
+  boolean isFromSnapshot() {
+    return _fromSnapshot;
   }
 
   /**
@@ -337,6 +546,49 @@ public class Configuration {
    */
   private Document parseAndValidate(File xmlFile, File xsdSchema)
       throws Exception
+  {
+    addSource(xmlFile);
+    addSource(xsdSchema);
+    String key = xmlFile.getAbsolutePath() + File.pathSeparator
+        + xsdSchema.getAbsolutePath();
+    synchronized(_validatedDocuments) {
+      ValidatedDocument cached = _validatedDocuments.get(key);
+      if(cached != null && cached.isUpToDate(xmlFile, xsdSchema)) {
+        return (Document) cached._document.cloneNode(true);
+      }
+    }
+
+    Document document = parseAndValidateFile(xmlFile, xsdSchema);
+    synchronized(_validatedDocuments) {
+      _validatedDocuments.put(key,
+          new ValidatedDocument(document, xmlFile, xsdSchema));
+    }
+    return (Document) document.cloneNode(true);
+  }
+
+  /**
+   * Add a file to the files the configuration is read from.
+   *
+   * @param file File read.
+   */
+  private void addSource(File file) {
+    String path = file.getAbsolutePath();
+    if(!_sources.contains(path)) {
+      _sources.add(path);
+    }
+  }
+
+  /**
+   * Parse and validate the configuration file without looking in the
+   * validated documents.
+   *
+   * @param xmlFile   File object pointing to the configuration file.
+   * @param xsdSchema File object pointing to the XSD schema.
+   * @return XML document representing the configuration file.
+   * @throws Exception If the configuration file does not validate.
+   */
+  private Document parseAndValidateFile(File xmlFile, File xsdSchema)
+      throws Exception
   {
     DocumentBuilderFactory factory =
         DocumentBuilderFactory.newInstance();
@@ -393,6 +645,23 @@ public class Configuration {
         && _parameters.get(key).equalsIgnoreCase(Xname.TRUE);
   }
 
+  /**
+   * Get the number of workers applying the transformations of an independent
+   * group to different function definitions in parallel.
+   *
+   * @return Number of workers. 1 if the parameter is not set or invalid. The
+   * number of available processors if the parameter is 0.
+   */
+  public int getTransformationWorkers() {
+    try {
+      int workers = Integer.parseInt(getParameter(TRANSFORMATION_WORKERS));
+      return workers == 0
+          ? Runtime.getRuntime().availableProcessors() : Math.max(workers, 1);
+    } catch(NumberFormatException e) {
+      return 1;
+    }
+  }
+
   /**
    * Get the GPU specific configuration information.
    *
@@ -458,6 +727,7 @@ public class Configuration {
       if(isExternal) {
         String externalJar = root.getAttribute(JAR_ATTR);
         URLClassLoader loader = loadExternalJar(externalJar);
+        _setJars.put(setName, externalJar);
         readTransformations(setName, root, loader);
       } else {
         readTransformations(setName, root, null);
@@ -486,9 +756,15 @@ public class Configuration {
     for(String path : _transSetPaths) {
       Path jar = Paths.get(path, jarFile);
       if(jar.toFile().exists()) {
-        external = new URLClassLoader(new URL[]{
-            new URL("file://" + jar.toString())},
-            this.getClass().getClassLoader());
+        synchronized(_externalLoaders) {
+          external = _externalLoaders.get(jar.toString());
+          if(external == null) {
+            external = new URLClassLoader(new URL[]{
+                new URL("file://" + jar.toString())},
+                this.getClass().getClassLoader());
+            _externalLoaders.put(jar.toString(), external);
+          }
+        }
         return external;
       }
     }
@@ -711,19 +987,20 @@ public class Configuration {
    * Display the loaded configuration.
    */
   public void displayConfig() {
-    System.out.println(String.format("- CLAW Compiler configuration -%n"));
-    System.out.println(String.format("Default directive directive: %s%n",
+    PrintStream out = Context.get().getOut();
+    out.println(String.format("- CLAW Compiler configuration -%n"));
+    out.println(String.format("Default directive directive: %s%n",
         getCurrentDirective()));
-    System.out.println(String.format("Default target: %s%n",
+    out.println(String.format("Default target: %s%n",
         getCurrentTarget()));
-    System.out.println("Current transformation order:");
+    out.println("Current transformation order:");
     int i = 0;
-    System.out.printf("  %3s %-20s %-20s %-15s %-20s %-10s %-60s%n",
+    out.printf("  %3s %-20s %-20s %-15s %-20s %-10s %-60s%n",
         "Id", "set", "name", "type", "trigger", "directive", "class");
-    System.out.printf("  %3s %-20s %-20s %-15s %-20s %-10s %-60s%n",
+    out.printf("  %3s %-20s %-20s %-15s %-20s %-10s %-60s%n",
         "--", "---", "----", "----", "-------", "---------", "-----");
     for(GroupConfiguration g : getGroups()) {
-      System.out.printf("  %2d) %-20s %-20s %-15s %-20s %-10s %-60s%n",
+      out.printf("  %2d) %-20s %-20s %-15s %-20s %-10s %-60s%n",
           i, g.getSetName(), g.getName(), g.getType(), g.getTriggerType(),
           g.getTriggerType() == GroupConfiguration.TriggerType.DIRECTIVE
               ? g.getDirective() : "-", g.getTransformationClassName());
@@ -731,6 +1008,35 @@ public class Configuration {
     }
   }
 
+  /**
+   * Get a description of the effective configuration. Configurations with
+   * the same description translate a unit the same way.
+   *
+   * @return Directive, target, parameters including the overridden ones,
+   * transformation groups and model configuration content.
+   * @throws IOException If the model configuration file cannot be read.
+   */
+  public String getFingerprint() throws IOException {
+    StringBuilder str = new StringBuilder();
+    str.append(getCurrentDirective()).append('\n');
+    str.append(getCurrentTarget()).append('\n');
+    str.append(_forcePure).append('\n');
+    for(String key : new TreeSet<>(_parameters.keySet())) {
+      str.append(key).append('=').append(_parameters.get(key)).append('\n');
+    }
+    for(GroupConfiguration g : getGroups()) {
+      str.append(g.getSetName()).append(' ').append(g.getName()).append(' ')
+          .append(g.getType()).append(' ').append(g.getTriggerType())
+          .append(' ').append(g.getDirective()).append(' ')
+          .append(g.getTransformationClassName()).append('\n');
+    }
+    if(_modelConfigFile != null) {
+      str.append(new String(Files.readAllBytes(Paths.get(_modelConfigFile)),
+          StandardCharsets.UTF_8));
+    }
+    return str.toString();
+  }
+
   /**
    * Override a configuration key-value parameter.
    *
@@ -752,4 +1058,43 @@ public class Configuration {
   public ModelConfig getModelConfig() {
     return _modelConfig;
   }
+
+  /**
+   * Configuration document that passed validation together with the state of
+   * the files it was read from.
+   */
+  private static class ValidatedDocument {
+
+    private final Document _document;
+    private final long _xmlModified;
+    private final long _xmlLength;
+    private final long _xsdModified;
+
+    /**
+     * Constructs a new validated document entry.
+     *
+     * @param document  Validated document.
+     * @param xmlFile   File the document was read from.
+     * @param xsdSchema Schema used for the validation.
+     */
+    ValidatedDocument(Document document, File xmlFile, File xsdSchema) {
+      _document = document;
+      _xmlModified = xmlFile.lastModified();
+      _xmlLength = xmlFile.length();
+      _xsdModified = xsdSchema.lastModified();
+    }
+
+    /**
+     * Check whether the files have changed since the validation.
+     *
+     * @param xmlFile   Configuration file.
+     * @param xsdSchema Schema file.
+     * @return True if none of the files has changed. False otherwise.
+     */
+    boolean isUpToDate(File xmlFile, File xsdSchema) {
+      return _xmlModified == xmlFile.lastModified()
+          && _xmlLength == xmlFile.length()
+          && _xsdModified == xsdSchema.lastModified();
+    }
+  }
 }
@@ -0,0 +1,292 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.configuration;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validated and resolved configuration saved in a compact binary form so the
+ * configuration, transformation set and schema files do not have to be parsed
+ * and validated again by each translator run.
+ *
+ * A snapshot holds the global parameters and the ordered transformation groups
+ * read from the configuration files. It is keyed by the options the
+ * configuration was loaded with and by the SHA-256 hash of each file read. A
+ * snapshot whose key or hashes do not match is ignored. Snapshots are
+ * memory-mapped on load.
+ *
+ * @author clementval
+ */
+final class ConfigurationSnapshot {
+
+  private static final int MAGIC = 0x434c4346; // CLCF
+  private static final int FORMAT_VERSION = 1;
+  private static final int HASH_BYTES = 32;
+
+  private final Map<String, String> _parameters;
+  private final List<Group> _groups;
+  private final List<String> _sources;
+
+  /**
+   * Transformation group as read from a transformation set.
+   */
+  static final class Group {
+
+    final String _setName;
+    final String _name;
+    final GroupConfiguration.GroupType _type;
+    final GroupConfiguration.TriggerType _trigger;
+    final String _className;
+    final String _directive;
+    final String _jar;
+
+    /**
+     * Constructs a new group description.
+     *
+     * @param setName   Name of the transformation set.
+     * @param name      Name of the group.
+     * @param type      Type of the group.
+     * @param trigger   Trigger type of the group.
+     * @param className Name of the transformation class.
+     * @param directive Triggering directive. Can be null.
+     * @param jar       External jar of the transformation set. Null if the
+     *                  transformation class is part of the translator.
+     */
+    Group(String setName, String name, GroupConfiguration.GroupType type,
+          GroupConfiguration.TriggerType trigger, String className,
+          String directive, String jar)
+    {
+      _setName = setName;
+      _name = name;
+      _type = type;
+      _trigger = trigger;
+      _className = className;
+      _directive = directive;
+      _jar = jar;
+    }
+  }
+
+  /**
+   * Constructs a new snapshot.
+   *
+   * @param parameters Global parameters.
+   * @param groups     Transformation groups in application order.
+   * @param sources    Absolute paths of the files the configuration was read
+   *                   from.
+   */
+  ConfigurationSnapshot(Map<String, String> parameters, List<Group> groups,
+                        List<String> sources)
+  {
+    _parameters = parameters;
+    _groups = groups;
+    _sources = sources;
+  }
+
+  /**
+   * Get the global parameters.
+   *
+   * @return Map of the parameters.
+   */
+  Map<String, String> getParameters() {
+    return _parameters;
+  }
+
+  /**
+   * Get the transformation groups.
+   *
+   * @return Groups in application order.
+   */
+  List<Group> getGroups() {
+    return _groups;
+  }
+
+  /**
+   * Get the files the configuration was read from.
+   *
+   * @return Absolute paths of the files.
+   */
+  List<String> getSources() {
+    return _sources;
+  }
+
+  /**
+   * Read a snapshot.
+   *
+   * @param file Snapshot file.
+   * @param key  Key of the options the configuration is loaded with.
+   * @return Snapshot read from the file. Null if the file does not exist,
+   * cannot be decoded, has another key or if one of its source files has
+   * changed.
+   */
+  static ConfigurationSnapshot read(String file, String key) {
+    Path path = Paths.get(file);
+    if(!Files.isRegularFile(path)) {
+      return null;
+    }
+    try(FileChannel channel = FileChannel.open(path,
+        StandardOpenOption.READ))
+    {
+      MappedByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+          || !key.equals(readString(buffer)))
+      {
+        return null;
+      }
+      List<String> sources = new ArrayList<>();
+      int nbSources = buffer.getInt();
+      for(int i = 0; i < nbSources; ++i) {
+        String source = readString(buffer);
+        byte[] storedHash = new byte[HASH_BYTES];
+        buffer.get(storedHash);
+        if(!Arrays.equals(hash(Paths.get(source)), storedHash)) {
+          return null;
+        }
+        sources.add(source);
+      }
+      Map<String, String> parameters = new LinkedHashMap<>();
+      int nbParameters = buffer.getInt();
+      for(int i = 0; i < nbParameters; ++i) {
+        parameters.put(readString(buffer), readString(buffer));
+      }
+      List<Group> groups = new ArrayList<>();
+      int nbGroups = buffer.getInt();
+      for(int i = 0; i < nbGroups; ++i) {
+        groups.add(new Group(readString(buffer), readString(buffer),
+            GroupConfiguration.GroupType.valueOf(readString(buffer)),
+            GroupConfiguration.TriggerType.valueOf(readString(buffer)),
+            readString(buffer), readString(buffer), readString(buffer)));
+      }
+      return new ConfigurationSnapshot(parameters,
+          Collections.unmodifiableList(groups),
+          Collections.unmodifiableList(sources));
+    } catch(IOException | BufferUnderflowException | IllegalArgumentException
+        | NullPointerException ignored)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Write the snapshot. The file is written to a temporary file and moved in
+   * place so concurrent translations never read a partial snapshot.
+   *
+   * @param file Snapshot file.
+   * @param key  Key of the options the configuration was loaded with.
+   * @throws IOException If a source file cannot be read or the snapshot
+   *                     cannot be written.
+   */
+  void write(String file, String key) throws IOException {
+    Path path = Paths.get(file).toAbsolutePath();
+    Files.createDirectories(path.getParent());
+    Path tmp = Files.createTempFile(path.getParent(), ".config", ".tmp");
+    try {
+      try(OutputStream output = Files.newOutputStream(tmp);
+          DataOutputStream out =
+              new DataOutputStream(new BufferedOutputStream(output)))
+      {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, key);
+        out.writeInt(_sources.size());
+        for(String source : _sources) {
+          writeString(out, source);
+          out.write(hash(Paths.get(source)));
+        }
+        out.writeInt(_parameters.size());
+        for(Map.Entry<String, String> parameter : _parameters.entrySet()) {
+          writeString(out, parameter.getKey());
+          writeString(out, parameter.getValue());
+        }
+        out.writeInt(_groups.size());
+        for(Group group : _groups) {
+          writeString(out, group._setName);
+          writeString(out, group._name);
+          writeString(out, group._type.name());
+          writeString(out, group._trigger.name());
+          writeString(out, group._className);
+          writeString(out, group._directive);
+          writeString(out, group._jar);
+        }
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Compute the content hash of a file.
+   *
+   * @param file File to hash.
+   * @return SHA-256 hash of the file content.
+   * @throws IOException If the file cannot be read.
+   */
+  private static byte[] hash(Path file) throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-256")
+          .digest(Files.readAllBytes(file));
+    } catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Write a string that can be null.
+   *
+   * @param out Output of the snapshot.
+   * @param str String to write.
+   * @throws IOException If the output cannot be written.
+   */
+  private static void writeString(DataOutputStream out, String str)
+      throws IOException
+  {
+    if(str == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read a string written by {@link #writeString(DataOutputStream, String)}.
+   *
+   * @param buffer Buffer positioned on the string.
+   * @return String read. Can be null.
+   */
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if(length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
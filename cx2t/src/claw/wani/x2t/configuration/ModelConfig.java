@@ -30,6 +30,7 @@ public class ModelConfig {
   private static final String KEY_DIMENSION_UB = "upper";
   private static final String KEY_DIMENSION_STEP = "step";
   private static final String KEY_DIMENSION_ITERATION = "iteration";
+  private static final String KEY_DIMENSION_EXTENT = "extent";
   private static final String KEY_LAYOUTS = "layouts";
   private static final String KEY_LAYOUT_POSITION = "position";
 
@@ -43,6 +44,8 @@ public class ModelConfig {
   static final String ERR_NO_SIZE = "Size information missing in dimension %s";
   static final String ERR_NO_UPPER =
       "Upper information missing in size dimension %s";
+  static final String ERR_EXTENT =
+      "Extent of dimension %s is not a positive integer";
   static final String ERR_NO_LAYOUTS =
       "No layouts defined in the model configuration %s" +
           ". At least \"default\" should be defined!";
@@ -108,6 +111,7 @@ public class ModelConfig {
    * [dimensions.size]<br>
    * lower = 1             # if not specified, 1 by default<br>
    * upper = "nproma"      # mandatory information<br>
+   * extent = 20000        # optional typical size for the cost model<br>
    * [dimensions.iteration]<br>
    * lower = "pstart" # if not specified size.lower by default<br>
    * upper = "pend"   # if not specified size.upper by default<br>
@@ -139,18 +143,19 @@ public class ModelConfig {
 
       TomlTable dimIt = dimension.getTable(KEY_DIMENSION_ITERATION);
 
+      DimensionDefinition dim;
       if(dimIt == null) {
-        _dimensions.put(dimId,
-            new DimensionDefinition(dimId, lowerBound, upperBound));
+        dim = new DimensionDefinition(dimId, lowerBound, upperBound);
       } else {
         String lowerItBound = readBoundOrNull(dimIt, KEY_DIMENSION_LB);
         String upperItBound = readBoundOrNull(dimIt, KEY_DIMENSION_UB);
         String stepItBound = readBoundOrNull(dimIt, KEY_DIMENSION_STEP);
 
-        _dimensions.put(dimId,
-            new DimensionDefinition(dimId, lowerBound, upperBound,
-                lowerItBound, upperItBound, stepItBound));
+        dim = new DimensionDefinition(dimId, lowerBound, upperBound,
+            lowerItBound, upperItBound, stepItBound);
       }
+      dim.setExtent(readExtent(dimSize, dimId));
+      _dimensions.put(dimId, dim);
     }
   }
 
@@ -244,6 +249,30 @@ public class ModelConfig {
     return value;
   }
 
+  /**
+   * Read the optional extent hint of a dimension.
+   *
+   * @param table Size table of the dimension.
+   * @param dimId Identifier of the dimension.
+   * @return Extent value. 0 if not specified.
+   * @throws Exception If the extent is not a positive integer.
+   */
+  private int readExtent(TomlTable table, String dimId) throws Exception {
+    String value = readStringOrInt(table, KEY_DIMENSION_EXTENT);
+    if(value.isEmpty()) {
+      return 0;
+    }
+    try {
+      int extent = Integer.parseInt(value);
+      if(extent > 0) {
+        return extent;
+      }
+    } catch(NumberFormatException ignored) {
+      // Reported below
+    }
+    throw new Exception(String.format(ERR_EXTENT, dimId));
+  }
+
   /**
    * Read a value in the TOML file that can be a String or an Integer.
    *
@@ -398,6 +427,41 @@ public class ModelConfig {
     return _layouts.size();
   }
 
+  /**
+   * Create a deep copy of this model configuration. Dimensions are copied and
+   * the layouts of the copy refer to the copied dimensions. The base
+   * dimension place holder is shared.
+   *
+   * @return A newly created copy of this model configuration.
+   */
+  public ModelConfig copy() {
+    ModelConfig copy = new ModelConfig();
+    Map<DimensionDefinition, DimensionDefinition> copies =
+        new IdentityHashMap<>();
+    copies.put(DimensionDefinition.BASE_DIMENSION,
+        DimensionDefinition.BASE_DIMENSION);
+    for(Map.Entry<String, DimensionDefinition> dimension
+        : _dimensions.entrySet())
+    {
+      copy._dimensions.put(dimension.getKey(),
+          copies.computeIfAbsent(dimension.getValue(),
+              DimensionDefinition::copy));
+    }
+    for(Map.Entry<String, List<DimensionDefinition>> layout
+        : _layouts.entrySet())
+    {
+      List<DimensionDefinition> dimensions = new ArrayList<>();
+      for(DimensionDefinition dimension : layout.getValue()) {
+        dimensions.add(
+            copies.computeIfAbsent(dimension, DimensionDefinition::copy));
+      }
+      copy._layouts.put(layout.getKey(), dimensions);
+    }
+    copy._modelName = _modelName;
+    copy._isLoaded = _isLoaded;
+    return copy;
+  }
+
   /**
    * Check if the model configuration has been loaded.
    *
@@ -0,0 +1,273 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.server;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Long-lived translator server. The server keeps the JVM, the loaded
+ * configuration and the warmed-up code resident between translation jobs so
+ * the driver does not pay the start-up cost for every file.
+ *
+ * The server listens on the loopback interface and writes its server file
+ * (port, access token and process id on a single line) once it is ready to
+ * accept jobs. Java 8 has no Unix domain socket support, so a loopback TCP
+ * socket protected by the access token is used instead. A job is sent as
+ * plain text lines:
+ * - access token
+ * - working directory of the client
+ * - one line per argument (same arguments as the one-shot translator)
+ * - an empty line to close the request
+ * Everything the job writes on stdout and stderr is sent back to the client
+ * followed by a status line starting with {@link #STATUS_PREFIX}.
+ *
+ * Jobs are processed concurrently by a bounded pool of workers. Connections
+ * are not accepted while all the workers are busy. A client has
+ * {@link #REQUEST_TIMEOUT_MS} to send its request, so a stalled client only
+ * holds one worker for this time. Each job writes to the output streams it is
+ * given and never to the process-wide standard streams.
+ *
+ * @author clementval
+ */
+public class TranslationServer {
+
+  public static final String STATUS_PREFIX = "cx2t-server-status:";
+  private static final int TOKEN_BYTES = 16;
+  private static final int JOB_ERROR_STATUS = 1;
+  static final int REQUEST_TIMEOUT_MS = 10000;
+
+  private final Path _serverFile;
+  private final JobRunner _runner;
+  private final int _nbWorkers;
+  private final String _token;
+  private volatile boolean _running = false;
+  private ServerSocket _socket;
+  private ExecutorService _workers;
+
+  /**
+   * Translation job executed by the server.
+   */
+  public interface JobRunner {
+
+    /**
+     * Run a translation job.
+     *
+     * @param workingDir Working directory of the client. Relative paths in the
+     *                   arguments are relative to this directory.
+     * @param args       Arguments of the job.
+     * @param out        Stream for the regular output of the job.
+     * @param err        Stream for the diagnostics of the job.
+     * @return Exit status of the job. 0 on success.
+     * @throws Exception If the job failed.
+     */
+    int run(String workingDir, String[] args, PrintStream out,
+            PrintStream err)
+        throws Exception;
+  }
+
+  /**
+   * Constructs a new translation server.
+   *
+   * @param serverFile Path of the file where the server connection
+   *                   information is written.
+   * @param nbWorkers  Maximum number of jobs processed concurrently. If 0 or
+   *                   less, the number of available processors is used.
+   * @param runner     Runner executing each translation job.
+   */
+  public TranslationServer(String serverFile, int nbWorkers,
+                           JobRunner runner)
+  {
+    _serverFile = Paths.get(serverFile).toAbsolutePath();
+    _runner = runner;
+    _nbWorkers = nbWorkers > 0 ? nbWorkers
+        : Runtime.getRuntime().availableProcessors();
+    _token = generateToken();
+  }
+
+  /**
+   * Start listening for jobs. This method returns only when the server is
+   * stopped.
+   *
+   * @throws IOException If the server socket or the server file cannot be
+   *                     created.
+   */
+  public void serve() throws IOException {
+    _socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+    _workers = Executors.newFixedThreadPool(_nbWorkers, r -> {
+      Thread t = new Thread(r, "cx2t-server-worker");
+      t.setDaemon(true);
+      return t;
+    });
+    _running = true;
+    Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+    writeServerFile(_socket.getLocalPort());
+
+    // One permit per worker so accepted connections never wait in a queue
+    Semaphore idleWorkers = new Semaphore(_nbWorkers);
+    while(_running) {
+      try {
+        idleWorkers.acquire();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        stop();
+        break;
+      }
+      Socket client;
+      try {
+        client = _socket.accept();
+      } catch(IOException ioe) {
+        idleWorkers.release();
+        if(_running) {
+          System.err.println("Translation server: " + ioe.getMessage());
+        }
+        continue;
+      }
+      _workers.execute(() -> {
+        try(Socket connection = client) {
+          connection.setSoTimeout(REQUEST_TIMEOUT_MS);
+          handle(connection);
+        } catch(SocketTimeoutException ste) {
+          System.err.println("Translation server: request not received " +
+              "within " + REQUEST_TIMEOUT_MS + " ms");
+        } catch(IOException ioe) {
+          if(_running) {
+            System.err.println("Translation server: " + ioe.getMessage());
+          }
+        } finally {
+          idleWorkers.release();
+        }
+      });
+    }
+  }
+
+  /**
+   * Stop the server and remove its server file.
+   */
+  public void stop() {
+    if(!_running) {
+      return;
+    }
+    _running = false;
+    if(_workers != null) {
+      _workers.shutdown();
+    }
+    try {
+      Files.deleteIfExists(_serverFile);
+      if(_socket != null) {
+        _socket.close();
+      }
+    } catch(IOException ignored) {
+      // Server is going down anyway
+    }
+  }
+
+  /**
+   * Read a job from the client, run it and send back its output and status.
+   *
+   * @param client Socket connected to the client.
+   * @throws IOException If the communication with the client fails.
+   */
+  private void handle(Socket client) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+        client.getInputStream(), StandardCharsets.UTF_8));
+
+    String token = in.readLine();
+    if(token == null || !token.equals(_token)) {
+      // Empty request are used by the driver to probe the server.
+      return;
+    }
+    String workingDir = in.readLine();
+    List<String> args = new ArrayList<>();
+    String line;
+    while((line = in.readLine()) != null && !line.isEmpty()) {
+      args.add(line);
+    }
+
+    // Output and diagnostics are interleaved on the connection as they would
+    // be on a terminal.
+    PrintStream out = new PrintStream(new BufferedOutputStream(
+        client.getOutputStream()), false, StandardCharsets.UTF_8.name());
+    int status;
+    try {
+      status = _runner.run(workingDir, args.toArray(new String[0]), out, out);
+    } catch(Exception ex) {
+      out.println("Translation server: " + ex.getMessage());
+      status = JOB_ERROR_STATUS;
+    }
+    out.println(STATUS_PREFIX + status);
+    out.flush();
+  }
+
+  /**
+   * Write the server file atomically. The file is only readable by its owner
+   * as the token grants the right to run jobs.
+   *
+   * @param port Port the server is listening on.
+   * @throws IOException If the file cannot be written.
+   */
+  private void writeServerFile(int port) throws IOException {
+    String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+    Path dir = _serverFile.getParent();
+    if(dir != null) {
+      Files.createDirectories(dir);
+    }
+    Path tmp = Files.createTempFile(dir, ".cx2t", ".tmp");
+    try {
+      Files.setPosixFilePermissions(tmp,
+          PosixFilePermissions.fromString("rw-------"));
+    } catch(UnsupportedOperationException ignored) {
+      // Non POSIX file system. Keep default permissions.
+    }
+    Files.write(tmp, String.format("%d %s %s%n", port, _token, pid)
+        .getBytes(StandardCharsets.UTF_8));
+    Files.move(tmp, _serverFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Generate a random access token.
+   *
+   * @return Hexadecimal representation of the token.
+   */
+  private static String generateToken() {
+    byte[] bytes = new byte[TOKEN_BYTES];
+    new SecureRandom().nextBytes(bytes);
+    StringBuilder str = new StringBuilder();
+    for(byte b : bytes) {
+      str.append(String.format("%02x", b));
+    }
+    return str.toString();
+  }
+
+  /**
+   * Get the access token of this server.
+   *
+   * @return Access token.
+   */
+  public String getToken() {
+    return _token;
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.translator;
+
+import claw.tatsu.analysis.topology.DirectedGraph;
+import claw.tatsu.analysis.topology.TopologicalSort;
+import claw.tatsu.common.Context;
+import claw.tatsu.xcodeml.module.UnitDependencies;
+import claw.wani.x2t.configuration.Configuration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * BatchTranslator drives the translation of several XcodeML/F units in a
+ * single invocation. Units are translated in parallel on a pool of workers.
+ * A unit using a module starts only once the unit defining this module is
+ * done so the module files it writes are available.
+ *
+ * Each worker runs with the configuration of the calling thread and a
+ * private context forked from the calling thread context.
+ *
+ * @author clementval
+ */
+public class BatchTranslator {
+
+  private final List<BatchUnit> _units;
+  private final int _nbWorkers;
+
+  /**
+   * Translation of a single unit.
+   */
+  public interface UnitTranslator {
+
+    /**
+     * Translate a single unit.
+     *
+     * @param unit Unit to be translated.
+     * @throws Exception If the translation failed.
+     */
+    void translate(BatchUnit unit) throws Exception;
+  }
+
+  /**
+   * Input and output of a single unit of a batch.
+   */
+  public static class BatchUnit {
+
+    private final String _input;
+    private final String _output;
+
+    /**
+     * Constructs a new batch unit.
+     *
+     * @param input  XcodeML/F input file.
+     * @param output Decompiled output file.
+     */
+    public BatchUnit(String input, String output) {
+      _input = input;
+      _output = output;
+    }
+
+    /**
+     * Get the XcodeML/F input file.
+     *
+     * @return Input file path.
+     */
+    public String getInput() {
+      return _input;
+    }
+
+    /**
+     * Get the decompiled output file.
+     *
+     * @return Output file path.
+     */
+    public String getOutput() {
+      return _output;
+    }
+  }
+
+  /**
+   * Constructs a new batch translator.
+   *
+   * @param units     Units to be translated.
+   * @param nbWorkers Number of parallel workers. If smaller than 1, the number
+   *                  of available processors is used.
+   */
+  public BatchTranslator(List<BatchUnit> units, int nbWorkers) {
+    _units = units;
+    _nbWorkers = nbWorkers > 0 ? nbWorkers
+        : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Read a batch manifest. Each line of the manifest holds an input file and
+   * an output file separated by white spaces. Empty lines and lines starting
+   * with # are ignored.
+   *
+   * @param manifest Path to the manifest file.
+   * @return List of units described in the manifest.
+   * @throws IOException If the manifest cannot be read or is malformed.
+   */
+  public static List<BatchUnit> readManifest(String manifest)
+      throws IOException
+  {
+    List<BatchUnit> units = new ArrayList<>();
+    int lineNumber = 0;
+    for(String line : Files.readAllLines(Paths.get(manifest),
+        StandardCharsets.UTF_8))
+    {
+      ++lineNumber;
+      line = line.trim();
+      if(line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] files = line.split("\\s+");
+      if(files.length != 2) {
+        throw new IOException(String.format(
+            "%s:%d: expected <input> <output>", manifest, lineNumber));
+      }
+      units.add(new BatchUnit(files[0], files[1]));
+    }
+    return units;
+  }
+
+  /**
+   * Compute the dependency graph between the units. An edge goes from the
+   * unit defining a module to each unit using it.
+   *
+   * @return Dependency graph of the units.
+   * @throws IOException If one of the input cannot be scanned.
+   */
+  DirectedGraph<BatchUnit> computeDependencies() throws IOException {
+    DirectedGraph<BatchUnit> graph = new DirectedGraph<>();
+    Map<String, BatchUnit> definitions = new HashMap<>();
+    Map<BatchUnit, UnitDependencies> dependencies = new HashMap<>();
+
+    for(BatchUnit unit : _units) {
+      graph.addNode(unit);
+      UnitDependencies unitDependencies =
+          UnitDependencies.scan(unit.getInput());
+      dependencies.put(unit, unitDependencies);
+      for(String module : unitDependencies.getDefinedModules()) {
+        definitions.putIfAbsent(module, unit);
+      }
+    }
+
+    for(BatchUnit unit : _units) {
+      for(String module : dependencies.get(unit).getUsedModules()) {
+        BatchUnit definition = definitions.get(module);
+        if(definition != null && definition != unit) {
+          graph.addEdge(definition, unit);
+        }
+      }
+    }
+    return graph;
+  }
+
+  /**
+   * Translate all the units.
+   *
+   * @param translator Translation applied to each unit.
+   * @return Number of units that failed.
+   * @throws Exception If the units cannot be ordered.
+   */
+  public int run(UnitTranslator translator) throws Exception {
+    DirectedGraph<BatchUnit> graph = computeDependencies();
+    DirectedGraph<BatchUnit> predecessors =
+        TopologicalSort.reverseGraph(graph);
+    List<BatchUnit> order;
+    try {
+      order = TopologicalSort.sort(graph);
+    } catch(IllegalArgumentException ex) {
+      throw new Exception("Circular module dependencies between batch units");
+    }
+
+    Configuration configuration = Configuration.get();
+    Context context = Context.get();
+    ExecutorService pool = Executors.newFixedThreadPool(_nbWorkers);
+    Map<BatchUnit, CompletableFuture<Boolean>> jobs = new HashMap<>();
+    try {
+      // Units are submitted in dependency order so predecessor jobs exist.
+      for(BatchUnit unit : order) {
+        List<CompletableFuture<Boolean>> deps = new ArrayList<>();
+        for(BatchUnit dependency : predecessors.edgesFrom(unit)) {
+          deps.add(jobs.get(dependency));
+        }
+        CompletableFuture<Boolean> job = CompletableFuture
+            .allOf(deps.toArray(new CompletableFuture<?>[0]))
+            .thenApplyAsync(ignored -> translateUnit(unit, translator,
+                configuration, context), pool);
+        jobs.put(unit, job);
+      }
+
+      int failures = 0;
+      for(BatchUnit unit : _units) {
+        if(!jobs.get(unit).get()) {
+          ++failures;
+        }
+      }
+      return failures;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Translate a single unit on a worker thread.
+   *
+   * @param unit          Unit to be translated.
+   * @param translator    Translation applied to the unit.
+   * @param configuration Configuration bound to the worker.
+   * @param context       Context forked for the unit.
+   * @return True if the translation succeeded. False otherwise.
+   */
+  private boolean translateUnit(BatchUnit unit, UnitTranslator translator,
+                                Configuration configuration, Context context)
+  {
+    Configuration.bind(configuration);
+    Context.bind(context.fork());
+    try {
+      translator.translate(unit);
+      return true;
+    } catch(TranslationAbortedException abort) {
+      return false;
+    } catch(Exception ex) {
+      Context.get().getErr().println(unit.getInput() + ": " + ex.getMessage());
+      return false;
+    } finally {
+      Context.bind(null);
+      Configuration.bind(null);
+    }
+  }
+}
@@ -21,6 +21,7 @@ import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
 import claw.wani.language.ClawPragma;
 import claw.wani.language.ClawClause;
+import claw.wani.transformation.internal.AsyncParallelRegions;
 import claw.wani.transformation.internal.OpenAccContinuation;
 import claw.wani.transformation.ll.caching.Kcaching;
 import claw.wani.transformation.ll.directive.DirectivePrimitive;
@@ -33,6 +34,7 @@ import claw.wani.x2t.configuration.GroupConfiguration;
 import org.w3c.dom.Element;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * ClawTranslator stores all transformation groups applied during the
@@ -66,15 +68,27 @@ public class ClawTranslator implements Translator {
             new DependentTransformationGroup(g.getName()));
       } else {
         _tGroups.put(g.getTransformationClass(),
-            new IndependentTransformationGroup(g.getName()));
+            new IndependentTransformationGroup(g.getName(),
+                Configuration.get().getTransformationWorkers()));
+      }
+      if(g.getTransformationClass() == ScaForward.class) {
+        // Data regions are placed once all forwarded calls are adapted
+        _tGroups.put(ScaDataRegion.class,
+            new IndependentTransformationGroup("internal-sca-data-region",
+                Configuration.get().getTransformationWorkers()));
       }
     }
 
     // Internal transformations not specified by default configuration or user
+    _tGroups.put(AsyncParallelRegions.class,
+        new IndependentTransformationGroup("internal-async-parallel-regions",
+            Configuration.get().getTransformationWorkers()));
     _tGroups.put(OpenAccContinuation.class,
-        new IndependentTransformationGroup("internal-open-acc-continuation"));
+        new IndependentTransformationGroup("internal-open-acc-continuation",
+            Configuration.get().getTransformationWorkers()));
 
-    _crossTransformationTable = new HashMap<>();
+    // Accessed by transformations applied in parallel
+    _crossTransformationTable = Collections.synchronizedMap(new HashMap<>());
 
     _blockDirectives = new Hashtable<>();
   }
@@ -188,6 +202,54 @@ public class ClawTranslator implements Translator {
     }
 
     reorderTransformations();
+    addDataRegionTransformation(xcodeml);
+    addAsyncTransformation(xcodeml);
+  }
+
+  /**
+   * Add the transformation launching the parallel regions asynchronously when
+   * asynchronous queues are configured.
+   *
+   * @param xcodeml Current translation unit.
+   * @throws IllegalTransformationException If the transformation cannot be
+   *                                        added.
+   */
+  private void addAsyncTransformation(XcodeProgram xcodeml)
+      throws IllegalTransformationException
+  {
+    if(Configuration.get().accelerator() != null
+        && Configuration.get().accelerator().getAsyncQueues() > 0)
+    {
+      addTransformation(xcodeml, new AsyncParallelRegions(
+          Configuration.get().accelerator().getAsyncQueues()));
+    }
+  }
+
+  /**
+   * Add the transformation placing the data regions of the forwarded calls
+   * when they are hoisted.
+   *
+   * @param xcodeml Current translation unit.
+   * @throws IllegalTransformationException If the transformation cannot be
+   *                                        added.
+   */
+  private void addDataRegionTransformation(XcodeProgram xcodeml)
+      throws IllegalTransformationException
+  {
+    if(!getGroups().containsKey(ScaForward.class)) {
+      return;
+    }
+    List<ScaForward> forwards = new ArrayList<>();
+    for(Transformation t :
+        getGroups().get(ScaForward.class).getTransformations())
+    {
+      if(((ScaForward) t).isDataRegionHoisted()) {
+        forwards.add((ScaForward) t);
+      }
+    }
+    if(!forwards.isEmpty()) {
+      addTransformation(xcodeml, new ScaDataRegion(forwards));
+    }
   }
 
   /**
@@ -321,6 +383,19 @@ public class ClawTranslator implements Translator {
     }
   }
 
+  @Override
+  public <T> Callable<T> onWorker(Callable<T> task) {
+    Configuration configuration = Configuration.get();
+    return Translator.super.onWorker(() -> {
+      Configuration.bind(configuration);
+      try {
+        return task.call();
+      } finally {
+        Configuration.bind(null);
+      }
+    });
+  }
+
   @Override
   public boolean isHandledPragma(Xnode pragma) {
     return ClawPragma.startsWithClaw(pragma);
@@ -8,8 +8,10 @@ import claw.shenron.transformation.TransformationGroup;
 import claw.tatsu.common.CompilerDirective;
 import claw.tatsu.common.Context;
 import claw.tatsu.common.Message;
+import claw.tatsu.common.Metrics;
 import claw.tatsu.common.Target;
 import claw.tatsu.primitive.Pragma;
+import claw.tatsu.primitive.Xmod;
 import claw.tatsu.xcodeml.exception.IllegalDirectiveException;
 import claw.tatsu.xcodeml.exception.IllegalTransformationException;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
@@ -80,14 +82,21 @@ public class ClawTranslatorDriver {
    * transformation with the help of the translator.
    */
   public void analyze() {
+    Metrics metrics = Context.get().getMetrics();
+    Metrics.Probe probe = metrics.start();
     _translationUnit = (_xcodemlInputFile == null) ?
         XcodeProgram.createFromStdInput() :
         XcodeProgram.createFromFile(_xcodemlInputFile);
+    metrics.stop(Metrics.Kind.PHASE, "read", probe);
+    probe = metrics.start();
 
     if(_translationUnit.hasErrors()) {
       abort();
     }
 
+    // Module files are read in the background while directives are analyzed
+    Xmod.prefetch(_translationUnit);
+
     if(Configuration.get().getCurrentDirective() == CompilerDirective.OPENMP
         && Configuration.get().getCurrentTarget() == Target.CPU)
     {
@@ -146,6 +155,7 @@ public class ClawTranslatorDriver {
 
     // Analysis done, the transformation can be performed.
     _canTransform = true;
+    metrics.stop(Metrics.Kind.PHASE, "analyze", probe);
   }
 
   /**
@@ -180,12 +190,14 @@ public class ClawTranslatorDriver {
    * Apply all the transformation in the pipeline.
    */
   public void transform() {
+    Metrics metrics = Context.get().getMetrics();
     try {
       if(!_canTransform) {
-        _translationUnit.write(_xcodemlOutputFile, ClawConstant.INDENT_OUTPUT);
+        dumpTranslationUnit();
         return;
       }
 
+      Metrics.Probe transformProbe = metrics.start();
       for(Map.Entry<Class, TransformationGroup> entry :
           _translator.getGroups().entrySet()) {
         Message.debug("Apply transformation: " +
@@ -194,7 +206,10 @@ public class ClawTranslatorDriver {
         );
 
         try {
+          Metrics.Probe probe = metrics.start();
           entry.getValue().applyTransformations(_translationUnit, _translator);
+          metrics.stop(Metrics.Kind.GROUP,
+              entry.getValue().transformationName(), probe);
           Message.warnings(_translationUnit);
         } catch(IllegalTransformationException itex) {
           _translationUnit.addError(itex.getMessage(), itex.getStartLine());
@@ -209,22 +224,42 @@ public class ClawTranslatorDriver {
           abort();
         }
       }
+      metrics.stop(Metrics.Kind.PHASE, "transform", transformProbe);
 
-      if(_xcodemlOutputFile != null) {
-        // Write transformed IR to file
-        _translationUnit.write(_xcodemlOutputFile, ClawConstant.INDENT_OUTPUT);
-      }
+      dumpTranslationUnit();
+    } catch(TranslationAbortedException abort) {
+      throw abort;
     } catch(Exception ex) {
-      System.err.println("Transformation exception: " + ex.getMessage());
+      Context.get().getErr().println("Transformation exception: " + ex.getMessage());
     }
   }
 
   /**
-   * Print all the errors stored in the XcodeML object and abort the program.
+   * Write the translation unit to the XcodeML output file if one was given.
+   * The decompiler works on the in-memory document so the file is only an
+   * intermediate dump used for debugging. Nothing is written otherwise, in
+   * particular not on the standard output used by the decompiled code.
+   *
+   * @throws IllegalTransformationException If the file cannot be written.
+   */
+  private void dumpTranslationUnit() throws IllegalTransformationException {
+    if(_xcodemlOutputFile != null) {
+      Metrics metrics = Context.get().getMetrics();
+      Metrics.Probe probe = metrics.start();
+      _translationUnit.write(_xcodemlOutputFile, ClawConstant.INDENT_OUTPUT);
+      metrics.stop(Metrics.Kind.PHASE, "write", probe);
+    }
+  }
+
+  /**
+   * Print all the errors stored in the XcodeML object and abort the
+   * translation.
+   *
+   * @throws TranslationAbortedException Always thrown to stop the translation.
    */
   private void abort() {
     Message.errors(_translationUnit);
-    System.exit(1);
+    throw new TranslationAbortedException();
   }
 
   /**
@@ -235,7 +270,10 @@ public class ClawTranslatorDriver {
   public void flush()
       throws IllegalTransformationException
   {
-    Context.get().getModuleCache().write(ClawConstant.INDENT_OUTPUT);
+    Metrics metrics = Context.get().getMetrics();
+    Metrics.Probe probe = metrics.start();
+    Context.get().getModuleCache().write(ClawConstant.INDENT_NONE);
+    metrics.stop(Metrics.Kind.PHASE, "flush", probe);
   }
 
   /**
@@ -0,0 +1,31 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.translator;
+
+/**
+ * Exception thrown when the translation of a unit has to be aborted. Errors
+ * are already reported when the exception is raised so the caller only has to
+ * stop the current translation and report a failure status.
+ *
+ * @author clementval
+ */
+public class TranslationAbortedException extends RuntimeException {
+
+  /**
+   * Constructs a new exception without message.
+   */
+  public TranslationAbortedException() {
+    super();
+  }
+
+  /**
+   * Constructs a new exception with a specific detail message.
+   *
+   * @param message Specific exception message.
+   */
+  public TranslationAbortedException(String message) {
+    super(message);
+  }
+}
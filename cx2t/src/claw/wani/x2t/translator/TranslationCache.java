@@ -0,0 +1,492 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.translator;
+
+import claw.ClawVersion;
+import claw.shenron.transformation.Transformation;
+import claw.tatsu.common.Context;
+import claw.tatsu.xcodeml.module.ModuleCache;
+import claw.wani.x2t.configuration.Configuration;
+import claw.wani.x2t.configuration.GroupConfiguration;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Cache of translated units. A translation is identified by a key hashing
+ * its XcodeML/F input, the effective configuration, the translator options
+ * and the translator code. The module files read by the translation are
+ * recorded with the hash of their content in the cache entry and checked
+ * again before the entry is reused.
+ *
+ * Output contents are stored once under their hash. Entries are evicted in
+ * least recently used order when the cache grows over its size limit.
+ *
+ * @author clementval
+ */
+public class TranslationCache {
+
+  private static final String HEADER = "# CLAW translation cache 1";
+  private static final String ENTRIES = "entries";
+  private static final String OBJECTS = "objects";
+  private static final String MODULE = "module";
+  private static final String OUTPUT = "output";
+  private static final String FORTRAN = "fortran";
+  private static final String XCODEML = "xcodeml";
+  // Unreferenced contents younger than this might belong to an entry being
+  // stored by a concurrent translation.
+  private static final long GRACE_PERIOD_MS = 60000;
+
+  private final Path _directory;
+  private final long _maxBytes;
+  private final String _options;
+
+  /**
+   * Constructs a new translation cache.
+   *
+   * @param directory Directory in which the cache is kept. Created if needed.
+   * @param maxBytes  Size limit of the cache in bytes.
+   * @param options   Translator options having an influence on the output
+   *                  and not part of the configuration.
+   */
+  public TranslationCache(String directory, long maxBytes, String options) {
+    _directory = Paths.get(directory).toAbsolutePath();
+    _maxBytes = maxBytes;
+    _options = options;
+  }
+
+  /**
+   * Get the directory in which the cache is kept.
+   *
+   * @return Absolute path of the cache directory.
+   */
+  public Path getDirectory() {
+    return _directory;
+  }
+
+  /**
+   * Compute the key of the translation of an input file with the
+   * configuration bound to the current thread and the module search paths of
+   * the current context.
+   *
+   * @param input XcodeML/F input file.
+   * @return Hexadecimal key of the translation.
+   * @throws IOException If the input file or the configuration cannot be
+   *                     read.
+   */
+  public String computeKey(String input) throws IOException {
+    MessageDigest digest = newDigest();
+    update(digest, HEADER);
+    update(digest, ClawVersion.VERSION);
+    for(String stamp : getCodeStamps()) {
+      update(digest, stamp);
+    }
+    update(digest, _options);
+    update(digest, Configuration.get().getFingerprint());
+    for(String path : Context.get().getModuleCache().getSearchPaths()) {
+      update(digest, Paths.get(path).toAbsolutePath().toString());
+    }
+    digest.update(Files.readAllBytes(Paths.get(input)));
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Get the location, size and modification time of the code translating
+   * the units. A rebuilt translator or transformation invalidates the cache.
+   *
+   * @return Sorted stamps of the code sources.
+   */
+  private static TreeSet<String> getCodeStamps() {
+    List<Class<?>> classes = new ArrayList<>();
+    classes.add(TranslationCache.class);
+    classes.add(Transformation.class);
+    classes.add(Context.class);
+    for(GroupConfiguration group : Configuration.get().getGroups()) {
+      if(group.getTransformationClass() != null) {
+        classes.add(group.getTransformationClass());
+      }
+    }
+    TreeSet<String> stamps = new TreeSet<>();
+    for(Class<?> clazz : classes) {
+      CodeSource source = clazz.getProtectionDomain().getCodeSource();
+      if(source == null || source.getLocation() == null) {
+        continue;
+      }
+      try {
+        Path path = Paths.get(source.getLocation().toURI());
+        stamps.add(path + "\t" + Files.size(path) + "\t"
+            + Files.getLastModifiedTime(path).toMillis());
+      } catch(IOException | URISyntaxException
+          | IllegalArgumentException ignored)
+      {
+        stamps.add(source.getLocation().toString());
+      }
+    }
+    return stamps;
+  }
+
+  /**
+   * Restore the outputs of a cached translation. The module files looked up
+   * by the cached translation must resolve to the same files with the same
+   * content in the current context.
+   *
+   * @param key              Key of the translation.
+   * @param targetLangOutput Decompiled output file. If null, written on the
+   *                         standard output.
+   * @param xcmlOutput       XcodeML/F output file. Can be null.
+   * @return True if the outputs were restored. False if the translation has
+   * to be done.
+   */
+  public boolean restore(String key, String targetLangOutput,
+                         String xcmlOutput)
+  {
+    Path entry = getEntry(key);
+    if(!Files.isRegularFile(entry)) {
+      return false;
+    }
+    try {
+      List<String> lines = Files.readAllLines(entry, StandardCharsets.UTF_8);
+      if(lines.isEmpty() || !HEADER.equals(lines.get(0))) {
+        return false;
+      }
+      ModuleCache modules = Context.get().getModuleCache();
+      byte[] fortran = null;
+      byte[] xcodeml = null;
+      Map<Path, byte[]> moduleFiles = new HashMap<>();
+      for(String line : lines.subList(1, lines.size())) {
+        String[] fields = line.split("\t", -1);
+        if(fields.length != 4) {
+          return false;
+        }
+        if(MODULE.equals(fields[0])) {
+          String dir = modules.locate(fields[1]);
+          String found = dir == null ? "" : Paths.get(dir, fields[1])
+              .toAbsolutePath().toString();
+          if(!found.equals(fields[2]) || (dir != null && !fields[3]
+              .equals(hash(Files.readAllBytes(Paths.get(found))))))
+          {
+            return false;
+          }
+        } else if(FORTRAN.equals(fields[1])) {
+          fortran = readObject(fields[3]);
+        } else if(XCODEML.equals(fields[1])) {
+          xcodeml = readObject(fields[3]);
+        } else if(MODULE.equals(fields[1])) {
+          moduleFiles.put(Paths.get(fields[2]), readObject(fields[3]));
+        }
+      }
+      if(fortran == null || (xcmlOutput != null && xcodeml == null)) {
+        return false;
+      }
+
+      for(Map.Entry<Path, byte[]> moduleFile : moduleFiles.entrySet()) {
+        writeAtomically(moduleFile.getKey(), moduleFile.getValue());
+      }
+      if(xcmlOutput != null) {
+        writeAtomically(Paths.get(xcmlOutput), xcodeml);
+      }
+      if(targetLangOutput == null) {
+        Context.get().getOut().write(fortran);
+        Context.get().getOut().flush();
+      } else {
+        writeAtomically(Paths.get(targetLangOutput), fortran);
+      }
+      Files.setLastModifiedTime(entry,
+          FileTime.fromMillis(System.currentTimeMillis()));
+      return true;
+    } catch(IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Store the outputs of a successful translation.
+   *
+   * @param key              Key of the translation.
+   * @param lookups          Module files looked up by the translation as
+   *                         given by {@link ModuleCache#getLookups()}.
+   * @param targetLangOutput Decompiled output file.
+   * @param xcmlOutput       XcodeML/F output file. Can be null.
+   * @param moduleFiles      Module files written by the translation.
+   * @throws IOException If the cache cannot be written.
+   */
+  public void store(String key, Map<String, String> lookups,
+                    String targetLangOutput, String xcmlOutput,
+                    List<Path> moduleFiles)
+      throws IOException
+  {
+    List<String> lines = new ArrayList<>();
+    lines.add(HEADER);
+    for(Map.Entry<String, String> lookup : lookups.entrySet()) {
+      String found = lookup.getValue();
+      if(!found.isEmpty() && found.indexOf('\t') < 0) {
+        // Content of the module file could not be read
+        return;
+      }
+      lines.add(MODULE + "\t" + lookup.getKey() + "\t"
+          + (found.isEmpty() ? "\t" : found));
+    }
+    lines.add(OUTPUT + "\t" + FORTRAN + "\t" + targetLangOutput + "\t"
+        + writeObject(Paths.get(targetLangOutput)));
+    if(xcmlOutput != null) {
+      lines.add(OUTPUT + "\t" + XCODEML + "\t" + xcmlOutput + "\t"
+          + writeObject(Paths.get(xcmlOutput)));
+    }
+    for(Path moduleFile : moduleFiles) {
+      lines.add(OUTPUT + "\t" + MODULE + "\t" + moduleFile + "\t"
+          + writeObject(moduleFile));
+    }
+
+    Path entry = getEntry(key);
+    Files.createDirectories(entry.getParent());
+    Path tmp = Files.createTempFile(entry.getParent(), ".entry", ".tmp");
+    try {
+      try(BufferedWriter out =
+              Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+      {
+        for(String line : lines) {
+          out.write(line);
+          out.newLine();
+        }
+      }
+      Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Evict the least recently used entries until the cache fits in its size
+   * limit. Contents not referenced by any entry anymore are deleted.
+   *
+   * @throws IOException If the cache directory cannot be listed.
+   */
+  public void trim() throws IOException {
+    List<Path> entries = list(_directory.resolve(ENTRIES));
+    Map<Path, Long> times = new HashMap<>();
+    Map<Path, List<String>> references = new HashMap<>();
+    Map<String, Integer> counts = new HashMap<>();
+    long total = 0;
+    for(Path entry : entries) {
+      times.put(entry, Files.getLastModifiedTime(entry).toMillis());
+      total += Files.size(entry);
+      List<String> hashes = new ArrayList<>();
+      for(String line : Files.readAllLines(entry, StandardCharsets.UTF_8)) {
+        String[] fields = line.split("\t", -1);
+        if(fields.length == 4 && OUTPUT.equals(fields[0])) {
+          hashes.add(fields[3]);
+          counts.merge(fields[3], 1, Integer::sum);
+        }
+      }
+      references.put(entry, hashes);
+    }
+    Map<String, Path> objects = new HashMap<>();
+    Map<String, Long> sizes = new HashMap<>();
+    for(Path prefix : list(_directory.resolve(OBJECTS))) {
+      for(Path object : list(prefix)) {
+        String hash = object.getFileName().toString();
+        objects.put(hash, object);
+        sizes.put(hash, Files.size(object));
+        total += Files.size(object);
+      }
+    }
+
+    entries.sort(Comparator.comparing(times::get));
+    for(Path entry : entries) {
+      if(total <= _maxBytes) {
+        break;
+      }
+      total -= Files.size(entry);
+      Files.deleteIfExists(entry);
+      for(String hash : references.get(entry)) {
+        if(counts.merge(hash, -1, Integer::sum) == 0) {
+          total -= sizes.getOrDefault(hash, 0L);
+        }
+      }
+    }
+
+    long limit = System.currentTimeMillis() - GRACE_PERIOD_MS;
+    for(Map.Entry<String, Path> object : objects.entrySet()) {
+      if(counts.getOrDefault(object.getKey(), 0) <= 0
+          && Files.getLastModifiedTime(object.getValue()).toMillis() < limit)
+      {
+        Files.deleteIfExists(object.getValue());
+      }
+    }
+  }
+
+  /**
+   * List the files of a directory.
+   *
+   * @param directory Directory to list.
+   * @return Files of the directory. Empty if the directory does not exist.
+   * @throws IOException If the directory cannot be listed.
+   */
+  private static List<Path> list(Path directory) throws IOException {
+    List<Path> files = new ArrayList<>();
+    if(!Files.isDirectory(directory)) {
+      return files;
+    }
+    try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for(Path file : stream) {
+        if(!file.getFileName().toString().startsWith(".")) {
+          files.add(file);
+        }
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Get the entry file of a translation.
+   *
+   * @param key Key of the translation.
+   * @return Path of the entry file.
+   */
+  private Path getEntry(String key) {
+    return _directory.resolve(ENTRIES).resolve(key);
+  }
+
+  /**
+   * Get the file holding a content.
+   *
+   * @param hash Hash of the content.
+   * @return Path of the content file.
+   */
+  private Path getObject(String hash) {
+    return _directory.resolve(OBJECTS).resolve(hash.substring(0, 2))
+        .resolve(hash);
+  }
+
+  /**
+   * Read a stored content.
+   *
+   * @param hash Hash of the content.
+   * @return Stored content.
+   * @throws IOException If the content is missing or was altered.
+   */
+  private byte[] readObject(String hash) throws IOException {
+    if(hash.length() < 2) {
+      throw new IOException("Invalid content hash");
+    }
+    byte[] content = Files.readAllBytes(getObject(hash));
+    if(!hash.equals(hash(content))) {
+      throw new IOException("Corrupted content: " + hash);
+    }
+    return content;
+  }
+
+  /**
+   * Store the content of a file.
+   *
+   * @param file File to store.
+   * @return Hash of the content.
+   * @throws IOException If the file cannot be read or stored.
+   */
+  private String writeObject(Path file) throws IOException {
+    byte[] content = Files.readAllBytes(file);
+    String hash = hash(content);
+    Path object = getObject(hash);
+    if(Files.isRegularFile(object)) {
+      // Same content stored by another entry. Keep it from being collected.
+      Files.setLastModifiedTime(object,
+          FileTime.fromMillis(System.currentTimeMillis()));
+    } else {
+      Files.createDirectories(object.getParent());
+      writeAtomically(object, content);
+    }
+    return hash;
+  }
+
+  /**
+   * Write a file through a temporary file moved in place so concurrent
+   * readers never see a partial file.
+   *
+   * @param file    File to write.
+   * @param content Content of the file.
+   * @throws IOException If the file cannot be written.
+   */
+  private static void writeAtomically(Path file, byte[] content)
+      throws IOException
+  {
+    Path directory = file.toAbsolutePath().getParent();
+    Path tmp = Files.createTempFile(directory, ".claw", ".tmp");
+    try {
+      Files.write(tmp, content);
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Hash a content.
+   *
+   * @param content Content to hash.
+   * @return Hexadecimal SHA-256 hash.
+   */
+  private static String hash(byte[] content) {
+    return toHex(newDigest().digest(content));
+  }
+
+  /**
+   * Add a string to a digest. Strings are separated so their boundaries are
+   * part of the hash.
+   *
+   * @param digest Digest to update.
+   * @param value  String to add.
+   */
+  private static void update(MessageDigest digest, String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+  }
+
+  /**
+   * Create a SHA-256 digest.
+   *
+   * @return New digest.
+   */
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch(NoSuchAlgorithmException e) {
+      // Every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Convert bytes to a hexadecimal string.
+   *
+   * @param bytes Bytes to convert.
+   * @return Lower case hexadecimal string.
+   */
+  private static String toHex(byte[] bytes) {
+    StringBuilder str = new StringBuilder();
+    for(byte b : bytes) {
+      str.append(String.format("%02x", b));
+    }
+    return str.toString();
+  }
+}
@@ -6,13 +6,16 @@ package claw.shenron.transformation;
 
 import claw.shenron.translator.AnalyzedPragma;
 import claw.shenron.translator.Translator;
+import claw.tatsu.xcodeml.error.XanalysisError;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
+import helper.TestConstant;
 import helper.XmlHelper;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static junit.framework.TestCase.*;
@@ -46,6 +49,49 @@ public class TransformationAndGroupTest {
     assertTrue(t1.isTransformed());
   }
 
+  @Test
+  public void parallelIndependentGroupTest() throws Exception {
+    List<String> serial = applyLocalTransformations(1);
+    List<String> parallel = applyLocalTransformations(4);
+    assertEquals(6, serial.size());
+    assertEquals(serial, parallel);
+  }
+
+  /**
+   * Apply function local transformations to the two function definitions of
+   * the test program. The transformations of both functions are interleaved.
+   *
+   * @param nbWorkers Number of workers of the group.
+   * @return Messages added by the transformations in order.
+   * @throws Exception If the transformations cannot be applied.
+   */
+  private List<String> applyLocalTransformations(int nbWorkers)
+      throws Exception
+  {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_PROGRAM);
+    assertNotNull(xcodeml);
+    List<Xnode> fctDefs = xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION);
+    assertEquals(2, fctDefs.size());
+
+    TransformationGroup ig = new IndependentTransformationGroup("ig",
+        nbWorkers);
+    for(int i = 0; i < 6; ++i) {
+      Xnode pragma = xcodeml.createNode(Xcode.F_PRAGMA_STATEMENT);
+      pragma.setLine(i + 1);
+      fctDefs.get(i % 2).body().append(pragma);
+      ig.add(new T3(new AnalyzedPragma(pragma)));
+    }
+    ig.applyTransformations(xcodeml, null);
+    assertEquals(6, ig.getAppliedTransformationCount());
+
+    List<String> messages = new ArrayList<>();
+    for(XanalysisError warning : xcodeml.getWarnings()) {
+      messages.add(warning.getMessage() + ":" + warning.getLine());
+    }
+    return messages;
+  }
+
   private void groupTest(TransformationGroup tg, String name) {
     assertNotNull(tg);
     assertEquals(name, tg.transformationName());
@@ -87,6 +133,41 @@ public class TransformationAndGroupTest {
     assertEquals(t3, tg.getTransformations().get(2));
   }
 
+  @Test
+  public void dependentGroupCompatibilityKeyTest() throws Exception {
+    List<String> checks = new ArrayList<>();
+    TransformationGroup dg = new DependentTransformationGroup("dg");
+    String[] keys = {"a", "b", null, "a", "b", "a"};
+    for(int i = 0; i < keys.length; ++i) {
+      Transformation t = new T4(keys[i], checks);
+      t.setStartLine(i + 1);
+      dg.add(t);
+    }
+    dg.applyTransformations(null, null);
+
+    // Keyed transformations are only checked with the same key or no key
+    // and transformed candidates are skipped.
+    assertEquals(Arrays.asList("1-3", "1-4", "1-6", "2-5"), checks);
+    // 4 merged candidates and 6 transformed transformations
+    assertEquals(10, dg.getAppliedTransformationCount());
+  }
+
+  @Test
+  public void dependentGroupRefusalTest() throws Exception {
+    List<String> reports = new ArrayList<>();
+    TransformationGroup dg = new DependentTransformationGroup("dg");
+    for(int i = 0; i < 3; ++i) {
+      Transformation t = new T5(reports);
+      t.setStartLine(i + 1);
+      dg.add(t);
+    }
+    dg.applyTransformations(null, null);
+
+    // Each transformation reports all its refused candidates at once
+    assertEquals(Arrays.asList("1:[2, 3]", "2:[3]"), reports);
+    assertEquals(0, dg.getAppliedTransformationCount());
+  }
+
   @Test
   public void assignTransformationsToGroupTest() {
     TransformationGroup ig = new IndependentTransformationGroup("ig");
@@ -163,6 +244,97 @@ public class TransformationAndGroupTest {
     }
   }
 
+  /**
+   * Function local transformation for testing purpose in claw.shenron
+   */
+  private class T3 extends T1 {
+
+    T3(AnalyzedPragma pragma) {
+      super(pragma);
+    }
+
+    @Override
+    public boolean isFunctionLocal() {
+      return true;
+    }
+
+    @Override
+    public void transform(XcodeProgram xcodeml, Translator translator,
+                          Transformation other)
+    {
+      xcodeml.addWarning("transformed", getStartLine());
+      getDirective().getPragma().setValue("transformed");
+      transformed();
+    }
+  }
+
+  /**
+   * Transformation with a compatibility key for testing purpose in
+   * claw.shenron. Records the pairs that are checked.
+   */
+  private class T4 extends T1 {
+
+    private final String _key;
+    private final List<String> _checks;
+
+    T4(String key, List<String> checks) {
+      _key = key;
+      _checks = checks;
+    }
+
+    @Override
+    public Object getCompatibilityKey() {
+      return _key;
+    }
+
+    @Override
+    public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                        Transformation other)
+    {
+      _checks.add(getStartLine() + "-" + other.getStartLine());
+      return true;
+    }
+
+    @Override
+    public void transform(XcodeProgram xcodeml, Translator translator,
+                          Transformation other)
+    {
+      other.transformed();
+      transformed();
+    }
+  }
+
+  /**
+   * Transformation refusing every candidate for testing purpose in
+   * claw.shenron. Records the reported refusals.
+   */
+  private class T5 extends T1 {
+
+    private final List<String> _reports;
+
+    T5(List<String> reports) {
+      _reports = reports;
+    }
+
+    @Override
+    public boolean canBeTransformedWith(XcodeProgram xcodeml,
+                                        Transformation other)
+    {
+      return false;
+    }
+
+    @Override
+    public void reportRefusal(XcodeProgram xcodeml,
+                              List<Transformation> refused)
+    {
+      List<Integer> lines = new ArrayList<>();
+      for(Transformation other : refused) {
+        lines.add(other.getStartLine());
+      }
+      _reports.add(getStartLine() + ":" + lines);
+    }
+  }
+
   /**
    * Only for testing purpose in claw.shenron
    */
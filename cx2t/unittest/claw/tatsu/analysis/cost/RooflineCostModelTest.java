@@ -0,0 +1,90 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.analysis.cost;
+
+import claw.tatsu.directive.configuration.AcceleratorConfiguration;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test the mapping chosen by the roofline cost model.
+ *
+ * @author clementval
+ */
+public class RooflineCostModelTest {
+
+  @Test
+  public void unknownExtentTest() {
+    LoopMapping mapping = new RooflineCostModel()
+        .map(new LoopNestProfile(new int[]{0, 60}, 2, 16));
+    assertFalse(mapping.isSplit());
+    assertEquals(2, mapping.getCollapse());
+    assertFalse(mapping.hasCost());
+    assertEquals("gang vector collapse(2), cost unknown", mapping.toString());
+  }
+
+  @Test
+  public void mappingTest() {
+    CostModel model = new RooflineCostModel();
+
+    // Long vertical levels: one gang per column, levels on the vector lanes
+    LoopMapping mapping =
+        model.map(new LoopNestProfile(new int[]{2000, 128}, 2, 16));
+    assertTrue(mapping.isSplit());
+    assertEquals(1, mapping.getCollapse());
+    assertEquals("gang collapse(1), vector, cost 4", mapping.toString());
+
+    // Large horizontal extent: all levels collapsed
+    mapping = model.map(new LoopNestProfile(new int[]{60, 20000}, 2, 16));
+    assertFalse(mapping.isSplit());
+    assertEquals(2, mapping.getCollapse());
+
+    // Short innermost level: collapsing keeps contiguous accesses
+    mapping = model.map(new LoopNestProfile(new int[]{100000, 3}, 2, 16));
+    assertFalse(mapping.isSplit());
+    assertEquals(2, mapping.getCollapse());
+    assertEquals(8, mapping.getCost(), 0);
+  }
+
+  @Test
+  public void flatCostTest() {
+    RooflineCostModel model = new RooflineCostModel(100, 10);
+    LoopNestProfile profile =
+        new LoopNestProfile(new int[]{50, 4}, 10, 16);
+    // 200 iterations on 100 lanes, 10 operations + 2 to recover the indexes
+    assertEquals(24, model.getFlatCost(profile, 2), 0);
+    // 50 iterations, 4 strided steps bounded by the memory traffic
+    assertEquals(64, model.getFlatCost(profile, 1), 0);
+    // 50 gangs on 10 in flight, 1 vector step
+    assertEquals(50, model.getSplitCost(profile), 0);
+  }
+
+  @Test
+  public void configurationTest() {
+    assertNull(new AcceleratorConfiguration(Collections.emptyMap())
+        .getCostModel());
+    assertNull(new AcceleratorConfiguration(Collections.singletonMap(
+        "accelerator_cost_model", "none")).getCostModel());
+    assertTrue(new AcceleratorConfiguration(Collections.singletonMap(
+        "accelerator_cost_model", "roofline")).getCostModel()
+        instanceof RooflineCostModel);
+    assertTrue(new AcceleratorConfiguration(Collections.singletonMap(
+        "accelerator_cost_model", RooflineCostModel.class.getName()))
+        .getCostModel() instanceof RooflineCostModel);
+    try {
+      new AcceleratorConfiguration(Collections.singletonMap(
+          "accelerator_cost_model", "claw.Unknown"));
+      fail();
+    } catch(IllegalArgumentException ignored) {
+    }
+  }
+}
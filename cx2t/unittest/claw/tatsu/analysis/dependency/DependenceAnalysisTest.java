@@ -7,15 +7,21 @@ package claw.tatsu.analysis.dependency;
 import claw.tatsu.common.CompilerDirective;
 import claw.tatsu.common.Context;
 import claw.tatsu.common.Target;
+import claw.tatsu.directive.common.Directive;
+import claw.tatsu.directive.generator.OpenAcc;
+import claw.tatsu.directive.generator.OpenAccExecutionMode;
+import claw.tatsu.xcodeml.abstraction.NestedDoStatement;
 import claw.tatsu.xcodeml.xnode.common.Xcode;
 import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
 import claw.tatsu.xcodeml.xnode.common.Xnode;
 
 import helper.TestConstant;
+import helper.XmlHelper;
 import org.junit.Test;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -65,7 +71,13 @@ public class DependenceAnalysisTest {
     }
 
     // Assert the information for each do statement
-    assertTrue(dependencies.get(0).isIndependent());
+    // Temporary arrays trans and tau_loc are reused by each iteration
+    assertFalse(dependencies.get(0).isIndependent());
+    assertEquals(DependenceDirection.BACKWARD,
+        dependencies.get(0).getDirectionVector());
+    assertTrue(dependencies.get(0).getWrittenArrays().contains("trans"));
+    assertFalse(dependencies.get(0).getWrittenArrays().contains("mu"));
+    assertTrue(dependencies.get(0).getReadArrays().contains("mu"));
     assertTrue(dependencies.get(1).isIndependent());
     assertTrue(dependencies.get(2).isIndependent());
 
@@ -162,5 +174,211 @@ public class DependenceAnalysisTest {
     } catch(Exception e) {
       fail();
     }
+
+    DependenceAnalysis nest =
+        new DependenceAnalysis(new NestedDoStatement(loops.get(0)));
+    assertEquals(2, nest.getNbLevel());
+    assertEquals(Arrays.asList("i2", "i1"), nest.getInductionVariables());
+    assertTrue(nest.isIndependent(0));
+    assertTrue(nest.isIndependent(1));
+    assertEquals(2, nest.getSafeCollapseDepth());
+    assertEquals(Arrays.asList("var1", "var2"),
+        new ArrayList<>(nest.getReadArrays()));
+    assertEquals(Arrays.asList("var2"),
+        new ArrayList<>(nest.getWrittenArrays()));
+    assertNull(nest.findReversedDependence(Arrays.asList("i1", "i2")));
+  }
+
+  private static String var(String name) {
+    return "<Var>" + name + "</Var>";
+  }
+
+  private static String cst(int value) {
+    return "<FintConstant>" + value + "</FintConstant>";
+  }
+
+  private static String plus(String lhs, String rhs) {
+    return "<plusExpr>" + lhs + rhs + "</plusExpr>";
+  }
+
+  private static String mul(String lhs, String rhs) {
+    return "<mulExpr>" + lhs + rhs + "</mulExpr>";
+  }
+
+  private static String ref(String array, String... indexes) {
+    StringBuilder str = new StringBuilder("<FarrayRef><varRef>" + var(array)
+        + "</varRef>");
+    for(String index : indexes) {
+      str.append("<arrayIndex>").append(index).append("</arrayIndex>");
+    }
+    return str.append("</FarrayRef>").toString();
+  }
+
+  private static String assign(String lhs, String rhs) {
+    return "<FassignStatement>" + lhs + rhs + "</FassignStatement>";
+  }
+
+  private static String loop(String var, String upper, String body) {
+    return "<FdoStatement>" + var(var) + "<indexRange><lowerBound>" + cst(1)
+        + "</lowerBound><upperBound>" + upper + "</upperBound><step>"
+        + cst(1) + "</step></indexRange><body>" + body
+        + "</body></FdoStatement>";
+  }
+
+  private static String member(String var, String member) {
+    return "<FmemberRef member=\"" + member + "\"><varRef>" + var(var)
+        + "</varRef></FmemberRef>";
+  }
+
+  private static String ifThen(String condition, String body) {
+    return "<FifStatement><condition>" + condition + "</condition><then><body>"
+        + body + "</body></then></FifStatement>";
+  }
+
+  private static DependenceAnalysis analyze(String loop) {
+    return new DependenceAnalysis(
+        new NestedDoStatement(XmlHelper.createXnode(loop)));
+  }
+
+  @Test
+  public void distanceVectorTest() {
+    // a(i, j) = a(i - 1, j + 1)
+    DependenceAnalysis analysis = analyze(loop("i", cst(10),
+        loop("j", cst(10), assign(ref("a", var("i"), var("j")),
+            ref("a", plus(var("i"), cst(-1)), plus(var("j"), cst(1)))))));
+    assertEquals(2, analysis.getNbLevel());
+    assertEquals(1, analysis.getDependences().size());
+    Dependence dependence = analysis.getDependences().get(0);
+    assertEquals("a", dependence.getArray());
+    assertEquals(DependenceType.FLOW, dependence.getType());
+    assertTrue(dependence.isExact());
+    assertEquals(Long.valueOf(1), dependence.getDistance(0));
+    assertEquals(Long.valueOf(-1), dependence.getDistance(1));
+    assertEquals("<", dependence.getDirection(0));
+    assertEquals(">", dependence.getDirection(1));
+    assertFalse(analysis.isIndependent(0));
+    assertTrue(analysis.isIndependent(1));
+    assertEquals(0, analysis.getSafeCollapseDepth());
+    assertSame(dependence,
+        analysis.findReversedDependence(Arrays.asList("j", "i")));
+    assertNull(analysis.findReversedDependence(Arrays.asList("i", "j")));
+
+    // a(i, j) = a(i, j - 1) can be interchanged and collapsed on i
+    analysis = analyze(loop("i", cst(10), loop("j", var("n"),
+        assign(ref("a", var("i"), var("j")),
+            ref("a", var("i"), plus(var("j"), cst(-1)))))));
+    assertTrue(analysis.isIndependent(0));
+    assertFalse(analysis.isIndependent(1));
+    assertEquals(1, analysis.getSafeCollapseDepth());
+    assertNull(analysis.findReversedDependence(Arrays.asList("j", "i")));
+  }
+
+  @Test
+  public void subscriptTest() {
+    // GCD test: a(2 * i) = a(2 * i + 1)
+    DependenceAnalysis analysis = analyze(loop("i", var("n"),
+        assign(ref("a", mul(cst(2), var("i"))),
+            ref("a", plus(mul(var("i"), cst(2)), cst(1))))));
+    assertTrue(analysis.getDependences().isEmpty());
+    assertTrue(analysis.isIndependent());
+
+    // Banerjee test: a(i) = a(i + 20) with i in [1, 10]
+    analysis = analyze(loop("i", cst(10), assign(ref("a", var("i")),
+        ref("a", plus(var("i"), cst(20))))));
+    assertTrue(analysis.isIndependent());
+    analysis = analyze(loop("i", var("n"), assign(ref("a", var("i")),
+        ref("a", plus(var("i"), cst(20))))));
+    assertFalse(analysis.isIndependent());
+    assertEquals(20, analysis.getDistanceVector());
+    assertEquals(DependenceDirection.FORWARD, analysis.getDirectionVector());
+
+    // Invariant variables cancel out, assigned variables do not
+    analysis = analyze(loop("i", var("n"), assign(ref("a", var("i"),
+        var("k")), ref("a", var("i"), plus(var("k"), cst(1))))));
+    assertTrue(analysis.isIndependent());
+    analysis = analyze(loop("i", var("n"),
+        assign(var("k"), var("i")) + assign(ref("a", var("k")), cst(1))));
+    assertFalse(analysis.isIndependent());
+    assertEquals(DependenceDirection.NONE, analysis.getDirectionVector());
+    assertEquals("<", analysis.getDependences().get(0).getDirection(0));
+  }
+
+  @Test
+  public void fusionTest() {
+    Xnode first = XmlHelper.createXnode(loop("i", var("n"),
+        assign(ref("a", var("i")), ref("b", var("i")))));
+    Xnode forward = XmlHelper.createXnode(loop("i", var("n"),
+        assign(ref("c", var("i")), ref("a", plus(var("i"), cst(1))))));
+    Xnode backward = XmlHelper.createXnode(loop("i", var("n"),
+        assign(ref("c", var("i")), ref("a", plus(var("i"), cst(-1))))));
+
+    Dependence dependence = DependenceAnalysis.findFusionPreventingDependence(
+        new NestedDoStatement(first), new NestedDoStatement(forward), 1);
+    assertNotNull(dependence);
+    assertEquals("a", dependence.getArray());
+    assertEquals(DependenceType.FLOW, dependence.getType());
+    assertNull(DependenceAnalysis.findFusionPreventingDependence(
+        new NestedDoStatement(first), new NestedDoStatement(backward), 1));
+  }
+
+  @Test
+  public void scalarTest() {
+    // Recurrence on a scalar: s = s + a(i)
+    String recurrence = loop("i", var("n"),
+        assign(var("s"), plus(var("s"), ref("a", var("i")))));
+    DependenceAnalysis analysis = analyze(recurrence);
+    assertTrue(analysis.isIndependent());
+    assertEquals(Arrays.asList("s"),
+        new ArrayList<>(analysis.getSharedScalars()));
+
+    // Temporary assigned before being read by each iteration
+    analysis = analyze(loop("i", var("n"), assign(var("t"),
+        ref("a", var("i"))) + assign(ref("b", var("i")), var("t"))));
+    assertTrue(analysis.getSharedScalars().isEmpty());
+
+    // Induction variable of an inner loop is private
+    analysis = analyze(loop("i", var("n"), assign(var("t"), cst(0))
+        + "<FdoStatement>" + var("k") + "<indexRange><lowerBound>" + cst(1)
+        + "</lowerBound><upperBound>" + var("m") + "</upperBound><step>"
+        + cst(1) + "</step></indexRange><body>" + assign(var("t"),
+        plus(var("t"), ref("a", var("k"), var("i")))) + "</body>"
+        + "</FdoStatement>" + assign(ref("b", var("i")), var("t"))));
+    assertTrue(analysis.getSharedScalars().isEmpty());
+
+    // Conditional assignment keeps the value of a previous iteration
+    analysis = analyze(loop("i", var("n"), ifThen(var("c"),
+        assign(var("t"), ref("a", var("i"))))
+        + assign(ref("b", var("i")), var("t"))));
+    assertEquals(Arrays.asList("t"),
+        new ArrayList<>(analysis.getSharedScalars()));
+
+    // Recurrence on a derived type member: p%s = p%s + a(i)
+    analysis = analyze(loop("i", var("n"), assign(member("p", "s"),
+        plus(member("p", "s"), ref("a", var("i"))))));
+    assertEquals(Arrays.asList("%s"),
+        new ArrayList<>(analysis.getSharedScalars()));
+
+    // Loop directives are not declared independent
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    ((OpenAcc) Context.get().getGenerator())
+        .setExecutionMode(OpenAccExecutionMode.NONE);
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    Xnode body = xcodeml.importNode(
+        XmlHelper.createXnode("<body>" + recurrence + "</body>"));
+    Xnode doStmt = body.firstChild();
+    Directive.generateLoopDirectives(xcodeml, doStmt, doStmt,
+        Directive.NO_COLLAPSE);
+    Xnode pragma = doStmt.prevSibling();
+    assertTrue(Xnode.isOfCode(pragma, Xcode.F_PRAGMA_STATEMENT));
+    assertFalse(pragma.value().contains("independent"));
+
+    // Same loop without the recurrence is
+    body = xcodeml.importNode(XmlHelper.createXnode("<body>"
+        + loop("i", var("n"), assign(ref("b", var("i")), ref("a", var("i"))))
+        + "</body>"));
+    doStmt = body.firstChild();
+    Directive.generateLoopDirectives(xcodeml, doStmt, doStmt,
+        Directive.NO_COLLAPSE);
+    assertTrue(doStmt.prevSibling().value().contains("independent"));
   }
 }
@@ -0,0 +1,71 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the DeferredUpdates class.
+ *
+ * @author clementval
+ */
+public class DeferredUpdatesTest {
+
+  @Test
+  public void deferTest() throws Exception {
+    List<Integer> applied = new ArrayList<>();
+    assertFalse(DeferredUpdates.isDeferring());
+    DeferredUpdates.applyOrDefer(() -> applied.add(1));
+    assertEquals(Arrays.asList(1), applied);
+
+    DeferredUpdates first = new DeferredUpdates();
+    DeferredUpdates second = new DeferredUpdates();
+    second.begin();
+    assertTrue(DeferredUpdates.isDeferring());
+    DeferredUpdates.applyOrDefer(() -> applied.add(3));
+    second.end();
+    first.begin();
+    DeferredUpdates.applyOrDefer(() -> applied.add(2));
+    first.end();
+    assertFalse(DeferredUpdates.isDeferring());
+    assertEquals(Arrays.asList(1), applied);
+
+    first.apply();
+    second.apply();
+    assertEquals(Arrays.asList(1, 2, 3), applied);
+
+    // Updates are applied only once
+    first.apply();
+    assertEquals(3, applied.size());
+  }
+
+  @Test
+  public void threadTest() throws Exception {
+    List<Integer> applied = new ArrayList<>();
+    DeferredUpdates deferred = new DeferredUpdates();
+    deferred.begin();
+    try {
+      // Other threads are not affected
+      Thread thread = new Thread(() -> {
+        assertFalse(DeferredUpdates.isDeferring());
+        DeferredUpdates.applyOrDefer(() -> applied.add(1));
+      });
+      thread.start();
+      thread.join();
+      DeferredUpdates.applyOrDefer(() -> applied.add(2));
+    } finally {
+      deferred.end();
+    }
+    assertEquals(Arrays.asList(1), applied);
+    deferred.apply();
+    assertEquals(Arrays.asList(1, 2), applied);
+  }
+}
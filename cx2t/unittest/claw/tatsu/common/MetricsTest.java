@@ -0,0 +1,110 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.common;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the Metrics class.
+ *
+ * @author clementval
+ */
+public class MetricsTest {
+
+  @Test
+  public void recordTest() {
+    Metrics metrics = new Metrics();
+    assertTrue(metrics.isEnabled());
+
+    for(int i = 0; i < 3; ++i) {
+      Metrics.Probe probe = metrics.start();
+      assertNotNull(probe);
+      StringBuilder garbage = new StringBuilder();
+      for(int j = 0; j < 1000; ++j) {
+        garbage.append(j);
+      }
+      assertTrue(garbage.length() > 0);
+      metrics.stop(Metrics.Kind.PHASE, "analyze", probe);
+    }
+    metrics.stop(Metrics.Kind.DIRECTIVE, "loop-fusion", 12, metrics.start());
+    metrics.stop(Metrics.Kind.DIRECTIVE, "loop-fusion", 20, metrics.start());
+
+    List<Metrics.Entry> phases = metrics.getEntries(Metrics.Kind.PHASE);
+    assertEquals(1, phases.size());
+    assertEquals("analyze", phases.get(0).getName());
+    assertEquals(3, phases.get(0).getCount());
+    assertTrue(phases.get(0).getWallNanos() > 0);
+    assertNotEquals(0, phases.get(0).getAllocatedBytes());
+
+    List<Metrics.Entry> directives = metrics.getEntries(Metrics.Kind.DIRECTIVE);
+    assertEquals(2, directives.size());
+    assertEquals(12, directives.get(0).getLine());
+    assertEquals(20, directives.get(1).getLine());
+    assertTrue(metrics.getEntries(Metrics.Kind.GROUP).isEmpty());
+  }
+
+  @Test
+  public void disabledTest() {
+    assertFalse(Metrics.DISABLED.isEnabled());
+    assertNull(Metrics.DISABLED.start());
+    Metrics.DISABLED.stop(Metrics.Kind.PHASE, "analyze", null);
+    assertTrue(Metrics.DISABLED.getEntries(Metrics.Kind.PHASE).isEmpty());
+
+    Context context = Context.create();
+    assertSame(Metrics.DISABLED, context.getMetrics());
+    Metrics metrics = new Metrics();
+    context.setMetrics(metrics);
+    assertSame(metrics, context.getMetrics());
+    context.setMetrics(null);
+    assertSame(Metrics.DISABLED, context.getMetrics());
+  }
+
+  @Test
+  public void aggregateTest() throws Exception {
+    Metrics aggregate = new Metrics();
+    for(int i = 0; i < 2; ++i) {
+      Metrics unit = new Metrics();
+      unit.setUnit("unit" + i + ".xml");
+      unit.stop(Metrics.Kind.GROUP, "sca", unit.start());
+      unit.stop(Metrics.Kind.DIRECTIVE, "sca", 10 + i, unit.start());
+      aggregate.addUnit(unit);
+    }
+    List<Metrics.Entry> groups = aggregate.getEntries(Metrics.Kind.GROUP);
+    assertEquals(1, groups.size());
+    assertEquals(2, groups.get(0).getCount());
+    // Directives of different units are accumulated regardless of the line
+    List<Metrics.Entry> directives =
+        aggregate.getEntries(Metrics.Kind.DIRECTIVE);
+    assertEquals(1, directives.size());
+    assertEquals(2, directives.get(0).getCount());
+    assertEquals(0, directives.get(0).getLine());
+
+    StringWriter out = new StringWriter();
+    aggregate.write(out);
+    String json = out.toString();
+    assertTrue(json.startsWith("{\n  \"units\": 2,\n"));
+    assertTrue(json.contains("\"phases\": [],"));
+    assertTrue(json.contains("{\"name\": \"sca\", \"count\": 2, \"wall_ns\": "));
+    assertTrue(json.endsWith("]\n}\n"));
+  }
+
+  @Test
+  public void writeTest() throws Exception {
+    Metrics metrics = new Metrics();
+    metrics.setUnit("dir/\"file\".xml");
+    metrics.stop(Metrics.Kind.DIRECTIVE, "parallelize", 42, metrics.start());
+    StringWriter out = new StringWriter();
+    metrics.write(out);
+    String json = out.toString();
+    assertTrue(json.contains("\"unit\": \"dir/\\\"file\\\".xml\""));
+    assertTrue(json.contains("{\"name\": \"parallelize\", \"line\": 42, " +
+        "\"count\": 1, \"wall_ns\": "));
+  }
+}
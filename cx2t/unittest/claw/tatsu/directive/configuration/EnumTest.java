@@ -34,5 +34,9 @@ public class EnumTest {
         AcceleratorDataStrategy.fromString("kernel"));
     assertEquals(AcceleratorDataStrategy.KERNEL,
         AcceleratorDataStrategy.fromString("KERNEL"));
+    assertEquals(AcceleratorDataStrategy.HOIST,
+        AcceleratorDataStrategy.fromString("hoist"));
+    assertEquals(AcceleratorDataStrategy.HOIST,
+        AcceleratorDataStrategy.fromString("HOIST"));
   }
 }
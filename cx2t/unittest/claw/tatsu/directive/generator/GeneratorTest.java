@@ -5,8 +5,11 @@
 package claw.tatsu.directive.generator;
 
 import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 
 import static junit.framework.TestCase.assertEquals;
@@ -29,6 +32,9 @@ public class GeneratorTest {
     assertEquals(0, gen.getEndParallelDirective().length);
     assertEquals(0, gen.getStartLoopDirective(0, false, false, "").length);
     assertEquals(0, gen.getEndLoopDirective().length);
+    assertEquals(0, gen.getStartGangLoopDirective(2, "").length);
+    assertEquals(0, gen.getStartVectorLoopDirective(1, "").length);
+    assertEquals(0, gen.getEndVectorLoopDirective().length);
     assertEquals(0, gen.getSingleDirective("").length);
     assertEquals(0, gen.getRoutineDirective(false).length);
     assertEquals(0, gen.getRoutineDirective(true).length);
@@ -40,6 +46,10 @@ public class GeneratorTest {
     assertTrue(gen.getPrivateClause("").isEmpty());
     assertTrue(gen.getPrivateClause(Collections.emptyList()).isEmpty());
     assertTrue(gen.getSequentialClause().isEmpty());
+    assertTrue(gen.getIndependentClause().isEmpty());
+    assertTrue(gen.getAsyncClause(1, Collections.emptyList(),
+        Collections.emptyList()).isEmpty());
+    assertEquals(0, gen.getWaitDirective(Collections.emptyList()).length);
 
     assertFalse(gen.isCompileGuard(""));
     assertFalse(gen.isCompileGuard("acc loop"));
@@ -47,4 +57,55 @@ public class GeneratorTest {
     assertSame(CompilerDirective.NONE, gen.getDirectiveLanguage());
   }
 
+  @Test
+  public void asyncTest() {
+    DirectiveGenerator acc = new OpenAcc();
+    assertEquals("async(2)", acc.getAsyncClause(2,
+        Collections.singletonList("a"), Collections.singletonList("b")));
+    assertArrayEquals(new String[]{"acc wait"},
+        acc.getWaitDirective(Collections.emptyList()));
+    assertArrayEquals(new String[]{"acc wait(1,3)"},
+        acc.getWaitDirective(Arrays.asList(1, 3)));
+
+    DirectiveGenerator omp = new OpenMp();
+    Context.get().init(CompilerDirective.OPENMP, Target.GPU, null, 80);
+    assertEquals("nowait depend(in:a,b) depend(inout:c)",
+        omp.getAsyncClause(2, Arrays.asList("a", "b"),
+            Collections.singletonList("c")));
+    assertArrayEquals(new String[]{"omp taskwait"},
+        omp.getWaitDirective(Collections.emptyList()));
+    assertEquals(0, omp.getWaitDirective(Arrays.asList(1, 3)).length);
+
+    Context.get().init(CompilerDirective.OPENMP, Target.CPU, null, 80);
+    assertTrue(omp.getAsyncClause(1, Collections.emptyList(),
+        Collections.emptyList()).isEmpty());
+    assertEquals(0, omp.getWaitDirective(Collections.emptyList()).length);
+  }
+
+  @Test
+  public void gangVectorTest() {
+    DirectiveGenerator acc = new OpenAcc();
+    assertArrayEquals(new String[]{"acc loop gang collapse(2)"},
+        acc.getStartGangLoopDirective(2, ""));
+    assertArrayEquals(new String[]{"acc loop gang"},
+        acc.getStartGangLoopDirective(1, " "));
+    assertArrayEquals(new String[]{"acc loop vector private(a)"},
+        acc.getStartVectorLoopDirective(1, "private(a)"));
+    assertArrayEquals(new String[]{"acc loop vector collapse(2)"},
+        acc.getStartVectorLoopDirective(2, ""));
+    assertEquals(0, acc.getEndVectorLoopDirective().length);
+
+    DirectiveGenerator omp = new OpenMp();
+    Context.get().init(CompilerDirective.OPENMP, Target.GPU, null, 80);
+    assertArrayEquals(new String[]{"omp parallel do simd private(a)"},
+        omp.getStartVectorLoopDirective(1, "private(a)"));
+    assertArrayEquals(new String[]{"omp end parallel do simd"},
+        omp.getEndVectorLoopDirective());
+
+    Context.get().init(CompilerDirective.OPENMP, Target.CPU, null, 80);
+    assertArrayEquals(new String[]{"omp simd collapse(2)"},
+        omp.getStartVectorLoopDirective(2, ""));
+    assertArrayEquals(new String[]{"omp end simd"},
+        omp.getEndVectorLoopDirective());
+  }
 }
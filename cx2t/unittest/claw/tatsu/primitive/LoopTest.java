@@ -93,4 +93,35 @@ public class LoopTest {
     int doStmtCnt3 = f1.matchAll(Xcode.F_DO_STATEMENT).size();
     assertEquals(doStmtCnt1 + 1, doStmtCnt3);
   }
+
+  @Test
+  public void indexRangeKeyTest() {
+    XcodeML xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertNotNull(xcodeml);
+
+    DimensionDefinition d1 = new DimensionDefinition("i", "1", "10");
+    DimensionDefinition d2 = new DimensionDefinition("i", "1", "nproma");
+
+    Xnode l1 = xcodeml.createDoStmt(
+        xcodeml.createVar(FortranType.INTEGER, "i", Xscope.LOCAL),
+        d1.generateIndexRange(xcodeml, true));
+    Xnode l2 = xcodeml.createDoStmt(
+        xcodeml.createVar(FortranType.INTEGER, "i", Xscope.LOCAL),
+        d1.generateIndexRange(xcodeml, true));
+    Xnode l3 = xcodeml.createDoStmt(
+        xcodeml.createVar(FortranType.INTEGER, "i", Xscope.LOCAL),
+        d2.generateIndexRange(xcodeml, true));
+    Xnode l4 = xcodeml.createDoStmt(
+        xcodeml.createVar(FortranType.INTEGER, "j", Xscope.LOCAL),
+        d1.generateIndexRange(xcodeml, true));
+
+    assertNotNull(Loop.getIndexRangeKey(l1));
+    assertTrue(Loop.hasSameIndexRange(l1, l2));
+    assertEquals(Loop.getIndexRangeKey(l1), Loop.getIndexRangeKey(l2));
+    assertFalse(Loop.hasSameIndexRange(l1, l3));
+    assertNotEquals(Loop.getIndexRangeKey(l1), Loop.getIndexRangeKey(l3));
+    assertFalse(Loop.hasSameIndexRange(l1, l4));
+    assertNotEquals(Loop.getIndexRangeKey(l1), Loop.getIndexRangeKey(l4));
+    assertNull(Loop.getIndexRangeKey(xcodeml.createNode(Xcode.F_IF_STATEMENT)));
+  }
 }
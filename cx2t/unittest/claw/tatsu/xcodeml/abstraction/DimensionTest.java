@@ -48,6 +48,12 @@ public class DimensionTest {
     assertEquals(1, dimDef.getIterationStep().getIntValue());
 
     assertEquals("nproma", dimDef.getIdentifier());
+    assertEquals(0, dimDef.getExtent());
+    dimDef.setExtent(128);
+    assertEquals(128, dimDef.getExtent());
+    assertEquals(128, dimDef.copy().getExtent());
+    assertEquals(50, new DimensionDefinition("i", "1", "100", null, null, "2")
+        .getExtent());
     assertEquals(InsertionPosition.BEFORE, dimDef.getInsertionPosition());
     dimDef.setInsertionPosition(InsertionPosition.AFTER);
     assertEquals(InsertionPosition.AFTER, dimDef.getInsertionPosition());
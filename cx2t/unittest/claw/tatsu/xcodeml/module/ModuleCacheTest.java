@@ -0,0 +1,186 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.primitive.Xmod;
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionType;
+import claw.tatsu.xcodeml.xnode.fortran.FortranModule;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the write back of the modules of the ModuleCache class.
+ *
+ * @author clementval
+ */
+public class ModuleCacheTest {
+
+  private static final String MODULE = String.join("\n",
+      "<OmniFortranModule version=\"1.0\">",
+      "<name>mod1</name>",
+      "<typeTable>",
+      "<FfunctionType type=\"F1\" return_type=\"Fvoid\">",
+      "<params><name type=\"I3\">n</name></params>",
+      "</FfunctionType>",
+      "<FbasicType type=\"I3\" intent=\"in\" ref=\"Fint\"/>",
+      "</typeTable>",
+      "<identifiers>",
+      "<id type=\"F1\" sclass=\"ffunc\"><name>sub1</name></id>",
+      "</identifiers>",
+      "</OmniFortranModule>");
+
+  @Test
+  public void writeModifiedTest() throws Exception {
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    Path dir = Files.createTempDirectory("modcache");
+    Path xmod = dir.resolve("mod1.xmod");
+    Path target = dir.resolve("mod1" + Xmod.getSuffix()).toAbsolutePath();
+    try {
+      Files.write(xmod, MODULE.getBytes(StandardCharsets.UTF_8));
+
+      // Unmodified module is not written
+      ModuleCache cache = new ModuleCache();
+      FortranModule mod = read(dir);
+      cache.add("mod1", mod);
+      assertFalse(mod.isModified());
+      cache.write(0);
+      assertFalse(Files.exists(target));
+      assertTrue(cache.getWrittenFiles().isEmpty());
+
+      // Modified module is written
+      mod.markModified();
+      cache.write(0);
+      assertTrue(Files.exists(target));
+      assertEquals(Collections.singletonList(target), cache.getWrittenFiles());
+
+      // Same content, the existing file is left untouched
+      FileTime old = FileTime.fromMillis(0);
+      Files.setLastModifiedTime(target, old);
+      cache = new ModuleCache();
+      mod = read(dir);
+      mod.markModified();
+      cache.add("mod1", mod);
+      cache.write(0);
+      assertEquals(old, Files.getLastModifiedTime(target));
+      assertEquals(Collections.singletonList(target), cache.getWrittenFiles());
+
+      // New parameter marks the module as modified and changes the file
+      cache = new ModuleCache();
+      mod = read(dir);
+      cache.add("mod1", mod);
+      FfunctionType fctType = mod.findFunctionType("sub1");
+      assertNotNull(fctType);
+      mod.createAndAddParamIfNotExists("m", "I3", fctType);
+      assertTrue(mod.isModified());
+      cache.write(0);
+      assertNotEquals(old, Files.getLastModifiedTime(target));
+      assertTrue(new String(Files.readAllBytes(target),
+          StandardCharsets.UTF_8).contains(">m</name>"));
+    } finally {
+      File[] files = dir.toFile().listFiles();
+      if(files != null) {
+        for(File f : files) {
+          Files.delete(f.toPath());
+        }
+      }
+      Files.delete(dir);
+    }
+  }
+
+  @Test
+  public void prefetchTest() throws Exception {
+    Path dir = Files.createTempDirectory("modcache");
+    Path xmod = dir.resolve("mod1.xmod");
+    try {
+      Files.write(xmod, MODULE.getBytes(StandardCharsets.UTF_8));
+      ModuleCache cache = new ModuleCache();
+      cache.addSearchPath(dir.toString());
+      String path = dir + "/mod1.xmod";
+      assertNull(cache.getPrefetched(path));
+
+      cache.prefetch("mod2.xmod");
+      cache.prefetch("mod1.xmod");
+      assertNull(cache.getPrefetched(dir + "/mod2.xmod"));
+      ModuleFileIndex index1 = cache.getPrefetched(path);
+      ModuleFileIndex index2 = cache.getPrefetched(path);
+      assertNotNull(index1);
+      assertNotNull(index2);
+      assertEquals(2, index1.getTypeCount());
+
+      // Each lookup gets its own document
+      assertNotSame(index1.getDocument(), index2.getDocument());
+      FortranModule mod = new FortranModule(index1.getDocument(), "mod1",
+          dir.toString(), index1);
+      mod.load();
+      assertTrue(mod.isLoaded());
+      assertNotNull(mod.findFunctionType("sub1"));
+      FortranModule other = new FortranModule(index2.getDocument(), "mod1",
+          dir.toString(), index2);
+      assertFalse(other.isLoaded());
+    } finally {
+      Files.delete(xmod);
+      Files.delete(dir);
+    }
+  }
+
+  @Test
+  public void prefetchStoreTest() throws Exception {
+    Path dir = Files.createTempDirectory("modcache");
+    Path storeDir = Files.createTempDirectory("modstore");
+    Path xmod = dir.resolve("mod1.xmod");
+    try {
+      Files.write(xmod, MODULE.getBytes(StandardCharsets.UTF_8));
+      ModuleCache cache = new ModuleCache();
+      cache.addSearchPath(dir.toString());
+      cache.setStore(new ModuleStore(storeDir.toString()));
+      String path = dir + "/mod1.xmod";
+
+      // Prefetch goes through the store and fills it
+      cache.prefetch("mod1.xmod");
+      ModuleFileIndex index = cache.getPrefetched(path);
+      assertNotNull(index);
+      assertEquals(2, index.getTypeCount());
+      File[] entries = storeDir.toFile().listFiles();
+      assertNotNull(entries);
+      assertEquals(1, entries.length);
+    } finally {
+      Files.delete(xmod);
+      Files.delete(dir);
+      File[] entries = storeDir.toFile().listFiles();
+      if(entries != null) {
+        for(File f : entries) {
+          Files.delete(f.toPath());
+        }
+      }
+      Files.delete(storeDir);
+    }
+  }
+
+  /**
+   * Read the original module file of the test.
+   *
+   * @param dir Directory of the module file.
+   * @return Module read from the file.
+   */
+  private static FortranModule read(Path dir) {
+    FortranModule mod = new FortranModule(
+        XnodeUtil.readXmlFile(dir.resolve("mod1.xmod").toString()), "mod1",
+        dir.toString());
+    assertNotNull(mod);
+    return mod;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.tatsu.xcodeml.xnode.fortran.FbasicType;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionType;
+import claw.tatsu.xcodeml.xnode.fortran.FortranModule;
+import claw.tatsu.xcodeml.xnode.fortran.FortranType;
+import claw.tatsu.xcodeml.xnode.fortran.Intent;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the ModuleFileIndex class.
+ *
+ * @author clementval
+ */
+public class ModuleFileIndexTest {
+
+  // Non-ASCII characters before the types check the offsets of the types
+  private static final String MODULE = String.join("\n",
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+      "<OmniFortranModule version=\"1.0\">",
+      "<name>mod1</name>",
+      "<!-- hétérogène 😀 -->",
+      "<depends>",
+      "</depends>",
+      "<typeTable>",
+      "    <FbasicType type=\"C0\" ref=\"Fcharacter\">",
+      "      <len><FcharacterConstant type=\"C0\">é😀",
+      "      </FcharacterConstant></len>",
+      "    </FbasicType>",
+      "    <FfunctionType type=\"F1\" return_type=\"Fvoid\">",
+      "      <params>",
+      "        <name type=\"A2\">a</name>",
+      "        <name type=\"I3\">n</name>",
+      "      </params>",
+      "    </FfunctionType>",
+      "    <FbasicType type=\"I3\" intent=\"in\" ref=\"Fint\"/>",
+      "    <FbasicType type=\"A2\" intent=\"inout\" ref=\"Freal\">",
+      "      <indexRange>",
+      "        <lowerBound><FintConstant type=\"Fint\">1</FintConstant>" +
+          "</lowerBound>",
+      "        <upperBound><Var type=\"I3\" scope=\"local\">n</Var>" +
+          "</upperBound>",
+      "      </indexRange>",
+      "    </FbasicType>",
+      "</typeTable>",
+      "<identifiers>",
+      "  <id type=\"F1\" sclass=\"ffunc\"><name>sub1</name></id>",
+      "</identifiers>",
+      "<interfaceDecls>",
+      "</interfaceDecls>",
+      "<aux_info>",
+      "</aux_info>",
+      "</OmniFortranModule>",
+      "");
+
+  @Test
+  public void lazyLookupTest() throws Exception {
+    Path xmod = Files.createTempFile("mod1", ".xmod");
+    try {
+      Files.write(xmod, MODULE.getBytes(StandardCharsets.UTF_8));
+      ModuleFileIndex index = ModuleFileIndex.read(xmod);
+      assertNotNull(index);
+      assertEquals(4, index.getTypeCount());
+      FortranModule mod = new FortranModule(index.getDocument(), "mod1",
+          xmod.getParent().toString(), index);
+      assertFalse(mod.isLoaded());
+      assertEquals(0, mod.getTypeTable().size());
+      assertTrue(mod.getIdentifiers().contains("sub1"));
+
+      FfunctionType fctType = mod.findFunctionType("sub1");
+      assertNotNull(fctType);
+      assertEquals(2, fctType.getParameters().size());
+      assertEquals(1, mod.getTypeTable().size());
+      assertTrue(mod.getTypeTable().hasType("A2"));
+      assertEquals(1, mod.getTypeTable().size());
+
+      FbasicType array = mod.getTypeTable().getBasicType("A2");
+      assertNotNull(array);
+      assertTrue(array.isArray());
+      assertEquals(2, mod.getTypeTable().size());
+      assertSame(array, mod.getTypeTable().getBasicType("A2"));
+      assertNull(mod.getTypeTable().getBasicType("F1"));
+      assertNull(mod.getTypeTable().getBasicType("X9"));
+      FbasicType character = mod.getTypeTable().getBasicType("C0");
+      assertNotNull(character);
+      assertEquals("é😀", character
+          .matchDescendant(Xcode.F_CHARACTER_CONSTANT).value().trim());
+      assertEquals(3, mod.getTypeTable().size());
+    } finally {
+      Files.deleteIfExists(xmod);
+    }
+  }
+
+  @Test
+  public void loadAllTest() throws Exception {
+    Path xmod = Files.createTempFile("mod1", ".xmod");
+    try {
+      Files.write(xmod, MODULE.getBytes(StandardCharsets.UTF_8));
+      FortranModule eager = new FortranModule(
+          XnodeUtil.readXmlFile(xmod.toString()), "mod1",
+          xmod.getParent().toString());
+      ModuleFileIndex index = ModuleFileIndex.read(xmod);
+      assertNotNull(index);
+      FortranModule lazy = new FortranModule(index.getDocument(), "mod1",
+          xmod.getParent().toString(), index);
+
+      // Types read before the module is loaded stay valid
+      FbasicType integer = lazy.getTypeTable().getBasicType("I3");
+      FbasicType array = lazy.getTypeTable().getBasicType("A2");
+      lazy.load();
+      assertTrue(lazy.isLoaded());
+      assertEquals(4, lazy.getTypeTable().size());
+      assertSame(integer, lazy.getTypeTable().getBasicType("I3"));
+      assertSame(array, lazy.getTypeTable().getBasicType("A2"));
+      assertTrue(eager.getDocument().getDocumentElement()
+          .isEqualNode(lazy.getDocument().getDocumentElement()));
+
+      // Types added before the module is loaded follow the module types
+      index = ModuleFileIndex.read(xmod);
+      assertNotNull(index);
+      lazy = new FortranModule(index.getDocument(), "mod1",
+          xmod.getParent().toString(), index);
+      lazy.getTypeTable().getFunctionType("F1");
+      FbasicType added =
+          lazy.createBasicType(FortranType.INTEGER, Intent.IN);
+      lazy.getTypeTable().add(added);
+      lazy.load();
+      assertEquals(5, lazy.getTypeTable().size());
+      String[] order = lazy.getTypeTable().children().stream()
+          .map(Xnode::getType).toArray(String[]::new);
+      assertEquals(Arrays.asList("C0", "F1", "I3", "A2", added.getType()),
+          Arrays.asList(order));
+    } finally {
+      Files.deleteIfExists(xmod);
+    }
+  }
+
+  @Test
+  public void invalidTest() throws Exception {
+    Path xmod = Files.createTempFile("mod1", ".xmod");
+    try {
+      Files.write(xmod, "<OmniFortranModule><typeTable>"
+          .getBytes(StandardCharsets.UTF_8));
+      assertNull(ModuleFileIndex.read(xmod));
+      Files.write(xmod, ("<OmniFortranModule><name>mod1</name>" +
+          "</OmniFortranModule>").getBytes(StandardCharsets.UTF_8));
+      assertNull(ModuleFileIndex.read(xmod));
+    } finally {
+      Files.deleteIfExists(xmod);
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the ModuleIndex and ModuleBuildPlanner classes.
+ *
+ * @author clementval
+ */
+public class ModuleIndexTest {
+
+  /**
+   * Delete a directory and its content.
+   *
+   * @param dir Directory to delete.
+   * @throws Exception If the directory cannot be deleted.
+   */
+  private static void deleteTree(Path dir) throws Exception {
+    try(Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  /**
+   * Write a FORTRAN source file.
+   *
+   * @param file  File to write.
+   * @param lines Lines of the file.
+   * @return Absolute path of the file.
+   * @throws IOException If the file cannot be written.
+   */
+  private static Path write(Path file, String... lines) throws IOException {
+    Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    return file.toAbsolutePath().normalize();
+  }
+
+  @Test
+  public void scanTest() throws Exception {
+    Path dir = Files.createTempDirectory("module_index");
+    try {
+      Path file = write(dir.resolve("mo_test.f90"),
+          "MODULE mo_test",
+          "  USE mod1",
+          "  use, intrinsic :: iso_c_binding",
+          "  Use :: mod2, only: a",
+          "  USE mo_test",
+          "  ! use mod3",
+          "  INTERFACE sub",
+          "    MODULE PROCEDURE sub1",
+          "  END INTERFACE sub",
+          "  module procedure :: sub2",
+          "END MODULE mo_test",
+          "module mo_other ! comment");
+      SourceDependencies deps = SourceDependencies.scan(file);
+      assertEquals(Arrays.asList("mo_test", "mo_other"),
+          Arrays.asList(deps.getDefinedModules().toArray()));
+      assertEquals(Arrays.asList("mod1", "iso_c_binding", "mod2"),
+          Arrays.asList(deps.getUsedModules().toArray()));
+
+      SourceDependencies decoded = SourceDependencies.decode(deps.encode());
+      assertNotNull(decoded);
+      assertEquals(deps.getDefinedModules(), decoded.getDefinedModules());
+      assertEquals(deps.getUsedModules(), decoded.getUsedModules());
+      assertNull(SourceDependencies.decode("1\t2"));
+    } finally {
+      deleteTree(dir);
+    }
+  }
+
+  @Test
+  public void cacheTest() throws Exception {
+    Path dir = Files.createTempDirectory("module_index");
+    try {
+      Path src = Files.createDirectory(dir.resolve("src"));
+      Path cache = dir.resolve("cache").resolve("index.txt");
+      write(src.resolve("a.f90"), "module a", "end module a");
+      Path b = write(src.resolve("b.f90"), "module b", "use a",
+          "end module b");
+      write(src.resolve("b.claw.f90"), "module b", "end module b");
+      write(src.resolve("readme.txt"), "module c");
+
+      ModuleIndex index = new ModuleIndex(cache);
+      index.scan(Collections.singletonList(src), 2);
+      assertEquals(2, index.size());
+      assertEquals(2, index.getScannedFiles());
+      index.save();
+      assertTrue(Files.exists(cache));
+
+      // Nothing changed. Everything comes from the cache.
+      index = new ModuleIndex(cache);
+      index.scan(Collections.singletonList(src), 2);
+      assertEquals(2, index.size());
+      assertEquals(0, index.getScannedFiles());
+
+      // Touched but same content is not scanned again
+      Files.setLastModifiedTime(b, FileTime.fromMillis(
+          Files.getLastModifiedTime(b).toMillis() + 10000));
+      index = new ModuleIndex(cache);
+      index.scan(Collections.singletonList(src), 2);
+      assertEquals(0, index.getScannedFiles());
+
+      // Modified file is scanned again
+      write(b, "module b", "use a", "use d", "end module b");
+      index = new ModuleIndex(cache);
+      index.scan(Collections.singletonList(src), 2);
+      assertEquals(1, index.getScannedFiles());
+      assertTrue(index.get(b).getUsedModules().contains("d"));
+
+      // Files scanned on demand are not saved
+      Path other = write(dir.resolve("other.f90"), "use b");
+      assertEquals(Collections.singleton("b"),
+          index.get(other).getUsedModules());
+      index.save();
+      List<String> lines = Files.readAllLines(cache, StandardCharsets.UTF_8);
+      assertEquals(3, lines.size());
+      for(String line : lines) {
+        assertFalse(line.contains("other.f90"));
+      }
+    } finally {
+      deleteTree(dir);
+    }
+  }
+
+  @Test
+  public void buildOrderTest() throws Exception {
+    Path dir = Files.createTempDirectory("module_index");
+    try {
+      Path src = Files.createDirectory(dir.resolve("src"));
+      Path lib = Files.createDirectory(dir.resolve("lib"));
+      Path input = write(src.resolve("main.f90"), "program main",
+          "use mo_a", "use mo_b", "use omp_lib", "end program main");
+      Path moA = write(src.resolve("mo_a.f90"), "module mo_a", "use mo_c",
+          "end module mo_a");
+      // Module defined in a file with another name in the search path
+      Path moB = write(lib.resolve("defs.f90"), "module mo_b", "use mo_c",
+          "end module mo_b");
+      Path moC = write(lib.resolve("mo_c.F90"), "module mo_c",
+          "end module mo_c");
+      write(lib.resolve("omp_lib.xmod"), "<OmniFortranModule/>");
+
+      List<Path> searchPaths = Collections.singletonList(lib);
+      ModuleIndex index = new ModuleIndex(null);
+      index.scan(Arrays.asList(src, lib), 0);
+      assertEquals(moB, index.findSource("MO_B", searchPaths));
+
+      ModuleBuildPlanner planner = new ModuleBuildPlanner(index, searchPaths);
+      planner.addInput(input, input);
+      List<Path> order = planner.getBuildOrder();
+      assertEquals(3, order.size());
+      assertTrue(order.indexOf(moC) < order.indexOf(moA));
+      assertTrue(order.indexOf(moC) < order.indexOf(moB));
+      assertTrue(planner.getWarnings().isEmpty());
+      assertTrue(planner.getErrors().isEmpty());
+
+      // Up-to-date module files are not planned again
+      Path xmod = write(lib.resolve("mo_c.xmod"), "<OmniFortranModule/>");
+      Files.setLastModifiedTime(xmod, FileTime.fromMillis(
+          Files.getLastModifiedTime(moC).toMillis() + 10000));
+      planner = new ModuleBuildPlanner(index, searchPaths);
+      planner.addInput(input, input);
+      order = planner.getBuildOrder();
+      assertEquals(2, order.size());
+      assertFalse(order.contains(moC));
+    } finally {
+      deleteTree(dir);
+    }
+  }
+
+  @Test
+  public void unresolvedTest() throws Exception {
+    Path dir = Files.createTempDirectory("module_index");
+    try {
+      Path input = write(dir.resolve("main.f90"), "program main",
+          "use mo_missing", "use mo_xmod", "end program main");
+      write(dir.resolve("mo_xmod.xmod"), "<OmniFortranModule/>");
+      ModuleIndex index = new ModuleIndex(null);
+      index.scan(Collections.singletonList(dir), 1);
+      ModuleBuildPlanner planner =
+          new ModuleBuildPlanner(index, Collections.emptyList());
+      planner.addInput(input, input);
+      assertEquals(1, planner.getErrors().size());
+      assertTrue(planner.getErrors().get(0).endsWith("mo_missing"));
+      assertEquals(1, planner.getWarnings().size());
+      assertTrue(planner.getWarnings().get(0).contains("mo_xmod"));
+    } finally {
+      deleteTree(dir);
+    }
+  }
+
+  @Test
+  public void circularTest() throws Exception {
+    Path dir = Files.createTempDirectory("module_index");
+    try {
+      Path input = write(dir.resolve("main.f90"), "use mo_a");
+      write(dir.resolve("mo_a.f90"), "module mo_a", "use mo_b",
+          "end module mo_a");
+      write(dir.resolve("mo_b.f90"), "module mo_b", "use mo_a",
+          "end module mo_b");
+      ModuleIndex index = new ModuleIndex(null);
+      index.scan(Collections.singletonList(dir), 1);
+      ModuleBuildPlanner planner =
+          new ModuleBuildPlanner(index, Collections.emptyList());
+      planner.addInput(input, input);
+      try {
+        planner.getBuildOrder();
+        fail();
+      } catch(IOException ignored) {
+      }
+    } finally {
+      deleteTree(dir);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.primitive.Xmod;
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.fortran.FortranModule;
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the ModuleStore class.
+ *
+ * @author clementval
+ */
+public class ModuleStoreTest {
+
+  /**
+   * Delete a directory and its content.
+   *
+   * @param dir Directory to delete.
+   * @throws Exception If the directory cannot be deleted.
+   */
+  private static void deleteTree(Path dir) throws Exception {
+    try(Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  @Test
+  public void loadTest() throws Exception {
+    Path dir = Files.createTempDirectory("module_store");
+    try {
+      Path xmod = dir.resolve("mod1.xmod");
+      Files.copy(Paths.get(TestConstant.TEST_DECLARATIONS), xmod);
+      ModuleStore store = new ModuleStore(dir.resolve("store").toString());
+      Path entry = store.getEntry(xmod.toAbsolutePath());
+
+      // First load indexes the module and fills the store
+      ModuleFileIndex parsed = store.load(xmod.toString());
+      assertNotNull(parsed);
+      assertTrue(Files.exists(entry));
+      byte[] stored = Files.readAllBytes(entry);
+
+      // Second load is served from the store. Types are still read lazily.
+      ModuleFileIndex cached = store.load(xmod.toString());
+      assertNotNull(cached);
+      assertNotSame(parsed, cached);
+      assertEquals(parsed.getTypeCount(), cached.getTypeCount());
+      assertTrue(parsed.getDocument().getDocumentElement()
+          .isEqualNode(cached.getDocument().getDocumentElement()));
+      assertTrue(parsed.loadAll().isEqualNode(cached.loadAll()));
+      assertArrayEquals(stored, Files.readAllBytes(entry));
+
+      // Modified module invalidates the entry
+      Files.write(xmod, ("<OmniFortranModule><name>mod2</name>" +
+          "<typeTable></typeTable></OmniFortranModule>")
+          .getBytes(StandardCharsets.UTF_8));
+      ModuleFileIndex modified = store.load(xmod.toString());
+      assertNotNull(modified);
+      assertEquals(0, modified.getTypeCount());
+      assertTrue(XnodeUtil.readXmlFile(xmod.toString()).getDocumentElement()
+          .isEqualNode(modified.getDocument().getDocumentElement()));
+
+      // Corrupted entry is ignored
+      Files.write(entry, new byte[]{1, 2, 3});
+      ModuleFileIndex recovered = store.load(xmod.toString());
+      assertNotNull(recovered);
+      assertTrue(modified.getDocument().getDocumentElement()
+          .isEqualNode(recovered.getDocument().getDocumentElement()));
+
+      assertNull(store.load(dir.resolve("missing.xmod").toString()));
+    } finally {
+      deleteTree(dir);
+    }
+  }
+
+  @Test
+  public void tooLargeTest() throws Exception {
+    Path dir = Files.createTempDirectory("module_store");
+    try {
+      // Sparse module file too large to be mapped at once
+      Path xmod = dir.resolve("mod1.xmod");
+      try(RandomAccessFile file = new RandomAccessFile(xmod.toFile(), "rw")) {
+        file.setLength(Integer.MAX_VALUE + 1L);
+      }
+      ModuleStore store = new ModuleStore(dir.resolve("store").toString());
+      assertNull(ModuleFileIndex.read(xmod));
+      assertNull(store.load(xmod.toString()));
+    } finally {
+      deleteTree(dir);
+    }
+  }
+
+  @Test
+  public void xmodFindTest() throws Exception {
+    Path dir = Files.createTempDirectory("module_store");
+    try {
+      Files.copy(Paths.get(TestConstant.TEST_DECLARATIONS),
+          dir.resolve("mod1.xmod"));
+      Context.get().init(CompilerDirective.NONE, Target.CPU, null, 80);
+      Context.get().getModuleCache().addSearchPath(dir.toString());
+      Context.get().getModuleCache()
+          .setStore(new ModuleStore(dir.resolve("store").toString()));
+
+      FortranModule first = Xmod.find("mod1");
+      assertNotNull(first);
+      FortranModule second = Xmod.find("mod1");
+      assertNotNull(second);
+      assertFalse(second.isLoaded());
+      assertEquals(first.getTypeTable().size(),
+          second.getTypeTable().size());
+      assertTrue(Context.get().fork().getModuleCache().getStore() != null);
+    } finally {
+      Context.get().init(CompilerDirective.NONE, Target.CPU, null, 80);
+      deleteTree(dir);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.module;
+
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the UnitDependencies class.
+ *
+ * @author clementval
+ */
+public class UnitDependenciesTest {
+
+  @Test
+  public void scanTest() throws Exception {
+    UnitDependencies deps =
+        UnitDependencies.scan(TestConstant.TEST_DECLARATIONS);
+    assertEquals(1, deps.getDefinedModules().size());
+    assertTrue(deps.getDefinedModules().contains("mod1"));
+    assertEquals(2, deps.getUsedModules().size());
+    assertTrue(deps.getUsedModules().contains("mod4"));
+    assertTrue(deps.getUsedModules().contains("mod5"));
+  }
+
+  @Test
+  public void selfUseTest() throws Exception {
+    Path file = Files.createTempFile("unit_dep", ".xml");
+    try {
+      Files.write(file, ("<XcodeProgram><globalDeclarations>" +
+          "<FmoduleDefinition name=\"MOD_A\"/>" +
+          "<FfunctionDefinition><declarations>" +
+          "<FuseDecl name=\"mod_a\"/><FuseOnlyDecl name=\"mod_b\"/>" +
+          "</declarations></FfunctionDefinition>" +
+          "</globalDeclarations></XcodeProgram>")
+          .getBytes(StandardCharsets.UTF_8));
+      UnitDependencies deps = UnitDependencies.scan(file.toString());
+      assertEquals(1, deps.getDefinedModules().size());
+      assertTrue(deps.getDefinedModules().contains("mod_a"));
+      assertEquals(1, deps.getUsedModules().size());
+      assertTrue(deps.getUsedModules().contains("mod_b"));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void malformedTest() throws Exception {
+    Path file = Files.createTempFile("unit_dep", ".xml");
+    try {
+      Files.write(file, "<XcodeProgram><FuseDecl"
+          .getBytes(StandardCharsets.UTF_8));
+      UnitDependencies.scan(file.toString());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
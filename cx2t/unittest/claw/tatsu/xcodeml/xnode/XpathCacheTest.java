@@ -0,0 +1,94 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode;
+
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import helper.XmlHelper;
+import org.junit.Test;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the XpathCache class
+ *
+ * @author clementval
+ */
+public class XpathCacheTest {
+
+  private static final String BODY = "<body>" +
+      "<Var>a</Var><Var>b</Var><Var>a</Var><Var>c\"d</Var>" +
+      "</body>";
+  private static final String QUERY = ".//Var[text()=$name]";
+
+  @Test
+  public void variableBindingTest() throws Exception {
+    Xnode body = XmlHelper.createXnode(BODY);
+    assertNotNull(body);
+
+    NodeList a = XpathCache.evaluate(body.element(), QUERY,
+        Collections.singletonMap("name", "a"));
+    assertEquals(2, a.getLength());
+    int cached = XpathCache.size();
+
+    NodeList b = XpathCache.evaluate(body.element(), QUERY,
+        Collections.singletonMap("name", "b"));
+    assertEquals(1, b.getLength());
+    assertEquals("b", b.item(0).getTextContent());
+
+    // Values are not part of the query so quotes need no escaping
+    NodeList quoted = XpathCache.evaluate(body.element(), QUERY,
+        Collections.singletonMap("name", "c\"d"));
+    assertEquals(1, quoted.getLength());
+
+    // The query is compiled once for all the values
+    assertEquals(cached, XpathCache.size());
+
+    assertEquals(4, XpathCache.evaluate(body.element(), ".//Var").getLength());
+  }
+
+  @Test
+  public void capacityTest() throws Exception {
+    Xnode body = XmlHelper.createXnode(BODY);
+    assertNotNull(body);
+    for(int i = 0; i < 1000; ++i) {
+      XpathCache.evaluate(body.element(), ".//Var[" + (i % 4 + 1) + "]|.//X"
+          + i);
+    }
+    assertTrue(XpathCache.size() <= 128);
+  }
+
+  @Test
+  public void concurrentTest() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for(int i = 0; i < 16; ++i) {
+        final String name = i % 2 == 0 ? "a" : "b";
+        results.add(pool.submit(() -> {
+          Xnode body = XmlHelper.createXnode(BODY);
+          int matched = 0;
+          for(int j = 0; j < 50; ++j) {
+            matched += XpathCache.evaluate(body.element(), QUERY,
+                Collections.singletonMap("name", name)).getLength();
+          }
+          return matched;
+        }));
+      }
+      for(int i = 0; i < results.size(); ++i) {
+        assertEquals(i % 2 == 0 ? 100 : 50, results.get(i).get().intValue());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
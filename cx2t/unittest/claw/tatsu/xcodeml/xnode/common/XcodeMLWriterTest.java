@@ -0,0 +1,134 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import helper.TestConstant;
+import helper.XmlHelper;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the XcodeMLWriter class.
+ *
+ * @author clementval
+ */
+public class XcodeMLWriterTest {
+
+  /**
+   * Serialize a document.
+   *
+   * @param doc    Document to serialize.
+   * @param indent Indentation.
+   * @return Serialized document.
+   * @throws Exception If the document cannot be written.
+   */
+  private static String write(Document doc, int indent) throws Exception {
+    StringWriter out = new StringWriter();
+    new XcodeMLWriter(out, indent).write(doc);
+    return out.toString();
+  }
+
+  /**
+   * Parse a document from a string.
+   *
+   * @param xml XML string.
+   * @return Parsed document.
+   * @throws Exception If the string cannot be parsed.
+   */
+  private static Document parse(String xml) throws Exception {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new InputSource(new StringReader(xml)));
+  }
+
+  /**
+   * Remove whitespace-only text nodes from elements holding other elements.
+   *
+   * @param node Root of the subtree to clean.
+   * @return The given node.
+   */
+  private static Node strip(Node node) {
+    boolean structured = false;
+    for(Node c = node.getFirstChild(); c != null; c = c.getNextSibling()) {
+      structured |= c.getNodeType() == Node.ELEMENT_NODE;
+    }
+    Node child = node.getFirstChild();
+    while(child != null) {
+      Node next = child.getNextSibling();
+      if(structured && child.getNodeType() == Node.TEXT_NODE
+          && child.getNodeValue().trim().isEmpty())
+      {
+        node.removeChild(child);
+      } else if(child.getNodeType() == Node.ELEMENT_NODE) {
+        strip(child);
+      }
+      child = next;
+    }
+    return node;
+  }
+
+  @Test
+  public void roundTripTest() throws Exception {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    Node expected = strip(xcodeml.getDocument().cloneNode(true));
+
+    String indented = write(xcodeml.getDocument(), 2);
+    assertTrue(indented.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"));
+    assertTrue(expected.isEqualNode(strip(parse(indented))));
+
+    String compact = write(xcodeml.getDocument(), 0);
+    assertEquals(compact.indexOf('\n'), compact.length() - 1);
+    assertTrue(expected.isEqualNode(strip(parse(compact))));
+    assertTrue(compact.length() < indented.length());
+
+    // Writing does not modify the document
+    assertEquals(indented, write(xcodeml.getDocument(), 2));
+  }
+
+  @Test
+  public void contentTest() throws Exception {
+    Document doc = parse("<root a=\"x&quot;y&lt;z\">\n" +
+        "  <name> </name>\n" +
+        "  <value>a &lt; b &amp;&amp; c</value>\n" +
+        "  <empty/>\n" +
+        "</root>");
+    String out = write(doc, 2);
+    assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<root a=\"x&quot;y&lt;z\">\n" +
+        "  <name> </name>\n" +
+        "  <value>a &lt; b &amp;&amp; c</value>\n" +
+        "  <empty/>\n" +
+        "</root>\n", out);
+    assertTrue(doc.isEqualNode(parse(out)));
+  }
+
+  @Test
+  public void fileTest() throws Exception {
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_PROGRAM);
+    assertNotNull(xcodeml);
+    Path output = Files.createTempFile("xcodeml_writer", ".xml");
+    try {
+      xcodeml.write(output.toString(), 0);
+      XcodeProgram reloaded = XcodeProgram.createFromFile(output.toString());
+      assertFalse(reloaded.hasErrors());
+      assertEquals(xcodeml.getAllFctDef().size(),
+          reloaded.getAllFctDef().size());
+      assertTrue(strip(xcodeml.getDocument().cloneNode(true))
+          .isEqualNode(reloaded.getDocument()));
+    } finally {
+      Files.deleteIfExists(output);
+    }
+  }
+}
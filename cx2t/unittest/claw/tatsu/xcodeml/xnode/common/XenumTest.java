@@ -33,6 +33,21 @@ public class XenumTest {
     assertNull(Xattr.fromString("dummy"));
   }
 
+  @Test
+  public void xCodeFromTagTest() {
+    for(Xcode opcode : Xcode.values()) {
+      assertEquals(Xcode.fromString(opcode.code()),
+          Xcode.fromTag(opcode.code()));
+      assertEquals(Xcode.fromString(opcode.code()),
+          Xcode.fromTag(opcode.code().toUpperCase()));
+    }
+    assertEquals(Xcode.F_DO_STATEMENT, Xcode.fromTag(Xname.F_DO_STATEMENT));
+    assertEquals(Xcode.NONE, Xcode.fromTag(null));
+    assertEquals(Xcode.NONE, Xcode.fromTag("dummy"));
+    assertEquals(Xcode.NONE, Xcode.fromString(null));
+    assertEquals(Xcode.NONE, Xcode.fromString("dummy"));
+  }
+
   @Test
   public void xIntentCtorTest() {
     assertEquals(Intent.IN, Intent.fromString("in"));
@@ -0,0 +1,178 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import claw.tatsu.xcodeml.xnode.XnodeUtil;
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import helper.XmlHelper;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the cursor walks of XcodeML subtrees.
+ *
+ * @author clementval
+ */
+public class XnodeCursorTest {
+
+  private static final Xcode[] OPCODES = {
+      Xcode.F_FUNCTION_DEFINITION, Xcode.F_DO_STATEMENT, Xcode.VAR,
+      Xcode.F_ARRAY_REF, Xcode.F_PRAGMA_STATEMENT, Xcode.NAME
+  };
+
+  /**
+   * Get the elements of the nodes.
+   *
+   * @param nodes List of nodes.
+   * @return List of elements in the same order.
+   */
+  private static List<Element> elements(List<Xnode> nodes) {
+    return nodes.stream().map(Xnode::element).collect(Collectors.toList());
+  }
+
+  @Test
+  public void preOrderTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    XnodeCursor cursor = new XnodeCursor();
+    for(Xnode root : xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION)) {
+      for(Xcode opcode : OPCODES) {
+        List<Element> visited = new ArrayList<>();
+        cursor.reset(root);
+        while(cursor.next()) {
+          assertFalse(cursor.isExit());
+          if(cursor.is(opcode)) {
+            visited.add(cursor.element());
+          }
+        }
+        assertEquals(elements(root.matchAll(opcode)), visited);
+        assertFalse(cursor.next());
+      }
+    }
+
+    // Empty subtree and missing root
+    assertFalse(new XnodeCursor(xcodeml.createNode(Xcode.BODY)).next());
+    assertFalse(new XnodeCursor(null).nextEvent());
+  }
+
+  @Test
+  public void matchedTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    XnodeCursor cursor = new XnodeCursor();
+    for(Xnode root : xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION)) {
+      // Indexed and detached subtrees
+      for(Xnode subtree : new Xnode[]{ root, root.cloneNode() }) {
+        for(Xcode opcode : OPCODES) {
+          List<Element> visited = new ArrayList<>();
+          cursor.reset(subtree, opcode);
+          while(cursor.next()) {
+            assertSame(opcode, cursor.opcode());
+            visited.add(cursor.element());
+          }
+          assertEquals(elements(subtree.matchAll(opcode)), visited);
+        }
+      }
+    }
+
+    // Nested do statements are skipped
+    Xnode fctDef =
+        xcodeml.matchDescendant(Xcode.F_DO_STATEMENT).findParentFunction();
+    List<Element> visited = new ArrayList<>();
+    cursor.reset(fctDef, Xcode.F_DO_STATEMENT);
+    while(cursor.next()) {
+      visited.add(cursor.element());
+      cursor.skipChildren();
+    }
+    assertFalse(visited.isEmpty());
+    assertEquals(elements(fctDef.matchAll(Xcode.F_DO_STATEMENT).stream()
+        .filter(x -> x.matchAncestor(Xcode.F_DO_STATEMENT) == null)
+        .collect(Collectors.toList())), visited);
+  }
+
+  @Test
+  public void eventTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    FfunctionDefinition fctDef = xcodeml.getAllFctDef().get(0);
+    List<Element> open = new ArrayList<>();
+    int entered = 0;
+    XnodeCursor cursor = new XnodeCursor(fctDef);
+    while(cursor.nextEvent()) {
+      if(cursor.isExit()) {
+        assertSame(open.remove(open.size() - 1), cursor.element());
+      } else {
+        open.add(cursor.element());
+        ++entered;
+      }
+      assertEquals(open.size() + (cursor.isExit() ? 1 : 0), cursor.depth());
+      assertEquals(cursor.opcode(), cursor.node().opcode());
+    }
+    assertTrue(open.isEmpty());
+    assertTrue(entered > 0);
+  }
+
+  @Test
+  public void skipChildrenTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    FfunctionDefinition fctDef =
+        xcodeml.matchDescendant(Xcode.F_DO_STATEMENT).findParentFunction();
+    List<Xnode> doStmts = fctDef.matchAll(Xcode.F_DO_STATEMENT);
+    assertFalse(doStmts.isEmpty());
+
+    Set<Element> skipped = new HashSet<>();
+    for(Xnode doStmt : doStmts) {
+      skipped.addAll(elements(doStmt.matchAll(Xcode.VAR)));
+    }
+    List<Element> expected = elements(fctDef.matchAll(Xcode.VAR));
+    expected.removeAll(skipped);
+
+    List<Element> visited = new ArrayList<>();
+    XnodeCursor cursor = new XnodeCursor(fctDef);
+    while(cursor.next()) {
+      if(cursor.is(Xcode.F_DO_STATEMENT)) {
+        cursor.skipChildren();
+      } else if(cursor.is(Xcode.VAR)) {
+        visited.add(cursor.element());
+      }
+    }
+    assertEquals(expected, visited);
+  }
+
+  @Test
+  public void referencesTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      Xnode body = fctDef.body();
+      List<Xnode> vars = body.matchAll(Xcode.VAR).stream()
+          .filter(Xnode::isNotArrayIndex).collect(Collectors.toList());
+      assertEquals(vars.stream().map(Xnode::value).collect(Collectors.toSet()),
+          XnodeUtil.findAllReferences(body));
+      for(Xnode var : vars) {
+        assertEquals(elements(vars.stream()
+                .filter(x -> x.value().equalsIgnoreCase(var.value()))
+                .collect(Collectors.toList())),
+            elements(XnodeUtil.findAllReferences(body, var.value())));
+      }
+
+      for(Xnode ref : body.matchAll(Xcode.F_ARRAY_REF)) {
+        String name = ref.matchSeq(Xcode.VAR_REF, Xcode.VAR).value();
+        List<Xnode> expected = body.matchAll(Xcode.F_ARRAY_REF).stream()
+            .filter(x -> x.matchSeq(Xcode.VAR_REF, Xcode.VAR).value()
+                .equals(name)).collect(Collectors.toList());
+        assertEquals(elements(expected),
+            elements(XnodeUtil.getAllArrayReferences(body, name)));
+        expected.removeIf(x -> x.matchAncestor(Xcode.F_DO_STATEMENT) != null);
+        assertEquals(elements(expected), elements(XnodeUtil
+            .getAllArrayReferences(body, name, Xcode.F_DO_STATEMENT)));
+      }
+    }
+  }
+}
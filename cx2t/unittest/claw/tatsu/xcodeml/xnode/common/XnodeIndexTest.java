@@ -0,0 +1,153 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.tatsu.xcodeml.xnode.common;
+
+import claw.tatsu.xcodeml.xnode.fortran.FfunctionDefinition;
+import claw.tatsu.xcodeml.xnode.fortran.FortranType;
+import helper.XmlHelper;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the opcode index maintained by XcodeProgram.
+ *
+ * @author clementval
+ */
+public class XnodeIndexTest {
+
+  private static final Xcode[] OPCODES = {
+      Xcode.F_FUNCTION_DEFINITION, Xcode.F_DO_STATEMENT, Xcode.VAR,
+      Xcode.F_ARRAY_REF, Xcode.F_PRAGMA_STATEMENT, Xcode.NAME
+  };
+
+  /**
+   * Check that the indexed queries match a DOM search for the given node.
+   *
+   * @param node Root of the queries.
+   */
+  private void assertSameAsDom(Xnode node) {
+    for(Xcode opcode : OPCODES) {
+      NodeList raw = node.element().getElementsByTagName(opcode.code());
+      List<Element> expected = new ArrayList<>();
+      for(int i = 0; i < raw.getLength(); ++i) {
+        expected.add((Element) raw.item(i));
+      }
+      List<Element> actual = new ArrayList<>();
+      for(Xnode n : node.matchAll(opcode)) {
+        assertEquals(opcode, n.opcode());
+        actual.add(n.element());
+      }
+      assertEquals(expected, actual);
+      Xnode first = node.matchDescendant(opcode);
+      if(expected.isEmpty()) {
+        assertNull(first);
+      } else {
+        assertNotNull(first);
+        assertSame(expected.get(0), first.element());
+      }
+    }
+  }
+
+  /**
+   * Check the queries on the whole program and on each function.
+   *
+   * @param xcodeml Program to check.
+   */
+  private void assertIndexConsistent(XcodeProgram xcodeml) {
+    assertSameAsDom(xcodeml);
+    for(FfunctionDefinition fctDef : xcodeml.getAllFctDef()) {
+      assertSameAsDom(fctDef);
+      assertSameAsDom(fctDef.body());
+    }
+  }
+
+  @Test
+  public void queryTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertIndexConsistent(xcodeml);
+  }
+
+  @Test
+  public void insertAndDeleteTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertIndexConsistent(xcodeml);
+
+    List<Xnode> doStmts = xcodeml.matchAll(Xcode.F_DO_STATEMENT);
+    assertFalse(doStmts.isEmpty());
+    Xnode doStmt = doStmts.get(0);
+
+    // Insert clones repeatedly at the same place to exhaust the gap
+    for(int i = 0; i < 80; ++i) {
+      doStmt.insertAfter(doStmt.cloneNode());
+    }
+    assertIndexConsistent(xcodeml);
+
+    doStmt.insertBefore(doStmt.cloneNode());
+    doStmt.body().append(xcodeml.createVar(FortranType.INTEGER, "i",
+        Xscope.LOCAL));
+    assertIndexConsistent(xcodeml);
+
+    doStmt.delete();
+    assertTrue(xcodeml.matchAll(Xcode.F_DO_STATEMENT).stream()
+        .noneMatch(n -> n.element() == doStmt.element()));
+    assertIndexConsistent(xcodeml);
+  }
+
+  @Test
+  public void moveTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    assertIndexConsistent(xcodeml);
+
+    Xnode doStmt = xcodeml.matchDescendant(Xcode.F_DO_STATEMENT);
+    assertNotNull(doStmt);
+    FfunctionDefinition fctDef = doStmt.findParentFunction();
+    assertNotNull(fctDef);
+    List<Xnode> doStmts = fctDef.matchAll(Xcode.F_DO_STATEMENT);
+    assertFalse(doStmts.isEmpty());
+
+    // Move the last do statement at the beginning of the body
+    Xnode last = doStmts.get(doStmts.size() - 1);
+    fctDef.body().insert(last);
+    assertIndexConsistent(xcodeml);
+
+    // Detach and re-attach a subtree
+    last.delete();
+    assertIndexConsistent(xcodeml);
+    Xnode detached = xcodeml.createNode(Xcode.BODY);
+    detached.append(last);
+    assertEquals(last.matchAll(Xcode.F_DO_STATEMENT).size() + 1,
+        detached.matchAll(Xcode.F_DO_STATEMENT).size());
+    fctDef.body().append(last);
+    assertIndexConsistent(xcodeml);
+
+    // Replace the content of a node by a value
+    Xnode var = fctDef.matchDescendant(Xcode.VAR);
+    assertNotNull(var);
+    var.ancestor().setValue("x");
+    assertIndexConsistent(xcodeml);
+  }
+
+  @Test
+  public void importTest() {
+    XcodeProgram src = XmlHelper.getDummyXcodeProgram();
+    XcodeProgram dst = XmlHelper.getDummyXcodeProgram();
+    assertIndexConsistent(dst);
+
+    Xnode doStmt = src.matchDescendant(Xcode.F_DO_STATEMENT);
+    assertNotNull(doStmt);
+    Xnode imported = dst.importNode(doStmt);
+    int nbDoStmt = dst.matchAll(Xcode.F_DO_STATEMENT).size();
+    dst.matchDescendant(Xcode.F_DO_STATEMENT).insertAfter(imported);
+    assertEquals(nbDoStmt + 1 + imported.matchAll(Xcode.F_DO_STATEMENT).size(),
+        dst.matchAll(Xcode.F_DO_STATEMENT).size());
+    assertIndexConsistent(dst);
+  }
+}
@@ -361,6 +361,24 @@ public class XnodeTest {
     assertNotEquals(node, null);
   }
 
-
-
+  @Test
+  public void opcodeCacheTest() {
+    XcodeProgram xcodeml = XmlHelper.getDummyXcodeProgram();
+    Xnode doStmt = xcodeml.createNode(Xcode.F_DO_STATEMENT);
+    assertEquals(Xcode.F_DO_STATEMENT, doStmt.opcode());
+    assertEquals(Xcode.F_DO_STATEMENT, new Xnode(doStmt.element()).opcode());
+    assertEquals(Xcode.F_DO_STATEMENT, doStmt.cloneNode().opcode());
+    assertEquals(Xcode.F_DO_STATEMENT, xcodeml.importNode(doStmt).opcode());
+
+    Xnode body = xcodeml.createNode(Xcode.BODY);
+    doStmt.append(body);
+    assertEquals(Xcode.BODY, doStmt.firstChild().opcode());
+    assertEquals(Xcode.BODY, doStmt.matchDirectDescendant(
+        Arrays.asList(Xcode.VAR, Xcode.BODY)).opcode());
+    assertEquals(Xcode.BODY, doStmt.matchDescendant(Xcode.BODY).opcode());
+    assertEquals(Xcode.F_DO_STATEMENT,
+        body.matchAncestor(Xcode.F_DO_STATEMENT).opcode());
+    assertNull(doStmt.matchDirectDescendant(Xcode.VAR));
+    assertEquals(Xcode.NONE, new Xnode(null).opcode());
+  }
 }
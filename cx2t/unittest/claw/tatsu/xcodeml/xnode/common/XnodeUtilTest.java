@@ -9,6 +9,7 @@ import claw.tatsu.xcodeml.xnode.fortran.Intent;
 import claw.tatsu.xcodeml.abstraction.HoistedNestedDoStatement;
 import claw.tatsu.xcodeml.xnode.XnodeUtil;
 import helper.TestConstant;
+import helper.XmlHelper;
 import org.junit.Test;
 
 import java.io.File;
@@ -119,4 +120,32 @@ public class XnodeUtilTest {
 
     // TODO add test with optional arguments
   }
+
+  @Test
+  public void arrayReferencesByOffsetsTest() {
+    Xnode body = XmlHelper.createXnode("<body>" +
+        "<FarrayRef><varRef><Var>a</Var></varRef>" +
+        "<arrayIndex><minusExpr><Var>i</Var>" +
+        "<FintConstant>1</FintConstant></minusExpr></arrayIndex>" +
+        "<arrayIndex><Var>j</Var></arrayIndex></FarrayRef>" +
+        "<FarrayRef><varRef><Var>a</Var></varRef>" +
+        "<arrayIndex><Var>i</Var></arrayIndex>" +
+        "<arrayIndex><Var>j</Var></arrayIndex></FarrayRef>" +
+        "<FarrayRef><varRef><Var>b</Var></varRef>" +
+        "<arrayIndex><Var>i</Var></arrayIndex>" +
+        "<arrayIndex><Var>j</Var></arrayIndex></FarrayRef>" +
+        "</body>");
+    assertNotNull(body);
+
+    assertEquals(1, XnodeUtil.getAllArrayReferencesByOffsets(body, "a",
+        Arrays.asList(1, 0)).size());
+    assertEquals(1, XnodeUtil.getAllArrayReferencesByOffsets(body, "a",
+        Arrays.asList(0, 0)).size());
+    assertEquals(1, XnodeUtil.getAllArrayReferencesByOffsets(body, "b",
+        Arrays.asList(0, 0)).size());
+    assertEquals(0, XnodeUtil.getAllArrayReferencesByOffsets(body, "a",
+        Arrays.asList(2, 0)).size());
+    assertEquals(0, XnodeUtil.getAllArrayReferencesByOffsets(body, "c",
+        Arrays.asList(0, 0)).size());
+  }
 }
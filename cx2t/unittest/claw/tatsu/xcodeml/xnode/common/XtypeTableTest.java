@@ -152,4 +152,34 @@ public class XtypeTableTest {
     assertEquals(13, charHash.length());
     assertTrue(charHash.startsWith("C"));
   }
+
+  @Test
+  public void deterministicHashTest() {
+    XtypeTable t1 = XmlHelper.createXtypeTableFromString(BASIC_TYPE_TABLE);
+    XtypeTable t2 = XmlHelper.createXtypeTableFromString(BASIC_TYPE_TABLE);
+    assertNotNull(t1);
+    assertNotNull(t2);
+
+    // Same sequence in two tables with the same seed
+    String h1 = t1.generateHash(FortranType.REAL);
+    String h2 = t1.generateHash(FortranType.REAL);
+    assertNotEquals(h1, h2);
+    assertEquals(h1, t2.generateHash(FortranType.REAL));
+    assertEquals(h2, t2.generateHash(FortranType.REAL));
+
+    // Another seed gives other hashes
+    XtypeTable t3 = XmlHelper.createXtypeTableFromString(BASIC_TYPE_TABLE);
+    assertNotNull(t3);
+    t3.setHashSeed("mod1");
+    assertNotEquals(h1, t3.generateHash(FortranType.REAL));
+
+    // Hashes of a scope do not depend on the hashes of other scopes
+    XtypeTable.setHashScope("sca#1");
+    String scoped = t1.generateHash(FortranType.ARRAY);
+    XtypeTable.clearHashScope();
+    t2.generateHash(FortranType.ARRAY);
+    XtypeTable.setHashScope("sca#1");
+    assertEquals(scoped, t2.generateHash(FortranType.ARRAY));
+    XtypeTable.clearHashScope();
+  }
 }
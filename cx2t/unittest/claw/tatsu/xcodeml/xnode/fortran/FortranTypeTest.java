@@ -7,7 +7,9 @@ package claw.tatsu.xcodeml.xnode.fortran;
 import claw.tatsu.xcodeml.xnode.Xname;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -27,15 +29,27 @@ public class FortranTypeTest {
     assertTrue(FortranType.isBuiltInType(Xname.TYPE_F_VOID));
     assertFalse(FortranType.isBuiltInType(null));
     assertFalse(FortranType.isBuiltInType(""));
-    assertFalse(FortranType.isBuiltInType(FortranType.INTEGER.generateHash()));
+    assertFalse(
+        FortranType.isBuiltInType(FortranType.INTEGER.generateHash("")));
   }
 
   @Test
   public void isOfTypeTest() {
     assertTrue(FortranType.INTEGER.
-        isOfType(FortranType.INTEGER.generateHash()));
-    assertTrue(FortranType.REAL.isOfType(FortranType.REAL.generateHash()));
+        isOfType(FortranType.INTEGER.generateHash("")));
+    assertTrue(FortranType.REAL.isOfType(FortranType.REAL.generateHash("")));
     assertFalse(FortranType.REAL.isOfType(null));
     assertFalse(FortranType.REAL.isOfType(""));
   }
+
+  @Test
+  public void generateHashTest() {
+    String hash = FortranType.ARRAY.generateHash("unit/1");
+    assertEquals(13, hash.length());
+    assertTrue(hash.matches("A[0-9a-f]{12}"));
+    assertEquals(hash, FortranType.ARRAY.generateHash("unit/1"));
+    assertNotEquals(hash, FortranType.ARRAY.generateHash("unit/2"));
+    assertNotEquals(hash.substring(1),
+        FortranType.REAL.generateHash("unit/1").substring(1));
+  }
 }
@@ -1558,4 +1558,42 @@ public class ClawPragmaTest {
     analyzeValidSimpleClaw("claw if-extract", ClawDirective.IF_EXTRACT,
         false, null);
   }
+
+  @Test
+  public void cachedAnalysisTest() {
+    Configuration.get().init(CompilerDirective.OPENACC, Target.GPU);
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+    String raw = "claw define dimension i(1:nx) sca data(t) over(i,:) copy(in)";
+    Xnode p1 = XmlHelper.createXpragma();
+    p1.setValue(raw);
+    Xnode p2 = XmlHelper.createXpragma();
+    // Same naked pragma from a continued directive
+    p2.setValue("claw define dimension i(1:nx) claw sca data(t) over(i,:) " +
+        "copy(in)");
+    try {
+      ClawPragma l1 = ClawPragma.analyze(p1);
+      ClawPragma l2 = ClawPragma.analyze(p2);
+      assertNotSame(l1, l2);
+      assertSame(p1, l1.getPragma());
+      assertSame(p2, l2.getPragma());
+      assertEquals(ClawDirective.SCA, l2.getDirective());
+      assertEquals(DataMovement.HOST_TO_DEVICE, l2.getCopyClauseValue());
+      assertEquals(l1.getDataOverClauseValues(),
+          l2.getDataOverClauseValues());
+
+      // Modifications of a result are not visible in the other ones
+      l1.getDataOverClauseValues().add("q");
+      l1.getLocalModelConfig().putLayout("q",
+          Collections.singletonList(new DimensionDefinition("j", "1", "ny")));
+      l1.getLayoutForData("t").get(0)
+          .setInsertionPosition(InsertionPosition.AFTER);
+      ClawPragma l3 = ClawPragma.analyze(p1);
+      assertEquals(Collections.singleton("t"), l3.getDataOverClauseValues());
+      assertFalse(l3.getLocalModelConfig().hasLayout("q"));
+      assertEquals(InsertionPosition.BEFORE,
+          l3.getLayoutForData("t").get(0).getInsertionPosition());
+    } catch(IllegalDirectiveException idex) {
+      fail();
+    }
+  }
 }
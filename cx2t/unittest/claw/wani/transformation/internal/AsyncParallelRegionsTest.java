@@ -0,0 +1,154 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.internal;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.wani.x2t.configuration.Configuration;
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Test the assignment of parallel regions to asynchronous queues.
+ *
+ * @author clementval
+ */
+public class AsyncParallelRegionsTest {
+
+  private static final String DO = Xcode.F_DO_STATEMENT.code();
+  private static final String ASSIGN = Xcode.F_ASSIGN_STATEMENT.code();
+  private static final String END = "acc end parallel";
+
+  @Test
+  public void openAccTest() {
+    Configuration.get().init(CompilerDirective.OPENACC, Target.GPU);
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+
+    List<Xnode> fctDefs =
+        assign(TestConstant.TEST_ASYNC_PARALLEL_REGIONS, 2, 2);
+
+    // Independent second region overlaps the first one, third depends on both
+    assertEquals(Arrays.asList("acc parallel async(1)", "acc loop", DO, END,
+        ASSIGN, "acc parallel async(2)", DO, END, "acc wait(2)",
+        "acc parallel async(1)", DO, END, "acc wait", ASSIGN),
+        describe(fctDefs.get(0).body()));
+
+    // A single region is left synchronous
+    assertEquals(Arrays.asList("acc parallel", DO, END),
+        describe(fctDefs.get(1).body()));
+  }
+
+  @Test
+  public void singleQueueTest() {
+    Configuration.get().init(CompilerDirective.OPENACC, Target.GPU);
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+
+    List<Xnode> fctDefs =
+        assign(TestConstant.TEST_ASYNC_PARALLEL_REGIONS, 2, 1);
+
+    // Regions of a single queue are ordered without wait
+    assertEquals(Arrays.asList("acc parallel async(1)", "acc loop", DO, END,
+        ASSIGN, "acc parallel async(1)", DO, END, "acc parallel async(1)", DO,
+        END, "acc wait", ASSIGN),
+        describe(fctDefs.get(0).body()));
+  }
+
+  @Test
+  public void variablesTest() {
+    Configuration.get().init(CompilerDirective.OPENACC, Target.GPU);
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+
+    List<Xnode> fctDefs =
+        assign(TestConstant.TEST_ASYNC_PARALLEL_VARIABLES, 3, 2);
+
+    // Scalar reduction result read by the host ends the group
+    assertEquals(Arrays.asList("acc parallel async(1)",
+        "acc loop reduction(+:s)", DO, END, "acc parallel async(2)", DO, END,
+        "acc wait", ASSIGN, "acc parallel", DO, END),
+        describe(fctDefs.get(0).body()));
+
+    // Member written by the first region is read by the second one and by
+    // the host
+    assertEquals(Arrays.asList("acc parallel async(1)", DO, END,
+        "acc parallel async(1)", DO, END, "acc parallel async(2)", DO, END,
+        "acc wait", ASSIGN, "acc parallel", DO, END),
+        describe(fctDefs.get(1).body()));
+
+    // Region accessing a pointer ends the group and is left synchronous
+    assertEquals(Arrays.asList("acc parallel", DO, END, "acc parallel", DO,
+        END, "acc parallel async(1)", DO, END, "acc parallel async(2)", DO,
+        END, "acc wait"),
+        describe(fctDefs.get(2).body()));
+  }
+
+  @Test
+  public void openMpTest() {
+    Configuration.get().init(CompilerDirective.OPENMP, Target.GPU);
+    Context.get().init(CompilerDirective.OPENMP, Target.GPU,
+        Configuration.get().accelerator(), 80);
+
+    List<Xnode> fctDefs =
+        assign(TestConstant.TEST_ASYNC_PARALLEL_OPENMP, 1, 2);
+
+    // Member written by the first region and read by the second one depends
+    // on the whole derived type variable
+    assertEquals(Arrays.asList(
+        "omp target nowait depend(in:b) depend(inout:t)", "omp teams", DO,
+        "omp end teams", "omp end target",
+        "omp target nowait depend(in:t) depend(inout:c)", "omp teams", DO,
+        "omp end teams", "omp end target",
+        "omp target nowait depend(in:b) depend(inout:d)", "omp teams", DO,
+        "omp end teams", "omp end target", "omp taskwait", ASSIGN,
+        "omp target", "omp teams", DO, "omp end teams", "omp end target"),
+        describe(fctDefs.get(0).body()));
+  }
+
+  /**
+   * Load the test data and assign its parallel regions to queues.
+   *
+   * @param file        Test data file.
+   * @param nbFunctions Number of function definitions in the file.
+   * @param queues      Number of asynchronous queues.
+   * @return Function definitions of the test data.
+   */
+  private static List<Xnode> assign(String file, int nbFunctions,
+                                    int queues)
+  {
+    XcodeProgram xcodeml = XcodeProgram.createFromFile(file);
+    assertNotNull(xcodeml);
+    assertFalse(xcodeml.hasErrors());
+    AsyncParallelRegions.assign(xcodeml, queues);
+    List<Xnode> fctDefs = xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION);
+    assertEquals(nbFunctions, fctDefs.size());
+    return fctDefs;
+  }
+
+  /**
+   * Describe the statements of a body.
+   *
+   * @param body Body node.
+   * @return Value of the pragmas and opcode of the other statements.
+   */
+  private static List<String> describe(Xnode body) {
+    List<String> statements = new ArrayList<>();
+    for(Xnode statement : body.children()) {
+      statements.add(statement.is(Xcode.F_PRAGMA_STATEMENT)
+          ? statement.value() : statement.opcode().code());
+    }
+    return statements;
+  }
+}
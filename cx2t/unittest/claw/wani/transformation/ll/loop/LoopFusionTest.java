@@ -0,0 +1,71 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.ll.loop;
+
+import claw.shenron.transformation.DependentTransformationGroup;
+import claw.shenron.transformation.TransformationGroup;
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.xcodeml.error.XanalysisError;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.wani.language.ClawPragma;
+import claw.wani.x2t.configuration.Configuration;
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the loop-fusion transformation units.
+ *
+ * @author clementval
+ */
+public class LoopFusionTest {
+
+  @Test
+  public void preventingDependenceTest() throws Exception {
+    Configuration.get().init(CompilerDirective.OPENACC, Target.GPU);
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_LOOP_FUSION_BLOCKS);
+    assertNotNull(xcodeml);
+    assertFalse(xcodeml.hasErrors());
+
+    TransformationGroup group =
+        new DependentTransformationGroup("loop-fusion");
+    for(Xnode pragma : xcodeml.matchAll(Xcode.F_PRAGMA_STATEMENT)) {
+      LoopFusion fusion = new LoopFusion(ClawPragma.analyze(pragma));
+      assertTrue(fusion.analyze(xcodeml, null));
+      group.add(fusion);
+    }
+    assertEquals(4, group.count());
+    group.applyTransformations(xcodeml, null);
+    assertEquals(0, group.getAppliedTransformationCount());
+
+    // Units of the same range in different blocks are not reported, only the
+    // units of the same block whose fusion would reverse the dependence on a
+    List<XanalysisError> prevented = new ArrayList<>();
+    for(XanalysisError warning : xcodeml.getWarnings()) {
+      if(warning.getMessage().startsWith("loop-fusion prevented")) {
+        prevented.add(warning);
+      }
+    }
+    assertEquals(1, prevented.size());
+    assertEquals("loop-fusion prevented by the dependence on a",
+        prevented.get(0).getMessage());
+    assertEquals(Arrays.asList(30, 34), prevented.get(0).getLines());
+  }
+}
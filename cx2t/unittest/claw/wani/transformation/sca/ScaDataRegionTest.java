@@ -0,0 +1,111 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.transformation.sca;
+
+import claw.tatsu.common.CompilerDirective;
+import claw.tatsu.common.Context;
+import claw.tatsu.common.Target;
+import claw.tatsu.xcodeml.xnode.common.Xcode;
+import claw.tatsu.xcodeml.xnode.common.XcodeProgram;
+import claw.tatsu.xcodeml.xnode.common.Xnode;
+import claw.wani.x2t.configuration.Configuration;
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Test the placement of hoisted data regions of forwarded calls.
+ *
+ * @author clementval
+ */
+public class ScaDataRegionTest {
+
+  private static final String DATA_Q = "acc data pcreate(q(:))";
+  private static final String DEVICE_Q = "acc update device(q(:))";
+  private static final String HOST_Q = "acc update host(q(:))";
+  private static final String DEVICE_T = "acc update device(t(:))";
+  private static final String HOST_T = "acc update host(t(:))";
+  private static final String END_DATA = "acc end data";
+  private static final String CALL = Xcode.EXPR_STATEMENT.code();
+  private static final String ASSIGN = Xcode.F_ASSIGN_STATEMENT.code();
+
+  @Test
+  public void hoistTest() {
+    Configuration.get().init(CompilerDirective.OPENACC, Target.GPU);
+    Context.get().init(CompilerDirective.OPENACC, Target.GPU, null, 80);
+
+    XcodeProgram xcodeml =
+        XcodeProgram.createFromFile(TestConstant.TEST_SCA_DATA_REGION);
+    assertNotNull(xcodeml);
+    assertFalse(xcodeml.hasErrors());
+
+    List<Xnode> calls = xcodeml.matchAll(Xcode.FUNCTION_CALL);
+    assertEquals(6, calls.size());
+    List<String> qt = Arrays.asList("q(:)", "t(:)");
+    List<String> q = Collections.singletonList("q(:)");
+    List<String> a = Collections.singletonList("a(:)");
+    ScaDataRegion.place(xcodeml, Arrays.asList(request(calls.get(0), qt),
+        request(calls.get(1), qt), request(calls.get(2), q),
+        request(calls.get(3), a), request(calls.get(4), q),
+        request(calls.get(5), q)));
+
+    List<Xnode> fctDefs = xcodeml.matchAll(Xcode.F_FUNCTION_DEFINITION);
+    assertEquals(3, fctDefs.size());
+
+    // One region around the loop, t is accessed by host code in the loop
+    Xnode driver = fctDefs.get(0).body();
+    assertEquals(Arrays.asList(ASSIGN, "acc data pcreate(q(:),t(:))",
+        DEVICE_Q, Xcode.F_DO_STATEMENT.code(), CALL, HOST_Q, END_DATA,
+        ASSIGN), describe(driver));
+    assertEquals(Arrays.asList(DEVICE_T, CALL, HOST_T, ASSIGN, DEVICE_T, CALL,
+        HOST_T), describe(driver.matchDescendant(Xcode.BODY)));
+
+    // Private function only called by a forwarded call creating q
+    assertEquals(Arrays.asList("acc data present(a(:))", CALL, END_DATA),
+        describe(fctDefs.get(1).body()));
+
+    // Return statement between the calls, each call has its own region
+    assertEquals(Arrays.asList(DATA_Q, DEVICE_Q, CALL, HOST_Q, END_DATA,
+        Xcode.F_RETURN_STATEMENT.code(), DATA_Q, DEVICE_Q, CALL, HOST_Q,
+        END_DATA), describe(fctDefs.get(2).body()));
+  }
+
+  /**
+   * Create the data requirements of a call reading and writing its arrays.
+   *
+   * @param call   FunctionCall node.
+   * @param arrays Array arguments.
+   * @return New data requirements.
+   */
+  private static ScaDataRegion.Request request(Xnode call,
+                                               List<String> arrays)
+  {
+    return new ScaDataRegion.Request(call.ancestor(), call, arrays, arrays,
+        arrays);
+  }
+
+  /**
+   * Describe the statements of a body.
+   *
+   * @param body Body node.
+   * @return Value of the pragmas and opcode of the other statements.
+   */
+  private static List<String> describe(Xnode body) {
+    List<String> statements = new ArrayList<>();
+    for(Xnode statement : body.children()) {
+      statements.add(statement.is(Xcode.F_PRAGMA_STATEMENT)
+          ? statement.value() : statement.opcode().code());
+    }
+    return statements;
+  }
+}
@@ -13,6 +13,16 @@ import claw.tatsu.directive.generator.OpenAcc;
 import helper.TestConstant;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.fail;
@@ -93,4 +103,84 @@ public class ConfigurationTest {
       fail();
     }
   }
+
+  @Test
+  public void snapshotTest() throws Exception {
+    // Work on a copy of the configuration to be able to modify it
+    Path configPath = Files.createTempDirectory("claw-config");
+    try(DirectoryStream<Path> files =
+            Files.newDirectoryStream(Paths.get(TestConstant.TEST_CONFIG_PATH)))
+    {
+      for(Path file : files) {
+        if(Files.isRegularFile(file)) {
+          Files.copy(file, configPath.resolve(file.getFileName()));
+        }
+      }
+    }
+    try {
+      String config = configPath.toString();
+      String snapshot = configPath.resolve("snapshot").resolve("config.bin")
+          .toString();
+
+      // First load reads the files and writes the snapshot
+      Configuration conf = Configuration.create();
+      conf.load(config, null, null, null, null, MAX_COLUMN, snapshot);
+      assertFalse(conf.isFromSnapshot());
+      assertTrue(Files.exists(Paths.get(snapshot)));
+      String fingerprint = conf.getFingerprint();
+      assertFalse(conf.getGroups().isEmpty());
+
+      Configuration cached = Configuration.create();
+      cached.load(config, null, null, null, null, MAX_COLUMN, snapshot);
+      assertTrue(cached.isFromSnapshot());
+      assertEquals(fingerprint, cached.getFingerprint());
+      for(int i = 0; i < conf.getGroups().size(); ++i) {
+        assertSame(conf.getGroups().get(i).getTransformationClass(),
+            cached.getGroups().get(i).getTransformationClass());
+      }
+
+      // User options are not part of the snapshot
+      cached = Configuration.create();
+      cached.load(config, null, null, Target.CPU.toString(), null, MAX_COLUMN,
+          snapshot);
+      assertTrue(cached.isFromSnapshot());
+      assertSame(Target.CPU, cached.getCurrentTarget());
+      cached = Configuration.create();
+      cached.load(config, null, null, null, null, MAX_COLUMN, snapshot);
+      assertEquals(fingerprint, cached.getFingerprint());
+
+      // Modified configuration invalidates and refreshes the snapshot
+      Files.write(configPath.resolve("claw-default.xml"),
+          "<!-- modified -->".getBytes(StandardCharsets.UTF_8),
+          StandardOpenOption.APPEND);
+      cached = Configuration.create();
+      cached.load(config, null, null, null, null, MAX_COLUMN, snapshot);
+      assertFalse(cached.isFromSnapshot());
+      cached = Configuration.create();
+      cached.load(config, null, null, null, null, MAX_COLUMN, snapshot);
+      assertTrue(cached.isFromSnapshot());
+
+      // Snapshot compiled explicitly
+      String compiled = configPath.resolve("compiled.bin").toString();
+      Configuration.create().compileSnapshot(config, null, compiled);
+      cached = Configuration.create();
+      cached.load(config, null, null, null, null, MAX_COLUMN, compiled);
+      assertTrue(cached.isFromSnapshot());
+      assertEquals(fingerprint, cached.getFingerprint());
+
+      // Snapshot of another configuration path is ignored
+      Configuration other = Configuration.create();
+      other.load(TestConstant.TEST_CONFIG_PATH, null, null, null, null,
+          MAX_COLUMN, compiled);
+      assertFalse(other.isFromSnapshot());
+    } finally {
+      try(Stream<Path> files = Files.walk(configPath)) {
+        for(Path file : files.sorted(Comparator.reverseOrder())
+            .collect(Collectors.toList()))
+        {
+          Files.delete(file);
+        }
+      }
+    }
+  }
 }
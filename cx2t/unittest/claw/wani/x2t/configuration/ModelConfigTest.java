@@ -42,6 +42,7 @@ public class ModelConfigTest {
       assertBound(hori.getIterationLowerBound(), "pstart");
       assertBound(hori.getIterationUpperBound(), "pend");
       assertBound(hori.getIterationStep(), 1);
+      assertEquals(20000, hori.getExtent());
 
       // Check correctness of "vertical" dimension information
       DimensionDefinition vertical = cfg.getDimension("vertical");
@@ -51,6 +52,7 @@ public class ModelConfigTest {
       assertEquals(vertical.getLowerBound(), vertical.getIterationLowerBound());
       assertEquals(vertical.getUpperBound(), vertical.getIterationUpperBound());
       assertBound(vertical.getIterationStep(), 1);
+      assertEquals(0, vertical.getExtent());
 
       assertNull(cfg.getDimension("unknown"));
       assertNull(cfg.getDimension(null));
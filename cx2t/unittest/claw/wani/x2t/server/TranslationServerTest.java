@@ -0,0 +1,178 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.server;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the TranslationServer class.
+ *
+ * @author clementval
+ */
+public class TranslationServerTest {
+
+  private static final long TIMEOUT_MS = 10000;
+
+  @Test
+  public void serveJobsTest() throws Exception {
+    Path dir = Files.createTempDirectory("cx2t_server");
+    Path serverFile = dir.resolve("server");
+    final List<String> jobArgs = new ArrayList<>();
+    final TranslationServer server = new TranslationServer(
+        serverFile.toString(), 1, (workingDir, args, out, err) -> {
+          jobArgs.add(workingDir);
+          jobArgs.add(String.join(" ", args));
+          err.println("job output");
+          return args.length;
+        });
+    String[] info = startServer(server, serverFile);
+    assertEquals(3, info.length);
+    assertEquals(server.getToken(), info[1]);
+    int port = Integer.parseInt(info[0]);
+
+    // Probe without request is ignored
+    new Socket(InetAddress.getLoopbackAddress(), port).close();
+
+    // Wrong token does not run the job
+    List<String> output = sendJob(port, "wrong", "/tmp", "-o", "out.xml");
+    assertTrue(output.isEmpty());
+    assertTrue(jobArgs.isEmpty());
+
+    output = sendJob(port, info[1], "/tmp", "-o", "out.xml");
+    assertEquals(2, output.size());
+    assertEquals("job output", output.get(0));
+    assertEquals(TranslationServer.STATUS_PREFIX + "2", output.get(1));
+    assertEquals(2, jobArgs.size());
+    assertEquals("/tmp", jobArgs.get(0));
+    assertEquals("-o out.xml", jobArgs.get(1));
+
+    server.stop();
+    assertFalse(Files.exists(serverFile));
+    Files.deleteIfExists(dir);
+  }
+
+  @Test
+  public void concurrentJobsTest() throws Exception {
+    Path dir = Files.createTempDirectory("cx2t_server");
+    Path serverFile = dir.resolve("server");
+    // The first job only ends once the second one has run. One worker is
+    // held by a stalled client.
+    final CountDownLatch secondJob = new CountDownLatch(1);
+    final TranslationServer server = new TranslationServer(
+        serverFile.toString(), 3, (workingDir, args, out, err) -> {
+          if(args[0].equals("first")) {
+            if(!secondJob.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+              return 1;
+            }
+          } else {
+            secondJob.countDown();
+          }
+          out.println(args[0]);
+          return 0;
+        });
+    String[] info = startServer(server, serverFile);
+    int port = Integer.parseInt(info[0]);
+
+    ExecutorService clients = Executors.newSingleThreadExecutor();
+    try(Socket stalled = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      // A client that never completes its request does not hold the server
+      new PrintWriter(stalled.getOutputStream(), true).println(info[1]);
+      Future<List<String>> first =
+          clients.submit(() -> sendJob(port, info[1], "/tmp", "first"));
+      List<String> output = sendJob(port, info[1], "/tmp", "second");
+      assertEquals(2, output.size());
+      assertEquals("second", output.get(0));
+      output = first.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      assertEquals(2, output.size());
+      assertEquals("first", output.get(0));
+      assertEquals(TranslationServer.STATUS_PREFIX + "0", output.get(1));
+    } finally {
+      clients.shutdownNow();
+      server.stop();
+    }
+    Files.deleteIfExists(dir);
+  }
+
+  /**
+   * Start a server in the background and wait for its server file.
+   *
+   * @param server     Server to start.
+   * @param serverFile Server file written by the server.
+   * @return Connection information read from the server file.
+   * @throws Exception If the server does not start in time.
+   */
+  private String[] startServer(TranslationServer server, Path serverFile)
+      throws Exception
+  {
+    Thread serverThread = new Thread(() -> {
+      try {
+        server.serve();
+      } catch(Exception ignored) {
+      }
+    });
+    serverThread.setDaemon(true);
+    serverThread.start();
+
+    long start = System.currentTimeMillis();
+    while(!Files.exists(serverFile)) {
+      assertTrue(System.currentTimeMillis() - start < TIMEOUT_MS);
+      Thread.sleep(10);
+    }
+    return new String(Files.readAllBytes(serverFile),
+        StandardCharsets.UTF_8).trim().split(" ");
+  }
+
+  /**
+   * Send a job to the server and collect its answer.
+   *
+   * @param port       Port of the server.
+   * @param token      Access token.
+   * @param workingDir Working directory sent with the job.
+   * @param args       Arguments of the job.
+   * @return Lines sent back by the server.
+   * @throws Exception If the communication fails.
+   */
+  private List<String> sendJob(int port, String token, String workingDir,
+                               String... args)
+      throws Exception
+  {
+    List<String> lines = new ArrayList<>();
+    try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      PrintWriter out = new PrintWriter(socket.getOutputStream());
+      out.println(token);
+      out.println(workingDir);
+      for(String arg : args) {
+        out.println(arg);
+      }
+      out.println();
+      out.flush();
+      BufferedReader in = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), StandardCharsets.UTF_8));
+      String line;
+      while((line = in.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.translator;
+
+import claw.tatsu.analysis.topology.DirectedGraph;
+import claw.tatsu.common.Context;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the BatchTranslator class.
+ *
+ * @author clementval
+ */
+public class BatchTranslatorTest {
+
+  /**
+   * Write a minimal XcodeML/F unit defining and using modules.
+   *
+   * @param dir     Directory in which the file is created.
+   * @param name    File name.
+   * @param defined Name of the module defined in the unit.
+   * @param used    Names of the modules used in the unit.
+   * @return Path to the file.
+   * @throws IOException If the file cannot be written.
+   */
+  private Path writeUnit(Path dir, String name, String defined,
+                         String... used)
+      throws IOException
+  {
+    StringBuilder str = new StringBuilder("<XcodeProgram>");
+    str.append("<FmoduleDefinition name=\"").append(defined).append("\">");
+    for(String module : used) {
+      str.append("<FuseDecl name=\"").append(module).append("\"/>");
+    }
+    str.append("</FmoduleDefinition></XcodeProgram>");
+    Path file = dir.resolve(name);
+    Files.write(file, str.toString().getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Test
+  public void dependencyOrderTest() throws Exception {
+    Path dir = Files.createTempDirectory("batch");
+    Path a = writeUnit(dir, "a.xml", "mod_a");
+    Path b = writeUnit(dir, "b.xml", "mod_b", "mod_a", "iso_c_binding");
+    Path c = writeUnit(dir, "c.xml", "mod_c", "mod_b", "mod_a");
+
+    BatchTranslator.BatchUnit unitA =
+        new BatchTranslator.BatchUnit(a.toString(), "a.f90");
+    BatchTranslator.BatchUnit unitB =
+        new BatchTranslator.BatchUnit(b.toString(), "b.f90");
+    BatchTranslator.BatchUnit unitC =
+        new BatchTranslator.BatchUnit(c.toString(), "c.f90");
+
+    BatchTranslator batch =
+        new BatchTranslator(Arrays.asList(unitC, unitB, unitA), 4);
+    DirectedGraph<BatchTranslator.BatchUnit> graph =
+        batch.computeDependencies();
+    assertEquals(3, graph.size());
+    assertTrue(graph.edgeExists(unitA, unitB));
+    assertTrue(graph.edgeExists(unitA, unitC));
+    assertTrue(graph.edgeExists(unitB, unitC));
+    assertFalse(graph.edgeExists(unitC, unitA));
+
+    final Context global = Context.get();
+    final List<String> order = Collections.synchronizedList(new ArrayList<>());
+    int failures = batch.run(unit -> {
+      assertNotSame(global, Context.get());
+      order.add(unit.getOutput());
+      if(unit == unitC) {
+        throw new Exception("failure");
+      }
+    });
+    assertEquals(1, failures);
+    assertEquals(Arrays.asList("a.f90", "b.f90", "c.f90"), order);
+    assertSame(global, Context.get());
+
+    for(Path p : Arrays.asList(a, b, c)) {
+      Files.delete(p);
+    }
+    Files.delete(dir);
+  }
+
+  @Test
+  public void readManifestTest() throws Exception {
+    Path manifest = Files.createTempFile("manifest", ".txt");
+    try {
+      Files.write(manifest, ("# comment\n\na.xml  a.f90\n  b.xml\tb.f90\n")
+          .getBytes(StandardCharsets.UTF_8));
+      List<BatchTranslator.BatchUnit> units =
+          BatchTranslator.readManifest(manifest.toString());
+      assertEquals(2, units.size());
+      assertEquals("a.xml", units.get(0).getInput());
+      assertEquals("a.f90", units.get(0).getOutput());
+      assertEquals("b.xml", units.get(1).getInput());
+      assertEquals("b.f90", units.get(1).getOutput());
+
+      Files.write(manifest, "a.xml\n".getBytes(StandardCharsets.UTF_8));
+      try {
+        BatchTranslator.readManifest(manifest.toString());
+        fail();
+      } catch(IOException ignored) {
+      }
+    } finally {
+      Files.deleteIfExists(manifest);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is released under terms of BSD license
+ * See LICENSE file for more information
+ */
+package claw.wani.x2t.translator;
+
+import claw.tatsu.common.Context;
+import claw.tatsu.xcodeml.module.ModuleCache;
+import claw.wani.x2t.configuration.Configuration;
+import helper.TestConstant;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the features of the TranslationCache class.
+ *
+ * @author clementval
+ */
+public class TranslationCacheTest {
+
+  /**
+   * Delete a directory and its content.
+   *
+   * @param dir Directory to delete.
+   * @throws Exception If the directory cannot be deleted.
+   */
+  private static void deleteTree(Path dir) throws Exception {
+    try(Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  /**
+   * Write a text file.
+   *
+   * @param file    File to write.
+   * @param content Content of the file.
+   * @return Absolute path of the file.
+   * @throws Exception If the file cannot be written.
+   */
+  private static Path write(Path file, String content) throws Exception {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file.toAbsolutePath();
+  }
+
+  /**
+   * Read a text file.
+   *
+   * @param file File to read.
+   * @return Content of the file.
+   * @throws Exception If the file cannot be read.
+   */
+  private static String read(Path file) throws Exception {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void storeRestoreTest() throws Exception {
+    Path dir = Files.createTempDirectory("translation_cache");
+    try {
+      Configuration.get().load(TestConstant.TEST_CONFIG_PATH,
+          null, null, null, null, 80);
+      Path modules = Files.createDirectory(dir.resolve("modules"));
+      Path used = write(modules.resolve("mo_used.xmod"), "<used/>");
+      Path input = write(dir.resolve("input.xml"), "<XcodeProgram/>");
+      Path output = write(dir.resolve("output.f90"), "END");
+      Path written = write(modules.resolve("mo_unit.claw.xmod"), "<unit/>");
+
+      ModuleCache moduleCache = Context.get().getModuleCache();
+      moduleCache.addSearchPath(modules.toString());
+      TranslationCache cache =
+          new TranslationCache(dir.resolve("cache").toString(), 1 << 20, "80");
+      String key = cache.computeKey(input.toString());
+      assertEquals(key, cache.computeKey(input.toString()));
+      assertNotEquals(key, new TranslationCache(dir.toString(), 1 << 20, "72")
+          .computeKey(input.toString()));
+      assertFalse(cache.restore(key, output.toString(), null));
+
+      moduleCache.recordLookups();
+      moduleCache.addLookup("mo_used.xmod", used.toString());
+      moduleCache.addLookup("mo_missing.xmod", null);
+      cache.store(key, moduleCache.getLookups(), output.toString(), null,
+          Collections.singletonList(written));
+
+      Files.delete(output);
+      Files.delete(written);
+      assertTrue(cache.restore(key, output.toString(), null));
+      assertEquals("END", read(output));
+      assertEquals("<unit/>", read(written));
+      // XcodeML/F output was not stored
+      assertFalse(cache.restore(key, output.toString(),
+          dir.resolve("output.xml").toString()));
+
+      // Module file read by the translation changed
+      write(used, "<changed/>");
+      assertFalse(cache.restore(key, output.toString(), null));
+      write(used, "<used/>");
+      assertTrue(cache.restore(key, output.toString(), null));
+
+      // Module file not found by the translation is now available
+      Path missing = write(modules.resolve("mo_missing.xmod"), "<missing/>");
+      assertFalse(cache.restore(key, output.toString(), null));
+      Files.delete(missing);
+      assertTrue(cache.restore(key, output.toString(), null));
+
+      // Configuration is part of the key
+      Configuration.get().overrideConfigurationParameter("dummy", "value");
+      assertNotEquals(key, cache.computeKey(input.toString()));
+    } finally {
+      deleteTree(dir);
+    }
+  }
+
+  @Test
+  public void trimTest() throws Exception {
+    Path dir = Files.createTempDirectory("translation_cache");
+    try {
+      Path cacheDir = dir.resolve("cache");
+      TranslationCache cache =
+          new TranslationCache(cacheDir.toString(), 2500, "");
+      long now = System.currentTimeMillis();
+      for(int i = 0; i < 4; ++i) {
+        StringBuilder content = new StringBuilder();
+        for(int j = 0; j < 1000; ++j) {
+          content.append(i);
+        }
+        Path output = write(dir.resolve("out" + i + ".f90"),
+            content.toString());
+        cache.store("key" + i, Collections.emptyMap(), output.toString(),
+            null, Collections.emptyList());
+        Path entry = cacheDir.resolve("entries").resolve("key" + i);
+        Files.setLastModifiedTime(entry,
+            FileTime.fromMillis(now - (10 - i) * 1000));
+      }
+      try(Stream<Path> objects = Files.walk(cacheDir.resolve("objects"))) {
+        objects.forEach(p -> p.toFile().setLastModified(now - 3600000));
+      }
+
+      // Most recently used entry is kept
+      assertTrue(cache.restore("key0", dir.resolve("out0.f90").toString(),
+          null));
+      cache.trim();
+      assertTrue(cache.restore("key0", dir.resolve("out0.f90").toString(),
+          null));
+      assertTrue(cache.restore("key3", dir.resolve("out3.f90").toString(),
+          null));
+      assertFalse(cache.restore("key1", dir.resolve("out1.f90").toString(),
+          null));
+      assertFalse(cache.restore("key2", dir.resolve("out2.f90").toString(),
+          null));
+      try(Stream<Path> objects = Files.walk(cacheDir.resolve("objects"))) {
+        assertEquals(2, objects.filter(Files::isRegularFile).count());
+      }
+    } finally {
+      deleteTree(dir);
+    }
+  }
+}